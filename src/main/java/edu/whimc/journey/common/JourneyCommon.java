@@ -26,6 +26,9 @@ package edu.whimc.journey.common;
 
 import edu.whimc.journey.common.config.ConfigManager;
 import edu.whimc.journey.common.data.DataManager;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
+import edu.whimc.journey.common.manager.LandmarkManager;
+import edu.whimc.journey.common.manager.PortGraphManager;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.search.event.SearchDispatcher;
 import edu.whimc.journey.common.util.LoggerCommon;
@@ -51,6 +54,17 @@ public final class JourneyCommon {
 
   private static MinecraftConversions<?, ?> conversions;
 
+  /**
+   * The manager of chunk versions, used to find out whether parts of the world
+   * have changed since some previous verification.
+   */
+  @Getter
+  private static final ChunkVersionManager chunkVersionManager = new ChunkVersionManager();
+
+  private static final LandmarkManager<?, ?> landmarkManager = new LandmarkManager<>();
+
+  private static final PortGraphManager<?, ?> portGraphManager = new PortGraphManager<>();
+
   /**
    * Get the event dispatcher used in a {@link edu.whimc.journey.common.search.SearchSession}.
    * It is up to the caller of this method to use the same generics used when
@@ -107,6 +121,32 @@ public final class JourneyCommon {
     JourneyCommon.dataManager = dataManager;
   }
 
+  /**
+   * Get the manager of the shortest-path trees rooted at landmarks, like public endpoints.
+   * It is up to the caller of this method to use the same generics as every other caller.
+   *
+   * @param <T> the location type
+   * @param <D> the domain type
+   * @return the landmark manager
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Cell<T, D>, D> LandmarkManager<T, D> getLandmarkManager() {
+    return (LandmarkManager<T, D>) landmarkManager;
+  }
+
+  /**
+   * Get the manager of the graph of connections between ports, which is shared by every search.
+   * It is up to the caller of this method to use the same generics as every other caller.
+   *
+   * @param <T> the location type
+   * @param <D> the domain type
+   * @return the port graph manager
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Cell<T, D>, D> PortGraphManager<T, D> getPortGraphManager() {
+    return (PortGraphManager<T, D>) portGraphManager;
+  }
+
   /**
    * Get a simple logger, which can be used anywhere in common files.
    *
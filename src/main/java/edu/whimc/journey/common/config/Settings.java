@@ -24,6 +24,9 @@
 
 package edu.whimc.journey.common.config;
 
+import edu.whimc.journey.common.data.CellSamplingPolicy;
+import edu.whimc.journey.common.data.PathCellLayout;
+import edu.whimc.journey.common.data.ReportQueuePolicy;
 import edu.whimc.journey.common.data.StorageMethod;
 
 /**
@@ -58,6 +61,93 @@ public final class Settings {
   public static final Setting<StorageMethod> SERVER_ENDPOINT_STORAGE_TYPE
       = new EnumSetting<>("storage.server_endpoint_type", StorageMethod.SQLITE, StorageMethod.class);
 
+  public static final Setting<StorageMethod> PATH_RECORD_STORAGE_TYPE
+      = new EnumSetting<>("storage.path_record_type", StorageMethod.SQLITE, StorageMethod.class);
+
+  public static final Setting<Integer> PATH_CACHE_CAPACITY
+      = new IntegerSetting("storage.path-cache-capacity", 1000);
+
+  public static final Setting<Integer> STORAGE_POOL_MAX_SIZE
+      = new IntegerSetting("storage.pool.max-size", 8);
+
+  public static final Setting<Integer> STORAGE_POOL_IDLE_TIMEOUT
+      = new IntegerSetting("storage.pool.idle-timeout", 300);
+
+  public static final Setting<Integer> STORAGE_POOL_STATEMENT_CACHE_SIZE
+      = new IntegerSetting("storage.pool.statement-cache-size", 64);
+
+  public static final Setting<Boolean> STORAGE_SQLITE_WAL
+      = new BooleanSetting("storage.sqlite.wal", true);
+
+  public static final Setting<Integer> STORAGE_SQLITE_MMAP_SIZE
+      = new IntegerSetting("storage.sqlite.mmap-size", 64);
+
+  public static final Setting<Integer> STORAGE_SQLITE_BUSY_TIMEOUT
+      = new IntegerSetting("storage.sqlite.busy-timeout", 5000);
+
+  public static final Setting<Integer> STORAGE_REPORT_BATCH_SIZE
+      = new IntegerSetting("storage.report-batch-size", 500);
+
+  public static final Setting<Integer> STORAGE_REPORT_QUEUE_CAPACITY
+      = new IntegerSetting("storage.report-queue.capacity", 256);
+
+  public static final Setting<ReportQueuePolicy> STORAGE_REPORT_QUEUE_POLICY
+      = new EnumSetting<>("storage.report-queue.policy",
+      ReportQueuePolicy.DROP_OLDEST,
+      ReportQueuePolicy.class);
+
+  public static final Setting<Integer> STORAGE_REPORT_BULK_SIZE
+      = new IntegerSetting("storage.report-queue.bulk-size", 32);
+
+  public static final Setting<Integer> STORAGE_REPORT_QUEUE_CLOSE_TIMEOUT
+      = new IntegerSetting("storage.report-queue.close-timeout", 10000);
+
+  public static final Setting<CellSamplingPolicy> STORAGE_CELL_SAMPLING_POLICY
+      = new EnumSetting<>("storage.cell-sampling.policy",
+      CellSamplingPolicy.ALL,
+      CellSamplingPolicy.class);
+
+  public static final Setting<Integer> STORAGE_CELL_SAMPLE_SIZE
+      = new IntegerSetting("storage.cell-sampling.sample-size", 500);
+
+  public static final Setting<Integer> STORAGE_CELL_SAMPLE_STRATA
+      = new IntegerSetting("storage.cell-sampling.strata", 10);
+
+  public static final Setting<PathCellLayout> STORAGE_CELL_LAYOUT
+      = new EnumSetting<>("storage.cell-layout",
+      PathCellLayout.ROWS,
+      PathCellLayout.class);
+
+  public static final Setting<Integer> STORAGE_EXPORT_FETCH_SIZE
+      = new IntegerSetting("storage.export.fetch-size", 1000);
+
+  public static final Setting<Integer> STORAGE_MAINTENANCE_INTERVAL
+      = new IntegerSetting("storage.maintenance.interval", 60);
+
+  public static final Setting<Integer> STORAGE_CELL_RETENTION
+      = new IntegerSetting("storage.maintenance.cell-retention", 7);
+
+  public static final Setting<Integer> STORAGE_MAINTENANCE_CLOSE_TIMEOUT
+      = new IntegerSetting("storage.maintenance.close-timeout", 30000);
+
+  public static final Setting<Integer> LANDMARK_TREE_RADIUS
+      = new IntegerSetting("search.landmark-tree.radius", 64);
+
+  public static final Setting<Integer> LANDMARK_TREE_MAX_CELLS
+      = new IntegerSetting("search.landmark-tree.max-cells", 20000);
+
+  public static final Setting<Integer> LANDMARK_TREE_CAPACITY
+      = new IntegerSetting("search.landmark-tree.capacity", 32);
+
+  public static final Setting<Integer> SEARCH_LANDMARK_COUNT
+      = new IntegerSetting("search.port-landmarks", 4);
+
+  public static final Setting<Integer> SEARCH_ALTERNATIVES
+      = new IntegerSetting("search.alternatives", 3);
+
+  public static final Setting<Boolean> SEARCH_PORT_HIERARCHY
+      = new BooleanSetting("search.port-hierarchy", false);
+
   private Settings() {
   }
 
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.navigation.Cell;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link PersonalEndpointManager} that keeps the endpoints of online players in memory
+ * in front of another personal endpoint manager, so that reading them needs no storage access.
+ *
+ * <p>Only the endpoints of players that are {@link #track tracked}, like players that are online,
+ * are kept in memory, until they are {@link #unload unloaded}. They are read the first time they are needed,
+ * or ahead of time with {@link #load}. The endpoints of other players are always read from the delegate.
+ * Every change is written to the delegate first, and then the player's endpoints are read again,
+ * so the cache always matches the storage.
+ *
+ * <p>Storage is never read while holding a lock. Instead, every tracked player has a version
+ * that goes up with every change, and endpoints that were read are only kept in memory
+ * if the player is still tracked and the version didn't change while they were read.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+public class CachedPersonalEndpointManager<T extends Cell<T, D>, D> implements PersonalEndpointManager<T, D> {
+
+  @Getter
+  private final PersonalEndpointManager<T, D> delegate;
+  private final Map<UUID, EndpointSnapshot<T, D>> cache = new ConcurrentHashMap<>();
+  // The tracked players and their versions; a new version object every time a player is tracked again
+  private final Map<UUID, AtomicLong> versions = new ConcurrentHashMap<>();
+
+  /**
+   * General constructor.
+   *
+   * @param delegate the manager that actually stores the endpoints
+   */
+  public CachedPersonalEndpointManager(@NotNull PersonalEndpointManager<T, D> delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  /**
+   * Start keeping the endpoints of a player in memory, like when the player joins.
+   * Nothing is read yet.
+   *
+   * @param playerUuid the player's uuid
+   */
+  public void track(@NotNull UUID playerUuid) {
+    versions.putIfAbsent(playerUuid, new AtomicLong());
+  }
+
+  /**
+   * Read the endpoints of a tracked player into memory, if they aren't already.
+   * If the player is unloaded before the read is done, like if the player already left,
+   * the endpoints that were read are not kept.
+   *
+   * @param playerUuid the player's uuid
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  public void load(@NotNull UUID playerUuid) throws DataAccessException {
+    snapshot(playerUuid);
+  }
+
+  /**
+   * Forget the endpoints of a player and stop keeping them in memory, like when the player leaves.
+   *
+   * @param playerUuid the player's uuid
+   */
+  public void unload(@NotNull UUID playerUuid) {
+    versions.remove(playerUuid);
+    cache.remove(playerUuid);
+  }
+
+  private EndpointSnapshot<T, D> snapshot(UUID playerUuid) {
+    EndpointSnapshot<T, D> snapshot = cache.get(playerUuid);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    return read(playerUuid);
+  }
+
+  /*
+   * Read a player's endpoints from the delegate, and keep them if the player is tracked
+   * and the version they were read at is still the current one.
+   */
+  private EndpointSnapshot<T, D> read(UUID playerUuid) {
+    final AtomicLong version = versions.get(playerUuid);
+    final long readVersion = version == null ? 0 : version.get();
+    final EndpointSnapshot<T, D> read = new EndpointSnapshot<>(delegate.getPersonalEndpoints(playerUuid));
+    if (version != null) {
+      cache.compute(playerUuid, (uuid, old) -> versions.get(uuid) == version && version.get() == readVersion
+          ? read
+          : old);
+    }
+    return read;
+  }
+
+  /*
+   * Read a player's endpoints again after they were changed.
+   * Any read that started before the change is not kept.
+   */
+  private void reload(UUID playerUuid) {
+    AtomicLong version = versions.get(playerUuid);
+    if (version == null) {
+      return;
+    }
+    version.incrementAndGet();
+    cache.remove(playerUuid);
+    read(playerUuid);
+  }
+
+  @Override
+  public void addPersonalEndpoint(@NotNull UUID playerUuid, @NotNull T cell)
+      throws IllegalArgumentException, DataAccessException {
+    delegate.addPersonalEndpoint(playerUuid, cell);
+    reload(playerUuid);
+  }
+
+  @Override
+  public void addPersonalEndpoint(@NotNull UUID playerUuid, @NotNull T cell, @NotNull String name)
+      throws IllegalArgumentException, DataAccessException {
+    delegate.addPersonalEndpoint(playerUuid, cell, name);
+    reload(playerUuid);
+  }
+
+  @Override
+  public void removePersonalEndpoint(@NotNull UUID playerUuid, @NotNull T cell) throws DataAccessException {
+    delegate.removePersonalEndpoint(playerUuid, cell);
+    reload(playerUuid);
+  }
+
+  @Override
+  public void removePersonalEndpoint(@NotNull UUID playerUuid, @NotNull String name)
+      throws DataAccessException {
+    delegate.removePersonalEndpoint(playerUuid, name);
+    reload(playerUuid);
+  }
+
+  @Override
+  public @Nullable String getPersonalEndpointName(@NotNull UUID playerUuid, @NotNull T cell)
+      throws DataAccessException {
+    return snapshot(playerUuid).nameOf(cell);
+  }
+
+  @Override
+  public @Nullable T getPersonalEndpoint(@NotNull UUID playerUuid, @NotNull String name)
+      throws DataAccessException {
+    return snapshot(playerUuid).get(name);
+  }
+
+  @Override
+  public Map<String, T> getPersonalEndpoints(@NotNull UUID playerUuid) throws DataAccessException {
+    return snapshot(playerUuid).all();
+  }
+
+}
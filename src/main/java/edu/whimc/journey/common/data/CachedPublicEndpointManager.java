@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.navigation.Cell;
+import java.util.Map;
+import java.util.Objects;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link PublicEndpointManager} that keeps all public endpoints in memory
+ * in front of another public endpoint manager, so that reading them needs no storage access.
+ *
+ * <p>The endpoints are loaded the first time they are needed. Every change is written to the delegate
+ * first, and then the endpoints are read again, so the cache always matches the storage.
+ * Changes made to the storage by anything else, like another server, are only seen after {@link #reload}.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+public class CachedPublicEndpointManager<T extends Cell<T, D>, D> implements PublicEndpointManager<T, D> {
+
+  @Getter
+  private final PublicEndpointManager<T, D> delegate;
+  private final Object lock = new Object();
+  private volatile EndpointSnapshot<T, D> snapshot = null;
+
+  /**
+   * General constructor.
+   *
+   * @param delegate the manager that actually stores the endpoints
+   */
+  public CachedPublicEndpointManager(@NotNull PublicEndpointManager<T, D> delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  /**
+   * Read all public endpoints from the delegate again.
+   *
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  public void reload() throws DataAccessException {
+    synchronized (lock) {
+      snapshot = new EndpointSnapshot<>(delegate.getPublicEndpoints());
+    }
+  }
+
+  private EndpointSnapshot<T, D> snapshot() {
+    EndpointSnapshot<T, D> current = snapshot;
+    if (current != null) {
+      return current;
+    }
+    synchronized (lock) {
+      if (snapshot == null) {
+        snapshot = new EndpointSnapshot<>(delegate.getPublicEndpoints());
+      }
+      return snapshot;
+    }
+  }
+
+  @Override
+  public void addPublicEndpoint(@NotNull T cell, @NotNull String name)
+      throws IllegalArgumentException, DataAccessException {
+    delegate.addPublicEndpoint(cell, name);
+    reload();
+  }
+
+  @Override
+  public void removePublicEndpoint(@NotNull T cell) throws DataAccessException {
+    delegate.removePublicEndpoint(cell);
+    reload();
+  }
+
+  @Override
+  public void removePublicEndpoint(@NotNull String name) throws DataAccessException {
+    delegate.removePublicEndpoint(name);
+    reload();
+  }
+
+  @Override
+  public @Nullable String getPublicEndpointName(@NotNull T cell) throws DataAccessException {
+    return snapshot().nameOf(cell);
+  }
+
+  @Override
+  public @Nullable T getPublicEndpoint(@NotNull String name) throws DataAccessException {
+    return snapshot().get(name);
+  }
+
+  @Override
+  public Map<String, T> getPublicEndpoints() throws DataAccessException {
+    return snapshot().all();
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import com.opencsv.CSVWriter;
+import edu.whimc.journey.common.data.PathRecordManager.PathTrialCellRecord;
+import edu.whimc.journey.common.data.PathRecordManager.PathTrialRecord;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.LongConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A utility class to export the stored cells of path records as CSV.
+ * Cells are written as they are read from storage, so an export of any size
+ * only takes a constant amount of memory.
+ */
+public final class CellCsvExporter {
+
+  /**
+   * The column names, which are written as the first line.
+   */
+  private static final String[] HEADER = {
+      "record_id", "world_uuid", "scoring_function", "path_length", "duration",
+      "origin_x", "origin_y", "origin_z", "destination_x", "destination_y", "destination_z",
+      "x", "y", "z", "critical", "path_index", "mode_type",
+      "deviation", "distance", "distance_y", "biome", "dimension"
+  };
+
+  private CellCsvExporter() {
+  }
+
+  /**
+   * Export all cells of a path record manager to a file, which is replaced if it exists.
+   *
+   * @param manager          the manager of the cells
+   * @param file             the file
+   * @param progress         a consumer of the number of cells exported so far, or null
+   * @param progressInterval the number of cells between calls to the progress consumer
+   * @return the number of exported cells
+   * @throws IOException         if the file could not be written
+   * @throws DataAccessException if the cells could not be read
+   */
+  public static long export(@NotNull PathRecordManager<?, ?> manager,
+                            @NotNull File file,
+                            @Nullable LongConsumer progress,
+                            long progressInterval) throws IOException, DataAccessException {
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      return export(manager, writer, progress, progressInterval);
+    }
+  }
+
+  /**
+   * Export all cells of a path record manager to a writer.
+   * The writer is flushed, but not closed.
+   *
+   * @param manager          the manager of the cells
+   * @param writer           the writer
+   * @param progress         a consumer of the number of cells exported so far, or null
+   * @param progressInterval the number of cells between calls to the progress consumer
+   * @return the number of exported cells
+   * @throws IOException         if the cells could not be written
+   * @throws DataAccessException if the cells could not be read
+   */
+  public static long export(@NotNull PathRecordManager<?, ?> manager,
+                            @NotNull Writer writer,
+                            @Nullable LongConsumer progress,
+                            long progressInterval) throws IOException, DataAccessException {
+    CSVWriter csvWriter = new CSVWriter(writer);
+    csvWriter.writeNext(HEADER);
+    long[] written = {0};
+    long count = manager.forEachCell(cell -> {
+      csvWriter.writeNext(toLine(cell));
+      written[0]++;
+      if (progress != null && progressInterval > 0 && written[0] % progressInterval == 0) {
+        progress.accept(written[0]);
+      }
+    });
+    csvWriter.flush();
+    // The CSV writer doesn't throw while writing lines, so we check at the end
+    if (csvWriter.checkError()) {
+      throw new IOException("The cells could not be written");
+    }
+    return count;
+  }
+
+  private static String[] toLine(PathTrialCellRecord cell) {
+    PathTrialRecord record = cell.record();
+    return new String[]{
+        String.valueOf(record.id()),
+        record.worldId(),
+        record.scoringFunctionType().name(),
+        String.valueOf(record.pathLength()),
+        String.valueOf(record.duration()),
+        String.valueOf(record.originX()),
+        String.valueOf(record.originY()),
+        String.valueOf(record.originZ()),
+        String.valueOf(record.destinationX()),
+        String.valueOf(record.destinationY()),
+        String.valueOf(record.destinationZ()),
+        String.valueOf(cell.x()),
+        String.valueOf(cell.y()),
+        String.valueOf(cell.z()),
+        String.valueOf(cell.critical()),
+        cell.index() == null ? "" : String.valueOf(cell.index()),
+        cell.modeType().name(),
+        String.valueOf(cell.deviation()),
+        String.valueOf(cell.distance()),
+        String.valueOf(cell.distanceY()),
+        String.valueOf(cell.biome()),
+        String.valueOf(cell.dimension())
+    };
+  }
+
+}
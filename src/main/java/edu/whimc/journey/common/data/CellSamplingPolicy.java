@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An enumeration of ways to choose which of the cells visited while calculating a path
+ * are stored along with the path record.
+ * Cells on the critical path (the solution) are always stored; these policies only
+ * decide which of the other visited cells are stored too.
+ */
+public enum CellSamplingPolicy {
+
+  /**
+   * Store every visited cell.
+   */
+  ALL {
+    @Override
+    <C> void sampleNonCritical(List<C> nonCritical, ToDoubleFunction<C> deviation,
+                               int sampleSize, int strata, Random random, List<C> sample) {
+      sample.addAll(nonCritical);
+    }
+  },
+  /**
+   * Store only the cells on the critical path.
+   */
+  CRITICAL_ONLY {
+    @Override
+    <C> void sampleNonCritical(List<C> nonCritical, ToDoubleFunction<C> deviation,
+                               int sampleSize, int strata, Random random, List<C> sample) {
+      // none of them
+    }
+  },
+  /**
+   * Store a uniformly random sample of a fixed number of the other cells.
+   */
+  RESERVOIR {
+    @Override
+    <C> void sampleNonCritical(List<C> nonCritical, ToDoubleFunction<C> deviation,
+                               int sampleSize, int strata, Random random, List<C> sample) {
+      sample.addAll(reservoir(nonCritical, sampleSize, random));
+    }
+  },
+  /**
+   * Store a random sample of a fixed number of the other cells, split evenly between
+   * ranges of deviation from the critical path, so that cells far from the critical path
+   * are represented as well as the many cells close to it.
+   */
+  STRATIFIED {
+    @Override
+    <C> void sampleNonCritical(List<C> nonCritical, ToDoubleFunction<C> deviation,
+                               int sampleSize, int strata, Random random, List<C> sample) {
+      if (nonCritical.isEmpty()) {
+        return;
+      }
+      double min = Double.MAX_VALUE;
+      double max = -Double.MAX_VALUE;
+      for (C cell : nonCritical) {
+        double value = deviation.applyAsDouble(cell);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+      int strataCount = Math.max(1, strata);
+      List<List<C>> buckets = new ArrayList<>(strataCount);
+      for (int i = 0; i < strataCount; i++) {
+        buckets.add(new ArrayList<>());
+      }
+      double width = (max - min) / strataCount;
+      for (C cell : nonCritical) {
+        int index = width <= 0
+            ? 0
+            : (int) ((deviation.applyAsDouble(cell) - min) / width);
+        buckets.get(Math.min(index, strataCount - 1)).add(cell);
+      }
+      // Give every range an equal share, passing on whatever a sparse range couldn't use
+      int remaining = sampleSize;
+      for (int i = 0; i < strataCount; i++) {
+        int share = remaining / (strataCount - i);
+        List<C> chosen = reservoir(buckets.get(i), share, random);
+        sample.addAll(chosen);
+        remaining -= chosen.size();
+      }
+    }
+  };
+
+  /**
+   * Choose the cells to store.
+   *
+   * @param cells      all visited cells
+   * @param critical   whether a cell is on the critical path
+   * @param deviation  the deviation of a cell from the critical path
+   * @param sampleSize the number of cells off the critical path to store, for policies with a fixed size
+   * @param strata     the number of deviation ranges, for stratified sampling
+   * @param random     the source of randomness
+   * @param <C>        the cell type
+   * @return the cells to store
+   */
+  public <C> List<C> sample(Collection<C> cells,
+                            Predicate<C> critical,
+                            ToDoubleFunction<C> deviation,
+                            int sampleSize,
+                            int strata,
+                            Random random) {
+    List<C> sample = new ArrayList<>();
+    List<C> nonCritical = new ArrayList<>();
+    for (C cell : cells) {
+      if (critical.test(cell)) {
+        sample.add(cell);
+      } else {
+        nonCritical.add(cell);
+      }
+    }
+    sampleNonCritical(nonCritical, deviation, Math.max(0, sampleSize), strata, random, sample);
+    return sample;
+  }
+
+  abstract <C> void sampleNonCritical(List<C> nonCritical,
+                                      ToDoubleFunction<C> deviation,
+                                      int sampleSize,
+                                      int strata,
+                                      Random random,
+                                      List<C> sample);
+
+  /*
+   * Algorithm R: every element ends up in the reservoir with equal probability.
+   */
+  private static <C> List<C> reservoir(List<C> cells, int size, Random random) {
+    if (cells.size() <= size) {
+      return cells;
+    }
+    List<C> reservoir = new ArrayList<>(cells.subList(0, size));
+    for (int i = size; i < cells.size(); i++) {
+      int j = random.nextInt(i + 1);
+      if (j < size) {
+        reservoir.set(j, cells.get(i));
+      }
+    }
+    return reservoir;
+  }
+
+}
@@ -58,4 +58,10 @@ public interface DataManager<T extends Cell<T, D>, D> {
    */
   PathRecordManager<T, D> getPathRecordManager();
 
+  /**
+   * Release every resource held for storage, like open database connections.
+   * Called when the application shuts down.
+   */
+  void close();
+
 }
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.navigation.Cell;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An unchanging copy of a set of named endpoints, which can be looked up
+ * by name, ignoring case like the storage does, or by cell.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+final class EndpointSnapshot<T extends Cell<T, D>, D> {
+
+  private final Map<String, T> byName;
+  private final Map<String, T> byNameId = new HashMap<>();
+  private final Map<T, String> byCell = new HashMap<>();
+
+  EndpointSnapshot(@NotNull Map<String, T> endpoints) {
+    this.byName = Collections.unmodifiableMap(new LinkedHashMap<>(endpoints));
+    for (Map.Entry<String, T> endpoint : byName.entrySet()) {
+      byNameId.put(endpoint.getKey().toLowerCase(), endpoint.getValue());
+      byCell.putIfAbsent(endpoint.getValue(), endpoint.getKey());
+    }
+  }
+
+  @Nullable
+  T get(@NotNull String name) {
+    return byNameId.get(name.toLowerCase());
+  }
+
+  @Nullable
+  String nameOf(@NotNull T cell) {
+    return byCell.get(cell);
+  }
+
+  Map<String, T> all() {
+    return byName;
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.navigation.Cell;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A maintenance job for path records, to be run every once in a while
+ * so the storage of path records doesn't grow forever.
+ * It moves records saved in an older layout into the current one,
+ * removes records that are beaten by shorter ones, removes the cells visited
+ * while calculating records older than the {@link Settings#STORAGE_CELL_RETENTION} window,
+ * and then compacts the storage.
+ *
+ * @param <T> the cell type
+ * @param <D> the domain type
+ */
+public class PathRecordMaintenance<T extends Cell<T, D>, D> implements Runnable {
+
+  private final PathRecordManager<T, D> pathRecordManager;
+  // Both guarded by this maintenance object
+  private boolean running = false;
+  private boolean closed = false;
+
+  /**
+   * General constructor.
+   *
+   * @param pathRecordManager the manager of the records to maintain
+   */
+  public PathRecordMaintenance(@NotNull PathRecordManager<T, D> pathRecordManager) {
+    this.pathRecordManager = pathRecordManager;
+  }
+
+  /**
+   * Run the maintenance, unless it is already running.
+   */
+  @Override
+  public void run() {
+    if (!start()) {
+      return;
+    }
+    try {
+      long start = System.currentTimeMillis();
+      migrateRecords();
+      if (isClosed()) {
+        return;
+      }
+      int removedRecords = pathRecordManager.clearSuboptimal();
+
+      int removedCells = 0;
+      int retentionDays = Settings.STORAGE_CELL_RETENTION.getValue();
+      if (retentionDays >= 0 && !isClosed()) {
+        long expiry = start / 1000 - TimeUnit.DAYS.toSeconds(retentionDays);
+        removedCells = pathRecordManager.clearCellsOlderThan(expiry);
+      }
+
+      if (!isClosed()) {
+        pathRecordManager.compact();
+      }
+
+      if (removedRecords > 0 || removedCells > 0) {
+        JourneyCommon.getLogger().info("Path record maintenance removed "
+            + removedRecords + " records and "
+            + removedCells + " cells in "
+            + (System.currentTimeMillis() - start) + " ms");
+      }
+    } catch (DataAccessException e) {
+      JourneyCommon.getLogger().error("Path record maintenance failed");
+    } finally {
+      finish();
+    }
+  }
+
+  /**
+   * Only move records saved in an older layout into the current one, unless maintenance is already running.
+   * This is meant to be run once in the background when storage is opened.
+   */
+  public void migrate() {
+    if (!start()) {
+      return;
+    }
+    try {
+      migrateRecords();
+    } catch (DataAccessException e) {
+      JourneyCommon.getLogger().error("Path record migration failed");
+    } finally {
+      finish();
+    }
+  }
+
+  /**
+   * Stop any maintenance from starting, and wait for the maintenance that is running to finish,
+   * so the storage underneath can be closed safely.
+   * Maintenance that is running stops after the step it is on.
+   *
+   * @param timeoutMillis the longest time to wait, in milliseconds
+   * @return true if no maintenance is running anymore
+   */
+  public synchronized boolean close(long timeoutMillis) {
+    closed = true;
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (running) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        JourneyCommon.getLogger().warn("Path record maintenance was still running at shutdown");
+        return false;
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized boolean start() {
+    if (closed || running) {
+      return false;
+    }
+    running = true;
+    return true;
+  }
+
+  private synchronized void finish() {
+    running = false;
+    notifyAll();
+  }
+
+  private synchronized boolean isClosed() {
+    return closed;
+  }
+
+  private void migrateRecords() {
+    int migrated = pathRecordManager.migrate();
+    if (migrated > 0) {
+      JourneyCommon.getLogger().info("Moved " + migrated + " path records into the current storage layout");
+    }
+  }
+
+}
@@ -24,16 +24,29 @@
 
 package edu.whimc.journey.common.data;
 
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.ModeType;
 import edu.whimc.journey.common.navigation.ModeTypeGroup;
 import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Step;
 import edu.whimc.journey.common.search.FlexiblePathTrial;
 import edu.whimc.journey.common.search.PathTrial;
 import edu.whimc.journey.common.search.ScoringFunction;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Stack;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Value;
 import lombok.experimental.Accessors;
 import org.jetbrains.annotations.NotNull;
@@ -61,10 +74,98 @@ public interface PathRecordManager<T extends Cell<T, D>, D> {
               ModeTypeGroup modeTypeGroup,
               long executionTime) throws DataAccessException;
 
+  /**
+   * Record many path trials at once.
+   * Storage may write them together much faster than it could write them one at a time.
+   *
+   * @param reports the reports of the trials
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  default void reportAll(@NotNull Collection<PathReport<T, D>> reports) throws DataAccessException {
+    for (PathReport<T, D> report : reports) {
+      report(report.trial(), report.calculationNodes(), report.modeTypeGroup(), report.executionTime());
+    }
+  }
+
   /**
    * Clear all records. <b>Dangerous!</b>
+   *
+   * @return the number of removed records
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  int clear() throws DataAccessException;
+
+  /**
+   * Clear all records within a domain.
+   *
+   * @param domain the domain
+   * @return the number of removed records
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  int clear(@NotNull D domain) throws DataAccessException;
+
+  /**
+   * Clear all records whose paths pass through a box, like after the terrain there was edited.
+   * The box includes both corners, which must be in the same domain.
+   *
+   * @param corner1 one corner of the box
+   * @param corner2 the opposite corner of the box
+   * @return the number of removed records
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  int clear(@NotNull T corner1, @NotNull T corner2) throws DataAccessException;
+
+  /**
+   * Clear all records that were reported before a certain time.
+   *
+   * @param timestamp the time, in seconds since the Unix epoch
+   * @return the number of removed records
+   * @throws DataAccessException when data is accessed incorrectly
    */
-  void clear();
+  int clearOlderThan(long timestamp) throws DataAccessException;
+
+  /**
+   * Clear every record for which there is a shorter record
+   * with the same origin, destination, and mode types.
+   * Of records with the same length, only the most recent one is kept.
+   *
+   * @return the number of removed records
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  int clearSuboptimal() throws DataAccessException;
+
+  /**
+   * Clear the cells that were visited while calculating the records that were reported
+   * before a certain time, other than the cells on their critical paths.
+   * The records themselves are kept.
+   *
+   * @param timestamp the time, in seconds since the Unix epoch
+   * @return the number of removed cells
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  int clearCellsOlderThan(long timestamp) throws DataAccessException;
+
+  /**
+   * Give the space freed by clearing records back to the system, if the storage supports it.
+   *
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  default void compact() throws DataAccessException {
+    // Nothing to compact by default
+  }
+
+  /**
+   * Move records that were saved in an older storage layout into the current one.
+   * This is done a little at a time so it can run in the background while records are used,
+   * and records in the older layout can still be read until they are moved.
+   *
+   * @return the number of moved records
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  default int migrate() throws DataAccessException {
+    // Nothing to migrate by default
+    return 0;
+  }
 
   /**
    * Ger any records matching a start and end.
@@ -94,11 +195,38 @@ public interface PathRecordManager<T extends Cell<T, D>, D> {
    * @param destination   the destination cell
    * @param modeTypeGroup the mode types used to traverse to the destination
    * @param constructor   the constructor to provide new cells
-   * @return the new path
+   * @return the new path, or null if no record exists with the given criteria
    */
+  @Nullable
   Path<T, D> getPath(T origin, T destination, ModeTypeGroup modeTypeGroup,
                      Cell.CellConstructor<T, D> constructor);
 
+  /**
+   * Find the shortest stored path for each of many lookups at once,
+   * so storage can answer them all together instead of one at a time.
+   * Only the lengths are read right away, and each path is only read once it is
+   * {@link StoredPath#load() loaded}.
+   * Like {@link #getPath}, a lookup accepts any path that only uses its mode types.
+   *
+   * @param lookups     the lookups
+   * @param constructor the constructor to provide new cells
+   * @return the stored paths of the lookups that have one
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  @NotNull
+  default Map<PathLookup<T, D>, StoredPath<T, D>> findPaths(@NotNull Collection<PathLookup<T, D>> lookups,
+                                                            Cell.CellConstructor<T, D> constructor)
+      throws DataAccessException {
+    Map<PathLookup<T, D>, StoredPath<T, D>> paths = new HashMap<>();
+    for (PathLookup<T, D> lookup : lookups) {
+      Path<T, D> path = getPath(lookup.origin(), lookup.destination(), lookup.modeTypeGroup(), constructor);
+      if (path != null) {
+        paths.put(lookup, StoredPath.of(path));
+      }
+    }
+    return paths;
+  }
+
   /**
    * Return whether a record exists with the given critera.
    *
@@ -113,9 +241,173 @@ public interface PathRecordManager<T extends Cell<T, D>, D> {
    * Get all the cells. Dangerous if the database is large!
    *
    * @return all cells
+   * @deprecated every cell is held in memory at once, use {@link #forEachCell} instead
    */
+  @Deprecated
   @NotNull Collection<PathTrialCellRecord> getAllCells();
 
+  /**
+   * Give every stored cell to a consumer, one at a time,
+   * so that the cells never have to be held in memory all at once.
+   * Cells of the same record share the same record object as long as they are given in a row.
+   *
+   * @param consumer the consumer of the cells
+   * @return the number of cells given to the consumer
+   * @throws DataAccessException when data is accessed incorrectly
+   */
+  long forEachCell(@NotNull Consumer<PathTrialCellRecord> consumer) throws DataAccessException;
+
+  /**
+   * Everything needed to record a {@link PathTrial}, as given to {@link #report}.
+   * A report either holds all the nodes of its calculation, or only the cell records
+   * that were chosen from them to be stored, once it is {@link #sampled}.
+   *
+   * @param <T> the cell type
+   * @param <D> the domain type
+   */
+  @Value
+  @Accessors(fluent = true)
+  @AllArgsConstructor(access = AccessLevel.PRIVATE)
+  class PathReport<T extends Cell<T, D>, D> {
+    PathTrial<T, D> trial;
+    Collection<FlexiblePathTrial.Node<T, D>> calculationNodes;
+    ModeTypeGroup modeTypeGroup;
+    long executionTime;
+    @Nullable
+    List<PathTrialCellRecord> cells;
+
+    /**
+     * General constructor.
+     *
+     * @param trial            the trial
+     * @param calculationNodes all the nodes used for the calculation
+     * @param modeTypeGroup    group of modes used to calculate the path trial
+     * @param executionTime    the time it took to execute
+     */
+    public PathReport(PathTrial<T, D> trial,
+                      Collection<FlexiblePathTrial.Node<T, D>> calculationNodes,
+                      ModeTypeGroup modeTypeGroup,
+                      long executionTime) {
+      this(trial, calculationNodes, modeTypeGroup, executionTime, null);
+    }
+
+    /**
+     * Get a copy of this report that only holds the cell records to be stored,
+     * so the nodes of the calculation don't have to be kept around until it is written.
+     *
+     * @return the sampled report
+     */
+    public PathReport<T, D> sampled() {
+      if (cells != null) {
+        return this;
+      }
+      return new PathReport<>(trial, Collections.emptyList(), modeTypeGroup, executionTime, cells());
+    }
+
+    /**
+     * Get the records of the visited cells to store, chosen with the configured
+     * {@link CellSamplingPolicy}. Cells on the critical path are always included.
+     *
+     * @return the cell records, not yet attached to a path record
+     */
+    public List<PathTrialCellRecord> cells() {
+      if (cells != null) {
+        return cells;
+      }
+      final Path<T, D> path = Objects.requireNonNull(trial.getPath());
+
+      // Let's calculate the deviation of every node in this trial
+      final double totalDistance = trial.getOrigin().distanceTo(path.getDestination());
+      final double deviationStepRatio = totalDistance / trial.getLength();
+      final Map<T, Double> deviations = new HashMap<>();
+      final Map<T, Integer> stepIndexes = new HashMap<>();  // For saving the critical nodes
+
+      // Get all the deviations for everything on the critical path
+      // Subtract deviation step to start because the first step is one step forward
+      double currentDeviation = totalDistance;
+      int i = 0;
+      for (Step<T, D> step : path.getSteps()) {
+
+        // Set the index of the critical nodes
+        stepIndexes.put(step.location(), i++);
+
+        currentDeviation -= deviationStepRatio * step.length();
+        if (currentDeviation < 0.5) {
+          // floor to 0 because we're basically at the end... no need for decimals anymore
+          currentDeviation = 0;
+        }
+        deviations.put(step.location(), currentDeviation);
+      }
+
+      // Get all the rest of the deviations
+      for (FlexiblePathTrial.Node<T, D> node : calculationNodes) {
+        if (deviations.containsKey(node.getData().location())) {
+          // We already know this deviation so continue
+          continue;
+        }
+
+        // We don't know the deviation of this one, so check backwards until we find one that we know,
+        // then work forwards again to add the deviations, which will keep increasing.
+        // Basically, we will be working our way towards the heart of the tree (the destination),
+        // then go back outwards to the leaves once we know how far away some point along the way
+        // is from the heart.
+        Stack<FlexiblePathTrial.Node<T, D>> stack = new Stack<>();
+        FlexiblePathTrial.Node<T, D> current = node;
+        while (!deviations.containsKey(current.getData().location())) {
+          stack.add(current);
+          current = current.getPrevious();
+        }
+        // We know what current's deviation is. Work forward now
+        while (!stack.isEmpty()) {
+          deviations.put(stack.peek().getData().location(),
+              deviations.get(current.getData().location()) + stack.peek().getData().length());
+          stack.pop();
+        }
+      }
+      // We are done setting up the deviations
+      assert deviations.size() == calculationNodes.size();
+
+      // Most visited cells are only kept for later analysis, so we may not need all of them
+      List<FlexiblePathTrial.Node<T, D>> sampledNodes = Settings.STORAGE_CELL_SAMPLING_POLICY.getValue()
+          .sample(calculationNodes,
+              node -> stepIndexes.containsKey(node.getData().location()),
+              node -> deviations.get(node.getData().location()),
+              Settings.STORAGE_CELL_SAMPLE_SIZE.getValue(),
+              Settings.STORAGE_CELL_SAMPLE_STRATA.getValue(),
+              ThreadLocalRandom.current());
+      List<PathTrialCellRecord> records = new ArrayList<>(sampledNodes.size());
+      for (FlexiblePathTrial.Node<T, D> node : sampledNodes) {
+        T location = node.getData().location();
+        boolean critical = stepIndexes.containsKey(location);
+        records.add(new PathTrialCellRecord(null,
+            location.getX(), location.getY(), location.getZ(),
+            critical,
+            critical ? stepIndexes.get(location) : null,
+            node.getData().getModeType(),
+            deviations.get(location),
+            location.distanceTo(path.getDestination()),
+            Math.abs(location.getY() - path.getDestination().getY()),
+            JourneyCommon.<T, D>getConversions().getBiome(location),
+            JourneyCommon.<T, D>getConversions().getDimension(location.getDomain())));
+      }
+      return records;
+    }
+  }
+
+  /**
+   * The criteria of a path to look up with {@link #findPaths}.
+   *
+   * @param <T> the cell type
+   * @param <D> the domain type
+   */
+  @Value
+  @Accessors(fluent = true)
+  class PathLookup<T extends Cell<T, D>, D> {
+    T origin;
+    T destination;
+    ModeTypeGroup modeTypeGroup;
+  }
+
   /**
    * A record that represents a saved {@link PathTrial}.
    */
@@ -0,0 +1,543 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.search.FlexiblePathTrial;
+import edu.whimc.journey.common.search.PathTrial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link PathRecordManager} that writes reports to another path record manager
+ * on its own thread, so that whoever reports a path never waits on storage.
+ *
+ * <p>Reports wait in a bounded queue. If a report comes in for the same origin, destination,
+ * and mode types as one that is still waiting, only the shorter of the two is kept.
+ * When the queue is full, the {@link ReportQueuePolicy} decides what happens.
+ * Reading methods see the waiting reports, and the ones being written, as if they were already written.
+ *
+ * @param <T> the cell type
+ * @param <D> the domain type
+ */
+public class QueuedPathRecordManager<T extends Cell<T, D>, D> implements PathRecordManager<T, D> {
+
+  @Getter
+  private final PathRecordManager<T, D> delegate;
+  private final int capacity;
+  private final ReportQueuePolicy policy;
+  private final int bulkSize;
+
+  private final Map<Key<T, D>, PathReport<T, D>> pending = new LinkedHashMap<>();
+  // Reports taken by the writer, until storage has committed them
+  private final Map<Key<T, D>, PathReport<T, D>> inFlight = new HashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Condition idle = lock.newCondition();
+  private final Thread writer;
+  private boolean closed = false;
+  private long dropped = 0;
+
+  /**
+   * General constructor. The writer thread starts right away and writes reports one at a time.
+   *
+   * @param delegate the manager that actually stores the reports
+   * @param capacity the maximum number of reports waiting to be written
+   * @param policy   what to do with new reports when the queue is full
+   */
+  public QueuedPathRecordManager(@NotNull PathRecordManager<T, D> delegate,
+                                 int capacity,
+                                 @NotNull ReportQueuePolicy policy) {
+    this(delegate, capacity, policy, 1);
+  }
+
+  /**
+   * Constructor for a queue that gives up to some number of waiting reports
+   * to the delegate at once with {@link PathRecordManager#reportAll}.
+   * The writer thread starts right away.
+   *
+   * @param delegate the manager that actually stores the reports
+   * @param capacity the maximum number of reports waiting to be written
+   * @param policy   what to do with new reports when the queue is full
+   * @param bulkSize the maximum number of reports written together
+   */
+  public QueuedPathRecordManager(@NotNull PathRecordManager<T, D> delegate,
+                                 int capacity,
+                                 @NotNull ReportQueuePolicy policy,
+                                 int bulkSize) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The report queue must hold at least one report");
+    }
+    if (bulkSize < 1) {
+      throw new IllegalArgumentException("At least one report must be written at a time");
+    }
+    this.delegate = Objects.requireNonNull(delegate);
+    this.capacity = capacity;
+    this.policy = Objects.requireNonNull(policy);
+    this.bulkSize = bulkSize;
+    this.writer = new Thread(this::writeReports, "Journey Path Record Writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override
+  public void report(PathTrial<T, D> trial,
+                     Collection<FlexiblePathTrial.Node<T, D>> calculationNodes,
+                     ModeTypeGroup modeTypeGroup,
+                     long executionTime) throws DataAccessException {
+    if (trial.getPath() == null) {
+      throw new IllegalArgumentException("The path of he input path trial was not valid."
+          + " The input path trial must be successful and have a valid path.");
+    }
+    // Copy everything that the caller may keep changing after we return.
+    // Only the sampled cells are kept so a waiting report doesn't hold on to the whole search.
+    ModeTypeGroup modeTypes = new ModeTypeGroup(modeTypeGroup.getAll());
+    PathReport<T, D> report = new PathReport<>(trial, calculationNodes, modeTypes, executionTime)
+        .sampled();
+    Key<T, D> key = new Key<>(trial.getOrigin(), trial.getDestination(), modeTypes);
+
+    lock.lock();
+    try {
+      if (closed) {
+        throw new DataAccessException("The path record queue is closed");
+      }
+      PathReport<T, D> waiting = pending.get(key);
+      if (waiting != null) {
+        // Coalesce: only the better path is worth writing
+        if (report.trial().getLength() < waiting.trial().getLength()) {
+          pending.put(key, report);
+        }
+        return;
+      }
+      while (pending.size() >= capacity) {
+        switch (policy) {
+          case BLOCK:
+            notFull.awaitUninterruptibly();
+            if (closed) {
+              throw new DataAccessException("The path record queue is closed");
+            }
+            break;
+          case DROP_OLDEST:
+            Iterator<PathReport<T, D>> oldest = pending.values().iterator();
+            oldest.next();
+            oldest.remove();
+            dropped++;
+            break;
+          case DROP_NEWEST:
+          default:
+            dropped++;
+            return;
+        }
+      }
+      pending.put(key, report);
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of reports waiting to be written.
+   *
+   * @return the number of waiting reports
+   */
+  public int queued() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of reports that were thrown away because the queue was full.
+   *
+   * @return the number of dropped reports
+   */
+  public long dropped() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until every report that is currently waiting has been written.
+   */
+  public void flush() {
+    lock.lock();
+    try {
+      while ((!pending.isEmpty() || !inFlight.isEmpty()) && writer.isAlive()) {
+        idle.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stop accepting reports, write every report still waiting, and stop the writer thread.
+   * If the reports are not all written in time, the ones still waiting are dropped
+   * so that the writer stops as soon as it finishes what it is writing.
+   *
+   * @param timeoutMillis the longest time to wait for the waiting reports to be written, in milliseconds
+   */
+  public void close(long timeoutMillis) {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join(Math.max(1, timeoutMillis));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    lock.lock();
+    try {
+      if (writer.isAlive()) {
+        JourneyCommon.getLogger().warn("The path record writer did not finish in time. "
+            + pending.size() + " waiting path records were dropped and "
+            + inFlight.size() + " were still being written.");
+        dropped += pending.size();
+        pending.clear();
+      }
+      if (dropped > 0) {
+        JourneyCommon.getLogger().warn(dropped + " path records were dropped from the full report queue"
+            + " or at shutdown.");
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void writeReports() {
+    while (true) {
+      List<PathReport<T, D>> reports = new ArrayList<>();
+      lock.lock();
+      try {
+        while (pending.isEmpty()) {
+          idle.signalAll();
+          if (closed) {
+            return;
+          }
+          notEmpty.awaitUninterruptibly();
+        }
+        // Take as many as we can at once, since storage writes them faster together
+        Iterator<Map.Entry<Key<T, D>, PathReport<T, D>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && reports.size() < bulkSize) {
+          Map.Entry<Key<T, D>, PathReport<T, D>> entry = iterator.next();
+          reports.add(entry.getValue());
+          inFlight.put(entry.getKey(), entry.getValue());
+          iterator.remove();
+        }
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      try {
+        write(reports);
+      } finally {
+        lock.lock();
+        try {
+          // Storage has these now, so readers find them there
+          inFlight.clear();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  private void write(List<PathReport<T, D>> reports) {
+    try {
+      delegate.reportAll(reports);
+    } catch (RuntimeException e) {
+      // Includes DataAccessException. Losing one report is no reason to lose the others with it.
+      if (reports.size() == 1) {
+        logFailure(e);
+        return;
+      }
+      for (PathReport<T, D> report : reports) {
+        try {
+          delegate.reportAll(Collections.singletonList(report));
+        } catch (RuntimeException e1) {
+          logFailure(e1);
+        }
+      }
+    }
+  }
+
+  private void logFailure(RuntimeException e) {
+    JourneyCommon.getLogger().error("A path record could not be written: " + e.getMessage());
+    e.printStackTrace();
+  }
+
+  /**
+   * Find a waiting or in-flight report that would be matched by a record search
+   * with the given mode types.
+   */
+  @Nullable
+  private PathReport<T, D> findPending(T origin, T destination, ModeTypeGroup modeTypes) {
+    lock.lock();
+    try {
+      Key<T, D> key = new Key<>(origin, destination, modeTypes);
+      for (Map<Key<T, D>, PathReport<T, D>> reports : Arrays.asList(pending, inFlight)) {
+        PathReport<T, D> exact = reports.get(key);
+        if (exact != null) {
+          return exact;
+        }
+      }
+      for (Map<Key<T, D>, PathReport<T, D>> reports : Arrays.asList(pending, inFlight)) {
+        for (Map.Entry<Key<T, D>, PathReport<T, D>> entry : reports.entrySet()) {
+          if (entry.getKey().matches(origin, destination, modeTypes)) {
+            return entry.getValue();
+          }
+        }
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Find the shortest path of the waiting and in-flight reports that would be matched
+   * by a path search with the given mode types.
+   */
+  @Nullable
+  private Path<T, D> findPendingPath(T origin, T destination, ModeTypeGroup modeTypes) {
+    lock.lock();
+    try {
+      Path<T, D> shortest = null;
+      for (Map<Key<T, D>, PathReport<T, D>> reports : Arrays.asList(pending, inFlight)) {
+        for (Map.Entry<Key<T, D>, PathReport<T, D>> entry : reports.entrySet()) {
+          if (entry.getKey().matches(origin, destination, modeTypes)) {
+            Path<T, D> path = entry.getValue().trial().getPath();
+            if (path != null && (shortest == null || path.getLength() < shortest.getLength())) {
+              shortest = path;
+            }
+          }
+        }
+      }
+      return shortest;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int clear() throws DataAccessException {
+    lock.lock();
+    try {
+      pending.clear();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    // A report may be in the middle of being written
+    flush();
+    return delegate.clear();
+  }
+
+  @Override
+  public int clear(@NotNull D domain) throws DataAccessException {
+    lock.lock();
+    try {
+      pending.values().removeIf(report -> report.trial().getDomain().equals(domain));
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    flush();
+    return delegate.clear(domain);
+  }
+
+  @Override
+  public int clear(@NotNull T corner1, @NotNull T corner2) throws DataAccessException {
+    flush();
+    return delegate.clear(corner1, corner2);
+  }
+
+  @Override
+  public int clearOlderThan(long timestamp) throws DataAccessException {
+    flush();
+    return delegate.clearOlderThan(timestamp);
+  }
+
+  @Override
+  public int clearSuboptimal() throws DataAccessException {
+    flush();
+    return delegate.clearSuboptimal();
+  }
+
+  @Override
+  public int clearCellsOlderThan(long timestamp) throws DataAccessException {
+    flush();
+    return delegate.clearCellsOlderThan(timestamp);
+  }
+
+  @Override
+  public int migrate() throws DataAccessException {
+    return delegate.migrate();
+  }
+
+  @Override
+  public void compact() throws DataAccessException {
+    delegate.compact();
+  }
+
+  @Override
+  public @NotNull List<PathTrialRecord> getRecords(T origin, T destination) {
+    flush();
+    return delegate.getRecords(origin, destination);
+  }
+
+  @Override
+  public @Nullable PathTrialRecord getRecord(T origin, T destination, ModeTypeGroup modeTypes) {
+    if (findPending(origin, destination, modeTypes) != null) {
+      flush();
+    }
+    return delegate.getRecord(origin, destination, modeTypes);
+  }
+
+  @Override
+  public Path<T, D> getPath(T origin, T destination, ModeTypeGroup modeTypeGroup,
+                            Cell.CellConstructor<T, D> constructor) {
+    // A waiting report only answers if storage doesn't already have something shorter
+    Path<T, D> pendingPath = findPendingPath(origin, destination, modeTypeGroup);
+    Path<T, D> storedPath = delegate.getPath(origin, destination, modeTypeGroup, constructor);
+    if (pendingPath == null) {
+      return storedPath;
+    }
+    if (storedPath == null || pendingPath.getLength() < storedPath.getLength()) {
+      return pendingPath;
+    }
+    return storedPath;
+  }
+
+  @Override
+  public @NotNull Map<PathLookup<T, D>, StoredPath<T, D>> findPaths(
+      @NotNull Collection<PathLookup<T, D>> lookups,
+      Cell.CellConstructor<T, D> constructor) throws DataAccessException {
+    // Like single lookups, the shorter of the waiting reports and storage answers
+    Map<PathLookup<T, D>, StoredPath<T, D>> paths = new HashMap<>(delegate.findPaths(lookups, constructor));
+    for (PathLookup<T, D> lookup : lookups) {
+      Path<T, D> pendingPath = findPendingPath(lookup.origin(), lookup.destination(), lookup.modeTypeGroup());
+      if (pendingPath == null) {
+        continue;
+      }
+      StoredPath<T, D> storedPath = paths.get(lookup);
+      if (storedPath == null || pendingPath.getLength() < storedPath.getLength()) {
+        paths.put(lookup, StoredPath.of(pendingPath));
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public boolean containsRecord(T origin, T destination, ModeTypeGroup modeTypeGroup) {
+    return findPending(origin, destination, modeTypeGroup) != null
+        || delegate.containsRecord(origin, destination, modeTypeGroup);
+  }
+
+  @Override
+  @Deprecated
+  public @NotNull Collection<PathTrialCellRecord> getAllCells() {
+    flush();
+    return delegate.getAllCells();
+  }
+
+  @Override
+  public long forEachCell(@NotNull Consumer<PathTrialCellRecord> consumer) throws DataAccessException {
+    flush();
+    return delegate.forEachCell(consumer);
+  }
+
+  private static final class Key<T extends Cell<T, D>, D> {
+    private final T origin;
+    private final T destination;
+    private final ModeTypeGroup modeTypes;
+
+    private Key(T origin, T destination, ModeTypeGroup modeTypes) {
+      this.origin = origin;
+      this.destination = destination;
+      this.modeTypes = modeTypes;
+    }
+
+    /*
+     * Whether a search for the given mode types would find a record with this key.
+     */
+    private boolean matches(T origin, T destination, ModeTypeGroup modeTypes) {
+      return this.origin.equals(origin)
+          && this.destination.equals(destination)
+          && modeTypes.containsAll(this.modeTypes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key<?, ?> key = (Key<?, ?>) o;
+      return origin.equals(key.origin)
+          && destination.equals(key.destination)
+          && modeTypes.equals(key.modeTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(origin, destination, modeTypes);
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data;
+
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Path;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link Path} found in storage, whose length is known right away
+ * but whose steps are only read the first time they are needed.
+ * This way, a search can weigh every stored path it might use
+ * and only pay for reading the paths it actually uses.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ * @see PathRecordManager#findPaths
+ */
+public final class StoredPath<T extends Cell<T, D>, D> {
+
+  private final double length;
+  private Supplier<Path<T, D>> loader;
+  private Path<T, D> path;
+
+  /**
+   * General constructor.
+   *
+   * @param length the length of the path
+   * @param loader the function to read the path from storage,
+   *               which may give null if the path was removed in the meantime
+   */
+  public StoredPath(double length, @NotNull Supplier<Path<T, D>> loader) {
+    this.length = length;
+    this.loader = loader;
+  }
+
+  private StoredPath(@NotNull Path<T, D> path) {
+    this.length = path.getLength();
+    this.path = path;
+  }
+
+  /**
+   * Wrap a path that is already in memory.
+   *
+   * @param path the path
+   * @param <T>  the location type
+   * @param <D>  the domain type
+   * @return the stored path
+   */
+  public static <T extends Cell<T, D>, D> StoredPath<T, D> of(@NotNull Path<T, D> path) {
+    return new StoredPath<>(path);
+  }
+
+  /**
+   * Get the length of the path, without reading it.
+   *
+   * @return the length
+   */
+  public double getLength() {
+    return length;
+  }
+
+  /**
+   * Get the path, reading it from storage if it hasn't been read yet.
+   *
+   * @return the path, or null if it is no longer stored
+   */
+  @Nullable
+  public synchronized Path<T, D> load() {
+    if (loader != null) {
+      path = loader.get();
+      loader = null;  // let go of anything the loader holds onto
+    }
+    return path;
+  }
+
+  /**
+   * Return whether the path has already been read.
+   *
+   * @return true if it is in memory
+   */
+  public synchronized boolean isLoaded() {
+    return loader == null;
+  }
+
+}
@@ -0,0 +1,491 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data.sql;
+
+import edu.whimc.journey.common.config.Settings;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A connection controller that keeps a bounded pool of open connections from another controller,
+ * so that a connection doesn't have to be established with the engine every time one is needed.
+ *
+ * <p>Connections handed out by this controller are returned to the pool when they are closed.
+ * Idle connections are validated before they are handed out again and are closed once they
+ * have been idle for too long. Every pooled connection also keeps a cache of its prepared statements,
+ * so that preparing the same statement again on the same connection costs nothing.
+ * Closing a cached statement only gives it back to the cache, which closes it with the connection.
+ * A statement is never handed out twice at once: preparing one that is still in use
+ * gives a fresh statement instead, which is really closed once it is closed.
+ */
+public class PooledConnectionController implements SqlConnectionController {
+
+  private static final long BORROW_TIMEOUT_SECONDS = 30;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+  private static final long VALIDATION_INTERVAL_MILLIS = 5000;
+
+  private final SqlConnectionController delegate;
+  private final int statementCacheSize;
+  private final long idleTimeoutMillis;
+  private final Semaphore permits;
+  // Most recently returned connections are at the front
+  private final Deque<PooledConnection> idle = new ArrayDeque<>();
+  private volatile boolean closed = false;
+
+  /**
+   * Constructor using the pool settings from the configuration.
+   *
+   * @param delegate the controller used to open new connections
+   */
+  public PooledConnectionController(@NotNull SqlConnectionController delegate) {
+    this(delegate,
+        Settings.STORAGE_POOL_MAX_SIZE.getValue(),
+        Settings.STORAGE_POOL_IDLE_TIMEOUT.getValue() * 1000L,
+        Settings.STORAGE_POOL_STATEMENT_CACHE_SIZE.getValue());
+  }
+
+  /**
+   * General constructor.
+   *
+   * @param delegate           the controller used to open new connections
+   * @param maxSize            the maximum number of connections open at once
+   * @param idleTimeoutMillis  how long a connection may stay idle before it is closed, in milliseconds
+   * @param statementCacheSize the maximum number of prepared statements cached per connection
+   */
+  public PooledConnectionController(@NotNull SqlConnectionController delegate,
+                                    int maxSize,
+                                    long idleTimeoutMillis,
+                                    int statementCacheSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The pool must allow at least one connection");
+    }
+    this.delegate = Objects.requireNonNull(delegate);
+    this.permits = new Semaphore(maxSize, true);
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.statementCacheSize = Math.max(1, statementCacheSize);
+  }
+
+  @Override
+  public Connection establishConnection() throws SQLException {
+    if (closed) {
+      throw new SQLException("The connection pool is closed");
+    }
+    try {
+      if (!permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        throw new SQLException("Timed out waiting for a pooled database connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a pooled database connection");
+    }
+    try {
+      PooledConnection pooled;
+      while ((pooled = takeIdle()) != null) {
+        if (pooled.isUsable()) {
+          return pooled.borrow();
+        }
+        pooled.closePhysically();
+      }
+      return new PooledConnection(delegate.establishConnection()).borrow();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Close every idle connection and refuse any more requests.
+   * Connections that are currently borrowed are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    List<PooledConnection> toClose;
+    synchronized (idle) {
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+    }
+    toClose.forEach(PooledConnection::closePhysically);
+  }
+
+  /**
+   * Get the number of idle connections waiting in the pool.
+   *
+   * @return the idle connection count
+   */
+  public int idleCount() {
+    synchronized (idle) {
+      return idle.size();
+    }
+  }
+
+  private PooledConnection takeIdle() {
+    List<PooledConnection> expired = new ArrayList<>();
+    PooledConnection next;
+    synchronized (idle) {
+      long now = System.currentTimeMillis();
+      // The least recently used connections are at the back, so expire them from there
+      Iterator<PooledConnection> iterator = idle.descendingIterator();
+      while (iterator.hasNext()) {
+        PooledConnection candidate = iterator.next();
+        if (now - candidate.lastReturned <= idleTimeoutMillis) {
+          break;
+        }
+        iterator.remove();
+        expired.add(candidate);
+      }
+      next = idle.pollFirst();
+    }
+    expired.forEach(PooledConnection::closePhysically);
+    return next;
+  }
+
+  private void giveBack(PooledConnection pooled) {
+    try {
+      pooled.reset();
+    } catch (SQLException e) {
+      pooled.closePhysically();
+      permits.release();
+      return;
+    }
+    pooled.lastReturned = System.currentTimeMillis();
+    if (closed) {
+      pooled.closePhysically();
+    } else {
+      synchronized (idle) {
+        idle.addFirst(pooled);
+      }
+    }
+    permits.release();
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * A physical connection owned by the pool, along with its cache of prepared statements.
+   */
+  private final class PooledConnection {
+
+    private final Connection physical;
+    // Least recently used statements first
+    private final Map<StatementKey, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    // Statements the current borrower hasn't closed yet, cached or not
+    private final Set<PreparedStatement> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long lastReturned = System.currentTimeMillis();
+
+    private PooledConnection(Connection physical) {
+      this.physical = physical;
+    }
+
+    private boolean isUsable() {
+      try {
+        if (physical.isClosed()) {
+          return false;
+        }
+        // Don't bother the engine about connections we used moments ago
+        return System.currentTimeMillis() - lastReturned < VALIDATION_INTERVAL_MILLIS
+            || physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+      } catch (SQLException e) {
+        return false;
+      }
+    }
+
+    private Connection borrow() {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] {Connection.class},
+          new ConnectionHandler(this));
+    }
+
+    /*
+     * Get a statement for the borrower, which is cached unless the cached one is still in use.
+     */
+    private PreparedStatement prepare(StatementKey key) throws SQLException {
+      PreparedStatement cached = statements.get(key);
+      if (cached != null && !cached.isClosed()) {
+        if (inUse.contains(cached)) {
+          // Its results may still be read, so it can't be cleared for someone else
+          PreparedStatement fresh = physicalStatement(key);
+          inUse.add(fresh);
+          return fresh;
+        }
+        cached.clearParameters();
+        cached.clearBatch();
+        inUse.add(cached);
+        return cached;
+      }
+      PreparedStatement statement = physicalStatement(key);
+      statements.put(key, statement);
+      inUse.add(statement);
+      trim();
+      return statement;
+    }
+
+    private PreparedStatement physicalStatement(StatementKey key) throws SQLException {
+      return key.autoGeneratedKeys == null
+          ? physical.prepareStatement(key.sql)
+          : physical.prepareStatement(key.sql, key.autoGeneratedKeys);
+    }
+
+    private boolean isCached(PreparedStatement statement) {
+      return statements.containsValue(statement);
+    }
+
+    /*
+     * The borrower is done with a statement, so it may be handed out again, or closed if it isn't cached.
+     */
+    private void release(PreparedStatement statement) throws SQLException {
+      if (!inUse.remove(statement)) {
+        return;
+      }
+      if (isCached(statement)) {
+        // Closing a statement closes its results, so it has to look that way while it stays open
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null) {
+          resultSet.close();
+        }
+        trim();
+      } else {
+        statement.close();
+      }
+    }
+
+    /*
+     * Close the least recently used statements beyond the size of the cache, skipping those in use.
+     * Those are closed once they are released instead.
+     */
+    private void trim() {
+      Iterator<PreparedStatement> iterator = statements.values().iterator();
+      while (statements.size() > statementCacheSize && iterator.hasNext()) {
+        PreparedStatement statement = iterator.next();
+        if (!inUse.contains(statement)) {
+          closeQuietly(statement);
+          iterator.remove();
+        }
+      }
+    }
+
+    /*
+     * Put the connection back the way a newly established connection would be,
+     * and let go of any results still held by cached statements so that they don't hold locks.
+     */
+    private void reset() throws SQLException {
+      if (!physical.getAutoCommit()) {
+        physical.rollback();
+        physical.setAutoCommit(true);
+      }
+      // Whatever the borrower didn't close is released now
+      for (PreparedStatement statement : new ArrayList<>(inUse)) {
+        if (!isCached(statement)) {
+          closeQuietly(statement);
+        }
+      }
+      inUse.clear();
+      trim();
+      for (PreparedStatement statement : statements.values()) {
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null) {
+          resultSet.close();
+        }
+      }
+      physical.clearWarnings();
+    }
+
+    private void closePhysically() {
+      statements.values().forEach(this::closeQuietly);
+      statements.clear();
+      inUse.forEach(this::closeQuietly);
+      inUse.clear();
+      try {
+        physical.close();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
+
+    private void closeQuietly(Statement statement) {
+      try {
+        statement.close();
+      } catch (SQLException ignored) {
+        // It's being thrown away anyway
+      }
+    }
+  }
+
+  /**
+   * The handler for one borrowing of a pooled connection.
+   * Once the borrower closes the connection, this handler refuses to do anything else with it.
+   */
+  private final class ConnectionHandler implements InvocationHandler {
+
+    private final PooledConnection pooled;
+    private boolean returned = false;
+
+    private ConnectionHandler(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (!returned) {
+            returned = true;
+            giveBack(pooled);
+          }
+          return null;
+        case "isClosed":
+          return returned || pooled.physical.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled" + pooled.physical;
+        default:
+          break;
+      }
+      if (returned) {
+        throw new SQLException("The connection has already been returned to the pool");
+      }
+      if (method.getName().equals("prepareStatement")) {
+        StatementKey key = null;
+        if (args.length == 1) {
+          key = new StatementKey((String) args[0], null);
+        } else if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+          key = new StatementKey((String) args[0], (Integer) args[1]);
+        }
+        if (key != null) {
+          return cachedStatement(pooled.prepare(key), (Connection) proxy);
+        }
+      }
+      return PooledConnectionController.invoke(pooled.physical, method, args);
+    }
+
+    private PreparedStatement cachedStatement(PreparedStatement statement, Connection connection) {
+      return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] {PreparedStatement.class},
+          new StatementHandler(statement, connection));
+    }
+
+    /**
+     * The handler for one use of a statement of a pooled connection.
+     */
+    private final class StatementHandler implements InvocationHandler {
+
+      private final PreparedStatement statement;
+      private final Connection connection;
+      private boolean closed = false;
+
+      private StatementHandler(PreparedStatement statement, Connection connection) {
+        this.statement = statement;
+        this.connection = connection;
+      }
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+          case "close":
+            if (!closed && !returned) {
+              closed = true;
+              pooled.release(statement);
+            }
+            closed = true;
+            return null;
+          case "isClosed":
+            return closed || returned || statement.isClosed();
+          case "getConnection":
+            return connection;
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            if (returned) {
+              throw new SQLException("The connection has already been returned to the pool");
+            }
+            if (closed) {
+              throw new SQLException("The statement is closed");
+            }
+            return PooledConnectionController.invoke(statement, method, args);
+        }
+      }
+    }
+  }
+
+  private static final class StatementKey {
+    private final String sql;
+    private final Integer autoGeneratedKeys;
+
+    private StatementKey(String sql, Integer autoGeneratedKeys) {
+      this.sql = sql;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      StatementKey that = (StatementKey) o;
+      return sql.equals(that.sql) && Objects.equals(autoGeneratedKeys, that.autoGeneratedKeys);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, autoGeneratedKeys);
+    }
+  }
+
+}
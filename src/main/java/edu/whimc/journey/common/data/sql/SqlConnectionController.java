@@ -40,4 +40,11 @@ public interface SqlConnectionController {
    */
   Connection establishConnection() throws SQLException;
 
+  /**
+   * Release any resources held by this controller, like open connections.
+   * Nothing is held by default.
+   */
+  default void close() {
+  }
+
 }
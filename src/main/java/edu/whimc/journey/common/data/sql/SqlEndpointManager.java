@@ -58,11 +58,28 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
     createTables();
   }
 
+  /**
+   * Constructor for a manager whose writes all go through a writer.
+   *
+   * @param connectionController a controller for connecting to a SQL database for reads
+   * @param writer               the writer for all writes
+   * @param dataAdapter          a conversion controller to serialize and deserialize data from Journey
+   */
+  public SqlEndpointManager(SqlConnectionController connectionController,
+                            SqlWriter writer,
+                            DataAdapter<T, D> dataAdapter) {
+    super(connectionController, writer, dataAdapter);
+    createTables();
+  }
+
   protected void addEndpoint(@Nullable UUID playerUuid, @NotNull T cell)
       throws IllegalArgumentException, DataAccessException {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      int endpointCount = getEndpoints(playerUuid, connection).size();
-      addEndpoint(playerUuid, cell, String.valueOf(endpointCount + 1), connection, true);
+    try {
+      write(connection -> {
+        int endpointCount = countEndpoints(playerUuid, connection);
+        addEndpoint(playerUuid, cell, String.valueOf(endpointCount + 1), connection, true);
+        return null;
+      });
     } catch (SQLException e) {
       e.printStackTrace();
       throw new DataAccessException();
@@ -73,8 +90,11 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
   protected void addEndpoint(@Nullable UUID playerUuid,
                              @NotNull T cell,
                              @NotNull String name) throws IllegalArgumentException, DataAccessException {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      addEndpoint(playerUuid, cell, name, connection, false);
+    try {
+      write(connection -> {
+        addEndpoint(playerUuid, cell, name, connection, false);
+        return null;
+      });
     } catch (SQLException e) {
       e.printStackTrace();
       throw new DataAccessException();
@@ -89,7 +109,7 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
     if (!forceValidName && Validator.isInvalidDataName(name)) {
       throw new IllegalArgumentException("The given name is not valid: " + name);
     }
-    PreparedStatement statement = connection.prepareStatement(String.format(
+    try (PreparedStatement statement = connection.prepareStatement(String.format(
         "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
         ENDPOINT_TABLE_NAME,
         "player_uuid",
@@ -99,40 +119,43 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
         "x",
         "y",
         "z",
-        "timestamp"));
-
-    statement.setString(1, playerUuid == null ? null : playerUuid.toString());
-    statement.setString(2, name.toLowerCase());
-    statement.setString(3, name);
-    statement.setString(4, getDataAdapter().getDomainIdentifier(cell.getDomain()));
-    statement.setInt(5, cell.getX());
-    statement.setInt(6, cell.getY());
-    statement.setInt(7, cell.getZ());
-    statement.setLong(8, System.currentTimeMillis() / 1000);
+        "timestamp"))) {
+      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+      statement.setString(2, name.toLowerCase());
+      statement.setString(3, name);
+      statement.setString(4, getDataAdapter().getDomainIdentifier(cell.getDomain()));
+      statement.setInt(5, cell.getX());
+      statement.setInt(6, cell.getY());
+      statement.setInt(7, cell.getZ());
+      statement.setLong(8, System.currentTimeMillis() / 1000);
 
-    statement.execute();
+      statement.execute();
+    }
 
   }
 
   protected void removeEndpoint(@Nullable UUID playerUuid, @NotNull T cell) throws DataAccessException {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      PreparedStatement statement = connection.prepareStatement(String.format(
-          "DELETE FROM %s WHERE %s %s ? AND %s = ? AND %s = ? AND %s = ? AND %s = ?;",
-          ENDPOINT_TABLE_NAME,
-          "player_uuid",
-          playerUuid == null ? "IS" : "=",
-          "world_uuid",
-          "x",
-          "y",
-          "z"));
-
-      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
-      statement.setString(2, getDataAdapter().getDomainIdentifier(cell.getDomain()));
-      statement.setInt(3, cell.getX());
-      statement.setInt(4, cell.getY());
-      statement.setInt(5, cell.getZ());
+    try {
+      write(connection -> {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+            "DELETE FROM %s WHERE %s %s ? AND %s = ? AND %s = ? AND %s = ? AND %s = ?;",
+            ENDPOINT_TABLE_NAME,
+            "player_uuid",
+            playerUuid == null ? "IS" : "=",
+            "world_uuid",
+            "x",
+            "y",
+            "z"))) {
+          statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+          statement.setString(2, getDataAdapter().getDomainIdentifier(cell.getDomain()));
+          statement.setInt(3, cell.getX());
+          statement.setInt(4, cell.getY());
+          statement.setInt(5, cell.getZ());
 
-      statement.execute();
+          statement.execute();
+        }
+        return null;
+      });
     } catch (SQLException e) {
       e.printStackTrace();
       throw new DataAccessException();
@@ -140,18 +163,21 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
   }
 
   protected void removeEndpoint(@Nullable UUID playerUuid, @NotNull String name) throws DataAccessException {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      PreparedStatement statement = connection.prepareStatement(String.format(
-          "DELETE FROM %s WHERE %s %s ? AND %s = ?;",
-          ENDPOINT_TABLE_NAME,
-          "player_uuid",
-          playerUuid == null ? "IS" : "=",
-          "name_id"));
+    try {
+      write(connection -> {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+            "DELETE FROM %s WHERE %s %s ? AND %s = ?;",
+            ENDPOINT_TABLE_NAME,
+            "player_uuid",
+            playerUuid == null ? "IS" : "=",
+            "name_id"))) {
+          statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+          statement.setString(2, name.toLowerCase());
 
-      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
-      statement.setString(2, name.toLowerCase());
-
-      statement.execute();
+          statement.execute();
+        }
+        return null;
+      });
     } catch (SQLException e) {
       e.printStackTrace();
       throw new DataAccessException();
@@ -161,24 +187,25 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
   @Nullable
   protected T getEndpoint(@Nullable UUID playerUuid, @NotNull String name) throws DataAccessException {
     try (Connection connection = getConnectionController().establishConnection()) {
-      PreparedStatement statement = connection.prepareStatement(String.format(
+      try (PreparedStatement statement = connection.prepareStatement(String.format(
           "SELECT * FROM %s WHERE %s %s ? AND %s = ?;",
           ENDPOINT_TABLE_NAME,
           "player_uuid",
           playerUuid == null ? "IS" : "=",
-          "name_id"));
-
-      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
-      statement.setString(2, name.toLowerCase());
+          "name_id"))) {
+        statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+        statement.setString(2, name.toLowerCase());
 
-      ResultSet resultSet = statement.executeQuery();
-      if (resultSet.next()) {
-        return getDataAdapter().makeCell(resultSet.getInt("x"),
-            resultSet.getInt("y"),
-            resultSet.getInt("z"),
-            resultSet.getString("world_uuid"));
-      } else {
-        return null;
+        try (ResultSet resultSet = statement.executeQuery()) {
+          if (resultSet.next()) {
+            return getDataAdapter().makeCell(resultSet.getInt("x"),
+                resultSet.getInt("y"),
+                resultSet.getInt("z"),
+                resultSet.getString("world_uuid"));
+          } else {
+            return null;
+          }
+        }
       }
     } catch (SQLException e) {
       e.printStackTrace();
@@ -189,7 +216,7 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
   @Nullable
   protected String getEndpointName(@Nullable UUID playerUuid, @NotNull T cell) throws DataAccessException {
     try (Connection connection = getConnectionController().establishConnection()) {
-      PreparedStatement statement = connection.prepareStatement(String.format(
+      try (PreparedStatement statement = connection.prepareStatement(String.format(
           "SELECT * FROM %s WHERE %s %s ? AND %s = ? AND %s = ? AND %s = ? AND %s = ?;",
           ENDPOINT_TABLE_NAME,
           "player_uuid",
@@ -197,19 +224,20 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
           "world_uuid",
           "x",
           "y",
-          "z"));
-
-      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
-      statement.setString(2, getDataAdapter().getDomainIdentifier(cell.getDomain()));
-      statement.setInt(3, cell.getX());
-      statement.setInt(4, cell.getY());
-      statement.setInt(5, cell.getZ());
+          "z"))) {
+        statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+        statement.setString(2, getDataAdapter().getDomainIdentifier(cell.getDomain()));
+        statement.setInt(3, cell.getX());
+        statement.setInt(4, cell.getY());
+        statement.setInt(5, cell.getZ());
 
-      ResultSet resultSet = statement.executeQuery();
-      if (resultSet.next()) {
-        return resultSet.getString("name");
-      } else {
-        return null;
+        try (ResultSet resultSet = statement.executeQuery()) {
+          if (resultSet.next()) {
+            return resultSet.getString("name");
+          } else {
+            return null;
+          }
+        }
       }
     } catch (SQLException e) {
       e.printStackTrace();
@@ -236,45 +264,65 @@ public abstract class SqlEndpointManager<T extends Cell<T, D>, D> extends SqlMan
    */
   private Map<String, T> getEndpoints(@Nullable UUID playerUuid,
                                       @NotNull Connection connection) throws SQLException {
-    PreparedStatement statement = connection.prepareStatement(String.format(
+    try (PreparedStatement statement = connection.prepareStatement(String.format(
         "SELECT * FROM %s WHERE %s %s ?;",
         ENDPOINT_TABLE_NAME,
         "player_uuid",
-        playerUuid == null ? "IS" : "="));
+        playerUuid == null ? "IS" : "="))) {
+      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
 
-    statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+      try (ResultSet resultSet = statement.executeQuery()) {
+        Map<String, T> endpoints = new HashMap<>();
+        while (resultSet.next()) {
+          endpoints.put(resultSet.getString("name"),
+              getDataAdapter().makeCell(resultSet.getInt("x"),
+                  resultSet.getInt("y"),
+                  resultSet.getInt("z"),
+                  resultSet.getString("world_uuid")));
+        }
+        return endpoints;
+      }
+    }
+  }
 
-    ResultSet resultSet = statement.executeQuery();
-    Map<String, T> endpoints = new HashMap<>();
-    while (resultSet.next()) {
-      endpoints.put(resultSet.getString("name"),
-          getDataAdapter().makeCell(resultSet.getInt("x"),
-              resultSet.getInt("y"),
-              resultSet.getInt("z"),
-              resultSet.getString("world_uuid")));
+  private int countEndpoints(@Nullable UUID playerUuid, @NotNull Connection connection) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(String.format(
+        "SELECT COUNT(*) FROM %s WHERE %s %s ?;",
+        ENDPOINT_TABLE_NAME,
+        "player_uuid",
+        playerUuid == null ? "IS" : "="))) {
+      statement.setString(1, playerUuid == null ? null : playerUuid.toString());
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getInt(1) : 0;
+      }
     }
-    return endpoints;
   }
 
   protected void createTables() {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      String tableStatement = "CREATE TABLE IF NOT EXISTS "
-          + ENDPOINT_TABLE_NAME + " ("
-          + "player_uuid char(36), "
-          + "name_id varchar(32) NOT NULL, "
-          + "name varchar(32) NOT NULL, "
-          + "world_uuid char(36) NOT NULL, "
-          + "x int(7) NOT NULL, "
-          + "y int(7) NOT NULL, "
-          + "z int(7) NOT NULL, "
-          + "timestamp integer NOT NULL"
-          + ");";
-      connection.prepareStatement(tableStatement).execute();
+    try {
+      write(connection -> {
+        String tableStatement = "CREATE TABLE IF NOT EXISTS "
+            + ENDPOINT_TABLE_NAME + " ("
+            + "player_uuid char(36), "
+            + "name_id varchar(32) NOT NULL, "
+            + "name varchar(32) NOT NULL, "
+            + "world_uuid char(36) NOT NULL, "
+            + "x int(7) NOT NULL, "
+            + "y int(7) NOT NULL, "
+            + "z int(7) NOT NULL, "
+            + "timestamp integer NOT NULL"
+            + ");";
+        executeUpdate(connection, tableStatement);
+
+        createIndexIfAbsent(connection, ENDPOINT_TABLE_NAME, "player_uuid_idx", "player_uuid");
 
-      String indexStatement = "CREATE INDEX IF NOT EXISTS player_uuid_idx ON "
-          + ENDPOINT_TABLE_NAME
-          + " (player_uuid);";
-      connection.prepareStatement(indexStatement).execute();
+        // Endpoints are looked up either by name or by location
+        createIndexIfAbsent(connection, ENDPOINT_TABLE_NAME, "endpoint_name_idx", "player_uuid, name_id");
+        createIndexIfAbsent(connection, ENDPOINT_TABLE_NAME, "endpoint_cell_idx",
+            "player_uuid, world_uuid, x, y, z");
+        return null;
+      });
     } catch (SQLException e) {
       e.printStackTrace();
     }
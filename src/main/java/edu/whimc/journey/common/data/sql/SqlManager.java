@@ -25,7 +25,13 @@
 package edu.whimc.journey.common.data.sql;
 
 import edu.whimc.journey.common.navigation.Cell;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A general SQL manager for storage purposes.
@@ -39,6 +45,8 @@ public abstract class SqlManager<T extends Cell<T, D>, D> {
   private final SqlConnectionController connectionController;
   @Getter
   private final DataAdapter<T, D> dataAdapter;
+  @Nullable
+  private final SqlWriter writer;
 
   /**
    * General constructor.
@@ -47,8 +55,138 @@ public abstract class SqlManager<T extends Cell<T, D>, D> {
    * @param dataAdapter          an adapter
    */
   public SqlManager(SqlConnectionController connectionController, DataAdapter<T, D> dataAdapter) {
+    this(connectionController, null, dataAdapter);
+  }
+
+  /**
+   * Constructor for a manager whose writes all go through a writer.
+   *
+   * @param connectionController a connection controller for reads
+   * @param writer               the writer for all writes, or null to write on any connection
+   * @param dataAdapter          an adapter
+   */
+  public SqlManager(SqlConnectionController connectionController,
+                    @Nullable SqlWriter writer,
+                    DataAdapter<T, D> dataAdapter) {
     this.connectionController = connectionController;
+    this.writer = writer;
     this.dataAdapter = dataAdapter;
   }
 
+  /**
+   * Release the resources held by this manager, like its open connections.
+   */
+  public void close() {
+    connectionController.close();
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  /**
+   * Run some work that writes to the database in a transaction.
+   * If this manager has a writer, the work is run on the writer;
+   * otherwise, it is run right here on a connection from the connection controller.
+   *
+   * @param work the work
+   * @param <R>  the result type
+   * @return the result of the work
+   * @throws SQLException if the database could not be accessed
+   */
+  protected <R> R write(SqlWork<R> work) throws SQLException {
+    if (writer != null) {
+      return writer.write(work);
+    }
+    try (Connection connection = connectionController.establishConnection()) {
+      connection.setAutoCommit(false);
+      try {
+        R result = work.execute(connection);
+        connection.commit();
+        return result;
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Run a statement without parameters that doesn't return results, like one that creates a table,
+   * and close it right away.
+   *
+   * @param connection the connection
+   * @param sql        the statement
+   * @return the number of changed rows, or 0 if the statement doesn't change rows
+   * @throws SQLException if the database could not be accessed
+   */
+  protected int executeUpdate(Connection connection, String sql) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      return statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Add a column to an existing table if the table doesn't have it yet.
+   * This allows tables created by older versions to be migrated in place.
+   *
+   * @param connection the connection
+   * @param table      the table name
+   * @param column     the column name
+   * @param definition the column definition, like its type and constraints
+   * @throws SQLException if the database could not be accessed
+   */
+  protected void addColumnIfAbsent(Connection connection,
+                                   String table,
+                                   String column,
+                                   String definition) throws SQLException {
+    DatabaseMetaData metaData = connection.getMetaData();
+    try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+      if (columns.next()) {
+        return;
+      }
+    }
+    executeUpdate(connection, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+  }
+
+  /**
+   * Create an index on a table if the table doesn't have an index with that name yet.
+   * Not every database understands {@code CREATE INDEX IF NOT EXISTS}, so we check first.
+   *
+   * @param connection the connection
+   * @param table      the table name
+   * @param index      the index name
+   * @param columns    the indexed columns, separated by commas
+   * @throws SQLException if the database could not be accessed
+   */
+  protected void createIndexIfAbsent(Connection connection,
+                                     String table,
+                                     String index,
+                                     String columns) throws SQLException {
+    if (indexExists(connection, table, index)) {
+      return;
+    }
+    executeUpdate(connection, "CREATE INDEX " + index + " ON " + table + " (" + columns + ");");
+  }
+
+  /**
+   * Check whether a table has an index with some name.
+   *
+   * @param connection the connection
+   * @param table      the table name
+   * @param index      the index name
+   * @return true if the index exists
+   * @throws SQLException if the database could not be accessed
+   */
+  protected boolean indexExists(Connection connection, String table, String index) throws SQLException {
+    DatabaseMetaData metaData = connection.getMetaData();
+    try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+      while (indexes.next()) {
+        if (index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
 }
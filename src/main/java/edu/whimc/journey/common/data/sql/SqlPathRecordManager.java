@@ -25,8 +25,12 @@
 package edu.whimc.journey.common.data.sql;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.cache.PathCache;
+import edu.whimc.journey.common.config.Settings;
 import edu.whimc.journey.common.data.DataAccessException;
+import edu.whimc.journey.common.data.PathCellLayout;
 import edu.whimc.journey.common.data.PathRecordManager;
+import edu.whimc.journey.common.data.StoredPath;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.ModeType;
 import edu.whimc.journey.common.navigation.ModeTypeGroup;
@@ -35,19 +39,26 @@ import edu.whimc.journey.common.navigation.Step;
 import edu.whimc.journey.common.search.FlexiblePathTrial;
 import edu.whimc.journey.common.search.PathTrial;
 import edu.whimc.journey.common.search.ScoringFunction;
+import edu.whimc.journey.common.util.CellRecordCodec;
+import edu.whimc.journey.common.util.PathCodec;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Objects;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -65,6 +76,28 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
   private static final String PATH_RECORD_CELL_TABLE_NAME = "path_record_cell";
   private static final String PATH_RECORD_MODE_TABLE_NAME = "path_record_mode";
 
+  private static final String[] CELL_COLUMNS = {
+      "path_record_id",
+      "x", "y", "z",
+      "critical",
+      "path_index",
+      "mode_type",
+      "deviation",
+      "distance",
+      "distance_y",
+      "biome",
+      "dimension",
+      "random"
+  };
+  private static final String[] MODE_COLUMNS = {"path_record_id", "mode_type"};
+
+  private static final int DELETE_BATCH_SIZE = 500;
+  private static final int MIGRATION_BATCH_SIZE = 100;
+  private static final int CELL_TRIM_BATCH_SIZE = 100;
+
+  private final PathCache<T, D> pathCache = new PathCache<>(Settings.PATH_CACHE_CAPACITY.getValue());
+  private volatile boolean migrated = false;
+
   /**
    * General constructor.
    *
@@ -76,62 +109,130 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
     createTables();
   }
 
+  /**
+   * Constructor for a manager whose writes all go through a writer.
+   *
+   * @param connectionController the connection controller for reads
+   * @param writer               the writer for all writes
+   * @param dataAdapter          the adapter
+   */
+  public SqlPathRecordManager(SqlConnectionController connectionController,
+                              SqlWriter writer,
+                              DataAdapter<T, D> dataAdapter) {
+    super(connectionController, writer, dataAdapter);
+    createTables();
+  }
+
   @Override
   public void report(PathTrial<T, D> trial,
                      Collection<FlexiblePathTrial.Node<T, D>> calculationNodes,
                      ModeTypeGroup modeTypeGroup,
                      long executionTime)
       throws DataAccessException {
-    Path<T, D> path = trial.getPath();
-    if (path == null) {
-      throw new IllegalArgumentException("The path of he input path trial was not valid."
-          + " The input path trial must be successful and have a valid path.");
-    }
+    reportAll(Collections.singletonList(new PathReport<>(trial, calculationNodes,
+        modeTypeGroup, executionTime)));
+  }
 
-    /* TODO Add back this deletion mechanism
-    // Delete previous record if it has the same origin/destination/world and is slower
-    ModeTypeGroup modeTypes = ModeTypeGroup.from(trial.getModes());
-    if (containsRecord(trial.getOrigin(), trial.getDestination(), modeTypes)) {
-      // Let's delete the last one, so we can store the new one
-      try (Connection connection = getConnectionController().establishConnection()) {
-        connection.prepareStatement("DELETE FROM " + PATH_RECORD_TABLE_NAME
-                + " WHERE "
-                + "origin_x = " + trial.getOrigin().getX() + " AND "
-                + "origin_y = " + trial.getOrigin().getY() + " AND "
-                + "origin_z = " + trial.getOrigin().getZ() + " AND "
-                + "destination_x = " + trial.getDestination().getX() + " AND "
-                + "destination_y = " + trial.getDestination().getY() + " AND "
-                + "destination_z = " + trial.getDestination().getZ() + " AND "
-                + "world_uuid = '" + trial.getOrigin().getDomainId() + "'")
-            .execute();
-      } catch (SQLException e) {
-        e.printStackTrace();
-        throw new DataAccessException();
+  @Override
+  public void reportAll(@NotNull Collection<PathReport<T, D>> reports) throws DataAccessException {
+    List<byte[]> encodedPaths = new ArrayList<>(reports.size());
+    for (PathReport<T, D> report : reports) {
+      Path<T, D> path = report.trial().getPath();
+      if (path == null) {
+        throw new IllegalArgumentException("The path of he input path trial was not valid."
+            + " The input path trial must be successful and have a valid path.");
       }
+      encodedPaths.add(PathCodec.encode(path));
     }
-     */
 
-    long pathReportId = -1;
-    try (Connection connection = getConnectionController().establishConnection()) {
-      PreparedStatement statement = connection.prepareStatement(String.format(
-              "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s) "
-                  + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);",
-              PATH_RECORD_TABLE_NAME,
-              "timestamp",
-              "duration",
-              "path_length",
-              "origin_x",
-              "origin_y",
-              "origin_z",
-              "destination_x",
-              "destination_y",
-              "destination_z",
-              "world_uuid",
-              "scoring_function"),
-          Statement.RETURN_GENERATED_KEYS);
+    // Slower records with the same criteria are left alone here and removed with clearSuboptimal
+    // Use one connection and one transaction for all the reports, rather than one for every row,
+    // and insert the cells and modes of all the reports together in as few statements as possible
+    try {
+      write(connection -> {
+        List<Object[]> cellRows = new ArrayList<>();
+        List<Object[]> modeRows = new ArrayList<>();
+        Iterator<byte[]> pathData = encodedPaths.iterator();
+        for (PathReport<T, D> report : reports) {
+          insertRecord(connection, report, pathData.next(), cellRows, modeRows);
+        }
+        insertRows(connection, PATH_RECORD_CELL_TABLE_NAME, CELL_COLUMNS, cellRows);
+        insertRows(connection, PATH_RECORD_MODE_TABLE_NAME, MODE_COLUMNS, modeRows);
+        return null;
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
+    }
+
+    // These paths may be better than the ones cached, so replace them
+    Iterator<byte[]> pathData = encodedPaths.iterator();
+    for (PathReport<T, D> report : reports) {
+      PathTrial<T, D> trial = report.trial();
+      pathCache.invalidate(trial.getOrigin(), trial.getDestination());
+      pathCache.putEncoded(trial.getOrigin(), trial.getDestination(),
+          report.modeTypeGroup(), pathData.next());
+    }
+  }
+
+  /*
+   * Insert a path record, and add the rows of its cells and modes to be inserted afterwards.
+   * Cells are either added as rows or encoded into the record itself, depending on the layout.
+   */
+  private void insertRecord(Connection connection,
+                            PathReport<T, D> report,
+                            byte[] pathData,
+                            List<Object[]> cellRows,
+                            List<Object[]> modeRows) throws SQLException {
+    final PathTrial<T, D> trial = report.trial();
+    final Path<T, D> path = Objects.requireNonNull(trial.getPath());
+    final List<PathTrialCellRecord> cells = report.cells();
+    boolean blobLayout = Settings.STORAGE_CELL_LAYOUT.getValue() == PathCellLayout.BLOB;
 
+    // The box around the critical path, so records can be found by region without their cells
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int minZ = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    int maxZ = Integer.MIN_VALUE;
+    for (Step<T, D> step : path.getSteps()) {
+      minX = Math.min(minX, step.location().getX());
+      minY = Math.min(minY, step.location().getY());
+      minZ = Math.min(minZ, step.location().getZ());
+      maxX = Math.max(maxX, step.location().getX());
+      maxY = Math.max(maxY, step.location().getY());
+      maxZ = Math.max(maxZ, step.location().getZ());
+    }
+
+    long pathReportId = -1;
+    try (PreparedStatement statement = connection.prepareStatement(String.format(
+            "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);",
+            PATH_RECORD_TABLE_NAME,
+            "timestamp",
+            "duration",
+            "path_length",
+            "origin_x",
+            "origin_y",
+            "origin_z",
+            "destination_x",
+            "destination_y",
+            "destination_z",
+            "world_uuid",
+            "scoring_function",
+            "path_data",
+            "cell_data",
+            "min_x",
+            "min_y",
+            "min_z",
+            "max_x",
+            "max_y",
+            "max_z",
+            "mode_mask"),
+        Statement.RETURN_GENERATED_KEYS)) {
       statement.setLong(1, System.currentTimeMillis() / 1000);
-      statement.setInt(2, (int) executionTime);
+      statement.setInt(2, (int) report.executionTime());
       statement.setDouble(3, trial.getLength());
       statement.setInt(4, trial.getOrigin().getX());
       statement.setInt(5, trial.getOrigin().getY());
@@ -141,6 +242,15 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
       statement.setInt(9, trial.getDestination().getZ());
       statement.setString(10, getDataAdapter().getDomainIdentifier(trial.getDomain()));
       statement.setString(11, trial.getScoringFunction().getType().name());
+      statement.setBytes(12, pathData);
+      statement.setBytes(13, blobLayout ? CellRecordCodec.encode(cells) : null);
+      statement.setInt(14, minX);
+      statement.setInt(15, minY);
+      statement.setInt(16, minZ);
+      statement.setInt(17, maxX);
+      statement.setInt(18, maxY);
+      statement.setInt(19, maxZ);
+      statement.setLong(20, report.modeTypeGroup().getAccumulation());
 
       statement.execute();
 
@@ -149,172 +259,393 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
           pathReportId = generatedKeys.getLong(1);
         }
       }
-
-    } catch (SQLException e) {
-      e.printStackTrace();
-      throw new DataAccessException();
     }
 
     if (pathReportId < 0) {
       throw new DataAccessException("No id found from the inserted path record");
     }
 
-    /*
-     * Let's calculate the deviation of every node in this trial
-     */
+    if (!blobLayout) {
+      for (PathTrialCellRecord cell : cells) {
+        cellRows.add(new Object[]{
+            pathReportId,
+            cell.x(), cell.y(), cell.z(),
+            cell.critical(),
+            cell.index(),
+            cell.modeType().ordinal(),
+            cell.deviation(),
+            cell.distance(),
+            cell.distanceY(),
+            cell.biome(),
+            cell.dimension(),
+            Math.random()});
+      }
+    }
 
-    final double totalDistance = trial.getOrigin().distanceTo(path.getDestination());
-    final double deviationStepRatio = totalDistance / trial.getLength();
-    final Map<T, Double> deviations = new HashMap<>();
-    final Map<T, Integer> stepIndexes = new HashMap<>();  // For saving the critical nodes
+    for (ModeType modeType : report.modeTypeGroup().getAll()) {
+      modeRows.add(new Object[]{pathReportId, modeType.ordinal()});
+    }
+  }
 
-    // Get all the deviations for everything on the critical path
-    // Subtract deviation step to start because the first step is one step forward
-    double currentDeviation = totalDistance;
-    int i = 0;
-    for (Step<T, D> step : path.getSteps()) {
+  /*
+   * Insert rows with as few statements as we can by putting many rows in each statement,
+   * as many as the batch size and the parameter limit of the database allow.
+   * Every full statement has the same number of rows, so the connection can reuse it.
+   */
+  private void insertRows(Connection connection, String table, String[] columns, List<Object[]> rows)
+      throws SQLException {
+    final int rowsPerStatement = Math.max(1, Math.min(Settings.STORAGE_REPORT_BATCH_SIZE.getValue(),
+        maxParameters() / columns.length));
+    final String row = "(" + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+    for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+      List<Object[]> chunk = rows.subList(start, Math.min(start + rowsPerStatement, rows.size()));
+      try (PreparedStatement statement = connection.prepareStatement("INSERT INTO "
+          + table
+          + " (" + String.join(", ", columns) + ") VALUES "
+          + String.join(", ", Collections.nCopies(chunk.size(), row))
+          + ";")) {
+        int parameter = 1;
+        for (Object[] values : chunk) {
+          for (Object value : values) {
+            statement.setObject(parameter++, value);
+          }
+        }
+        statement.executeUpdate();
+      }
+    }
+  }
 
-      // Set the index of the critical nodes
-      stepIndexes.put(step.location(), i++);
+  @Override
+  public int clear() {
+    try {
+      return write(connection -> {
+        executeUpdate(connection, "DELETE FROM " + PATH_RECORD_CELL_TABLE_NAME + ";");
+        executeUpdate(connection, "DELETE FROM " + PATH_RECORD_MODE_TABLE_NAME + ";");
+        return executeUpdate(connection, "DELETE FROM " + PATH_RECORD_TABLE_NAME + ";");
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
+    } finally {
+      pathCache.clear();
+    }
+  }
 
-      currentDeviation -= deviationStepRatio * step.length();
-      if (currentDeviation < 0.5) {
-        currentDeviation = 0; // floor to 0 because we're basically at the end... no need for decimals anymore
-      }
-      deviations.put(step.location(), currentDeviation);
+  @Override
+  public int clear(@NotNull D domain) {
+    return clearWhere("world_uuid = ?", getDataAdapter().getDomainIdentifier(domain));
+  }
+
+  @Override
+  public int clear(@NotNull T corner1, @NotNull T corner2) {
+    if (!corner1.getDomainId().equals(corner2.getDomainId())) {
+      throw new IllegalArgumentException("Both corners of the region must be in the same domain");
     }
+    final int minX = Math.min(corner1.getX(), corner2.getX());
+    final int maxX = Math.max(corner1.getX(), corner2.getX());
+    final int minY = Math.min(corner1.getY(), corner2.getY());
+    final int maxY = Math.max(corner1.getY(), corner2.getY());
+    final int minZ = Math.min(corner1.getZ(), corner2.getZ());
+    final int maxZ = Math.max(corner1.getZ(), corner2.getZ());
+    return clearIds(connection -> {
+      List<Long> ids = selectIds(connection, "world_uuid = ? AND id IN (SELECT path_record_id FROM "
+              + PATH_RECORD_CELL_TABLE_NAME
+              + " WHERE critical = TRUE"
+              + " AND x BETWEEN ? AND ?"
+              + " AND y BETWEEN ? AND ?"
+              + " AND z BETWEEN ? AND ?)",
+          corner1.getDomainId(), minX, maxX, minY, maxY, minZ, maxZ);
 
-    // Get all the rest of the deviations
-    for (FlexiblePathTrial.Node<T, D> node : calculationNodes) {
-      if (deviations.containsKey(node.getData().location())) {
-        // We already know this deviation so continue
-        continue;
+      // Records with encoded cells only tell us the box around their path, so check their cells here
+      try (PreparedStatement statement = connection.prepareStatement("SELECT id, cell_data FROM "
+          + PATH_RECORD_TABLE_NAME
+          + " WHERE world_uuid = ? AND cell_data IS NOT NULL"
+          + " AND min_x <= ? AND max_x >= ?"
+          + " AND min_y <= ? AND max_y >= ?"
+          + " AND min_z <= ? AND max_z >= ?;")) {
+        statement.setString(1, corner1.getDomainId());
+        statement.setInt(2, maxX);
+        statement.setInt(3, minX);
+        statement.setInt(4, maxY);
+        statement.setInt(5, minY);
+        statement.setInt(6, maxZ);
+        statement.setInt(7, minZ);
+        try (ResultSet result = statement.executeQuery()) {
+          while (result.next()) {
+            for (PathTrialCellRecord cell : CellRecordCodec.decode(result.getBytes("cell_data"), null)) {
+              if (cell.critical()
+                  && cell.x() >= minX && cell.x() <= maxX
+                  && cell.y() >= minY && cell.y() <= maxY
+                  && cell.z() >= minZ && cell.z() <= maxZ) {
+                ids.add(result.getLong("id"));
+                break;
+              }
+            }
+          }
+        }
       }
+      return ids;
+    });
+  }
+
+  @Override
+  public int clearOlderThan(long timestamp) {
+    return clearWhere("timestamp < ?", timestamp);
+  }
 
-      // We don't know the deviation of this one, so check backwards until we find one that we know,
-      // then work forwards again to add the deviations, which will keep increasing.
-      // Basically, we will be working our way towards the heart of the tree (the destination),
-      // then go back outwards to the leaves once we know how far away some point along the way
-      // is from the heart.
-      Stack<FlexiblePathTrial.Node<T, D>> stack = new Stack<>();
-      FlexiblePathTrial.Node<T, D> current = node;
-      while (!deviations.containsKey(current.getData().location())) {
-        stack.add(current);
-        current = current.getPrevious();
+  @Override
+  public int clearSuboptimal() {
+    return clearWhere("EXISTS (SELECT 1 FROM " + PATH_RECORD_TABLE_NAME + " better WHERE "
+        + "better.origin_x = " + PATH_RECORD_TABLE_NAME + ".origin_x AND "
+        + "better.origin_y = " + PATH_RECORD_TABLE_NAME + ".origin_y AND "
+        + "better.origin_z = " + PATH_RECORD_TABLE_NAME + ".origin_z AND "
+        + "better.destination_x = " + PATH_RECORD_TABLE_NAME + ".destination_x AND "
+        + "better.destination_y = " + PATH_RECORD_TABLE_NAME + ".destination_y AND "
+        + "better.destination_z = " + PATH_RECORD_TABLE_NAME + ".destination_z AND "
+        + "better.world_uuid = " + PATH_RECORD_TABLE_NAME + ".world_uuid AND "
+        + "better.mode_mask = " + PATH_RECORD_TABLE_NAME + ".mode_mask AND "
+        + "(better.path_length < " + PATH_RECORD_TABLE_NAME + ".path_length"
+        + " OR (better.path_length = " + PATH_RECORD_TABLE_NAME + ".path_length"
+        + " AND better.id > " + PATH_RECORD_TABLE_NAME + ".id)))");
+  }
+
+  @Override
+  public int clearCellsOlderThan(long timestamp) {
+    try {
+      int removed = write(connection -> {
+        try (PreparedStatement rowStatement = connection.prepareStatement("DELETE FROM "
+            + PATH_RECORD_CELL_TABLE_NAME
+            + " WHERE critical = FALSE AND path_record_id IN (SELECT id FROM "
+            + PATH_RECORD_TABLE_NAME
+            + " WHERE timestamp < ?);")) {
+          rowStatement.setLong(1, timestamp);
+          return rowStatement.executeUpdate();
+        }
+      });
+
+      // Encoded cells have to be decoded to remove some of them,
+      // so only records that weren't trimmed yet are read, a few at a time
+      List<Long> ids;
+      try (Connection connection = getConnectionController().establishConnection()) {
+        ids = selectIds(connection, "timestamp < ? AND cell_data IS NOT NULL AND cells_trimmed = 0",
+            timestamp);
       }
-      // We know what current's deviation is. Work forward now
-      while (!stack.isEmpty()) {
-        deviations.put(stack.peek().getData().location(),
-            deviations.get(current.getData().location()) + stack.peek().getData().length());
-        stack.pop();
+      for (int start = 0; start < ids.size(); start += CELL_TRIM_BATCH_SIZE) {
+        final List<Long> batch = ids.subList(start, Math.min(start + CELL_TRIM_BATCH_SIZE, ids.size()));
+        removed += write(connection -> trimCells(connection, batch));
       }
+      return removed;
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
     }
-    // We are done setting up the deviations
-    assert deviations.size() == calculationNodes.size();
+  }
 
-    for (FlexiblePathTrial.Node<T, D> node : calculationNodes) {
-      try (Connection connection = getConnectionController().establishConnection()) {
-        PreparedStatement statement = connection.prepareStatement(String.format(
-            "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s) "
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);",
-            PATH_RECORD_CELL_TABLE_NAME,
-            "path_record_id",
-            "x", "y", "z",
-            "critical",
-            "path_index",
-            "mode_type",
-            "deviation",
-            "distance",
-            "distance_y",
-            "biome",
-            "dimension",
-            "random"));
-
-        statement.setLong(1, pathReportId);
-        statement.setLong(2, node.getData().location().getX());
-        statement.setLong(3, node.getData().location().getY());
-        statement.setLong(4, node.getData().location().getZ());
-        boolean critical = stepIndexes.containsKey(node.getData().location());
-        statement.setBoolean(5, critical);
-        statement.setObject(6, critical ? stepIndexes.get(node.getData().location()) : null);
-        statement.setObject(7, node.getData().getModeType().ordinal());
-        statement.setDouble(8, deviations.get(node.getData().location()));
-        statement.setDouble(9, node.getData().location().distanceTo(path.getDestination()));
-        statement.setInt(10, Math.abs(node.getData().location().getY() - path.getDestination().getY()));
-        statement.setInt(11, JourneyCommon.<T, D>getConversions()
-            .getBiome(node.getData().location()));
-        statement.setInt(12, JourneyCommon.<T, D>getConversions()
-            .getDimension(node.getData().location().getDomain()));
-        statement.setDouble(13, Math.random());
-
-        statement.execute();
-      } catch (SQLException e) {
-        e.printStackTrace();
-        throw new DataAccessException();
+  /*
+   * Keep only the critical cells of records with encoded cells, and mark them as trimmed.
+   */
+  private int trimCells(Connection connection, List<Long> ids) throws SQLException {
+    int removed = 0;
+    try (PreparedStatement blobStatement = connection.prepareStatement("SELECT cell_data FROM "
+        + PATH_RECORD_TABLE_NAME
+        + " WHERE id = ? AND cell_data IS NOT NULL;");
+         PreparedStatement updateStatement = connection.prepareStatement("UPDATE "
+             + PATH_RECORD_TABLE_NAME
+             + " SET cell_data = ?, cells_trimmed = 1 WHERE id = ?;")) {
+      for (long id : ids) {
+        blobStatement.setLong(1, id);
+        List<PathTrialCellRecord> cells;
+        try (ResultSet blobResult = blobStatement.executeQuery()) {
+          if (!blobResult.next()) {
+            continue;  // removed since it was found
+          }
+          cells = CellRecordCodec.decode(blobResult.getBytes("cell_data"), null);
+        }
+        List<PathTrialCellRecord> criticalCells = new ArrayList<>();
+        for (PathTrialCellRecord cell : cells) {
+          if (cell.critical()) {
+            criticalCells.add(cell);
+          }
+        }
+        updateStatement.setBytes(1, CellRecordCodec.encode(criticalCells));
+        updateStatement.setLong(2, id);
+        updateStatement.executeUpdate();
+        removed += cells.size() - criticalCells.size();
       }
     }
+    return removed;
+  }
 
-    for (ModeType modeType : modeTypeGroup.getAll()) {
-      try (Connection connection = getConnectionController().establishConnection()) {
-        PreparedStatement statement = connection.prepareStatement(String.format(
-            "INSERT INTO %s (%s, %s) VALUES (?, ?);",
-            PATH_RECORD_MODE_TABLE_NAME,
-            "path_record_id",
-            "mode_type"));
-
-        statement.setLong(1, pathReportId);
-        statement.setInt(2, modeType.ordinal());
-
-        statement.execute();
-      } catch (SQLException e) {
-        e.printStackTrace();
-        throw new DataAccessException();
+  /**
+   * Delete all path records matching a condition, along with their cells and modes,
+   * all within one transaction.
+   *
+   * @param condition  the condition on the path record table, with parameter placeholders
+   * @param parameters the parameters of the condition
+   * @return the number of removed records
+   */
+  private int clearWhere(String condition, Object... parameters) {
+    return clearIds(connection -> selectIds(connection, condition, parameters));
+  }
+
+  /**
+   * Delete the path records with the given ids, along with their cells and modes,
+   * all within one transaction.
+   * We don't rely on foreign key cascades because not every database enforces them
+   * (SQLite doesn't, by default), so the ids are found first and then removed
+   * from every table in batches.
+   *
+   * @param idQuery the query for the ids of the records to remove
+   * @return the number of removed records
+   */
+  private int clearIds(IdQuery idQuery) {
+    try {
+      return write(connection -> {
+        List<Long> ids = idQuery.find(connection);
+        for (int start = 0; start < ids.size(); start += DELETE_BATCH_SIZE) {
+          List<Long> batch = ids.subList(start, Math.min(start + DELETE_BATCH_SIZE, ids.size()));
+          deleteIds(connection, PATH_RECORD_CELL_TABLE_NAME, "path_record_id", batch);
+          deleteIds(connection, PATH_RECORD_MODE_TABLE_NAME, "path_record_id", batch);
+          deleteIds(connection, PATH_RECORD_TABLE_NAME, "id", batch);
+        }
+        return ids.size();
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
+    } finally {
+      // We don't know which cached paths belong to the removed records
+      pathCache.clear();
+    }
+  }
+
+  private List<Long> selectIds(Connection connection, String condition, Object... parameters)
+      throws SQLException {
+    try (PreparedStatement select = connection.prepareStatement("SELECT id FROM "
+        + PATH_RECORD_TABLE_NAME
+        + " WHERE " + condition + ";")) {
+      for (int i = 0; i < parameters.length; i++) {
+        select.setObject(i + 1, parameters[i]);
       }
+      List<Long> ids = new ArrayList<>();
+      try (ResultSet idResult = select.executeQuery()) {
+        while (idResult.next()) {
+          ids.add(idResult.getLong(1));
+        }
+      }
+      return ids;
     }
+  }
 
+  /*
+   * Delete rows by id, at most DELETE_BATCH_SIZE at a time.
+   * The list of ids is padded with its last id so every batch uses the same statement,
+   * which the connection can then reuse.
+   */
+  private void deleteIds(Connection connection, String table, String idColumn, List<Long> ids)
+      throws SQLException {
+    if (ids.isEmpty()) {
+      return;
+    }
+    if (ids.size() > DELETE_BATCH_SIZE) {
+      throw new IllegalArgumentException("Cannot delete more than " + DELETE_BATCH_SIZE + " ids at once");
+    }
+    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM "
+        + table
+        + " WHERE " + idColumn + " IN ("
+        + String.join(", ", Collections.nCopies(DELETE_BATCH_SIZE, "?"))
+        + ");")) {
+      for (int i = 0; i < DELETE_BATCH_SIZE; i++) {
+        statement.setLong(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+      }
+      statement.executeUpdate();
+    }
   }
 
-  @Override
-  public void clear() {
-    // TODO implement
+  /**
+   * Prepare a query on the path records that have this origin and destination
+   * and, if given, that only use modes within a mode type group.
+   * The modes are matched with the mode mask column, so the whole lookup is one query.
+   *
+   * @param connection  the connection to use
+   * @param columns     the columns to select
+   * @param origin      the origin location
+   * @param destination the destination location
+   * @param modeTypes   the mode types that the records may use, or null to accept all records
+   * @param suffix      anything to append to the query, like an ordering
+   * @return the statement, ready to execute
+   * @throws SQLException if the statement could not be prepared
+   */
+  private PreparedStatement prepareLookup(Connection connection, String columns,
+                                          T origin, T destination,
+                                          @Nullable ModeTypeGroup modeTypes,
+                                          String suffix) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement("SELECT " + columns + " FROM "
+        + PATH_RECORD_TABLE_NAME
+        + " WHERE "
+        + "origin_x = ? AND "
+        + "origin_y = ? AND "
+        + "origin_z = ? AND "
+        + "destination_x = ? AND "
+        + "destination_y = ? AND "
+        + "destination_z = ? AND "
+        + "world_uuid = ?"
+        + (modeTypes == null ? "" : " AND (mode_mask & ?) = mode_mask")
+        + suffix + ";");
+    statement.setInt(1, origin.getX());
+    statement.setInt(2, origin.getY());
+    statement.setInt(3, origin.getZ());
+    statement.setInt(4, destination.getX());
+    statement.setInt(5, destination.getY());
+    statement.setInt(6, destination.getZ());
+    statement.setString(7, origin.getDomainId());
+    if (modeTypes != null) {
+      statement.setLong(8, modeTypes.getAccumulation());
+    }
+    return statement;
   }
 
   /**
-   * Get all records that have this origin and destination,
-   * but do not populate the internal cells, but <b>do</b> populate
-   * the modes.
+   * Get all records that have this origin and destination and, if given,
+   * only use modes within a mode type group, along with their cells and modes.
    *
    * @param origin      the origin location
    * @param destination the destination location
+   * @param modeTypes   the mode types that the records may use, or null to accept all records
    * @return a list of all records
    */
-  private List<PathTrialRecord> getRecordsWithoutCells(T origin, T destination) {
+  private List<PathTrialRecord> getRecordsWithCells(T origin, T destination,
+                                                    @Nullable ModeTypeGroup modeTypes) {
     try (Connection connection = getConnectionController().establishConnection()) {
-      ResultSet recordResult = connection.prepareStatement("SELECT * FROM "
-              + PATH_RECORD_TABLE_NAME
-              + " WHERE "
-              + "origin_x = " + origin.getX() + " AND "
-              + "origin_y = " + origin.getY() + " AND "
-              + "origin_z = " + origin.getZ() + " AND "
-              + "destination_x = " + destination.getX() + " AND "
-              + "destination_y = " + destination.getY() + " AND "
-              + "destination_z = " + destination.getZ() + " AND "
-              + "world_uuid = '" + origin.getDomainId() + "'")
-          .executeQuery();
       List<PathTrialRecord> records = new LinkedList<>();
-      while (recordResult.next()) {
-        PathTrialRecord record = extractRecord(recordResult);
-        ResultSet modeResult = connection.prepareStatement("SELECT * FROM "
-            + PATH_RECORD_MODE_TABLE_NAME
-            + " WHERE "
-            + "path_record_id = " + record.id()).executeQuery();
-        while (modeResult.next()) {
-          record.modes().add(new PathTrialModeRecord(record,
-              ModeType.values()[(modeResult.getInt("mode_type"))]));
+      List<PathTrialRecord> recordsWithCellRows = new LinkedList<>();
+      try (PreparedStatement statement = prepareLookup(connection, "*", origin, destination, modeTypes, "");
+           ResultSet recordResult = statement.executeQuery()) {
+        while (recordResult.next()) {
+          PathTrialRecord record = extractRecord(recordResult);
+          byte[] cellData = recordResult.getBytes("cell_data");
+          if (cellData == null) {
+            recordsWithCellRows.add(record);
+          } else {
+            record.cells().addAll(CellRecordCodec.decode(cellData, record));
+          }
+          records.add(record);
         }
-        records.add(record);
       }
 
+      // Add the cells to the records that didn't have them encoded
+      try (PreparedStatement cellStatement = connection.prepareStatement("SELECT * FROM "
+          + PATH_RECORD_CELL_TABLE_NAME
+          + " WHERE path_record_id = ?;")) {
+        for (PathTrialRecord record : recordsWithCellRows) {
+          cellStatement.setLong(1, record.id());
+          try (ResultSet cellResult = cellStatement.executeQuery()) {
+            while (cellResult.next()) {
+              record.cells().add(extractCell(record, cellResult));
+            }
+          }
+        }
+      }
       return records;
     } catch (SQLException e) {
       e.printStackTrace();
@@ -324,93 +655,271 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
 
   @Override
   public @NotNull List<PathTrialRecord> getRecords(T origin, T destination) {
-    try (Connection connection = getConnectionController().establishConnection()) {
-      List<PathTrialRecord> emptyRecords = getRecordsWithoutCells(origin, destination);
+    return getRecordsWithCells(origin, destination, null);
+  }
 
-      // Add the subcomponents (modes and cells) to the previously empty records
-      for (PathTrialRecord emptyRecord : emptyRecords) {
-        ResultSet cellResult = connection.prepareStatement("SELECT * FROM "
-            + PATH_RECORD_CELL_TABLE_NAME
-            + " WHERE "
-            + "path_record_id = " + emptyRecord.id()).executeQuery();
-        while (cellResult.next()) {
-          emptyRecord.cells().add(extractCell(emptyRecord, cellResult));
+  @Override
+  public PathTrialRecord getRecord(T origin, T destination, ModeTypeGroup modeTypes) {
+    List<PathTrialRecord> records = getRecordsWithCells(origin, destination, modeTypes);
+    return records.isEmpty() ? null : records.get(0);
+  }
+
+  @Override
+  public Path<T, D> getPath(T origin, T destination, ModeTypeGroup modeTypeGroup,
+                            Cell.CellConstructor<T, D> constructor) {
+    Path<T, D> cached = pathCache.get(origin, destination, modeTypeGroup, constructor);
+    if (cached != null) {
+      return cached;
+    }
+    try (Connection connection = getConnectionController().establishConnection()) {
+      try (PreparedStatement statement = prepareLookup(connection, "id, path_length, path_data, cell_data",
+          origin, destination, modeTypeGroup, " ORDER BY path_length LIMIT 1");
+           ResultSet recordResult = statement.executeQuery()) {
+        if (!recordResult.next()) {
+          return null;
         }
+        return readPath(connection, recordResult, origin, destination, modeTypeGroup, constructor);
       }
-      return emptyRecords;
     } catch (SQLException e) {
       e.printStackTrace();
-      return Collections.emptyList();
+      return null;
+    }
+  }
+
+  /**
+   * Read the path of a record, and remember it in the path cache.
+   *
+   * @param connection    the connection to use
+   * @param recordResult  the result, at the row of the record,
+   *                      with the id, path length, path data, and cell data
+   * @param origin        the origin of the record
+   * @param destination   the destination of the record
+   * @param modeTypeGroup the mode types with which the path was requested
+   * @param constructor   the constructor to provide new cells
+   * @return the path
+   * @throws SQLException if the path could not be read
+   */
+  private Path<T, D> readPath(Connection connection, ResultSet recordResult,
+                              T origin, T destination, ModeTypeGroup modeTypeGroup,
+                              Cell.CellConstructor<T, D> constructor) throws SQLException {
+    // Use the encoded path if we have it
+    byte[] pathData = recordResult.getBytes("path_data");
+    if (pathData != null) {
+      pathCache.putEncoded(origin, destination, modeTypeGroup, pathData);
+      return PathCodec.decode(pathData, constructor);
+    }
+
+    // Otherwise, this record was saved before paths were encoded, so build it from its cells.
+    // The encoded path is saved by migrate(), so reading a path never waits on a write.
+    Path<T, D> path = buildPath(connection,
+        recordResult.getLong("id"),
+        recordResult.getDouble("path_length"),
+        recordResult.getBytes("cell_data"),
+        origin.getDomainId(),
+        constructor);
+    if (path != null) {
+      pathCache.putEncoded(origin, destination, modeTypeGroup, PathCodec.encode(path));
     }
+    return path;
   }
 
+  /**
+   * Build the path of a record that was saved before paths were encoded from its critical cells.
+   *
+   * @param connection  the connection to use
+   * @param recordId    the id of the record
+   * @param pathLength  the length of the path
+   * @param cellData    the encoded cells of the record, or null if its cells are in rows
+   * @param domainId    the identifier of the domain of the path
+   * @param constructor the constructor to provide new cells
+   * @return the path, or null if the record has no critical cells
+   * @throws SQLException if the cells could not be read
+   */
   @Nullable
-  private PathTrialRecord findRecordWithModes(Collection<PathTrialRecord> records, ModeTypeGroup modeTypes) {
-    for (PathTrialRecord record : records) {
-      if (record.modes()
-          .stream()
-          .map(PathTrialModeRecord::modeType)
-          .allMatch(modeTypes::contains)) {
-        return record;
+  private Path<T, D> buildPath(Connection connection, long recordId, double pathLength,
+                               @Nullable byte[] cellData, String domainId,
+                               Cell.CellConstructor<T, D> constructor) throws SQLException {
+    List<PathTrialCellRecord> criticalCells = new ArrayList<>();
+    if (cellData == null) {
+      try (PreparedStatement cellStatement = connection.prepareStatement("SELECT * FROM "
+          + PATH_RECORD_CELL_TABLE_NAME
+          + " WHERE path_record_id = ? AND critical = TRUE;")) {
+        cellStatement.setLong(1, recordId);
+        try (ResultSet cellResult = cellStatement.executeQuery()) {
+          while (cellResult.next()) {
+            criticalCells.add(extractCell(null, cellResult));
+          }
+        }
+      }
+    } else {
+      for (PathTrialCellRecord cell : CellRecordCodec.decode(cellData, null)) {
+        if (cell.critical()) {
+          criticalCells.add(cell);
+        }
       }
     }
-    return null;
-  }
+    if (criticalCells.isEmpty()) {
+      return null;
+    }
 
-  @Override
-  public PathTrialRecord getRecord(T origin, T destination, ModeTypeGroup modeTypes) {
-    return findRecordWithModes(getRecords(origin, destination), modeTypes);
-  }
+    criticalCells.sort(Comparator.comparing(PathTrialCellRecord::index));
 
-  private T toClass(PathTrialCellRecord cellRecord,
-                    Cell.CellConstructor<T, D> cellConstructor) {
-    return cellConstructor.construct(cellRecord.x(),
-        cellRecord.y(),
-        cellRecord.z(),
-        cellRecord.record().worldId());
+    LinkedList<Step<T, D>> steps = new LinkedList<>();
+
+    // Add the first one because we don't move to get here
+    steps.add(new Step<>(toClass(criticalCells.get(0), domainId, constructor),
+        0,
+        criticalCells.get(0).modeType()));
+    for (int i = 1; i < criticalCells.size(); i++) {
+      T cell = toClass(criticalCells.get(i), domainId, constructor);
+      steps.add(new Step<>(cell,
+          cell.distanceTo(steps.getLast().location()),
+          criticalCells.get(i).modeType()));
+    }
+
+    return new Path<>(steps.getFirst().location(), steps, pathLength);
   }
 
   @Override
-  public Path<T, D> getPath(T origin, T destination, ModeTypeGroup modeTypeGroup,
-                            Cell.CellConstructor<T, D> constructor) {
+  public @NotNull Map<PathLookup<T, D>, StoredPath<T, D>> findPaths(
+      @NotNull Collection<PathLookup<T, D>> lookups,
+      Cell.CellConstructor<T, D> constructor) {
+    // Many lookups share an origin and destination, and only differ by mode types
+    Map<Map.Entry<T, T>, List<PathLookup<T, D>>> lookupsByEnds = new HashMap<>();
+    for (PathLookup<T, D> lookup : lookups) {
+      lookupsByEnds.computeIfAbsent(
+          new AbstractMap.SimpleImmutableEntry<>(lookup.origin(), lookup.destination()),
+          ends -> new LinkedList<>()).add(lookup);
+    }
+    List<Map.Entry<T, T>> allEnds = new ArrayList<>(lookupsByEnds.keySet());
+
+    Map<PathLookup<T, D>, Long> bestIds = new HashMap<>();
+    Map<PathLookup<T, D>, Double> bestLengths = new HashMap<>();
+    // Each pair of ends takes 7 parameters, and the mode mask takes one more
+    final int batchSize = Math.max(1, (maxParameters() - 1) / 7);
     try (Connection connection = getConnectionController().establishConnection()) {
-      PathTrialRecord record = findRecordWithModes(getRecordsWithoutCells(origin, destination),
-          modeTypeGroup);
+      for (int start = 0; start < allEnds.size(); start += batchSize) {
+        List<Map.Entry<T, T>> batch = allEnds.subList(start, Math.min(start + batchSize, allEnds.size()));
+        // Only records that fit at least one of the lookups are worth reading
+        ModeTypeGroup anyModeTypes = new ModeTypeGroup();
+        batch.forEach(ends -> lookupsByEnds.get(ends)
+            .forEach(lookup -> lookup.modeTypeGroup().getAll().forEach(anyModeTypes::add)));
+        try (PreparedStatement statement = connection.prepareStatement("SELECT "
+            + "id, path_length, mode_mask, origin_x, origin_y, origin_z, "
+            + "destination_x, destination_y, destination_z, world_uuid FROM "
+            + PATH_RECORD_TABLE_NAME
+            + " WHERE (mode_mask & ?) = mode_mask AND ("
+            + String.join(" OR ", Collections.nCopies(batch.size(), "("
+            + "origin_x = ? AND "
+            + "origin_y = ? AND "
+            + "origin_z = ? AND "
+            + "destination_x = ? AND "
+            + "destination_y = ? AND "
+            + "destination_z = ? AND "
+            + "world_uuid = ?)"))
+            + ");")) {
+          int parameter = 1;
+          statement.setLong(parameter++, anyModeTypes.getAccumulation());
+          for (Map.Entry<T, T> ends : batch) {
+            statement.setInt(parameter++, ends.getKey().getX());
+            statement.setInt(parameter++, ends.getKey().getY());
+            statement.setInt(parameter++, ends.getKey().getZ());
+            statement.setInt(parameter++, ends.getValue().getX());
+            statement.setInt(parameter++, ends.getValue().getY());
+            statement.setInt(parameter++, ends.getValue().getZ());
+            statement.setString(parameter++, ends.getKey().getDomainId());
+          }
 
-      ResultSet cellResult = connection.prepareStatement("SELECT * FROM "
-          + PATH_RECORD_CELL_TABLE_NAME
-          + " WHERE "
-          + "path_record_id = " + record.id() + " AND "
-          + "critical = TRUE").executeQuery();
-      while (cellResult.next()) {
-        record.cells().add(extractCell(record, cellResult));
+          try (ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+              String domainId = result.getString("world_uuid");
+              List<PathLookup<T, D>> endsLookups = lookupsByEnds.get(new AbstractMap.SimpleImmutableEntry<>(
+                  constructor.construct(result.getInt("origin_x"),
+                      result.getInt("origin_y"),
+                      result.getInt("origin_z"),
+                      domainId),
+                  constructor.construct(result.getInt("destination_x"),
+                      result.getInt("destination_y"),
+                      result.getInt("destination_z"),
+                      domainId)));
+              if (endsLookups == null) {
+                continue;
+              }
+              long modeMask = result.getLong("mode_mask");
+              double length = result.getDouble("path_length");
+              for (PathLookup<T, D> lookup : endsLookups) {
+                long accumulation = lookup.modeTypeGroup().getAccumulation();
+                if ((modeMask & accumulation) == modeMask
+                    && length < bestLengths.getOrDefault(lookup, Double.MAX_VALUE)) {
+                  bestIds.put(lookup, result.getLong("id"));
+                  bestLengths.put(lookup, length);
+                }
+              }
+            }
+          }
+        }
       }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
+    }
 
-      record.cells().sort(Comparator.comparing(PathTrialCellRecord::index));
-
-
-      LinkedList<Step<T, D>> steps = new LinkedList<>();
+    Map<PathLookup<T, D>, StoredPath<T, D>> paths = new HashMap<>();
+    for (Map.Entry<PathLookup<T, D>, Long> best : bestIds.entrySet()) {
+      final PathLookup<T, D> lookup = best.getKey();
+      final long id = best.getValue();
+      paths.put(lookup, new StoredPath<>(bestLengths.get(lookup), () -> loadPath(id, lookup, constructor)));
+    }
+    return paths;
+  }
 
-      // Add the first one because we don't move to get here
-      steps.add(new Step<>(toClass(record.cells().get(0), constructor), 0, record.cells().get(0).modeType()));
-      for (int i = 1; i < record.cells().size(); i++) {
-        T cell = toClass(record.cells().get(i), constructor);
-        steps.add(new Step<>(cell,
-            cell.distanceTo(steps.getLast().location()),
-            record.cells().get(i).modeType()));
+  @Nullable
+  private Path<T, D> loadPath(long id, PathLookup<T, D> lookup, Cell.CellConstructor<T, D> constructor) {
+    Path<T, D> cached = pathCache.get(lookup.origin(), lookup.destination(),
+        lookup.modeTypeGroup(), constructor);
+    if (cached != null) {
+      return cached;
+    }
+    try (Connection connection = getConnectionController().establishConnection()) {
+      try (PreparedStatement statement = connection.prepareStatement("SELECT "
+          + "id, path_length, path_data, cell_data FROM "
+          + PATH_RECORD_TABLE_NAME
+          + " WHERE id = ?;")) {
+        statement.setLong(1, id);
+        try (ResultSet recordResult = statement.executeQuery()) {
+          if (!recordResult.next()) {
+            return null;  // removed since it was found
+          }
+          return readPath(connection, recordResult,
+              lookup.origin(), lookup.destination(), lookup.modeTypeGroup(), constructor);
+        }
       }
-
-      return new Path<>(steps.getFirst().location(), steps, record.pathLength());
     } catch (SQLException e) {
       e.printStackTrace();
       return null;
     }
   }
 
+  private T toClass(PathTrialCellRecord cellRecord,
+                    String domainId,
+                    Cell.CellConstructor<T, D> cellConstructor) {
+    return cellConstructor.construct(cellRecord.x(),
+        cellRecord.y(),
+        cellRecord.z(),
+        domainId);
+  }
+
   @Override
   public boolean containsRecord(T origin, T destination, ModeTypeGroup modeTypeGroup) {
+    if (pathCache.contains(origin, destination, modeTypeGroup)) {
+      return true;
+    }
     try (Connection connection = getConnectionController().establishConnection()) {
-      return findRecordWithModes(getRecordsWithoutCells(origin, destination), modeTypeGroup) != null;
+      try (PreparedStatement statement = prepareLookup(connection, "id", origin, destination, modeTypeGroup,
+          " LIMIT 1");
+           ResultSet result = statement.executeQuery()) {
+        return result.next();
+      }
     } catch (SQLException e) {
       e.printStackTrace();
       return false;
@@ -418,36 +927,72 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
   }
 
   @Override
+  @Deprecated
   public @NotNull Collection<PathTrialCellRecord> getAllCells() {
+    List<PathTrialCellRecord> cells = new LinkedList<>();
+    try {
+      forEachCell(cells::add);
+    } catch (DataAccessException e) {
+      return Collections.emptyList();
+    }
+    return cells;
+  }
+
+  @Override
+  public long forEachCell(@NotNull Consumer<PathTrialCellRecord> consumer) {
+    long count = 0;
+    final int fetchSize = Math.max(1, Settings.STORAGE_EXPORT_FETCH_SIZE.getValue());
     try (Connection connection = getConnectionController().establishConnection()) {
-      ResultSet result = connection.prepareStatement("SELECT * FROM "
-          + PATH_RECORD_TABLE_NAME + " "
-          + "JOIN " + PATH_RECORD_CELL_TABLE_NAME + " "
-          + "ON " + PATH_RECORD_TABLE_NAME + ".id = "
-          + PATH_RECORD_CELL_TABLE_NAME + ".path_record_id"
-          + ";").executeQuery();
-      List<PathTrialCellRecord> cells = new LinkedList<>();
-      Map<Long, PathTrialRecord> records = new HashMap<>();
-      while (result.next()) {
-        PathTrialRecord record = extractRecord(result);
-        if (records.containsKey(record.id())) {
-          record = records.get(record.id());
-        } else {
-          records.put(record.id(), record);
+      // Rows of the same record usually come together, so we only need to remember the last record
+      try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM "
+              + PATH_RECORD_TABLE_NAME + " "
+              + "JOIN " + PATH_RECORD_CELL_TABLE_NAME + " "
+              + "ON " + PATH_RECORD_TABLE_NAME + ".id = "
+              + PATH_RECORD_CELL_TABLE_NAME + ".path_record_id"
+              + ";",
+          ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY)) {
+        statement.setFetchSize(fetchSize);
+        try (ResultSet result = statement.executeQuery()) {
+          PathTrialRecord record = null;
+          while (result.next()) {
+            if (record == null || record.id() != result.getLong("id")) {
+              record = extractRecord(result);
+            }
+            consumer.accept(extractCell(record, result));
+            count++;
+          }
         }
-        cells.add(extractCell(record, result));
       }
-      return cells;
+
+      // Records with encoded cells don't have any rows in the cell table
+      try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM "
+              + PATH_RECORD_TABLE_NAME
+              + " WHERE cell_data IS NOT NULL;",
+          ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY)) {
+        statement.setFetchSize(fetchSize);
+        try (ResultSet result = statement.executeQuery()) {
+          while (result.next()) {
+            for (PathTrialCellRecord cell : CellRecordCodec.decode(result.getBytes("cell_data"),
+                extractRecord(result))) {
+              consumer.accept(cell);
+              count++;
+            }
+          }
+        }
+      }
+      return count;
     } catch (SQLException e) {
       e.printStackTrace();
-      return Collections.emptyList();
+      throw new DataAccessException();
     }
   }
 
   private PathTrialRecord extractRecord(final ResultSet resultSet) throws SQLException {
-    return new PathTrialRecord(
+    PathTrialRecord record = new PathTrialRecord(
         resultSet.getLong("id"),
-        resultSet.getDate("timestamp"),
+        new Date(resultSet.getLong("timestamp") * 1000),  // stored in seconds
         resultSet.getLong("duration"),
         resultSet.getLong("path_length"),
         resultSet.getInt("origin_x"),
@@ -461,6 +1006,10 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
         new LinkedList<>(),
         new LinkedList<>()
     );
+    for (ModeType modeType : ModeTypeGroup.fromAccumulation(resultSet.getLong("mode_mask")).getAll()) {
+      record.modes().add(new PathTrialModeRecord(record, modeType));
+    }
+    return record;
   }
 
   private PathTrialCellRecord extractCell(final PathTrialRecord record,
@@ -471,7 +1020,7 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
         resultSet.getInt("y"),
         resultSet.getInt("z"),
         resultSet.getBoolean("critical"),
-        resultSet.getInt("path_index"),
+        resultSet.getObject("path_index") == null ? null : resultSet.getInt("path_index"),
         ModeType.values()[resultSet.getInt("mode_type")],
         resultSet.getDouble("deviation"),
         resultSet.getDouble("distance"),
@@ -482,76 +1031,306 @@ public abstract class SqlPathRecordManager<T extends Cell<T, D>, D>
   }
 
   protected void createTables() {
-    try (Connection connection = getConnectionController().establishConnection()) {
+    try {
+      write(connection -> {
+        // Create table of path trials
+        executeUpdate(connection, "CREATE TABLE IF NOT EXISTS "
+            + PATH_RECORD_TABLE_NAME + " ("
+            + "id " + autoIncrementKeyDefinition() + ", "
+            + "timestamp integer NOT NULL, "
+            + "duration integer NOT NULL, "
+            + "path_length double(12, 5) NOT NULL, "
+            + "origin_x int(7) NOT NULL,"
+            + "origin_y int(7) NOT NULL,"
+            + "origin_z int(7) NOT NULL,"
+            + "destination_x int(7) NOT NULL,"
+            + "destination_y int(7) NOT NULL,"
+            + "destination_z int(7) NOT NULL,"
+            + "world_uuid char(36) NOT NULL, "
+            + "scoring_function varchar(32) NOT NULL, "
+            + "path_data " + blobType() + ", "  // the critical path, encoded with PathCodec
+            + "cell_data " + blobType() + ", "  // all cells, encoded with CellRecordCodec (if not rows)
+            + "min_x int(7), "  // the box around the critical path
+            + "min_y int(7), "
+            + "min_z int(7), "
+            + "max_x int(7), "
+            + "max_y int(7), "
+            + "max_z int(7), "
+            + "mode_mask bigint, "  // the accumulation of the mode type group
+            + "cells_trimmed int(1) NOT NULL DEFAULT 0"  // whether only the critical cells are left
+            + ");");
 
-      // Create table of path trials
-      connection.prepareStatement("CREATE TABLE IF NOT EXISTS "
-          + PATH_RECORD_TABLE_NAME + " ("
-          + "id integer PRIMARY KEY AUTOINCREMENT, "
-          + "timestamp integer NOT NULL, "
-          + "duration integer NOT NULL, "
-          + "path_length double(12, 5) NOT NULL, "
-          + "origin_x int(7) NOT NULL,"
-          + "origin_y int(7) NOT NULL,"
-          + "origin_z int(7) NOT NULL,"
-          + "destination_x int(7) NOT NULL,"
-          + "destination_y int(7) NOT NULL,"
-          + "destination_z int(7) NOT NULL,"
-          + "world_uuid char(36) NOT NULL, "
-          + "scoring_function varchar(32) NOT NULL"
-          + ");").execute();
-
-      connection.prepareStatement("CREATE INDEX IF NOT EXISTS path_record_idx ON "
-              + PATH_RECORD_TABLE_NAME
-              + " (origin_x, origin_y, origin_z, destination_x, destination_y, destination_z, world_uuid);")
-          .execute();
-
-      // Create table of nodes within the path trial calculation
-      connection.prepareStatement("CREATE TABLE IF NOT EXISTS "
-          + PATH_RECORD_CELL_TABLE_NAME + " ("
-          + "path_record_id integer NOT NULL, "  // id of saved path trial (indexed)
-          + "x int(7) NOT NULL,"  // x coordinate
-          + "y int(7) NOT NULL,"  // y coordinate
-          + "z int(7) NOT NULL,"  // z coordinate
-          + "critical int(1) NOT NULL, "  // is this on the critical path (solution)
-          + "path_index int(10), "  // what is the index of this critical node (if not critical, null)
-          + "mode_type int(2) NOT NULL, "  // what is the mode type used to get here
-          + "deviation double(12, 5) NOT NULL,"
-          + "distance double(12, 5) NOT NULL,"  // the euclidean distance
-          + "distance_y int(3) NOT NULL,"  // the cartesian distance in the y axis
-          + "biome int NOT NULL, "  // the index of the biome
-          + "dimension int NOT NULL, "  // the dimension index
-          + "random double(12, 12) NOT NULL, "  // a random double for random selection (indexed)
-          + "FOREIGN KEY (path_record_id) REFERENCES " + PATH_RECORD_TABLE_NAME + "(id)"
-          + " ON DELETE CASCADE"
-          + " ON UPDATE CASCADE"
-          + ");").execute();
-
-      connection.prepareStatement("CREATE INDEX IF NOT EXISTS cell_path_record_id_idx ON "
-          + PATH_RECORD_CELL_TABLE_NAME
-          + " (path_record_id);").execute();
+        // Tables from older versions don't have the encoded path or cells yet
+        addColumnIfAbsent(connection, PATH_RECORD_TABLE_NAME, "path_data", blobType());
+        addColumnIfAbsent(connection, PATH_RECORD_TABLE_NAME, "cell_data", blobType());
+        for (String column : new String[]{"min_x", "min_y", "min_z", "max_x", "max_y", "max_z"}) {
+          addColumnIfAbsent(connection, PATH_RECORD_TABLE_NAME, column, "int(7)");
+        }
+        addColumnIfAbsent(connection, PATH_RECORD_TABLE_NAME, "mode_mask", "bigint");
+        addColumnIfAbsent(connection, PATH_RECORD_TABLE_NAME, "cells_trimmed", "int(1) NOT NULL DEFAULT 0");
 
-      connection.prepareStatement("CREATE INDEX IF NOT EXISTS cell_random_idx ON "
-          + PATH_RECORD_CELL_TABLE_NAME
-          + " (random);").execute();
-
-      connection.prepareStatement("CREATE TABLE IF NOT EXISTS "
-          + PATH_RECORD_MODE_TABLE_NAME + " ("
-          + "path_record_id integer NOT NULL, "
-          + "mode_type int(2) NOT NULL, "
-          + "FOREIGN KEY (path_record_id) REFERENCES " + PATH_RECORD_TABLE_NAME + "(id)"
-          + " ON DELETE CASCADE"
-          + " ON UPDATE CASCADE, "
-          + "UNIQUE(path_record_id, mode_type)"
-          + ");").execute();
-
-      connection.prepareStatement("CREATE INDEX IF NOT EXISTS mode_path_record_id_idx ON "
-          + PATH_RECORD_MODE_TABLE_NAME
-          + " (path_record_id);").execute();
+        // Covers record lookups, so finding whether a record exists never reads the table itself
+        dropIndexIfPresent(connection, PATH_RECORD_TABLE_NAME, "path_record_idx");
+        createIndexIfAbsent(connection, PATH_RECORD_TABLE_NAME, "path_record_lookup_idx",
+            "origin_x, origin_y, origin_z, destination_x, destination_y, destination_z, world_uuid,"
+                + " mode_mask, path_length");
+
+        createIndexIfAbsent(connection, PATH_RECORD_TABLE_NAME, "path_record_timestamp_idx", "timestamp");
+
+        // Create table of nodes within the path trial calculation
+        executeUpdate(connection, "CREATE TABLE IF NOT EXISTS "
+            + PATH_RECORD_CELL_TABLE_NAME + " ("
+            + "path_record_id bigint NOT NULL, "  // id of saved path trial (indexed)
+            + "x int(7) NOT NULL,"  // x coordinate
+            + "y int(7) NOT NULL,"  // y coordinate
+            + "z int(7) NOT NULL,"  // z coordinate
+            + "critical int(1) NOT NULL, "  // is this on the critical path (solution)
+            + "path_index int(10), "  // what is the index of this critical node (if not critical, null)
+            + "mode_type int(2) NOT NULL, "  // what is the mode type used to get here
+            + "deviation double(12, 5) NOT NULL,"
+            + "distance double(12, 5) NOT NULL,"  // the euclidean distance
+            + "distance_y int(3) NOT NULL,"  // the cartesian distance in the y axis
+            + "biome int NOT NULL, "  // the index of the biome
+            + "dimension int NOT NULL, "  // the dimension index
+            + "random double(12, 12) NOT NULL, "  // a random double for random selection (indexed)
+            + "FOREIGN KEY (path_record_id) REFERENCES " + PATH_RECORD_TABLE_NAME + "(id)"
+            + " ON DELETE CASCADE"
+            + " ON UPDATE CASCADE"
+            + ");");
+
+        // Covers finding the critical cells of a record as well as all of its cells
+        dropIndexIfPresent(connection, PATH_RECORD_CELL_TABLE_NAME, "cell_path_record_id_idx");
+        createIndexIfAbsent(connection, PATH_RECORD_CELL_TABLE_NAME, "cell_record_critical_idx",
+            "path_record_id, critical");
 
+        createIndexIfAbsent(connection, PATH_RECORD_CELL_TABLE_NAME, "cell_random_idx", "random");
+
+        executeUpdate(connection, "CREATE TABLE IF NOT EXISTS "
+            + PATH_RECORD_MODE_TABLE_NAME + " ("
+            + "path_record_id bigint NOT NULL, "
+            + "mode_type int(2) NOT NULL, "
+            + "FOREIGN KEY (path_record_id) REFERENCES " + PATH_RECORD_TABLE_NAME + "(id)"
+            + " ON DELETE CASCADE"
+            + " ON UPDATE CASCADE, "
+            + "UNIQUE(path_record_id, mode_type)"
+            + ");");
+
+        createIndexIfAbsent(connection, PATH_RECORD_MODE_TABLE_NAME, "mode_path_record_id_idx",
+            "path_record_id");
+
+        backfillModeMasks(connection);
+
+        // Cells are moved into blobs later, by migrate(), so a large table doesn't hold up startup
+        return null;
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Set the mode mask of every record that was saved before records had one,
+   * using the modes in the mode table.
+   *
+   * @param connection the connection to use
+   * @throws SQLException if the backfill failed
+   */
+  private void backfillModeMasks(Connection connection) throws SQLException {
+    StringBuilder accumulation = new StringBuilder("CASE mode_type");
+    for (ModeType modeType : ModeType.values()) {
+      accumulation.append(" WHEN ").append(modeType.ordinal())
+          .append(" THEN ").append(modeType.getAccumulationId());
+    }
+    accumulation.append(" ELSE 0 END");
+    int updated = executeUpdate(connection, "UPDATE "
+        + PATH_RECORD_TABLE_NAME
+        + " SET mode_mask = (SELECT COALESCE(SUM(" + accumulation + "), 0) FROM "
+        + PATH_RECORD_MODE_TABLE_NAME
+        + " WHERE path_record_id = " + PATH_RECORD_TABLE_NAME + ".id)"
+        + " WHERE mode_mask IS NULL;");
+    if (updated > 0) {
+      JourneyCommon.getLogger().info("Added mode masks to " + updated + " path records");
+    }
+  }
+
+  /**
+   * Move the cells of every record that still has them stored as rows
+   * into an encoded blob on the record itself, if records are stored that way.
+   * Records are moved in small transactions so a large table doesn't hold a lock for too long,
+   * and an interrupted migration just continues where it left off the next time.
+   * Until a record is moved, its cells are read from the rows.
+   */
+  @Override
+  public int migrate() {
+    if (migrated) {
+      return 0;
+    }
+    try {
+      int moved = 0;
+      if (Settings.STORAGE_CELL_LAYOUT.getValue() == PathCellLayout.BLOB) {
+        List<Long> ids;
+        try (Connection connection = getConnectionController().establishConnection()) {
+          ids = selectIds(connection, "cell_data IS NULL AND id IN (SELECT path_record_id FROM "
+              + PATH_RECORD_CELL_TABLE_NAME + ")");
+        }
+        if (!ids.isEmpty()) {
+          JourneyCommon.getLogger().info("Migrating the cells of " + ids.size() + " path records...");
+        }
+        for (int start = 0; start < ids.size(); start += MIGRATION_BATCH_SIZE) {
+          final List<Long> batch = ids.subList(start, Math.min(start + MIGRATION_BATCH_SIZE, ids.size()));
+          write(connection -> {
+            migrateCellsToBlobs(connection, batch);
+            return null;
+          });
+        }
+        moved += ids.size();
+      }
+
+      // Records saved before paths were encoded get their encoded path
+      List<Long> ids;
+      try (Connection connection = getConnectionController().establishConnection()) {
+        ids = selectIds(connection, "path_data IS NULL");
+      }
+      for (int start = 0; start < ids.size(); start += MIGRATION_BATCH_SIZE) {
+        final List<Long> batch = ids.subList(start, Math.min(start + MIGRATION_BATCH_SIZE, ids.size()));
+        moved += write(connection -> encodePaths(connection, batch));
+      }
+      migrated = true;
+      return moved;
     } catch (SQLException e) {
       e.printStackTrace();
+      throw new DataAccessException();
     }
   }
 
+  private int encodePaths(Connection connection, List<Long> ids) throws SQLException {
+    int encoded = 0;
+    try (PreparedStatement recordStatement = connection.prepareStatement("SELECT "
+        + "path_length, cell_data, world_uuid FROM "
+        + PATH_RECORD_TABLE_NAME
+        + " WHERE id = ? AND path_data IS NULL;");
+         PreparedStatement updateStatement = connection.prepareStatement("UPDATE "
+             + PATH_RECORD_TABLE_NAME
+             + " SET path_data = ? WHERE id = ?;")) {
+      for (long id : ids) {
+        recordStatement.setLong(1, id);
+        Path<T, D> path;
+        try (ResultSet recordResult = recordStatement.executeQuery()) {
+          if (!recordResult.next()) {
+            continue;  // removed since it was found
+          }
+          path = buildPath(connection, id,
+              recordResult.getDouble("path_length"),
+              recordResult.getBytes("cell_data"),
+              recordResult.getString("world_uuid"),
+              getDataAdapter()::makeCell);
+        }
+        if (path == null) {
+          continue;
+        }
+        updateStatement.setBytes(1, PathCodec.encode(path));
+        updateStatement.setLong(2, id);
+        encoded += updateStatement.executeUpdate();
+      }
+    }
+    return encoded;
+  }
+
+  private void migrateCellsToBlobs(Connection connection, List<Long> ids) throws SQLException {
+    List<Long> moved = new ArrayList<>(ids.size());
+    try (PreparedStatement cellStatement = connection.prepareStatement("SELECT * FROM "
+        + PATH_RECORD_CELL_TABLE_NAME
+        + " WHERE path_record_id = ?;");
+         // Records removed or moved in the meantime are left alone
+         PreparedStatement updateStatement = connection.prepareStatement("UPDATE "
+             + PATH_RECORD_TABLE_NAME
+             + " SET cell_data = ?, min_x = ?, min_y = ?, min_z = ?, max_x = ?, max_y = ?, max_z = ?"
+             + " WHERE id = ? AND cell_data IS NULL;")) {
+      for (long id : ids) {
+        cellStatement.setLong(1, id);
+        List<PathTrialCellRecord> cells = new ArrayList<>();
+        try (ResultSet cellResult = cellStatement.executeQuery()) {
+          while (cellResult.next()) {
+            cells.add(extractCell(null, cellResult));
+          }
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (PathTrialCellRecord cell : cells) {
+          if (cell.critical()) {
+            minX = Math.min(minX, cell.x());
+            minY = Math.min(minY, cell.y());
+            minZ = Math.min(minZ, cell.z());
+            maxX = Math.max(maxX, cell.x());
+            maxY = Math.max(maxY, cell.y());
+            maxZ = Math.max(maxZ, cell.z());
+          }
+        }
+
+        updateStatement.setBytes(1, CellRecordCodec.encode(cells));
+        updateStatement.setInt(2, minX);
+        updateStatement.setInt(3, minY);
+        updateStatement.setInt(4, minZ);
+        updateStatement.setInt(5, maxX);
+        updateStatement.setInt(6, maxY);
+        updateStatement.setInt(7, maxZ);
+        updateStatement.setLong(8, id);
+        if (updateStatement.executeUpdate() > 0) {
+          moved.add(id);
+        }
+      }
+    }
+    deleteIds(connection, PATH_RECORD_CELL_TABLE_NAME, "path_record_id", moved);
+  }
+
+  private void dropIndexIfPresent(Connection connection, String table, String index) throws SQLException {
+    if (indexExists(connection, table, index)) {
+      executeUpdate(connection, dropIndexStatement(table, index));
+    }
+  }
+
+  /**
+   * Get the definition of an integer primary key column whose values are generated by the database,
+   * written in the dialect of this database.
+   *
+   * @return the column definition, without the column name
+   */
+  protected abstract String autoIncrementKeyDefinition();
+
+  /**
+   * Get the type of a column that stores encoded data, which may be large.
+   *
+   * @return the column type
+   */
+  protected abstract String blobType();
+
+  /**
+   * Get the maximum number of parameters that this database allows in a single statement.
+   *
+   * @return the maximum number of parameters
+   */
+  protected abstract int maxParameters();
+
+  /**
+   * Get the statement that removes an index from a table, written in the dialect of this database.
+   *
+   * @param table the table
+   * @param index the name of the index
+   * @return the statement
+   */
+  protected abstract String dropIndexStatement(String table, String index);
+
+  /**
+   * A query for the ids of path records, run within a transaction.
+   */
+  @FunctionalInterface
+  private interface IdQuery {
+    List<Long> find(Connection connection) throws SQLException;
+  }
+
 }
@@ -53,6 +53,19 @@ public abstract class SqlPersonalEndpointManager<T extends Cell<T, D>, D>
     super(connectionController, dataAdapter);
   }
 
+  /**
+   * Constructor for a manager whose writes all go through a writer.
+   *
+   * @param connectionController the connection controller for reads
+   * @param writer               the writer for all writes
+   * @param dataAdapter          the data adapter
+   */
+  public SqlPersonalEndpointManager(SqlConnectionController connectionController,
+                                    SqlWriter writer,
+                                    DataAdapter<T, D> dataAdapter) {
+    super(connectionController, writer, dataAdapter);
+  }
+
   @Override
   public void addPersonalEndpoint(@NotNull UUID playerUuid, @NotNull T cell)
       throws IllegalArgumentException, DataAccessException {
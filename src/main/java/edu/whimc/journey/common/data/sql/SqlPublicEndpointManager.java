@@ -52,6 +52,19 @@ public abstract class SqlPublicEndpointManager<T extends Cell<T, D>, D>
     super(connectionController, dataAdapter);
   }
 
+  /**
+   * Constructor for a manager whose writes all go through a writer.
+   *
+   * @param connectionController the connection controller for reads
+   * @param writer               the writer for all writes
+   * @param dataAdapter          the data adapter
+   */
+  public SqlPublicEndpointManager(SqlConnectionController connectionController,
+                                  SqlWriter writer,
+                                  DataAdapter<T, D> dataAdapter) {
+    super(connectionController, writer, dataAdapter);
+  }
+
   @Override
   public void addPublicEndpoint(@NotNull T cell, @NotNull String name)
       throws IllegalArgumentException, DataAccessException {
@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data.sql;
+
+import edu.whimc.journey.common.config.Settings;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A writer that serializes all writes to a database through one thread and one connection.
+ * Engines that lock the whole database to write, like SQLite, would otherwise make concurrent
+ * writers wait on each other (or fail) at the engine level.
+ * Reads don't go through the writer, so they may continue on other connections.
+ *
+ * <p>Every unit of work is run in its own transaction, which is committed when the work completes
+ * and rolled back if it fails. Writers may be shared between managers of the same database
+ * with {@link #shared}, in which case the writer is only shut down once every manager closed it.
+ */
+public class SqlWriter {
+
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
+  private static final Map<String, SqlWriter> SHARED = new HashMap<>();
+
+  private final PooledConnectionController connectionController;
+  private final ExecutorService executor;
+  private volatile Thread thread;
+  // The connection of the work being run, only used on the writer thread
+  private Connection activeConnection = null;
+  private String sharedKey = null;
+  private int references = 1;
+
+  /**
+   * General constructor.
+   *
+   * @param connectionController the controller for the connection to write with
+   * @param name                 the name of the writer thread
+   */
+  public SqlWriter(@NotNull SqlConnectionController connectionController, @NotNull String name) {
+    // There is only ever one writing connection, but it still benefits from the statement cache
+    this.connectionController = new PooledConnectionController(connectionController,
+        1,
+        Settings.STORAGE_POOL_IDLE_TIMEOUT.getValue() * 1000L,
+        Settings.STORAGE_POOL_STATEMENT_CACHE_SIZE.getValue());
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread writerThread = new Thread(runnable, name);
+      writerThread.setDaemon(true);
+      thread = writerThread;
+      return writerThread;
+    });
+  }
+
+  /**
+   * Get the writer shared under a key, like the address of a database,
+   * or create it if there isn't one yet.
+   * Every call must be paired with a call to {@link #close()}.
+   *
+   * @param key     the key
+   * @param factory the supplier of a new writer
+   * @return the shared writer
+   */
+  public static SqlWriter shared(@NotNull String key, @NotNull Supplier<SqlWriter> factory) {
+    synchronized (SHARED) {
+      SqlWriter writer = SHARED.get(key);
+      if (writer == null) {
+        writer = factory.get();
+        writer.sharedKey = key;
+        SHARED.put(key, writer);
+      } else {
+        writer.references++;
+      }
+      return writer;
+    }
+  }
+
+  /**
+   * Run some work in a transaction on the writer thread and wait for its result.
+   * Work that is given from the writer thread itself is run right away,
+   * as part of the transaction that is already running.
+   *
+   * @param work the work
+   * @param <R>  the result type
+   * @return the result of the work
+   * @throws SQLException if the database could not be accessed or the writer is closed
+   */
+  public <R> R write(@NotNull SqlWork<R> work) throws SQLException {
+    if (Thread.currentThread() == thread) {
+      if (activeConnection != null) {
+        return work.execute(activeConnection);
+      }
+      return runInTransaction(work);
+    }
+    Future<R> future;
+    try {
+      future = executor.submit(() -> runInTransaction(work));
+    } catch (RejectedExecutionException e) {
+      throw new SQLException("The writer is closed", e);
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a write", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new SQLException(cause);
+      }
+    }
+  }
+
+  private <R> R runInTransaction(SqlWork<R> work) throws SQLException {
+    try (Connection connection = connectionController.establishConnection()) {
+      connection.setAutoCommit(false);
+      activeConnection = connection;
+      try {
+        R result = work.execute(connection);
+        connection.commit();
+        return result;
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        activeConnection = null;
+      }
+    }
+  }
+
+  /**
+   * Finish all given work and close the writing connection.
+   * If this writer is shared, it is only closed once it has been closed by everyone sharing it.
+   */
+  public void close() {
+    synchronized (SHARED) {
+      if (--references > 0) {
+        return;
+      }
+      if (sharedKey != null) {
+        SHARED.remove(sharedKey);
+      }
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    connectionController.close();
+  }
+
+}
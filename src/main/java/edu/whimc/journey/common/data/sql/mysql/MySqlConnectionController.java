@@ -46,6 +46,8 @@ public class MySqlConnectionController implements SqlConnectionController {
     databaseProperties = new Properties();
     databaseProperties.setProperty("user", Settings.STORAGE_USERNAME.getValue());
     databaseProperties.setProperty("password", Settings.STORAGE_PASSWORD.getValue());
+    // Otherwise the driver ignores fetch sizes and reads whole results into memory at once
+    databaseProperties.setProperty("useCursorFetch", "true");
   }
 
   @Override
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data.sql.mysql;
+
+import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
+import edu.whimc.journey.common.data.sql.SqlConnectionController;
+import edu.whimc.journey.common.data.sql.SqlPathRecordManager;
+import edu.whimc.journey.common.navigation.Cell;
+
+/**
+ * A MySQL manager for path records, so that many servers can share them.
+ * MySQL handles concurrent writers itself, so writes are not funneled through a single writer.
+ *
+ * @param <T> the cell type
+ * @param <D> the domain type
+ */
+public class MySqlPathRecordManager<T extends Cell<T, D>, D> extends SqlPathRecordManager<T, D> {
+
+  // The most placeholders that MySQL allows in one prepared statement
+  private static final int MAX_PARAMETERS = 65535;
+
+  /**
+   * General constructor, which connects to the database given in the settings.
+   *
+   * @param dataAdapter the adapter
+   */
+  public MySqlPathRecordManager(DataAdapter<T, D> dataAdapter) {
+    this(new PooledConnectionController(new MySqlConnectionController()), dataAdapter);
+  }
+
+  /**
+   * Constructor for a manager with its own connections,
+   * like to a local database that stands in for the real one.
+   *
+   * @param connectionController the connection controller
+   * @param dataAdapter          the adapter
+   */
+  public MySqlPathRecordManager(SqlConnectionController connectionController, DataAdapter<T, D> dataAdapter) {
+    super(connectionController, dataAdapter);
+  }
+
+  @Override
+  protected String autoIncrementKeyDefinition() {
+    return "bigint PRIMARY KEY AUTO_INCREMENT";
+  }
+
+  @Override
+  protected String blobType() {
+    return "longblob";
+  }
+
+  @Override
+  protected int maxParameters() {
+    return MAX_PARAMETERS;
+  }
+
+  @Override
+  protected String dropIndexStatement(String table, String index) {
+    return "DROP INDEX " + index + " ON " + table + ";";
+  }
+}
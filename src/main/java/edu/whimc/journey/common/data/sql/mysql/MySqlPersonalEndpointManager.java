@@ -25,6 +25,7 @@
 package edu.whimc.journey.common.data.sql.mysql;
 
 import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
 import edu.whimc.journey.common.data.sql.SqlPersonalEndpointManager;
 import edu.whimc.journey.common.navigation.Cell;
 
@@ -41,7 +42,7 @@ public abstract class MySqlPersonalEndpointManager<T extends Cell<T, D>, D>
    * General constructor.
    */
   public MySqlPersonalEndpointManager(DataAdapter<T, D> dataAdapter) {
-    super(new MySqlConnectionController(), dataAdapter);
+    super(new PooledConnectionController(new MySqlConnectionController()), dataAdapter);
   }
 
 }
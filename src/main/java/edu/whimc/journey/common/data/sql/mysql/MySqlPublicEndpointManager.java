@@ -25,6 +25,7 @@
 package edu.whimc.journey.common.data.sql.mysql;
 
 import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
 import edu.whimc.journey.common.data.sql.SqlPublicEndpointManager;
 import edu.whimc.journey.common.navigation.Cell;
 
@@ -43,7 +44,7 @@ public abstract class MySqlPublicEndpointManager<T extends Cell<T, D>, D>
    * @param dataAdapter the data adapter
    */
   public MySqlPublicEndpointManager(DataAdapter<T, D> dataAdapter) {
-    super(new MySqlConnectionController(), dataAdapter);
+    super(new PooledConnectionController(new MySqlConnectionController()), dataAdapter);
   }
 
 }
@@ -24,24 +24,60 @@
 
 package edu.whimc.journey.common.data.sql.sqlite;
 
+import edu.whimc.journey.common.config.Settings;
 import edu.whimc.journey.common.data.sql.SqlConnectionController;
+import edu.whimc.journey.common.data.sql.SqlWriter;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import lombok.Value;
 import lombok.experimental.Accessors;
 
 /**
  * An SQL connection controller designed for the SQLite engine.
+ *
+ * <p>Every connection is tuned when it is established. With write-ahead logging,
+ * readers don't block the writer and the writer doesn't block readers,
+ * and with normal synchronization, the log is only synced to disk at checkpoints.
+ * SQLite still only allows one writer at a time, so writes should go through
+ * the {@link #sharedWriter} of the database.
  */
 @Value
 @Accessors(fluent = true)
 public class SqliteConnectionController implements SqlConnectionController {
   String address;
 
+  /**
+   * Get the writer that serializes all writes to the SQLite database at an address.
+   * The writer is shared by everyone who writes to the same database, so each call
+   * must be paired with a call to {@link SqlWriter#close()}.
+   *
+   * @param address the address to the database
+   * @return the writer
+   */
+  public static SqlWriter sharedWriter(String address) {
+    return SqlWriter.shared(address,
+        () -> new SqlWriter(new SqliteConnectionController(address), "Journey SQLite Writer"));
+  }
+
   @Override
   public Connection establishConnection() throws SQLException {
-    return DriverManager.getConnection(address);
+    Connection connection = DriverManager.getConnection(address);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA busy_timeout = "
+          + Math.max(0, Settings.STORAGE_SQLITE_BUSY_TIMEOUT.getValue()) + ";");
+      if (Settings.STORAGE_SQLITE_WAL.getValue()) {
+        statement.execute("PRAGMA journal_mode = WAL;");
+        statement.execute("PRAGMA synchronous = NORMAL;");
+      }
+      statement.execute("PRAGMA mmap_size = "
+          + Math.max(0, Settings.STORAGE_SQLITE_MMAP_SIZE.getValue()) * 1024L * 1024L + ";");
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+    return connection;
   }
 
 }
@@ -24,9 +24,14 @@
 
 package edu.whimc.journey.common.data.sql.sqlite;
 
+import edu.whimc.journey.common.data.DataAccessException;
 import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
 import edu.whimc.journey.common.data.sql.SqlPathRecordManager;
 import edu.whimc.journey.common.navigation.Cell;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * A SQLite manger for path records.
@@ -36,6 +41,10 @@ import edu.whimc.journey.common.navigation.Cell;
  */
 public class SqlitePathRecordManager<T extends Cell<T, D>, D> extends SqlPathRecordManager<T, D> {
 
+  private static final int INCREMENTAL_AUTO_VACUUM = 2;
+  // The default limit of SQLite versions before 3.32.0
+  private static final int MAX_PARAMETERS = 999;
+
   /**
    * General constructor.
    *
@@ -43,6 +52,64 @@ public class SqlitePathRecordManager<T extends Cell<T, D>, D> extends SqlPathRec
    * @param dataAdapter the adapter
    */
   public SqlitePathRecordManager(String address, DataAdapter<T, D> dataAdapter) {
-    super(new SqliteConnectionController(address), dataAdapter);
+    super(new PooledConnectionController(new SqliteConnectionController(address)),
+        SqliteConnectionController.sharedWriter(address),
+        dataAdapter);
+  }
+
+  @Override
+  protected String autoIncrementKeyDefinition() {
+    return "integer PRIMARY KEY AUTOINCREMENT";
+  }
+
+  @Override
+  protected String blobType() {
+    return "blob";
+  }
+
+  @Override
+  protected int maxParameters() {
+    return MAX_PARAMETERS;
+  }
+
+  @Override
+  protected String dropIndexStatement(String table, String index) {
+    return "DROP INDEX IF EXISTS " + index + ";";
+  }
+
+  /**
+   * Give free pages back to the file system with an incremental vacuum.
+   * Databases that were created without incremental vacuuming are fully vacuumed once to enable it.
+   */
+  @Override
+  public void compact() {
+    try {
+      write(connection -> {
+        // Vacuuming can't happen within a transaction
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+          int autoVacuum;
+          try (ResultSet result = statement.executeQuery("PRAGMA auto_vacuum;")) {
+            autoVacuum = result.next() ? result.getInt(1) : 0;
+          }
+          if (autoVacuum != INCREMENTAL_AUTO_VACUUM) {
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL;");
+            statement.execute("VACUUM;");
+          }
+          // Every step of the statement frees some pages, so step through all of them
+          try (ResultSet result = statement.executeQuery("PRAGMA incremental_vacuum;")) {
+            while (result.next()) {
+              // keep vacuuming
+            }
+          }
+        } finally {
+          connection.setAutoCommit(false);
+        }
+        return null;
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+      throw new DataAccessException();
+    }
   }
 }
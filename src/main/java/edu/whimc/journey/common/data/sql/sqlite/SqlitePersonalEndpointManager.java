@@ -25,6 +25,7 @@
 package edu.whimc.journey.common.data.sql.sqlite;
 
 import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
 import edu.whimc.journey.common.data.sql.SqlPersonalEndpointManager;
 import edu.whimc.journey.common.navigation.Cell;
 
@@ -44,7 +45,9 @@ public abstract class SqlitePersonalEndpointManager<T extends Cell<T, D>, D>
    * @param dataAdapter the data adapter to allow proper storage of data
    */
   public SqlitePersonalEndpointManager(String address, DataAdapter<T, D> dataAdapter) {
-    super(new SqliteConnectionController(address), dataAdapter);
+    super(new PooledConnectionController(new SqliteConnectionController(address)),
+        SqliteConnectionController.sharedWriter(address),
+        dataAdapter);
   }
 
 }
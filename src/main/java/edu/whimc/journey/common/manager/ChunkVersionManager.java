@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.manager;
+
+import edu.whimc.journey.common.navigation.Cell;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A manager to keep track of when chunks (16 by 16 columns of cells) have last changed.
+ * Every change bumps a global version counter and stamps the chunk with the new version,
+ * so anything that was verified against the world at some version can find out
+ * whether the cells it depends on may have changed since.
+ *
+ * <p>Only the most recently changed chunks are remembered. When there are too many,
+ * the older half is forgotten, and any chunk that isn't remembered counts as changed
+ * for anything verified before the forgotten versions.
+ */
+public final class ChunkVersionManager {
+
+  private static final int CHUNK_SHIFT = 4;
+  private static final int MAX_CHUNKS = 1 << 16;
+
+  private final AtomicLong version = new AtomicLong(0);
+  private final Map<ChunkKey, Long> chunkVersions = new ConcurrentHashMap<>();
+  private volatile long forgottenVersion = 0;  // every chunk may have changed up to this version
+
+  /**
+   * Get the current global version.
+   * Anything verified now can store this version to compare against later.
+   *
+   * @return the version
+   */
+  public long currentVersion() {
+    return version.get();
+  }
+
+  /**
+   * Mark the chunk containing the given block coordinates as changed.
+   *
+   * @param domainId the domain identifier
+   * @param x        the block x coordinate
+   * @param z        the block z coordinate
+   */
+  public void bump(@NotNull String domainId, int x, int z) {
+    bumpChunk(domainId, x >> CHUNK_SHIFT, z >> CHUNK_SHIFT);
+  }
+
+  /**
+   * Mark the chunk containing the given cell as changed.
+   *
+   * @param cell the cell
+   */
+  public void bump(@NotNull Cell<?, ?> cell) {
+    bump(cell.getDomainId(), cell.getX(), cell.getZ());
+  }
+
+  /**
+   * Mark a chunk as changed, given chunk coordinates rather than block coordinates.
+   *
+   * @param domainId the domain identifier
+   * @param chunkX   the chunk x coordinate
+   * @param chunkZ   the chunk z coordinate
+   */
+  public void bumpChunk(@NotNull String domainId, int chunkX, int chunkZ) {
+    chunkVersions.put(new ChunkKey(domainId, chunkX, chunkZ), version.incrementAndGet());
+    if (chunkVersions.size() > MAX_CHUNKS) {
+      forgetOlderHalf();
+    }
+  }
+
+  private synchronized void forgetOlderHalf() {
+    if (chunkVersions.size() <= MAX_CHUNKS) {
+      return;  // another thread got here first
+    }
+    long[] versions = chunkVersions.values().stream().mapToLong(Long::longValue).toArray();
+    Arrays.sort(versions);
+    long cutoff = versions[versions.length / 2];
+    // Raise the floor first, so a forgotten chunk never looks unchanged
+    forgottenVersion = Math.max(forgottenVersion, cutoff);
+    for (Map.Entry<ChunkKey, Long> entry : chunkVersions.entrySet()) {
+      if (entry.getValue() <= cutoff) {
+        // Only remove it if it wasn't changed again in the meantime
+        chunkVersions.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Determine whether the chunk containing the given cell has changed
+   * after the given version.
+   *
+   * @param cell    the cell
+   * @param version the version to compare against
+   * @return true if the chunk changed since the version
+   */
+  public boolean changedSince(@NotNull Cell<?, ?> cell, long version) {
+    return chunkChangedSince(cell.getDomainId(),
+        cell.getX() >> CHUNK_SHIFT,
+        cell.getZ() >> CHUNK_SHIFT,
+        version);
+  }
+
+  /**
+   * Determine whether any chunk touched by the box between two cells of the same domain
+   * has changed after the given version.
+   * A movement between two cells may depend on the cells beside it too, like the corners
+   * of a diagonal step, which may lie in another chunk than either end.
+   *
+   * @param corner1 one corner of the box
+   * @param corner2 the opposite corner of the box
+   * @param version the version to compare against
+   * @return true if any of the chunks changed since the version
+   */
+  public boolean changedSince(@NotNull Cell<?, ?> corner1, @NotNull Cell<?, ?> corner2, long version) {
+    int minChunkX = Math.min(corner1.getX(), corner2.getX()) >> CHUNK_SHIFT;
+    int maxChunkX = Math.max(corner1.getX(), corner2.getX()) >> CHUNK_SHIFT;
+    int minChunkZ = Math.min(corner1.getZ(), corner2.getZ()) >> CHUNK_SHIFT;
+    int maxChunkZ = Math.max(corner1.getZ(), corner2.getZ()) >> CHUNK_SHIFT;
+    for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+      for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+        if (chunkChangedSince(corner1.getDomainId(), chunkX, chunkZ, version)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean chunkChangedSince(String domainId, int chunkX, int chunkZ, long version) {
+    Long chunkVersion = chunkVersions.get(new ChunkKey(domainId, chunkX, chunkZ));
+    if (chunkVersion == null) {
+      return version < forgottenVersion;
+    }
+    return chunkVersion > version;
+  }
+
+  private static final class ChunkKey {
+    private final String domainId;
+    private final int chunkX;
+    private final int chunkZ;
+
+    private ChunkKey(String domainId, int chunkX, int chunkZ) {
+      this.domainId = domainId;
+      this.chunkX = chunkX;
+      this.chunkZ = chunkZ;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ChunkKey chunkKey = (ChunkKey) o;
+      return chunkX == chunkKey.chunkX && chunkZ == chunkKey.chunkZ && domainId.equals(chunkKey.domainId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(domainId, chunkX, chunkZ);
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.manager;
+
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Mode;
+import edu.whimc.journey.common.navigation.ModeType;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.search.LandmarkTree;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A manager for the {@link LandmarkTree}s rooted at commonly requested destinations,
+ * like public endpoints. Paths to a landmark from anywhere near it are found by walking its tree
+ * rather than by searching.
+ *
+ * <p>Trees are kept per landmark and per group of mode types, and only a bounded number
+ * of the most recently used trees are kept at once. Trees are built and brought up to date
+ * on their own thread, so a search never waits on one; until a tree is ready, searches
+ * just don't use it.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+public final class LandmarkManager<T extends Cell<T, D>, D> {
+
+  private final Map<Key<T, D>, LandmarkTree<T, D>> trees
+      = new LinkedHashMap<Key<T, D>, LandmarkTree<T, D>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key<T, D>, LandmarkTree<T, D>> eldest) {
+          return size() > Settings.LANDMARK_TREE_CAPACITY.getValue();
+        }
+      };
+  // Trees that are being built are left alone until they are done
+  private final Set<Key<T, D>> building = new HashSet<>();
+  @Nullable
+  private ExecutorService builder = null;
+  private boolean closed = false;
+
+  /**
+   * Find a path from some origin to a landmark using the landmark's tree.
+   * If the tree doesn't exist yet or is out of date, it is built in the background
+   * and no path is found this time.
+   *
+   * <p>Flying is never used for trees, since it reaches nearly every cell in the air
+   * and the tree would fill up with them long before it reaches out far on the ground.
+   * Paths found without flying are just as good for anyone who may fly too.
+   *
+   * @param origin      the origin of the path
+   * @param landmark    the landmark, which is the destination of the path
+   * @param modes       the modes that may be used to move
+   * @param constructor the constructor to create new cells
+   * @return the path, or null if the origin is not covered by the landmark's tree or it is not ready
+   */
+  @Nullable
+  public synchronized Path<T, D> findPath(@NotNull T origin,
+                                          @NotNull T landmark,
+                                          @NotNull Collection<Mode<T, D>> modes,
+                                          @NotNull Cell.CellConstructor<T, D> constructor) {
+    int radius = Settings.LANDMARK_TREE_RADIUS.getValue();
+    if (closed
+        || !origin.getDomainId().equals(landmark.getDomainId())
+        || origin.distanceToSquared(landmark) > (double) radius * radius) {
+      return null;
+    }
+    List<Mode<T, D>> treeModes = new ArrayList<>(modes.size());
+    for (Mode<T, D> mode : modes) {
+      if (mode.getType() != ModeType.FLY) {
+        treeModes.add(mode);
+      }
+    }
+    if (treeModes.isEmpty()) {
+      return null;
+    }
+    ModeTypeGroup modeTypes = ModeTypeGroup.from(treeModes);
+    Key<T, D> key = new Key<>(landmark, modeTypes);
+    LandmarkTree<T, D> tree = trees.computeIfAbsent(key,
+        k -> new LandmarkTree<>(landmark, modeTypes, constructor,
+            radius, Settings.LANDMARK_TREE_MAX_CELLS.getValue()));
+    if (building.contains(key)) {
+      return null;
+    }
+    if (tree.isStale()) {
+      build(key, tree, treeModes);
+      return null;
+    }
+    return tree.pathFrom(origin);
+  }
+
+  private synchronized void build(Key<T, D> key, LandmarkTree<T, D> tree, List<Mode<T, D>> modes) {
+    if (closed || !building.add(key)) {
+      return;
+    }
+    if (builder == null) {
+      builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread builderThread = new Thread(runnable, "Journey Landmark Tree Builder");
+        builderThread.setDaemon(true);
+        return builderThread;
+      });
+    }
+    builder.submit(() -> {
+      try {
+        // Nothing else touches the tree while it is building, so searches go on without it
+        tree.update(modes);
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      } finally {
+        synchronized (this) {
+          building.remove(key);
+        }
+      }
+    });
+  }
+
+  /**
+   * Remove all trees rooted at some landmark,
+   * like when the landmark is no longer a commonly requested destination.
+   *
+   * @param landmark the landmark
+   */
+  public synchronized void remove(@NotNull T landmark) {
+    trees.keySet().removeIf(key -> key.landmark.equals(landmark));
+  }
+
+  /**
+   * Remove all trees.
+   */
+  public synchronized void clear() {
+    trees.clear();
+  }
+
+  /**
+   * Stop building trees and shut down the thread that builds them, like when the plugin is disabled.
+   * A tree that is still being built is left unfinished, and no trees are used afterwards.
+   */
+  public synchronized void close() {
+    closed = true;
+    if (builder != null) {
+      builder.shutdownNow();
+      builder = null;
+    }
+  }
+
+  private static final class Key<T extends Cell<T, D>, D> {
+    private final T landmark;
+    private final ModeTypeGroup modeTypes;
+
+    private Key(T landmark, ModeTypeGroup modeTypes) {
+      this.landmark = landmark;
+      this.modeTypes = modeTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key<?, ?> key = (Key<?, ?>) o;
+      return landmark.equals(key.landmark) && modeTypes.equals(key.modeTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(landmark, modeTypes);
+    }
+  }
+
+}
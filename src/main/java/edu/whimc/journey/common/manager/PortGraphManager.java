@@ -0,0 +1,734 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.manager;
+
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.data.StoredPath;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Port;
+import edu.whimc.journey.common.search.graph.ContractionHierarchy;
+import edu.whimc.journey.common.search.graph.WeightedGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A manager for the graph of connections between all known {@link Port}s, shared by every search.
+ * A connection goes from the destination of one port to the origin of another port in the same domain,
+ * and carries the shortest stored path between the two, if there is one.
+ *
+ * <p>Connections are kept per group of mode types and are only looked up in storage the first time
+ * they are needed. Afterwards, the graph is kept up to date as ports come and go
+ * and as new paths are reported, so a search only has to look up the connections
+ * of its own origin and destination.
+ * Every search starts from the same {@link PortLayer} of a group, which is only built again
+ * when ports come or go, and whose paths are updated in place as they are found or reported.
+ *
+ * <p>If enabled, a {@link ContractionHierarchy} of every group of connections is also kept,
+ * so the shortest distance from any port to a destination can be found right away.
+ * Hierarchies are built again on their own thread whenever their connections change.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+public final class PortGraphManager<T extends Cell<T, D>, D> {
+
+  private final Map<PortKey<T, D>, Port<T, D>> ports = new HashMap<>();
+  // Mode types -> start port -> end port -> the shortest stored path, if any
+  private final Map<ModeTypeGroup, Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>>> layers
+      = new HashMap<>();
+  private final Map<ModeTypeGroup, PortHierarchy<T, D>> hierarchies = new HashMap<>();
+  private final Set<ModeTypeGroup> building = new HashSet<>();
+  private final Map<ModeTypeGroup, PortLayer<T, D>> portLayers = new HashMap<>();
+  private long changes = 0;
+  private long portChanges = 0;  // changes to the ports themselves, after which port layers are built again
+  private long shortenings = 0;  // changes that may have made a connection shorter
+  @Nullable
+  private ExecutorService builder = null;
+  private boolean closed = false;
+
+  /**
+   * Add a port to the graph, like when a new portal link is found.
+   *
+   * @param port the port
+   */
+  public synchronized void addPort(@NotNull Port<T, D> port) {
+    if (ports.put(PortKey.of(port), port) == null) {
+      changes++;
+      portChanges++;
+    }
+  }
+
+  /**
+   * Remove a port and all of its connections from the graph, like when a portal link is broken.
+   *
+   * @param origin      the origin of the port
+   * @param destination the destination of the port
+   */
+  public synchronized void removePort(@NotNull T origin, @NotNull T destination) {
+    PortKey<T, D> key = new PortKey<>(origin, destination);
+    if (ports.remove(key) == null) {
+      return;
+    }
+    changes++;
+    portChanges++;
+    for (Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>> layer : layers.values()) {
+      layer.remove(key);
+      layer.values().forEach(row -> row.remove(key));
+    }
+  }
+
+  /**
+   * Tell the graph about a newly stored path, which may be better than the path of some connection.
+   *
+   * @param origin      the origin of the path
+   * @param destination the destination of the path
+   * @param modeTypes   the mode types used on the path
+   * @param path        the path
+   */
+  public synchronized void pathReported(@NotNull T origin,
+                                        @NotNull T destination,
+                                        @NotNull ModeTypeGroup modeTypes,
+                                        @NotNull Path<T, D> path) {
+    List<PortKey<T, D>> starts = new LinkedList<>();
+    List<PortKey<T, D>> ends = new LinkedList<>();
+    for (PortKey<T, D> key : ports.keySet()) {
+      if (key.destination.equals(origin)) {
+        starts.add(key);
+      }
+      if (key.origin.equals(destination)) {
+        ends.add(key);
+      }
+    }
+    if (starts.isEmpty() || ends.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<ModeTypeGroup, Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>>> layer
+        : layers.entrySet()) {
+      // Like stored records, a path may be used by anyone who may use all of its mode types
+      if (!layer.getKey().containsAll(modeTypes)) {
+        continue;
+      }
+      PortLayer<T, D> portLayer = portLayers.get(layer.getKey());
+      for (PortKey<T, D> start : starts) {
+        Map<PortKey<T, D>, Optional<StoredPath<T, D>>> row = layer.getValue().get(start);
+        if (row == null) {
+          continue;
+        }
+        for (PortKey<T, D> end : ends) {
+          Optional<StoredPath<T, D>> old = row.get(end);
+          if (old != null && (!old.isPresent() || path.getLength() < old.get().getLength())) {
+            Optional<StoredPath<T, D>> shorter = Optional.of(StoredPath.of(path));
+            row.put(end, shorter);
+            if (portLayer != null) {
+              portLayer.update(start, end, shorter, true);
+            }
+            changes++;
+            shortenings++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Forget every connection, so that they are all looked up in storage again,
+   * like after stored paths were cleared. The ports are kept.
+   */
+  public synchronized void invalidate() {
+    layers.clear();
+    portLayers.clear();
+    // Connections whose paths were cleared become as short as a straight line
+    changes++;
+    shortenings++;
+  }
+
+  /**
+   * Get the layer of connections between every pair of known ports that meet in the same domain,
+   * using paths that only use the given mode types.
+   * Ports that the graph doesn't know yet are added first.
+   * The same layer is given to every search until ports come or go,
+   * so a search doesn't have to go through every pair of ports itself.
+   * Connections that are not known yet are looked up in storage by the searches that need them,
+   * which then {@link #remember} them.
+   *
+   * @param searchPorts the ports of the search, which are all in the layer
+   * @param modeTypes   the mode types that may be used
+   * @return the layer
+   */
+  @NotNull
+  public synchronized PortLayer<T, D> layer(@NotNull Collection<Port<T, D>> searchPorts,
+                                            @NotNull ModeTypeGroup modeTypes) {
+    for (Port<T, D> port : searchPorts) {
+      if (ports.put(PortKey.of(port), port) == null) {
+        changes++;
+        portChanges++;
+      }
+    }
+    ModeTypeGroup group = new ModeTypeGroup(modeTypes.getAll());
+    PortLayer<T, D> portLayer = portLayers.get(group);
+    if (portLayer == null || portLayer.portChanges != portChanges) {
+      portLayer = new PortLayer<>(group, new ArrayList<>(ports.values()),
+          layers.getOrDefault(group, Collections.emptyMap()), portChanges);
+      portLayers.put(group, portLayer);
+    }
+    return portLayer;
+  }
+
+  /**
+   * Remember connections that a search looked up in storage, so no other search has to look them up.
+   * Connections whose ports were removed in the meantime are skipped,
+   * and any newer path that was reported in the meantime is kept.
+   *
+   * @param modeTypes   the mode types the paths were looked up with
+   * @param connections the connections
+   */
+  public synchronized void remember(@NotNull ModeTypeGroup modeTypes,
+                                    @NotNull Collection<Connection<T, D>> connections) {
+    ModeTypeGroup group = new ModeTypeGroup(modeTypes.getAll());
+    Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>> layer
+        = layers.computeIfAbsent(group, g -> new HashMap<>());
+    PortLayer<T, D> portLayer = portLayers.get(group);
+    for (Connection<T, D> connection : connections) {
+      PortKey<T, D> start = PortKey.of(connection.start);
+      PortKey<T, D> end = PortKey.of(connection.end);
+      Optional<StoredPath<T, D>> path = Optional.ofNullable(connection.path);
+      if (ports.containsKey(start) && ports.containsKey(end)
+          && layer.computeIfAbsent(start, key -> new HashMap<>()).putIfAbsent(end, path) == null) {
+        if (portLayer != null) {
+          portLayer.update(start, end, path, false);
+        }
+        changes++;
+      }
+    }
+  }
+
+  /**
+   * Get the contraction hierarchy of the connections that only use the given mode types,
+   * if hierarchies are enabled and one was built since any connection last got shorter.
+   * A connection that is not known yet, or that has no stored path, is as long as the straight line
+   * between its ends, so no connection is ever shorter in the hierarchy than it really is.
+   * A new hierarchy is built in the background if the connections changed since the last one.
+   *
+   * @param modeTypes the mode types
+   * @return the hierarchy, or null if there is none to trust right now
+   */
+  @Nullable
+  public synchronized PortHierarchy<T, D> hierarchy(@NotNull ModeTypeGroup modeTypes) {
+    if (!Settings.SEARCH_PORT_HIERARCHY.getValue()) {
+      return null;
+    }
+    ModeTypeGroup group = new ModeTypeGroup(modeTypes.getAll());
+    PortHierarchy<T, D> hierarchy = hierarchies.get(group);
+    if (hierarchy == null || hierarchy.changes != changes) {
+      build(group);
+    }
+    return hierarchy == null || hierarchy.shortenings != shortenings ? null : hierarchy;
+  }
+
+  private synchronized void build(ModeTypeGroup group) {
+    if (closed) {
+      return;
+    }
+    if (!building.add(group)) {
+      return;  // it'll be built again afterwards if anything changed in the meantime
+    }
+    if (builder == null) {
+      builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread builderThread = new Thread(runnable, "Journey Port Hierarchy Builder");
+        builderThread.setDaemon(true);
+        return builderThread;
+      });
+    }
+    builder.submit(() -> {
+      List<Port<T, D>> hierarchyPorts;
+      ContractionHierarchy.Builder hierarchyBuilder;
+      long builtChanges;
+      long builtShortenings;
+      synchronized (this) {
+        hierarchyPorts = new ArrayList<>(ports.values());
+        hierarchyBuilder = ContractionHierarchy.builder(hierarchyPorts.size());
+        Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>> layer
+            = layers.getOrDefault(group, Collections.emptyMap());
+        for (int start = 0; start < hierarchyPorts.size(); start++) {
+          Port<T, D> startPort = hierarchyPorts.get(start);
+          Map<PortKey<T, D>, Optional<StoredPath<T, D>>> row
+              = layer.getOrDefault(PortKey.of(startPort), Collections.emptyMap());
+          for (int end = 0; end < hierarchyPorts.size(); end++) {
+            Port<T, D> endPort = hierarchyPorts.get(end);
+            if (!startPort.getDestination().getDomain().equals(endPort.getOrigin().getDomain())) {
+              continue;
+            }
+            Optional<StoredPath<T, D>> path = row.get(PortKey.of(endPort));
+            double length = path != null && path.isPresent()
+                ? path.get().getLength()
+                : startPort.getDestination().distanceTo(endPort.getOrigin());
+            hierarchyBuilder.edge(start, end, length + endPort.getLength());
+          }
+        }
+        builtChanges = changes;
+        builtShortenings = shortenings;
+      }
+
+      // Contracting takes a while, so let searches go on in the meantime
+      PortHierarchy<T, D> hierarchy;
+      try {
+        hierarchy = new PortHierarchy<>(hierarchyPorts, hierarchyBuilder.build(),
+            builtChanges, builtShortenings);
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        synchronized (this) {
+          building.remove(group);
+        }
+        return;
+      }
+
+      synchronized (this) {
+        building.remove(group);
+        if (closed) {
+          return;
+        }
+        hierarchies.put(group, hierarchy);
+        if (changes != builtChanges) {
+          build(group);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop building hierarchies and shut down the thread that builds them, like when the plugin is disabled.
+   * A hierarchy that is still being built is thrown away, and no more are built afterwards.
+   */
+  public synchronized void close() {
+    closed = true;
+    if (builder != null) {
+      builder.shutdownNow();
+      builder = null;
+    }
+  }
+
+  /**
+   * Get the number of ports in the graph.
+   *
+   * @return the number of ports
+   */
+  public synchronized int size() {
+    return ports.size();
+  }
+
+  /**
+   * A connection from one port to another.
+   *
+   * @param <T> the location type
+   * @param <D> the domain type
+   */
+  public static final class Connection<T extends Cell<T, D>, D> {
+    private final Port<T, D> start;
+    private final Port<T, D> end;
+    @Nullable
+    private final StoredPath<T, D> path;
+
+    /**
+     * General constructor.
+     *
+     * @param start the port whose destination is the start of the connection
+     * @param end   the port whose origin is the end of the connection
+     * @param path  the shortest stored path of the connection, or null if no path is stored
+     */
+    public Connection(@NotNull Port<T, D> start, @NotNull Port<T, D> end, @Nullable StoredPath<T, D> path) {
+      this.start = start;
+      this.end = end;
+      this.path = path;
+    }
+
+    /**
+     * Get the port whose destination is the start of this connection.
+     *
+     * @return the port
+     */
+    public Port<T, D> start() {
+      return start;
+    }
+
+    /**
+     * Get the port whose origin is the end of this connection.
+     *
+     * @return the port
+     */
+    public Port<T, D> end() {
+      return end;
+    }
+
+    /**
+     * Get the shortest stored path of this connection.
+     *
+     * @return the path, or null if no path is stored
+     */
+    @Nullable
+    public StoredPath<T, D> path() {
+      return path;
+    }
+  }
+
+  /**
+   * The connections between ports that meet in the same domain, as {@link WeightedGraph.SharedEdges}
+   * between the ports, which every search of the same mode types starts from.
+   * The ports and connections never change, but the stored paths of the connections are filled in
+   * as they are found or reported.
+   *
+   * @param <T> the location type
+   * @param <D> the domain type
+   */
+  public static final class PortLayer<T extends Cell<T, D>, D> {
+    private final ModeTypeGroup modeTypes;
+    private final List<Port<T, D>> ports;
+    private final Map<PortKey<T, D>, Integer> indices = new HashMap<>();
+    private final WeightedGraph.SharedEdges edges;
+    private final int[] destinations;  // of the edges, to find them again
+    // Connection -> the shortest stored path, if any, or null if it was never looked up
+    private final AtomicReferenceArray<Optional<StoredPath<T, D>>> paths;
+    private final long portChanges;
+    @Nullable
+    private volatile double[][] landmarkDistances = null;
+
+    private PortLayer(ModeTypeGroup modeTypes, List<Port<T, D>> ports,
+                      Map<PortKey<T, D>, Map<PortKey<T, D>, Optional<StoredPath<T, D>>>> layer,
+                      long portChanges) {
+      this.modeTypes = modeTypes;
+      this.ports = ports;
+      this.portChanges = portChanges;
+      Map<D, List<Integer>> endsByDomain = new HashMap<>();
+      for (int i = 0; i < ports.size(); i++) {
+        indices.put(PortKey.of(ports.get(i)), i);
+        endsByDomain.computeIfAbsent(ports.get(i).getOrigin().getDomain(), d -> new ArrayList<>()).add(i);
+      }
+
+      // The ends of every start are in increasing order, so a connection can be found again quickly
+      int[] offsets = new int[ports.size() + 1];
+      for (int start = 0; start < ports.size(); start++) {
+        List<Integer> ends = endsByDomain.getOrDefault(ports.get(start).getDestination().getDomain(),
+            Collections.emptyList());
+        offsets[start + 1] = offsets[start] + ends.size() - (ends.contains(start) ? 1 : 0);
+      }
+      this.destinations = new int[offsets[ports.size()]];
+      this.paths = new AtomicReferenceArray<>(destinations.length);
+      int position = 0;
+      for (int start = 0; start < ports.size(); start++) {
+        Port<T, D> startPort = ports.get(start);
+        Map<PortKey<T, D>, Optional<StoredPath<T, D>>> row
+            = layer.getOrDefault(PortKey.of(startPort), Collections.emptyMap());
+        for (int end : endsByDomain.getOrDefault(startPort.getDestination().getDomain(),
+            Collections.emptyList())) {
+          if (end == start) {
+            continue;
+          }
+          destinations[position] = end;
+          paths.set(position, row.get(PortKey.of(ports.get(end))));
+          position++;
+        }
+      }
+      this.edges = new WeightedGraph.SharedEdges(offsets, destinations);
+    }
+
+    private void update(PortKey<T, D> start, PortKey<T, D> end, Optional<StoredPath<T, D>> path,
+                        boolean shorter) {
+      Integer startIndex = indices.get(start);
+      Integer endIndex = indices.get(end);
+      if (startIndex == null || endIndex == null) {
+        return;
+      }
+      int position = Arrays.binarySearch(destinations, edges.firstEdge(startIndex),
+          edges.firstEdge(startIndex + 1), endIndex);
+      if (position < 0) {
+        return;
+      }
+      paths.set(position, path);
+      if (shorter) {
+        // The landmarks may now think that some ports are farther away than they are
+        landmarkDistances = null;
+      }
+    }
+
+    /**
+     * Get the mode types of the paths of this layer.
+     *
+     * @return the mode types
+     */
+    public ModeTypeGroup modeTypes() {
+      return modeTypes;
+    }
+
+    /**
+     * Get the number of a port in this layer.
+     *
+     * @param port the port
+     * @return the number, or -1 if the port is not in the layer
+     */
+    public int indexOf(@NotNull Port<T, D> port) {
+      return indices.getOrDefault(PortKey.of(port), -1);
+    }
+
+    /**
+     * Get a port of this layer.
+     *
+     * @param index the number of the port
+     * @return the port
+     */
+    public Port<T, D> port(int index) {
+      return ports.get(index);
+    }
+
+    /**
+     * Get the number of ports in this layer.
+     *
+     * @return the number of ports
+     */
+    public int size() {
+      return ports.size();
+    }
+
+    /**
+     * Get the connections of this layer, between the numbers of the ports.
+     *
+     * @return the connections
+     */
+    public WeightedGraph.SharedEdges edges() {
+      return edges;
+    }
+
+    /**
+     * Check whether a connection was looked up in storage already, or had a path reported.
+     *
+     * @param position the position of the connection in the {@link #edges}
+     * @return true if it doesn't need to be looked up
+     */
+    public boolean isKnown(int position) {
+      return paths.get(position) != null;
+    }
+
+    /**
+     * Get the shortest stored path of a connection, as far as this layer knows.
+     *
+     * @param position the position of the connection in the {@link #edges}
+     * @return the path, or null if there is none or it is not {@link #isKnown} yet
+     */
+    @Nullable
+    public StoredPath<T, D> path(int position) {
+      Optional<StoredPath<T, D>> path = paths.get(position);
+      return path == null ? null : path.orElse(null);
+    }
+
+    /**
+     * Get the shortest distances from the destinations of a few landmark ports
+     * to the destinations of every port, where a connection is as long as its stored path,
+     * or as the straight distance if no path is stored.
+     * Every next landmark is as far as possible from the landmarks chosen before it.
+     * They are only calculated again after a connection got shorter, so searches can share them.
+     *
+     * @param count the most landmarks
+     * @return landmark -> port -> distance
+     */
+    public double[][] landmarkDistances(int count) {
+      double[][] distances = landmarkDistances;
+      if (distances != null && distances.length == Math.min(count, ports.size())) {
+        return distances;
+      }
+      synchronized (this) {
+        distances = landmarkDistances;
+        if (distances == null || distances.length != Math.min(count, ports.size())) {
+          distances = calculateLandmarkDistances(Math.min(count, ports.size()));
+          landmarkDistances = distances;
+        }
+        return distances;
+      }
+    }
+
+    private double[][] calculateLandmarkDistances(int count) {
+      double[][] distances = new double[count][];
+      double[] closestLandmark = new double[ports.size()];
+      Arrays.fill(closestLandmark, Double.POSITIVE_INFINITY);
+      int landmark = 0;
+      for (int i = 0; i < count; i++) {
+        distances[i] = distancesFrom(landmark);
+        int next = -1;
+        for (int port = 0; port < ports.size(); port++) {
+          closestLandmark[port] = Math.min(closestLandmark[port], distances[i][port]);
+          if (closestLandmark[port] > 0 && (next < 0 || closestLandmark[port] > closestLandmark[next])) {
+            next = port;
+          }
+        }
+        if (next < 0) {
+          return Arrays.copyOf(distances, i + 1);  // every port is a landmark already
+        }
+        landmark = next;
+      }
+      return distances;
+    }
+
+    private double[] distancesFrom(int source) {
+      double[] distances = new double[ports.size()];
+      Arrays.fill(distances, Double.POSITIVE_INFINITY);
+      boolean[] done = new boolean[ports.size()];
+      PriorityQueue<double[]> toVisit = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[0]));
+      distances[source] = 0;
+      toVisit.add(new double[]{0, source});
+      while (!toVisit.isEmpty()) {
+        int current = (int) toVisit.poll()[1];
+        if (done[current]) {
+          continue;
+        }
+        done[current] = true;
+        T start = ports.get(current).getDestination();
+        for (int position = edges.firstEdge(current); position < edges.firstEdge(current + 1); position++) {
+          int next = edges.destination(position);
+          StoredPath<T, D> path = path(position);
+          double distance = distances[current]
+              + (path == null ? start.distanceTo(ports.get(next).getOrigin()) : path.getLength())
+              + ports.get(next).getLength();
+          if (distance < distances[next]) {
+            distances[next] = distance;
+            toVisit.add(new double[]{distance, next});
+          }
+        }
+      }
+      return distances;
+    }
+  }
+
+  /**
+   * A {@link ContractionHierarchy} of the connections between ports,
+   * where every port is a node and the length of a connection includes the length of the port it ends at.
+   *
+   * @param <T> the location type
+   * @param <D> the domain type
+   */
+  public static final class PortHierarchy<T extends Cell<T, D>, D> {
+    private final List<Port<T, D>> ports;
+    private final Map<PortKey<T, D>, Integer> indices = new HashMap<>();
+    private final ContractionHierarchy hierarchy;
+    private final long changes;
+    private final long shortenings;
+
+    private PortHierarchy(List<Port<T, D>> ports, ContractionHierarchy hierarchy,
+                          long changes, long shortenings) {
+      this.ports = ports;
+      for (int i = 0; i < ports.size(); i++) {
+        indices.put(PortKey.of(ports.get(i)), i);
+      }
+      this.hierarchy = hierarchy;
+      this.changes = changes;
+      this.shortenings = shortenings;
+    }
+
+    /**
+     * Get the number of a port as a node of the hierarchy.
+     *
+     * @param port the port
+     * @return the number, or -1 if the port is not in the hierarchy
+     */
+    public int indexOf(@NotNull Port<T, D> port) {
+      return indices.getOrDefault(PortKey.of(port), -1);
+    }
+
+    /**
+     * Get the port of a node of the hierarchy.
+     *
+     * @param index the number of the node
+     * @return the port
+     */
+    public Port<T, D> port(int index) {
+      return ports.get(index);
+    }
+
+    /**
+     * Get the number of ports in the hierarchy.
+     *
+     * @return the number of ports
+     */
+    public int size() {
+      return ports.size();
+    }
+
+    /**
+     * Get the hierarchy itself.
+     *
+     * @return the hierarchy
+     */
+    public ContractionHierarchy hierarchy() {
+      return hierarchy;
+    }
+  }
+
+  private static final class PortKey<T extends Cell<T, D>, D> {
+    private final T origin;
+    private final T destination;
+
+    private PortKey(T origin, T destination) {
+      this.origin = origin;
+      this.destination = destination;
+    }
+
+    private static <T extends Cell<T, D>, D> PortKey<T, D> of(Port<T, D> port) {
+      return new PortKey<>(port.getOrigin(), port.getDestination());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      PortKey<?, ?> key = (PortKey<?, ?>) o;
+      return origin.equals(key.origin) && destination.equals(key.destination);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(origin, destination);
+    }
+  }
+
+}
@@ -32,6 +32,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A general mode of transportation which determines whether certain locations can be reached by
@@ -68,6 +69,32 @@ public abstract class Mode<T extends Cell<T, D>, D> {
     return options;
   }
 
+  /**
+   * Determine whether a single movement from the origin to the destination is possible
+   * with this mode. This is used to validate single steps of a previously calculated path,
+   * so it does not dispatch any events or delay the algorithm.
+   *
+   * <p>By default, this collects all the destinations of the origin and checks whether
+   * one of them is the destination. Implementations should override this with a targeted
+   * check whenever they can do so without enumerating every movement option.
+   *
+   * @param origin      the original location
+   * @param destination the location to move to
+   * @return true if the destination can be reached in one movement
+   */
+  public boolean canReach(@NotNull T origin, @NotNull T destination) {
+    // The options are collected quietly, which the list itself tells accept and reject,
+    // so the same mode can check steps on many threads at once
+    List<Option> options = new QuietOptions();
+    collectDestinations(origin, options);
+    for (Option option : options) {
+      if (destination.equals(option.getLocation())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Accept a location and its distance to the list of possible options.
    * This adds it to the list and performs other somewhat unnecessary management operations.
@@ -81,6 +108,9 @@ public abstract class Mode<T extends Cell<T, D>, D> {
                               double distance,
                               @NotNull List<Option> options) {
     options.add(new Option(destination, distance));
+    if (options instanceof QuietOptions) {
+      return;
+    }
     delay();
     JourneyCommon.<T, D>getSearchEventDispatcher()
         .dispatch(new ModeSuccessEvent<>(session, destination, getType()));
@@ -95,6 +125,20 @@ public abstract class Mode<T extends Cell<T, D>, D> {
    * @param destination the rejected destination
    */
   protected final void reject(@NotNull T destination) {
+    reject(destination, null);
+  }
+
+  /**
+   * Reject a location, like {@link #reject(Cell)}, while collecting options into the given list.
+   * Implementations should pass along the list they were given, so checks of single steps stay quiet.
+   *
+   * @param destination the rejected destination
+   * @param options     the options list, passed from the previous caller
+   */
+  protected final void reject(@NotNull T destination, @Nullable List<Option> options) {
+    if (options instanceof QuietOptions) {
+      return;
+    }
     delay();
     JourneyCommon.<T, D>getSearchEventDispatcher()
         .dispatch(new ModeFailureEvent<>(session, destination, getType()));
@@ -123,6 +167,12 @@ public abstract class Mode<T extends Cell<T, D>, D> {
   @NotNull
   public abstract ModeType getType();
 
+  /**
+   * A list of options that are collected without any events or delays.
+   */
+  private final class QuietOptions extends LinkedList<Option> {
+  }
+
   /**
    * A record to store a movement option. It just contains a location and a distance to that location.
    */
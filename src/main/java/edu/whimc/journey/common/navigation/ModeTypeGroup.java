@@ -72,6 +72,35 @@ public class ModeTypeGroup implements Serializable {
     return modeTypeGroup;
   }
 
+  /**
+   * Create a mode type group from the accumulation of another group.
+   *
+   * @param accumulation the accumulation
+   * @return a new mode type group
+   * @see #getAccumulation()
+   */
+  public static ModeTypeGroup fromAccumulation(long accumulation) {
+    ModeTypeGroup modeTypeGroup = new ModeTypeGroup();
+    for (ModeType modeType : ModeType.values()) {
+      if ((accumulation & modeType.getAccumulationId()) != 0) {
+        modeTypeGroup.add(modeType);
+      }
+    }
+    return modeTypeGroup;
+  }
+
+  /**
+   * Get the accumulation of this group, which is the bitwise union of the
+   * accumulation ids of all its mode types.
+   * Another group is a subset of this one if and only if
+   * the bitwise intersection of their accumulations is equal to its accumulation.
+   *
+   * @return the accumulation
+   */
+  public long getAccumulation() {
+    return accumulation;
+  }
+
   /**
    * Add a mode type to the group.
    *
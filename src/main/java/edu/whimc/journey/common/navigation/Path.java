@@ -25,9 +25,13 @@
 package edu.whimc.journey.common.navigation;
 
 import com.google.common.collect.Lists;
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -42,6 +46,14 @@ public class Path<T extends Cell<T, D>, D> implements Serializable {
   private final ArrayList<Step<T, D>> steps;
   private final double length;
 
+  /*
+   * The chunk version at which all steps were last verified, and the mode types
+   * that were used to verify them. Any step whose chunks have not changed since then
+   * does not need to be checked again with at least those mode types.
+   */
+  private transient long verifiedVersion = -1;
+  private transient Set<ModeType> verifiedModeTypes;
+
   /**
    * General constructor.
    *
@@ -124,26 +136,59 @@ public class Path<T extends Cell<T, D>, D> implements Serializable {
 
   /**
    * Verify if the path is still valid and traversable with the given mode collection.
+   * Steps are checked with {@link Mode#canReach}, and steps whose surrounding box lies entirely
+   * in chunks that have not changed since this path was last verified are skipped.
    *
    * @param modes all modes
    * @return true if the path can be traversed, or false if it is impassable
    */
   public boolean test(Collection<Mode<T, D>> modes) {
-    stepLoop:
+    ChunkVersionManager chunkVersionManager = JourneyCommon.getChunkVersionManager();
+    long version = chunkVersionManager.currentVersion();
+
+    Set<ModeType> modeTypes = EnumSet.noneOf(ModeType.class);
+    for (Mode<T, D> mode : modes) {
+      modeTypes.add(mode.getType());
+    }
+    // We can only trust the last verification if we have at least the same abilities now.
+    // Deserialized paths were never verified, since the verification isn't serialized.
+    boolean trustVerification = verifiedVersion >= 0
+        && verifiedModeTypes != null
+        && modeTypes.containsAll(verifiedModeTypes);
+
+    T from;
+    T to;
     for (int i = 0; i < steps.size() - 1; i++) {
-      for (Mode<T, D> mode : modes) {
-        for (Mode<T, D>.Option option : mode.getDestinations(steps.get(i).location())) {
-          if (steps.get(i + 1).location().equals(option.getLocation())) {
-            continue stepLoop;  // we found a mode that gave us a fitting option. Continue to the next step.
-          }
-        }
+      from = steps.get(i).location();
+      to = steps.get(i + 1).location();
+      if (trustVerification && !chunkVersionManager.changedSince(from, to, verifiedVersion)) {
+        continue;  // Nothing changed around this step since we last checked it
+      }
+      if (!canReach(modes, from, to, steps.get(i + 1).modeType())) {
+        // No mode can make this step, so fail.
+        return false;
       }
-      // We've exhausted all modes (and each mode's options) for this step, so fail.
-      return false;
     }
+    verifiedVersion = version;
+    verifiedModeTypes = modeTypes;
     return true;
   }
 
+  private boolean canReach(Collection<Mode<T, D>> modes, T from, T to, ModeType stepType) {
+    // Try the mode that originally made this step first, it's most likely to succeed
+    for (Mode<T, D> mode : modes) {
+      if (mode.getType() == stepType && mode.canReach(from, to)) {
+        return true;
+      }
+    }
+    for (Mode<T, D> mode : modes) {
+      if (mode.getType() != stepType && mode.canReach(from, to)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Get domain of this path (there is only one!).
    *
@@ -25,19 +25,22 @@
 package edu.whimc.journey.common.search;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.manager.PortGraphManager;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.Itinerary;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
 import edu.whimc.journey.common.navigation.Port;
 import edu.whimc.journey.common.search.event.FoundSolutionEvent;
 import edu.whimc.journey.common.search.event.IgnoreCacheSearchEvent;
 import edu.whimc.journey.common.search.event.StartSearchEvent;
 import edu.whimc.journey.common.search.event.StopSearchEvent;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -79,49 +82,35 @@ public abstract class DestinationGoalSearchSession<T extends Cell<T, D>, D> exte
 
     state = ResultState.RUNNING;
 
-    Set<D> allDomains = new HashSet<>();
-
-    for (Port<T, D> port : this.ports) {
-      allDomains.add(port.getOrigin().getDomain());
-      allDomains.add(port.getDestination().getDomain());
-    }
-
     Map<D, List<Port<T, D>>> leapsByOriginDomain = new HashMap<>();
     Map<D, List<Port<T, D>>> leapsByDestinationDomain = new HashMap<>();
-    // Prepare leap maps
-    for (D domain : allDomains) {
-      leapsByOriginDomain.put(domain, new LinkedList<>());
-      leapsByDestinationDomain.put(domain, new LinkedList<>());
-    }
-
-    // Fill leap maps
     for (Port<T, D> port : this.ports) {
-      leapsByOriginDomain.get(port.getOrigin().getDomain()).add(port);
-      leapsByDestinationDomain.get(port.getDestination().getDomain()).add(port);
+      leapsByOriginDomain.computeIfAbsent(port.getOrigin().getDomain(), d -> new LinkedList<>()).add(port);
+      leapsByDestinationDomain.computeIfAbsent(port.getDestination().getDomain(), d -> new LinkedList<>())
+          .add(port);
     }
 
-    SearchGraph<T, D> graph = new SearchGraph<>(this, origin, destination, this.ports, constructor);
+    // Connections between ports come from the shared port graph, which already knows most of them
+    ModeTypeGroup modeTypes = ModeTypeGroup.from(this.modes);
+    PortGraphManager.PortLayer<T, D> layer = JourneyCommon.<T, D>getPortGraphManager()
+        .layer(this.ports, modeTypes);
+    SearchGraph<T, D> graph = new SearchGraph<>(this, origin, destination, layer, this.ports,
+        this.modes, constructor);
+    // Ask for the hierarchy only now, so it is at least as recent as the connections
+    graph.setPortHierarchy(JourneyCommon.<T, D>getPortGraphManager().hierarchy(modeTypes));
 
     // Collect path trials
     if (origin.getDomain().equals(destination.getDomain())) {
       graph.addPathTrialOriginToDestination(this.modes);
     }
 
-    for (D domain : allDomains) {
-      for (Port<T, D> pathTrialOriginPort : leapsByDestinationDomain.get(domain)) {
-        for (Port<T, D> pathTrialDestinationPort : leapsByOriginDomain.get(domain)) {
-          graph.addPathTrialPortToPort(
-              pathTrialOriginPort,
-              pathTrialDestinationPort,
-              this.modes);
-          if (domain.equals(origin.getDomain())) {
-            graph.addPathTrialOriginToPort(pathTrialDestinationPort, this.modes);
-          }
-          if (domain.equals(destination.getDomain())) {
-            graph.addPathTrialPortToDestination(pathTrialOriginPort, this.modes);
-          }
-        }
-      }
+    // Only the origin and destination are new to this search
+    for (Port<T, D> port : leapsByOriginDomain.getOrDefault(origin.getDomain(), Collections.emptyList())) {
+      graph.addPathTrialOriginToPort(port, this.modes);
+    }
+    for (Port<T, D> port : leapsByDestinationDomain.getOrDefault(destination.getDomain(),
+        Collections.emptyList())) {
+      graph.addPathTrialPortToDestination(port, this.modes);
     }
 
     Itinerary<T, D> bestItinerary = null;
@@ -135,32 +124,50 @@ public abstract class DestinationGoalSearchSession<T extends Cell<T, D>, D> exte
         JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(new StopSearchEvent<>(this));
         return;
       } else {
-        // We have an overall solution with individual paths that aren't verified/calculated
+        // We have an overall solution with individual paths that aren't verified/calculated.
         ItineraryTrial.TrialResult<T, D> trialResult = itineraryTrial.attempt(usingCache);
-        if (trialResult.itinerary().isPresent()) {
-          // There is an itinerary solution!
-
-          if (bestItinerary == null
-              || trialResult.itinerary().get().getLength() < bestItinerary.getLength()) {
-            bestItinerary = trialResult.itinerary().get();
-            this.state = ResultState.RUNNING_SUCCESSFUL;
-            JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(
-                new FoundSolutionEvent<>(this, trialResult.itinerary().get()));
+        boolean changedProblem = trialResult.changedProblem();
+        Optional<Itinerary<T, D>> itinerary = trialResult.itinerary();
+        int alternativeCount = Settings.SEARCH_ALTERNATIVES.getValue();
+        if (!itinerary.isPresent() && alternativeCount > 1 && !this.state.isCanceled()) {
+          // The best one turned out to be blocked, so fall back to the next best ones
+          // instead of solving again for each of them
+          for (ItineraryTrial<T, D> alternative : graph.calculateAlternatives(alternativeCount)) {
+            if (this.state.isCanceled()) {
+              break;
+            }
+            ItineraryTrial.TrialResult<T, D> alternativeResult = alternative.attempt(usingCache);
+            changedProblem |= alternativeResult.changedProblem();
+            if (alternativeResult.itinerary().isPresent()) {
+              itinerary = alternativeResult.itinerary();
+              break;
+            }
           }
         }
 
+        if (itinerary.isPresent()
+            && (bestItinerary == null || itinerary.get().getLength() < bestItinerary.getLength())) {
+          // There is an itinerary solution!
+          bestItinerary = itinerary.get();
+          this.state = ResultState.RUNNING_SUCCESSFUL;
+          JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(
+              new FoundSolutionEvent<>(this, itinerary.get()));
+        }
+
         // Do a quick check to see if the search was canceled before we try to return a value
         if (this.state.isCanceled()) {
           break;
         }
 
-        if (!trialResult.changedProblem()) {
+        if (!changedProblem) {
           // This result did not change the problem.
           // If run again, then, we would get the same solution to the graph.
           if (usingCache) {
             // Turn off the use of the cache. Maybe we can find better solution by re-solving some paths.
             JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(new IgnoreCacheSearchEvent<>(this));
             usingCache = false;
+            // The bounds of the graph came from the cache too
+            graph.setUsingLandmarks(false);
             // continue...
           } else {
             // The problem hasn't changed, and we aren't using the cache,
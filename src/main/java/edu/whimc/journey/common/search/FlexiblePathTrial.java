@@ -25,6 +25,7 @@
 package edu.whimc.journey.common.search;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.data.StoredPath;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.Mode;
 import edu.whimc.journey.common.navigation.ModeType;
@@ -83,8 +84,9 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
   private final List<Mode<T, D>> modes = new LinkedList<>();
   @Getter
   private double length;
-  @Getter
   private Path<T, D> path;
+  @Nullable
+  private StoredPath<T, D> storedPath;  // read into the path the first time the path is needed
   @Getter
   private ResultState state;
   @Getter
@@ -121,6 +123,7 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
                               Completer<T, D> completer,
                               double length,
                               @Nullable Path<T, D> path,
+                              @Nullable StoredPath<T, D> storedPath,
                               ResultState state,
                               boolean fromCache) {
     this.session = session;
@@ -131,12 +134,29 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
     this.completer = completer;
     this.length = length;
     this.path = path;
+    this.storedPath = storedPath;
     this.state = state;
     this.fromCache = fromCache;
   }
 
+  /**
+   * Get the path that this trial found, or that was found for it in storage.
+   * A stored path is only read the first time this is called.
+   *
+   * @return the path, or null if there is none
+   */
+  @Nullable
+  public Path<T, D> getPath() {
+    if (storedPath != null) {
+      path = storedPath.load();
+      storedPath = null;
+    }
+    return path;
+  }
+
   private FlexiblePathTrial.TrialResult<T, D> resultFail() {
     this.state = ResultState.STOPPED_FAILED;
+    this.storedPath = null;
     this.length = Double.MAX_VALUE;
     this.fromCache = false;
     JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(new StopPathSearchEvent<>(session,
@@ -152,6 +172,7 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
     this.state = ResultState.STOPPED_SUCCESSFUL;
     this.length = length;
     this.path = new Path<>(origin, new ArrayList<>(steps), length);
+    this.storedPath = null;
     this.fromCache = false;
     JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(new StopPathSearchEvent<>(session,
         this,
@@ -162,6 +183,7 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
 
   private FlexiblePathTrial.TrialResult<T, D> resultCancel() {
     this.state = ResultState.STOPPED_CANCELED;
+    this.storedPath = null;
     this.length = Double.MAX_VALUE;
     this.fromCache = false;
     JourneyCommon.<T, D>getSearchEventDispatcher().dispatch(new StopPathSearchEvent<>(session,
@@ -185,7 +207,9 @@ public class FlexiblePathTrial<T extends Cell<T, D>, D> implements Resulted {
     //  then don't return this.
     if (!this.fromCache || useCacheIfPossible) {
       if (this.state == ResultState.STOPPED_SUCCESSFUL) {
-        if (path.test(modes)) {
+        // A stored path may have been removed since it was found, then we just calculate it again
+        Path<T, D> path = getPath();
+        if (path != null && path.test(modes)) {
           return new TrialResult<>(Optional.of(path), false);
         }
       } else if (this.state == ResultState.STOPPED_FAILED) {
@@ -0,0 +1,390 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Mode;
+import edu.whimc.journey.common.navigation.ModeType;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Step;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reverse shortest-path tree rooted at some landmark cell, like a public endpoint.
+ * Every cell in the tree knows the next cell to move to on its shortest path to the root,
+ * so the path from any cell in the tree to the root is found with a simple walk up the tree.
+ *
+ * <p>The tree only extends out to a bounded radius and holds a bounded number of cells.
+ * It remembers the chunk version at which it was last built, and when chunks change,
+ * only the branches that pass through those chunks are cut off and grown back.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+public final class LandmarkTree<T extends Cell<T, D>, D> {
+
+  /**
+   * The most a single movement of any mode may rise.
+   */
+  private static final int MAX_RISE = 1;
+  /**
+   * The most a single movement of any mode may fall.
+   */
+  private static final int MAX_FALL = 3;
+  private static final int CHUNK_SHIFT = 4;
+
+  private final T root;
+  private final ModeTypeGroup modeTypes;
+  private final Cell.CellConstructor<T, D> constructor;
+  private final double radiusSquared;
+  private final int maxCells;
+
+  private final Map<T, Node> nodes = new HashMap<>();
+  // One sample cell for every chunk that the tree depends on, to compare against chunk versions
+  private final Map<Long, T> chunkSamples = new HashMap<>();
+  private long builtVersion = -1;
+
+  /**
+   * General constructor. The tree is empty until it is first {@link #update}d.
+   *
+   * @param root        the root of the tree, which every path leads to
+   * @param modeTypes   the mode types with which the tree is built
+   * @param constructor the constructor to create new cells
+   * @param radius      the maximum distance from the root of any cell in the tree
+   * @param maxCells    the maximum number of cells in the tree
+   */
+  public LandmarkTree(@NotNull T root,
+                      @NotNull ModeTypeGroup modeTypes,
+                      @NotNull Cell.CellConstructor<T, D> constructor,
+                      int radius,
+                      int maxCells) {
+    this.root = root;
+    this.modeTypes = new ModeTypeGroup(modeTypes.getAll());
+    this.constructor = constructor;
+    this.radiusSquared = (double) radius * radius;
+    this.maxCells = maxCells;
+  }
+
+  /**
+   * Get the root of the tree.
+   *
+   * @return the root
+   */
+  @NotNull
+  public T getRoot() {
+    return root;
+  }
+
+  /**
+   * Get the mode types with which this tree was built.
+   *
+   * @return the mode types
+   */
+  @NotNull
+  public ModeTypeGroup getModeTypes() {
+    return modeTypes;
+  }
+
+  /**
+   * Get the number of cells in the tree.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return nodes.size();
+  }
+
+  /**
+   * Determine whether the tree must be updated before it can be trusted,
+   * either because it was never built or because some chunk it depends on has changed.
+   *
+   * @return true if the tree is stale
+   */
+  public synchronized boolean isStale() {
+    return builtVersion < 0 || !changedChunks().isEmpty();
+  }
+
+  /**
+   * Build the tree, or bring it up to date with the world if it was already built.
+   * Only the parts of the tree that depend on changed chunks are recalculated.
+   *
+   * @param modes the modes to use to move between cells, which should have the types of this tree
+   */
+  public synchronized void update(@NotNull Collection<Mode<T, D>> modes) {
+    long version = JourneyCommon.getChunkVersionManager().currentVersion();
+    PriorityQueue<Entry> queue = new PriorityQueue<>();
+    if (builtVersion < 0) {
+      nodes.clear();
+      chunkSamples.clear();
+      nodes.put(root, new Node(null, ModeType.NONE, 0));
+      trackChunks(root);
+      queue.add(new Entry(root, 0));
+    } else {
+      Set<Long> changed = changedChunks();
+      if (changed.isEmpty()) {
+        builtVersion = version;
+        return;
+      }
+      Set<T> pruned = prune(changed);
+      // Grow back from every remaining cell near the changed chunks or next to a removed cell
+      Set<T> seeds = new HashSet<>();
+      for (T cell : nodes.keySet()) {
+        if (nearChunks(cell, changed)) {
+          seeds.add(cell);
+        }
+      }
+      for (T cell : pruned) {
+        for (int offX = -1; offX <= 1; offX++) {
+          for (int offY = -MAX_FALL; offY <= MAX_RISE; offY++) {
+            for (int offZ = -1; offZ <= 1; offZ++) {
+              T neighbor = constructor.construct(cell.getX() + offX,
+                  cell.getY() + offY,
+                  cell.getZ() + offZ,
+                  cell.getDomainId());
+              if (nodes.containsKey(neighbor)) {
+                seeds.add(neighbor);
+              }
+            }
+          }
+        }
+      }
+      for (T seed : seeds) {
+        queue.add(new Entry(seed, nodes.get(seed).distance));
+      }
+    }
+    grow(queue, modes);
+    builtVersion = version;
+  }
+
+  /**
+   * Get the path from some cell in the tree to the root.
+   * The tree should be brought up to date with {@link #update} before calling this.
+   *
+   * @param origin the origin of the path
+   * @return the path, or null if the origin is not in the tree
+   */
+  @Nullable
+  public synchronized Path<T, D> pathFrom(@NotNull T origin) {
+    Node node = nodes.get(origin);
+    if (node == null) {
+      return null;
+    }
+    double length = node.distance;
+    List<Step<T, D>> steps = new ArrayList<>();
+    steps.add(new Step<>(origin, 0, ModeType.NONE));
+    T current = origin;
+    while (node.next != null) {
+      steps.add(new Step<>(node.next, current.distanceTo(node.next), node.modeType));
+      current = node.next;
+      node = nodes.get(current);
+    }
+    return new Path<>(origin, steps, length);
+  }
+
+  /*
+   * Reverse Dijkstra: every cell popped from the queue has its final distance to the root,
+   * so we look for all the cells that can move onto it in one step.
+   */
+  private void grow(PriorityQueue<Entry> queue, Collection<Mode<T, D>> modes) {
+    while (!queue.isEmpty()) {
+      Entry entry = queue.poll();
+      Node settled = nodes.get(entry.cell);
+      if (settled == null || entry.distance > settled.distance) {
+        continue;  // outdated entry
+      }
+      for (int offX = -1; offX <= 1; offX++) {
+        for (int offY = -MAX_RISE; offY <= MAX_FALL; offY++) {
+          for (int offZ = -1; offZ <= 1; offZ++) {
+            if (offX == 0 && offY == 0 && offZ == 0) {
+              continue;
+            }
+            T candidate = constructor.construct(entry.cell.getX() + offX,
+                entry.cell.getY() + offY,
+                entry.cell.getZ() + offZ,
+                entry.cell.getDomainId());
+            if (candidate.distanceToSquared(root) > radiusSquared) {
+              continue;
+            }
+            double distance = entry.distance + candidate.distanceTo(entry.cell);
+            Node existing = nodes.get(candidate);
+            if (existing != null && existing.distance <= distance) {
+              continue;
+            }
+            if (existing == null && nodes.size() >= maxCells) {
+              continue;
+            }
+            ModeType modeType = reach(modes, candidate, entry.cell);
+            if (modeType == null) {
+              continue;
+            }
+            nodes.put(candidate, new Node(entry.cell, modeType, distance));
+            trackChunks(candidate);
+            queue.add(new Entry(candidate, distance));
+          }
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private ModeType reach(Collection<Mode<T, D>> modes, T origin, T destination) {
+    for (Mode<T, D> mode : modes) {
+      if (mode.canReach(origin, destination)) {
+        return mode.getType();
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Remove every cell whose step to the next cell touches a changed chunk,
+   * along with every cell whose path to the root goes through a removed cell.
+   * The removed cells are returned.
+   */
+  private Set<T> prune(Set<Long> changed) {
+    Map<T, Boolean> keep = new HashMap<>();
+    keep.put(root, true);
+    List<T> chain = new ArrayList<>();
+    for (T cell : nodes.keySet()) {
+      chain.clear();
+      T current = cell;
+      Boolean result = keep.get(current);
+      while (result == null) {
+        chain.add(current);
+        Node node = nodes.get(current);
+        if (changed.contains(chunkKey(current)) || changed.contains(chunkKey(node.next))) {
+          result = false;
+        } else {
+          current = node.next;
+          result = keep.get(current);
+        }
+      }
+      for (T link : chain) {
+        keep.put(link, result);
+      }
+    }
+    Set<T> pruned = new HashSet<>();
+    keep.forEach((cell, kept) -> {
+      if (!kept) {
+        nodes.remove(cell);
+        pruned.add(cell);
+      }
+    });
+    return pruned;
+  }
+
+  private Set<Long> changedChunks() {
+    ChunkVersionManager chunkVersionManager = JourneyCommon.getChunkVersionManager();
+    Set<Long> changed = new HashSet<>();
+    chunkSamples.forEach((key, sample) -> {
+      if (chunkVersionManager.changedSince(sample, builtVersion)) {
+        changed.add(key);
+      }
+    });
+    return changed;
+  }
+
+  /*
+   * A cell depends on its own chunk, but movements near the edge of a chunk
+   * also depend on the neighboring chunks.
+   */
+  private void trackChunks(T cell) {
+    int chunkX = cell.getX() >> CHUNK_SHIFT;
+    int chunkZ = cell.getZ() >> CHUNK_SHIFT;
+    for (int offX = -1; offX <= 1; offX++) {
+      for (int offZ = -1; offZ <= 1; offZ++) {
+        long key = chunkKey(chunkX + offX, chunkZ + offZ);
+        if (!chunkSamples.containsKey(key)) {
+          chunkSamples.put(key, constructor.construct((chunkX + offX) << CHUNK_SHIFT,
+              cell.getY(),
+              (chunkZ + offZ) << CHUNK_SHIFT,
+              cell.getDomainId()));
+        }
+      }
+    }
+  }
+
+  private boolean nearChunks(T cell, Set<Long> chunks) {
+    int chunkX = cell.getX() >> CHUNK_SHIFT;
+    int chunkZ = cell.getZ() >> CHUNK_SHIFT;
+    for (int offX = -1; offX <= 1; offX++) {
+      for (int offZ = -1; offZ <= 1; offZ++) {
+        if (chunks.contains(chunkKey(chunkX + offX, chunkZ + offZ))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static long chunkKey(Cell<?, ?> cell) {
+    return chunkKey(cell.getX() >> CHUNK_SHIFT, cell.getZ() >> CHUNK_SHIFT);
+  }
+
+  private static long chunkKey(int chunkX, int chunkZ) {
+    return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+  }
+
+  private final class Node {
+    @Nullable
+    private final T next;
+    private final ModeType modeType;
+    private final double distance;
+
+    private Node(@Nullable T next, ModeType modeType, double distance) {
+      this.next = next;
+      this.modeType = modeType;
+      this.distance = distance;
+    }
+  }
+
+  private final class Entry implements Comparable<Entry> {
+    private final T cell;
+    private final double distance;
+
+    private Entry(T cell, double distance) {
+      this.cell = cell;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(@NotNull Entry other) {
+      return Double.compare(distance, other.distance);
+    }
+  }
+
+}
@@ -24,6 +24,7 @@
 
 package edu.whimc.journey.common.search;
 
+import edu.whimc.journey.common.data.StoredPath;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.Mode;
 import edu.whimc.journey.common.navigation.Path;
@@ -49,6 +50,7 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
                     Collection<Mode<T, D>> modes,
                     double length,
                     Path<T, D> path,
+                    StoredPath<T, D> storedPath,
                     ResultState state,
                     boolean fromCache) {
     super(session, origin, modes,
@@ -57,6 +59,7 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
             <= SUFFICIENT_COMPLETION_DISTANCE_SQUARED,
         length,
         path,
+        storedPath,
         state,
         fromCache);
     this.destination = destination;
@@ -86,7 +89,7 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
                                                                      Path<T, D> path) {
     return new PathTrial<>(session, origin, destination,
         modes,
-        path.getLength(), path,
+        path.getLength(), path, null,
         ResultState.STOPPED_SUCCESSFUL, false);
   }
 
@@ -106,7 +109,7 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
                                                                  Collection<Mode<T, D>> modes) {
     return new PathTrial<>(session, origin, destination,
         modes,
-        Double.MAX_VALUE, null,
+        Double.MAX_VALUE, null, null,
         ResultState.STOPPED_FAILED, false);
   }
 
@@ -128,7 +131,7 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
                                                                       Collection<Mode<T, D>> modes) {
     return new PathTrial<>(session, origin, destination,
         modes,
-        origin.distanceTo(destination), null,
+        origin.distanceTo(destination), null, null,
         ResultState.IDLE, false);
   }
 
@@ -149,9 +152,32 @@ public class PathTrial<T extends Cell<T, D>, D> extends FlexiblePathTrial<T, D>
                                                                  Path<T, D> path) {
     return new PathTrial<>(session, origin, destination,
         modes,
-        path == null ? origin.distanceTo(destination) : path.getLength(), path,
+        path == null ? origin.distanceTo(destination) : path.getLength(), path, null,
         path == null ? ResultState.STOPPED_FAILED : ResultState.STOPPED_SUCCESSFUL,
         true);
   }
 
+  /**
+   * Get a path trial that has some result determined from the cache,
+   * where the path is only read from storage once it is needed.
+   *
+   * @param session     the session
+   * @param origin      the origin
+   * @param destination the destination
+   * @param storedPath  the stored path
+   * @param <T>         the location type
+   * @param <D>         the domain type
+   * @return the path trial
+   */
+  public static <T extends Cell<T, D>, D> PathTrial<T, D> cached(SearchSession<T, D> session,
+                                                                 T origin, T destination,
+                                                                 Collection<Mode<T, D>> modes,
+                                                                 StoredPath<T, D> storedPath) {
+    return new PathTrial<>(session, origin, destination,
+        modes,
+        storedPath.getLength(), null, storedPath,
+        ResultState.STOPPED_SUCCESSFUL,
+        true);
+  }
+
 }
\ No newline at end of file
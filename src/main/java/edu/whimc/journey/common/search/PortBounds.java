@@ -0,0 +1,57 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search;
+
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Port;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lower bounds on how far ports are from a destination, used to lead a {@link SearchGraph}
+ * towards its destination.
+ * The bounds must be consistent, so the graph never has to visit a node twice.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+interface PortBounds<T extends Cell<T, D>, D> {
+
+  /**
+   * Get a lower bound on the distance from the destination of a port to the destination.
+   *
+   * @param port the port
+   * @return the lower bound
+   */
+  double estimateAfter(@NotNull Port<T, D> port);
+
+  /**
+   * Get a lower bound on the distance from a cell to the destination.
+   *
+   * @param cell the cell
+   * @return the lower bound, which is infinite if there is no way from the cell to the destination
+   */
+  double estimateFrom(@NotNull T cell);
+
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search;
+
+import edu.whimc.journey.common.manager.PortGraphManager;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Port;
+import edu.whimc.journey.common.search.graph.ContractionHierarchy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The shortest distances from ports to a destination over the shared port graph,
+ * found with its {@link ContractionHierarchy}.
+ * Connections in the hierarchy are never longer than the ones of a search that uses stored paths,
+ * so these are lower bounds too, and the best ones there are until the connections are attempted.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+final class PortDistances<T extends Cell<T, D>, D> implements PortBounds<T, D> {
+
+  private final PortGraphManager.PortHierarchy<T, D> hierarchy;
+  private final T destination;
+  private final ContractionHierarchy.Target target;
+  private final double[] distances;  // port -> the distance after the port, once queried
+
+  /**
+   * General constructor.
+   *
+   * @param hierarchy   the hierarchy of the shared port graph
+   * @param destination the destination
+   */
+  PortDistances(@NotNull PortGraphManager.PortHierarchy<T, D> hierarchy, @NotNull T destination) {
+    this.hierarchy = hierarchy;
+    this.destination = destination;
+
+    // Any way to the destination ends by leaving a port in its domain, and at best goes straight from there
+    List<Integer> targets = new ArrayList<>();
+    List<Double> offsets = new ArrayList<>();
+    for (int i = 0; i < hierarchy.size(); i++) {
+      T cell = hierarchy.port(i).getDestination();
+      if (cell.getDomain().equals(destination.getDomain())) {
+        targets.add(i);
+        offsets.add(cell.distanceTo(destination));
+      }
+    }
+    this.target = hierarchy.hierarchy().target(targets.stream().mapToInt(Integer::intValue).toArray(),
+        offsets.stream().mapToDouble(Double::doubleValue).toArray());
+    this.distances = new double[hierarchy.size()];
+    Arrays.fill(distances, Double.NaN);
+  }
+
+  @Override
+  public double estimateAfter(@NotNull Port<T, D> port) {
+    int index = hierarchy.indexOf(port);
+    if (index < 0) {
+      return 0;  // it isn't known to the hierarchy, so we know nothing
+    }
+    return distanceAfter(index);
+  }
+
+  private double distanceAfter(int index) {
+    if (Double.isNaN(distances[index])) {
+      distances[index] = target.distanceFrom(index);
+    }
+    return distances[index];
+  }
+
+  /*
+   * The cell is either in the domain of the destination and goes straight there,
+   * or it goes straight to a port in its own domain first.
+   */
+  @Override
+  public double estimateFrom(@NotNull T cell) {
+    double estimate = cell.getDomain().equals(destination.getDomain())
+        ? cell.distanceTo(destination)
+        : Double.POSITIVE_INFINITY;
+    for (int i = 0; i < hierarchy.size(); i++) {
+      Port<T, D> port = hierarchy.port(i);
+      if (port.getOrigin().getDomain().equals(cell.getDomain())) {
+        estimate = Math.min(estimate,
+            cell.distanceTo(port.getOrigin()) + port.getLength() + distanceAfter(i));
+      }
+    }
+    return estimate;
+  }
+
+}
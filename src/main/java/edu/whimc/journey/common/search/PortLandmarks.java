@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search;
+
+import edu.whimc.journey.common.manager.PortGraphManager;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.Port;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lower bounds on how far any port is from a destination, used to lead a {@link SearchGraph}
+ * towards its destination, even across domains where straight distances mean nothing.
+ *
+ * <p>Two bounds are combined, and the larger one is used:
+ * <ul>
+ *   <li>Landmarks (the "ALT" method: A*, landmarks, and the triangle inequality).
+ *   A few ports are chosen as landmarks, and the shortest distance from each landmark
+ *   to every port is calculated over a graph of every port where each connection
+ *   is as long as its stored path, or as the straight distance if no path is stored.
+ *   These distances don't depend on the destination, so the {@link PortGraphManager.PortLayer}
+ *   keeps them for every search.
+ *   Because a path from a landmark to the destination is never shorter than the path from the landmark
+ *   to a port, the difference of the two is a lower bound on the distance from the port to the destination.
+ *   <li>Domains. Getting to the destination from another domain costs at least the lengths of the ports
+ *   that need to be taken to get to the domain of the destination.
+ * </ul>
+ * Both bounds are consistent, so the search never has to visit a node twice,
+ * as long as no connection turns out shorter than what was known when the bounds were calculated.
+ *
+ * @param <T> the location type
+ * @param <D> the domain type
+ */
+final class PortLandmarks<T extends Cell<T, D>, D> implements PortBounds<T, D> {
+
+  private final T destination;
+  private final PortGraphManager.PortLayer<T, D> layer;
+  // Landmark -> port -> distance from the destination of the landmark to the destination of the port
+  private final double[][] landmarkDistances;
+  // Landmark -> lower bound of the distance from the destination of the landmark to the destination
+  private final double[] landmarkBounds;
+  private final Map<D, Double> domainBounds = new HashMap<>();
+
+  /**
+   * General constructor.
+   *
+   * @param layer         the layer of connections between ports
+   * @param ports         the ports that may be used
+   * @param destination   the destination
+   * @param landmarkCount the number of landmarks to use
+   */
+  PortLandmarks(@NotNull PortGraphManager.PortLayer<T, D> layer,
+                @NotNull Collection<Port<T, D>> ports,
+                @NotNull T destination,
+                int landmarkCount) {
+    this.destination = destination;
+    this.layer = layer;
+    this.landmarkDistances = layer.landmarkDistances(landmarkCount);
+    this.landmarkBounds = new double[landmarkDistances.length];
+    for (int i = 0; i < landmarkDistances.length; i++) {
+      landmarkBounds[i] = boundToDestination(landmarkDistances[i]);
+    }
+    calculateDomainBounds(ports);
+  }
+
+  /*
+   * Any path from the landmark to the destination leaves the last port it takes
+   * and then goes to the destination, which is at least as far as the straight distance.
+   */
+  private double boundToDestination(double[] distances) {
+    double bound = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < layer.size(); i++) {
+      T cell = layer.port(i).getDestination();
+      if (cell.getDomain().equals(destination.getDomain())) {
+        bound = Math.min(bound, distances[i] + cell.distanceTo(destination));
+      }
+    }
+    return bound;
+  }
+
+  private void calculateDomainBounds(Collection<Port<T, D>> ports) {
+    domainBounds.put(destination.getDomain(), 0d);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Port<T, D> port : ports) {
+        Double after = domainBounds.get(port.getDestination().getDomain());
+        if (after == null) {
+          continue;
+        }
+        D domain = port.getOrigin().getDomain();
+        double before = after + port.getLength();
+        if (before < domainBounds.getOrDefault(domain, Double.POSITIVE_INFINITY)) {
+          domainBounds.put(domain, before);
+          changed = true;
+        }
+      }
+    }
+  }
+
+  @Override
+  public double estimateAfter(@NotNull Port<T, D> port) {
+    double estimate = estimateFrom(port.getDestination());
+    int index = layer.indexOf(port);
+    if (index < 0) {
+      return estimate;
+    }
+    for (int i = 0; i < landmarkDistances.length; i++) {
+      // Without a way from the landmark to the port or to the destination, the landmark tells us nothing
+      if (landmarkBounds[i] < Double.POSITIVE_INFINITY
+          && landmarkDistances[i][index] < Double.POSITIVE_INFINITY) {
+        estimate = Math.max(estimate, landmarkBounds[i] - landmarkDistances[i][index]);
+      }
+    }
+    return estimate;
+  }
+
+  @Override
+  public double estimateFrom(@NotNull T cell) {
+    // Only the domain of the cell is known to matter
+    return domainBounds.getOrDefault(cell.getDomain(), Double.POSITIVE_INFINITY);
+  }
+
+}
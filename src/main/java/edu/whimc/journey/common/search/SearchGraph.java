@@ -25,26 +25,47 @@
 package edu.whimc.journey.common.search;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.data.DataAccessException;
+import edu.whimc.journey.common.data.PathRecordManager;
+import edu.whimc.journey.common.data.StoredPath;
+import edu.whimc.journey.common.manager.PortGraphManager;
 import edu.whimc.journey.common.navigation.Cell;
 import edu.whimc.journey.common.navigation.Mode;
 import edu.whimc.journey.common.navigation.ModeType;
 import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
 import edu.whimc.journey.common.navigation.Port;
 import edu.whimc.journey.common.search.graph.WeightedGraph;
 import edu.whimc.journey.common.tools.AlternatingList;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
  * An implementation of a weighted graph to be used for the overall search algorithm.
  *
+ * <p>Edges are lazy: adding one only remembers where it goes.
+ * Stored paths are looked up, and {@link PathTrial}s are made, only for the edges leaving
+ * a node once the graph is first solved through that node,
+ * so a search with many ports only pays for the few ports it gets close to.
+ * The edges between ports are shared with every other search through the
+ * {@link PortGraphManager.PortLayer} of the port graph, so only the edges leaving the origin
+ * and reaching the destination belong to this graph alone.
+ *
  * @param <T> the location type
  * @param <D> the domain type
  */
-public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Port<T, D>, PathTrial<T, D>> {
+public final class SearchGraph<T extends Cell<T, D>, D>
+    extends WeightedGraph<Port<T, D>, SearchGraph<T, D>.Edge> {
 
   private final SearchSession<T, D> session;
   private final T origin;
@@ -52,6 +73,16 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
   private final T destination;
   private final Node destinationNode;
   private final Map<Port<T, D>, Node> portToNode = new HashMap<>();
+  private final PortGraphManager.PortLayer<T, D> layer;
+  private final boolean[] usablePorts;  // layer port -> whether this search may use it
+  private final Collection<Mode<T, D>> modes;
+  private final boolean destinationIsLandmark;
+  private final Map<Node, List<Edge>> unresolvedEdges = new HashMap<>();  // by the node they leave
+  private boolean usingLandmarks = true;
+  @Nullable
+  private PortGraphManager.PortHierarchy<T, D> hierarchy = null;
+  @Nullable
+  private PortBounds<T, D> bounds = null;
 
   private final Cell.CellConstructor<T, D> constructor;
 
@@ -61,18 +92,53 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    * @param session     the search session
    * @param origin      the origin of the entire problem
    * @param destination the destination of the entire problem
-   * @param ports       the ports
+   * @param layer       the layer of connections between ports, which has all the given ports
+   * @param ports       the ports that may be used
+   * @param modes       the modes used to traverse the paths between ports
+   * @param constructor the constructor to create cells of stored paths
    */
-  public SearchGraph(SearchSession<T, D> session, T origin, T destination, Collection<Port<T, D>> ports,
-                     Cell.CellConstructor<T, D> constructor) {
+  public SearchGraph(SearchSession<T, D> session, T origin, T destination,
+                     PortGraphManager.PortLayer<T, D> layer, Collection<Port<T, D>> ports,
+                     Collection<Mode<T, D>> modes, Cell.CellConstructor<T, D> constructor) {
     this.session = session;
     this.origin = origin;
     this.originNode = new Node(new Port<>(origin, origin, ModeType.NONE, 0));
     this.destination = destination;
     this.destinationNode = new Node(new Port<>(destination, destination, ModeType.NONE, 0));
     this.constructor = constructor;
+    this.layer = layer;
+    this.modes = modes;
 
-    ports.forEach(port -> portToNode.put(port, new Node(port)));
+    // Every port of the layer is a node, but only the ports of this search can be used
+    List<Node> layerNodes = new ArrayList<>(Collections.nCopies(layer.size(), null));
+    this.usablePorts = new boolean[layer.size()];
+    for (Port<T, D> port : ports) {
+      int index = layer.indexOf(port);
+      if (index < 0) {
+        throw new IllegalArgumentException("The port " + port + " is not in the port layer");
+      }
+      Node node = new Node(port);
+      portToNode.put(port, node);
+      layerNodes.set(index, node);
+      usablePorts[index] = true;
+    }
+    for (int i = 0; i < layerNodes.size(); i++) {
+      if (layerNodes.get(i) == null) {
+        layerNodes.set(i, new Node(layer.port(i)));
+      }
+    }
+    share(layer.edges(), layerNodes);
+
+    // Public endpoints are requested so often that we keep shortest-path trees around them
+    boolean landmark;
+    try {
+      landmark = JourneyCommon.<T, D>getDataManager()
+          .getPublicEndpointManager()
+          .hasPublicEndpoint(destination);
+    } catch (DataAccessException e) {
+      landmark = false;
+    }
+    this.destinationIsLandmark = landmark;
   }
 
   private Node getOriginNode() {
@@ -94,7 +160,7 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    * @param modes the mode types to supposedly get from the origin to the destination
    */
   public void addPathTrialOriginToDestination(Collection<Mode<T, D>> modes) {
-    addPathTrial(session, origin, destination, getOriginNode(), getDestinationNode(), modes);
+    addPathTrial(origin, destination, getOriginNode(), getDestinationNode(), modes);
   }
 
   /**
@@ -106,8 +172,7 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    * @param modes the mode types used to traverse the path
    */
   public void addPathTrialOriginToPort(Port<T, D> end, Collection<Mode<T, D>> modes) {
-    addPathTrial(session,
-        origin, end.getOrigin(),
+    addPathTrial(origin, end.getOrigin(),
         getOriginNode(), getLeapNode(end),
         modes);
   }
@@ -121,8 +186,7 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    * @param modes the mode types used to traverse the path
    */
   public void addPathTrialPortToDestination(Port<T, D> start, Collection<Mode<T, D>> modes) {
-    addPathTrial(session,
-        start.getDestination(), destination,
+    addPathTrial(start.getDestination(), destination,
         getLeapNode(start), getDestinationNode(),
         modes);
   }
@@ -138,35 +202,119 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    * @param modes the mode types used to traverse the path
    */
   public void addPathTrialPortToPort(Port<T, D> start, Port<T, D> end, Collection<Mode<T, D>> modes) {
-    addPathTrial(session, start.getDestination(), end.getOrigin(),
+    addPathTrial(start.getDestination(), end.getOrigin(),
         getLeapNode(start), getLeapNode(end), modes);
   }
 
-  private void addPathTrial(SearchSession<T, D> session, T origin, T destination,
-                            WeightedGraph<Port<T, D>, PathTrial<T, D>>.Node originNode,
-                            WeightedGraph<Port<T, D>, PathTrial<T, D>>.Node destinationNode,
+  @Override
+  protected Edge sharedEdge(Node originNode, Node destinationNode, int position) {
+    Edge edge = new Edge(originNode, originNode.getData().getDestination(),
+        destinationNode.getData().getOrigin(), modes);
+    edge.position = position;
+    if (!usablePorts[layer.edges().origin(position)] || !usablePorts[layer.edges().destination(position)]) {
+      edge.usable = false;
+      return edge;
+    }
+    // The layer may know the stored path already, so storage doesn't have to be checked again
+    if (layer.isKnown(position)) {
+      edge.lookedUp = true;
+      edge.storedPath = layer.path(position);
+    }
+    unresolvedEdges.computeIfAbsent(originNode, node -> new LinkedList<>()).add(edge);
+    return edge;
+  }
+
+  private void addPathTrial(T origin, T destination,
+                            Node originNode, Node destinationNode,
                             Collection<Mode<T, D>> modes) {
-    // First, try to access a cached path
-    ModeTypeGroup modeTypes = ModeTypeGroup.from(modes);
-    System.out.println("Seeing whether " + origin + " -> " + destination + " is stored");
-    if (JourneyCommon.<T, D>getDataManager()
-        .getPathRecordManager()
-        .containsRecord(origin, destination, modeTypes)) {
-      System.out.println("Yes");
-      addPathTrial(PathTrial.cached(session, origin, destination,
-              modes,
-              JourneyCommon.<T, D>getDataManager()
-                  .getPathRecordManager()
-                  .getPath(origin, destination, modeTypes, constructor)),
-          originNode, destinationNode);
-    } else {
-      System.out.println("No");
-      addPathTrial(PathTrial.approximate(session, origin, destination, modes), originNode, destinationNode);
+    addLazyEdge(originNode, destinationNode, new Edge(originNode, origin, destination, modes));
+  }
+
+  private void addLazyEdge(Node start, Node end, Edge edge) {
+    unresolvedEdges.computeIfAbsent(start, node -> new LinkedList<>()).add(edge);
+    addEdge(start, end, edge);
+  }
+
+  /**
+   * Create the path trials of every edge leaving a node that don't have one yet.
+   * This happens the first time the graph is solved through the node,
+   * so edges leaving nodes that are never reached never need their stored paths.
+   * The stored paths of the edges are looked up together.
+   *
+   * @param node the node
+   */
+  private void resolveEdges(Node node) {
+    List<Edge> edges = unresolvedEdges.remove(node);
+    if (edges == null) {
+      return;
+    }
+
+    List<Edge> toLookUp = new LinkedList<>();
+    for (Edge edge : edges) {
+      // First, try to walk the shortest-path tree of a landmark destination
+      if (!edge.lookedUp && destinationIsLandmark && edge.end.equals(this.destination)) {
+        Path<T, D> landmarkPath = JourneyCommon.<T, D>getLandmarkManager()
+            .findPath(edge.start, edge.end, edge.modes, constructor);
+        if (landmarkPath != null) {
+          edge.trial = PathTrial.cached(session, edge.start, edge.end, edge.modes, landmarkPath);
+          continue;
+        }
+      }
+      if (!edge.lookedUp) {
+        toLookUp.add(edge);
+      }
+    }
+
+    // Next, try to access cached paths, all at once
+    if (!toLookUp.isEmpty()) {
+      List<PathRecordManager.PathLookup<T, D>> lookups = new ArrayList<>(toLookUp.size());
+      toLookUp.forEach(edge -> lookups.add(edge.lookup()));
+      Map<PathRecordManager.PathLookup<T, D>, StoredPath<T, D>> storedPaths;
+      boolean lookedUp;
+      try {
+        storedPaths = JourneyCommon.<T, D>getDataManager()
+            .getPathRecordManager()
+            .findPaths(lookups, constructor);
+        lookedUp = true;
+      } catch (DataAccessException e) {
+        storedPaths = Collections.emptyMap();  // we can still calculate everything ourselves
+        lookedUp = false;  // and other searches will try to look them up again
+      }
+      Iterator<PathRecordManager.PathLookup<T, D>> lookupIterator = lookups.iterator();
+      for (Edge edge : toLookUp) {
+        edge.storedPath = storedPaths.get(lookupIterator.next());
+        edge.lookedUp = true;
+      }
+      if (lookedUp) {
+        rememberConnections(toLookUp);
+      }
+    }
+
+    for (Edge edge : edges) {
+      if (edge.trial == null) {
+        edge.trial = edge.storedPath == null
+            ? PathTrial.approximate(session, edge.start, edge.end, edge.modes)
+            : PathTrial.cached(session, edge.start, edge.end, edge.modes, edge.storedPath);
+        edge.storedPath = null;
+      }
     }
   }
 
-  private void addPathTrial(PathTrial<T, D> trial, Node start, Node end) {
-    addEdge(start, end, trial);
+  /*
+   * Let every other search know about the connections between ports that we looked up.
+   */
+  private void rememberConnections(List<Edge> edges) {
+    List<PortGraphManager.Connection<T, D>> connections = new LinkedList<>();
+    for (Edge edge : edges) {
+      if (edge.position >= 0) {
+        connections.add(new PortGraphManager.Connection<>(layer.port(layer.edges().origin(edge.position)),
+            layer.port(layer.edges().destination(edge.position)),
+            edge.storedPath));
+      }
+    }
+    if (!connections.isEmpty()) {
+      JourneyCommon.<T, D>getPortGraphManager().remember(layer.modeTypes(), connections);
+    }
   }
 
   /**
@@ -177,23 +325,133 @@ public final class SearchGraph<T extends Cell<T, D>, D> extends WeightedGraph<Po
    */
   @Nullable
   public ItineraryTrial<T, D> calculate() {
-    AlternatingList<Node, PathTrial<T, D>, Object> graphPath = findMinimumPath(originNode, destinationNode);
-    if (graphPath == null) {
-      return null;
+    prepareLandmarks();
+    AlternatingList<Node, Edge, Object> graphPath = findMinimumPath(originNode, destinationNode);
+    return graphPath == null ? null : toItineraryTrial(graphPath);
+  }
+
+  /**
+   * Calculate the best few itinerary trials using this graph, from shortest to longest.
+   * Itinerary trials that share a part of the way share the path trials of that part too,
+   * so attempting one of them also attempts the common parts of the others.
+   *
+   * @param count the most itinerary trials to calculate
+   * @return the itinerary trials, or an empty list if there is no solution at all
+   */
+  @NotNull
+  public List<ItineraryTrial<T, D>> calculateAlternatives(int count) {
+    prepareLandmarks();
+    List<ItineraryTrial<T, D>> trials = new ArrayList<>();
+    for (AlternatingList<Node, Edge, Object> graphPath
+        : findMinimumPaths(originNode, destinationNode, count)) {
+      trials.add(toItineraryTrial(graphPath));
+    }
+    return trials;
+  }
+
+  private void prepareLandmarks() {
+    if (!usingLandmarks || bounds != null || portToNode.isEmpty()) {
+      return;
+    }
+    if (hierarchy != null && portToNode.keySet().stream().allMatch(port -> hierarchy.indexOf(port) >= 0)) {
+      // The hierarchy already knows exactly how far every port is from the end
+      bounds = new PortDistances<>(hierarchy, destination);
     } else {
-      return new ItineraryTrial<>(session, origin,
-          graphPath.convert(node -> Objects.requireNonNull(node.getData()),
-              edge -> edge));
+      // The connections between ports that are known so far bound how far every port is from the end
+      bounds = new PortLandmarks<>(layer, portToNode.keySet(), destination,
+          Settings.SEARCH_LANDMARK_COUNT.getValue());
     }
   }
 
+  private ItineraryTrial<T, D> toItineraryTrial(AlternatingList<Node, Edge, Object> graphPath) {
+    // Every edge on the path was followed, so they all have trials
+    return new ItineraryTrial<>(session, origin,
+        graphPath.convert(node -> Objects.requireNonNull(node.getData()),
+            edge -> Objects.requireNonNull(edge.trial)));
+  }
+
+  /**
+   * Set whether the graph should be solved towards the destination first,
+   * using lower bounds of the distances from ports to the destination that are based on stored paths.
+   * The bounds may be too large once paths are calculated again instead of taken from storage,
+   * so they should no longer be used then, or else the shortest solution could be missed.
+   *
+   * @param usingLandmarks true to use the bounds
+   */
+  public void setUsingLandmarks(boolean usingLandmarks) {
+    this.usingLandmarks = usingLandmarks;
+    if (!usingLandmarks) {
+      bounds = null;
+    }
+  }
+
+  /**
+   * Set the contraction hierarchy of the shared port graph, to find out exactly how far ports are
+   * from the destination instead of only bounding it.
+   * It is only used if it knows every port of this graph, and only while {@link #setUsingLandmarks bounds}
+   * are used.
+   *
+   * @param hierarchy the hierarchy, or null to bound the distances without one
+   */
+  public void setPortHierarchy(@Nullable PortGraphManager.PortHierarchy<T, D> hierarchy) {
+    this.hierarchy = hierarchy;
+    this.bounds = null;
+  }
+
+  @Override
+  protected double estimate(Node node, Node destination) {
+    if (bounds == null || node == destinationNode) {
+      return 0;
+    }
+    if (node == originNode) {
+      return bounds.estimateFrom(origin);
+    }
+    return bounds.estimateAfter(node.getData());
+  }
+
   @Override
   protected double nodeWeight(Port<T, D> nodeData) {
     return nodeData.getLength();
   }
 
   @Override
-  protected double edgeLength(PathTrial<T, D> edge) {
-    return edge.getLength();
+  protected double edgeLength(Edge edge) {
+    if (!edge.usable) {
+      return Double.POSITIVE_INFINITY;  // a connection to or from a port this search may not use
+    }
+    // The graph only asks for the lengths of edges that it follows
+    if (edge.trial == null) {
+      resolveEdges(edge.origin);
+    }
+    return edge.trial.getLength();
+  }
+
+  /**
+   * An edge of the search graph, whose {@link PathTrial} is only made once the edge is followed.
+   * Until then, the edge only knows where it goes.
+   */
+  final class Edge {
+    private final Node origin;
+    private final T start;
+    private final T end;
+    private final Collection<Mode<T, D>> modes;
+    private int position = -1;  // in the port layer, if this is a connection between ports
+    private boolean usable = true;
+    private boolean lookedUp = false;
+    @Nullable
+    private StoredPath<T, D> storedPath;
+    @Nullable
+    private PathTrial<T, D> trial;
+
+    private Edge(Node origin, T start, T end, Collection<Mode<T, D>> modes) {
+      this.origin = origin;
+      this.start = start;
+      this.end = end;
+      this.modes = modes;
+    }
+
+    private PathRecordManager.PathLookup<T, D> lookup() {
+      return new PathRecordManager.PathLookup<>(start, end, ModeTypeGroup.from(modes));
+    }
   }
 }
@@ -0,0 +1,365 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A contraction hierarchy of a directed graph with fixed edge lengths,
+ * which answers shortest-distance queries while only visiting a handful of nodes.
+ *
+ * <p>Nodes are contracted one at a time, least important first. When a node is contracted,
+ * a shortcut is added between two of its neighbors if the way through the node was the only shortest way
+ * between them, which is checked with a short search that avoids the node (a "witness" search).
+ * Afterwards, a shortest path always goes up the order of contraction and then back down,
+ * so a query searches upwards from both of its ends until the searches meet.
+ *
+ * <p>Nodes are numbered from zero, and the hierarchy can't be changed after it is built.
+ * Build it again when the lengths change.
+ */
+public final class ContractionHierarchy {
+
+  private static final int WITNESS_SETTLE_LIMIT = 50;
+
+  private final int size;
+  // Node -> the edges leaving it towards nodes that were contracted later, with shortcuts
+  private final int[][] upNodes;
+  private final double[][] upLengths;
+  // Node -> the edges coming into it from nodes that were contracted later, with shortcuts, reversed
+  private final int[][] downNodes;
+  private final double[][] downLengths;
+  private final int shortcuts;
+
+  private ContractionHierarchy(Builder builder) {
+    this.size = builder.size;
+    this.upNodes = new int[size][];
+    this.upLengths = new double[size][];
+    this.downNodes = new int[size][];
+    this.downLengths = new double[size][];
+
+    List<Map<Integer, Double>> out = builder.out;
+    List<Map<Integer, Double>> in = builder.in;
+    Witness witness = new Witness(out);
+    boolean[] contracted = witness.contracted;
+    int[] contractedNeighbors = new int[size];
+    int shortcutCount = 0;
+
+    IndexedHeap order = new IndexedHeap(size);
+    for (int node = 0; node < size; node++) {
+      order.insertOrDecrease(node, priority(node, out, in, contractedNeighbors, witness));
+    }
+
+    while (!order.isEmpty()) {
+      int node = order.poll();
+      // Priorities go stale as neighbors are contracted, so check again before committing to this one
+      double priority = priority(node, out, in, contractedNeighbors, witness);
+      if (!order.isEmpty() && priority > order.peekKey()) {
+        order.insertOrDecrease(node, priority);
+        continue;
+      }
+
+      Map<Integer, Double> nodeOut = out.get(node);
+      Map<Integer, Double> nodeIn = in.get(node);
+      upNodes[node] = new int[nodeOut.size()];
+      upLengths[node] = new double[nodeOut.size()];
+      int position = 0;
+      for (Map.Entry<Integer, Double> edge : nodeOut.entrySet()) {
+        upNodes[node][position] = edge.getKey();
+        upLengths[node][position++] = edge.getValue();
+      }
+      downNodes[node] = new int[nodeIn.size()];
+      downLengths[node] = new double[nodeIn.size()];
+      position = 0;
+      for (Map.Entry<Integer, Double> edge : nodeIn.entrySet()) {
+        downNodes[node][position] = edge.getKey();
+        downLengths[node][position++] = edge.getValue();
+      }
+
+      contracted[node] = true;
+      for (Map.Entry<Integer, Double> start : nodeIn.entrySet()) {
+        for (Map.Entry<Integer, Double> shortcut
+            : witness.shortcuts(start.getKey(), start.getValue(), nodeOut).entrySet()) {
+          out.get(start.getKey()).merge(shortcut.getKey(), shortcut.getValue(), Math::min);
+          in.get(shortcut.getKey()).merge(start.getKey(), shortcut.getValue(), Math::min);
+          shortcutCount++;
+        }
+      }
+      for (int neighbor : nodeIn.keySet()) {
+        out.get(neighbor).remove(node);
+        contractedNeighbors[neighbor]++;
+      }
+      for (int neighbor : nodeOut.keySet()) {
+        in.get(neighbor).remove(node);
+        contractedNeighbors[neighbor]++;
+      }
+      nodeOut.clear();
+      nodeIn.clear();
+    }
+    this.shortcuts = shortcutCount;
+  }
+
+  /**
+   * Get a builder for a hierarchy of some number of nodes.
+   *
+   * @param size the number of nodes
+   * @return the builder
+   */
+  public static Builder builder(int size) {
+    return new Builder(size);
+  }
+
+  /*
+   * The fewer shortcuts contracting a node adds compared to the edges it removes, the sooner it goes,
+   * and nodes whose neighbors were contracted already wait, so the hierarchy stays shallow everywhere.
+   */
+  private static double priority(int node,
+                                 List<Map<Integer, Double>> out,
+                                 List<Map<Integer, Double>> in,
+                                 int[] contractedNeighbors,
+                                 Witness witness) {
+    int added = 0;
+    witness.contracted[node] = true;
+    for (Map.Entry<Integer, Double> start : in.get(node).entrySet()) {
+      added += witness.shortcuts(start.getKey(), start.getValue(), out.get(node)).size();
+    }
+    witness.contracted[node] = false;
+    return added - in.get(node).size() - out.get(node).size() + contractedNeighbors[node];
+  }
+
+  /**
+   * Get the number of nodes in the hierarchy.
+   *
+   * @return the number of nodes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the number of shortcuts that were added while building the hierarchy.
+   *
+   * @return the number of shortcuts
+   */
+  public int shortcuts() {
+    return shortcuts;
+  }
+
+  /**
+   * Prepare queries for the shortest distances from any node to a set of target nodes,
+   * where getting to each target costs some extra length on top.
+   * The backward half of every query is searched here once, so each query only needs its forward half.
+   *
+   * @param targets the target nodes
+   * @param offsets the extra length of each target
+   * @return the target, to query
+   */
+  @NotNull
+  public Target target(int[] targets, double[] offsets) {
+    return new Target(targets, offsets);
+  }
+
+  /**
+   * A set of target nodes, from which the shortest distance to the nearest one can be queried.
+   */
+  public final class Target {
+
+    private final double[] labels;  // node -> shortest distance upwards to the targets, if found
+
+    private Target(int[] targets, double[] offsets) {
+      labels = new double[size];
+      Arrays.fill(labels, Double.POSITIVE_INFINITY);
+      IndexedHeap toVisit = new IndexedHeap(size);
+      for (int i = 0; i < targets.length; i++) {
+        if (offsets[i] < labels[targets[i]]) {
+          labels[targets[i]] = offsets[i];
+          toVisit.insertOrDecrease(targets[i], offsets[i]);
+        }
+      }
+      while (!toVisit.isEmpty()) {
+        int current = toVisit.poll();
+        for (int i = 0; i < downNodes[current].length; i++) {
+          int next = downNodes[current][i];
+          double distance = labels[current] + downLengths[current][i];
+          if (distance < labels[next]) {
+            labels[next] = distance;
+            toVisit.insertOrDecrease(next, distance);
+          }
+        }
+      }
+    }
+
+    /**
+     * Get the shortest distance from a node to any of the targets, including the extra length of the target.
+     *
+     * @param node the node
+     * @return the distance, which is infinite if no target can be reached
+     */
+    public double distanceFrom(int node) {
+      double best = labels[node];
+      Map<Integer, Double> distances = new HashMap<>();
+      IndexedHeap toVisit = new IndexedHeap(size);
+      distances.put(node, 0d);
+      toVisit.insertOrDecrease(node, 0);
+      // The searches meet at the highest node of the shortest path, so stop once nothing closer is left
+      while (!toVisit.isEmpty() && toVisit.peekKey() < best) {
+        int current = toVisit.poll();
+        double distance = distances.get(current);
+        best = Math.min(best, distance + labels[current]);
+        for (int i = 0; i < upNodes[current].length; i++) {
+          int next = upNodes[current][i];
+          double nextDistance = distance + upLengths[current][i];
+          if (nextDistance < distances.getOrDefault(next, Double.POSITIVE_INFINITY)) {
+            distances.put(next, nextDistance);
+            toVisit.insertOrDecrease(next, nextDistance);
+          }
+        }
+      }
+      return best;
+    }
+  }
+
+  /**
+   * A builder of a {@link ContractionHierarchy}.
+   */
+  public static final class Builder {
+
+    private final int size;
+    private final List<Map<Integer, Double>> out;
+    private final List<Map<Integer, Double>> in;
+
+    private Builder(int size) {
+      this.size = size;
+      this.out = new ArrayList<>(size);
+      this.in = new ArrayList<>(size);
+      for (int node = 0; node < size; node++) {
+        out.add(new HashMap<>());
+        in.add(new HashMap<>());
+      }
+    }
+
+    /**
+     * Add an edge. If there already is an edge between the same nodes, only the shorter one is kept.
+     *
+     * @param origin      the origin node
+     * @param destination the destination node
+     * @param length      the length, which may not be negative
+     * @return this builder
+     */
+    public Builder edge(int origin, int destination, double length) {
+      if (origin == destination || length == Double.POSITIVE_INFINITY) {
+        return this;  // never part of a shortest path
+      }
+      out.get(origin).merge(destination, length, Math::min);
+      in.get(destination).merge(origin, length, Math::min);
+      return this;
+    }
+
+    /**
+     * Contract the graph into its hierarchy.
+     * The builder can't be used afterwards.
+     *
+     * @return the hierarchy
+     */
+    public ContractionHierarchy build() {
+      return new ContractionHierarchy(this);
+    }
+  }
+
+  /**
+   * Searches for other ways between the neighbors of a node that is about to be contracted,
+   * over the nodes that haven't been contracted yet.
+   */
+  private static final class Witness {
+
+    private final List<Map<Integer, Double>> out;
+    private final boolean[] contracted;
+    private final double[] distances;
+    private final List<Integer> reached = new ArrayList<>();
+    private final IndexedHeap toVisit;
+
+    private Witness(List<Map<Integer, Double>> out) {
+      this.out = out;
+      this.contracted = new boolean[out.size()];
+      this.distances = new double[out.size()];
+      Arrays.fill(distances, Double.POSITIVE_INFINITY);
+      this.toVisit = new IndexedHeap(out.size());
+    }
+
+    /*
+     * Search for the shortest ways from a start, up to some length.
+     * Searches that give up early may miss a way, which only costs an unneeded shortcut.
+     */
+    private void search(int start, double maxLength) {
+      distances[start] = 0;
+      reached.add(start);
+      toVisit.insertOrDecrease(start, 0);
+      int settled = 0;
+      while (!toVisit.isEmpty() && settled++ < WITNESS_SETTLE_LIMIT) {
+        int current = toVisit.poll();
+        for (Map.Entry<Integer, Double> edge : out.get(current).entrySet()) {
+          int next = edge.getKey();
+          double distance = distances[current] + edge.getValue();
+          // Longer ways can't be witnesses, so they don't need to be searched at all
+          if (distance <= maxLength && !contracted[next] && distance < distances[next]) {
+            if (distances[next] == Double.POSITIVE_INFINITY) {
+              reached.add(next);
+            }
+            distances[next] = distance;
+            toVisit.insertOrDecrease(next, distance);
+          }
+        }
+      }
+    }
+
+    /*
+     * Get the shortest ways from one neighbor of a node to its other neighbors that need a shortcut
+     * through the node, because no other way is as short.
+     */
+    private Map<Integer, Double> shortcuts(int start, double toNode, Map<Integer, Double> fromNode) {
+      double maxLength = 0;
+      for (double length : fromNode.values()) {
+        maxLength = Math.max(maxLength, toNode + length);
+      }
+      search(start, maxLength);
+      Map<Integer, Double> shortcuts = new HashMap<>();
+      for (Map.Entry<Integer, Double> end : fromNode.entrySet()) {
+        double length = toNode + end.getValue();
+        if (end.getKey() != start && distances[end.getKey()] > length) {
+          shortcuts.put(end.getKey(), length);
+        }
+      }
+      reached.forEach(node -> distances[node] = Double.POSITIVE_INFINITY);
+      reached.clear();
+      toVisit.clear();
+      return shortcuts;
+    }
+  }
+
+}
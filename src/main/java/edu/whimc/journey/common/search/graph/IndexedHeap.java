@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search.graph;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of the integers from zero up to some capacity, each with a key.
+ * Because the heap knows where every item is, the key of an item already in the heap
+ * can be lowered in logarithmic time, instead of removing and adding it again.
+ */
+final class IndexedHeap {
+
+  private final int[] heap;       // position in the heap -> item
+  private final int[] positions;  // item -> position in the heap, or -1 if it is not in the heap
+  private final double[] keys;    // item -> key
+  private int size = 0;
+
+  IndexedHeap(int capacity) {
+    this.heap = new int[capacity];
+    this.positions = new int[capacity];
+    this.keys = new double[capacity];
+    Arrays.fill(positions, -1);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean contains(int item) {
+    return positions[item] >= 0;
+  }
+
+  double key(int item) {
+    return keys[item];
+  }
+
+  /**
+   * Add an item with a key, or lower the key of an item that is already in the heap.
+   * Nothing happens if the item is already in the heap with a key that is not higher.
+   *
+   * @param item the item
+   * @param key  the key
+   */
+  void insertOrDecrease(int item, double key) {
+    if (contains(item)) {
+      if (key >= keys[item]) {
+        return;
+      }
+      keys[item] = key;
+      siftUp(positions[item]);
+    } else {
+      keys[item] = key;
+      heap[size] = item;
+      positions[item] = size;
+      siftUp(size++);
+    }
+  }
+
+  /**
+   * Get the lowest key in the heap.
+   *
+   * @return the key
+   */
+  double peekKey() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return keys[heap[0]];
+  }
+
+  /**
+   * Remove the item with the lowest key.
+   *
+   * @return the item
+   */
+  int poll() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    int item = heap[0];
+    positions[item] = -1;
+    size--;
+    if (size > 0) {
+      heap[0] = heap[size];
+      positions[heap[0]] = 0;
+      siftDown(0);
+    }
+    return item;
+  }
+
+  /**
+   * Remove every item, so the heap can be used again.
+   */
+  void clear() {
+    for (int position = 0; position < size; position++) {
+      positions[heap[position]] = -1;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int position) {
+    int item = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (keys[heap[parent]] <= keys[item]) {
+        break;
+      }
+      heap[position] = heap[parent];
+      positions[heap[position]] = position;
+      position = parent;
+    }
+    heap[position] = item;
+    positions[item] = position;
+  }
+
+  private void siftDown(int position) {
+    int item = heap[position];
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+        child++;
+      }
+      if (keys[item] <= keys[heap[child]]) {
+        break;
+      }
+      heap[position] = heap[child];
+      positions[heap[position]] = position;
+      position = child;
+    }
+    heap[position] = item;
+    positions[item] = position;
+  }
+
+}
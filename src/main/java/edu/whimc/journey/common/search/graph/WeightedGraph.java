@@ -24,11 +24,13 @@
 
 package edu.whimc.journey.common.search.graph;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import edu.whimc.journey.common.tools.AlternatingList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -42,167 +44,564 @@ import org.jetbrains.annotations.Nullable;
  * to the graph when traversing from one node to another.
  * The solution of any solved path is one which minimized the distance between the nodes.
  *
- * <p>The {@link #findMinimumPath} method uses Dijkstra's algorithm.
+ * <p>The {@link #findMinimumPath} method uses Dijkstra's algorithm,
+ * or A* if the graph can {@link #estimate} how far nodes are from the destination.
+ * The {@link #findMinimumPaths} method finds the next shortest paths too, with Yen's algorithm.
+ * Nodes are numbered as they are added, and the edges are kept in arrays grouped by their origin,
+ * so a search only walks arrays. Every search keeps its distances in its own arrays
+ * instead of on the nodes, so the graph can be solved again and again, even at the same time,
+ * without resetting anything in between.
+ * Edge lengths are asked for during every search, so edges whose lengths change are always current.
+ *
+ * <p>A graph may also start from {@link SharedEdges}, which many graphs use at once without copying them,
+ * like the connections between ports that every search has in common.
+ * The graph only adds its own edges on top of them, and only makes the edge objects of shared edges
+ * with {@link #sharedEdge} once a search follows them.
  *
  * @param <N> the graph node type
  * @param <E> the graph edge type
  */
 public abstract class WeightedGraph<N, E> {
 
-  private final Set<Node> nodes = new HashSet<>();
-  private final Table<Node, Node, E> edges = HashBasedTable.create();
+  private final List<Node> nodes = new ArrayList<>();
+  private final List<E> edges = new ArrayList<>();
+  private final List<int[]> edgeEnds = new ArrayList<>();  // origin and destination index of every edge
+  private final Map<Long, Integer> edgeIds = new HashMap<>();
+  private SharedEdges shared = SharedEdges.NONE;
+  // Shared edge origin -> the edge objects of the shared edges leaving it, once they are followed
+  private final Map<Integer, List<E>> sharedEdgeObjects = new HashMap<>();
+  @Nullable
+  private volatile Adjacency adjacency = null;
+
+  /**
+   * Start this graph from edges that are shared with other graphs.
+   * The given nodes become the first nodes of this graph, in order,
+   * so the shared edges between their positions go between them.
+   * This must be done before any edge is added.
+   *
+   * @param sharedEdges the shared edges
+   * @param sharedNodes the nodes of this graph for the nodes of the shared edges, in order
+   */
+  protected final synchronized void share(@NotNull SharedEdges sharedEdges, @NotNull List<Node> sharedNodes) {
+    if (!nodes.isEmpty()) {
+      throw new IllegalStateException("Shared edges must be added to an empty graph");
+    }
+    if (sharedNodes.size() != sharedEdges.nodeCount()) {
+      throw new IllegalArgumentException("Expected " + sharedEdges.nodeCount() + " shared nodes but got "
+          + sharedNodes.size());
+    }
+    sharedNodes.forEach(this::indexOf);
+    shared = sharedEdges;
+    adjacency = null;
+  }
+
+  /**
+   * Make the edge object of a shared edge, once a search first follows an edge leaving the same node.
+   * The objects of all the shared edges leaving that node are made together, in order.
+   * Graphs that {@link #share} edges must override this.
+   *
+   * @param origin      the origin node of the edge
+   * @param destination the destination node of the edge
+   * @param position    the position of the edge in the shared edges
+   * @return the edge object
+   */
+  protected E sharedEdge(Node origin, Node destination, int position) {
+    throw new UnsupportedOperationException("This graph does not share edges");
+  }
 
   /**
    * Add an edge to the graph.
+   * An edge that was already added between the same origin and destination is replaced,
+   * but shared edges are kept, so the new edge goes alongside any shared edge.
    *
    * @param origin      the origin node of the edge
    * @param destination the destination node of the edge
    * @param edge        the edge itself
    */
-  public void addEdge(@NotNull Node origin, @NotNull Node destination, @NotNull E edge) {
-    this.nodes.add(origin);
-    this.nodes.add(destination);
-    this.edges.put(origin, destination, edge);
+  public synchronized void addEdge(@NotNull Node origin, @NotNull Node destination, @NotNull E edge) {
+    int originIndex = indexOf(origin);
+    int destinationIndex = indexOf(destination);
+    long key = ((long) originIndex << 32) | destinationIndex;
+    Integer edgeId = edgeIds.get(key);
+    if (edgeId == null) {
+      edgeIds.put(key, edges.size());
+      edges.add(edge);
+      edgeEnds.add(new int[]{originIndex, destinationIndex});
+    } else {
+      edges.set(edgeId, edge);
+    }
+    adjacency = null;
+  }
+
+  private int indexOf(Node node) {
+    if (node.index < 0) {
+      node.index = nodes.size();
+      nodes.add(node);
+    }
+    return node.index;
+  }
+
+  /*
+   * Get the arrays of the graph as it is now, building them again if an edge was added since.
+   */
+  private Adjacency adjacency() {
+    Adjacency current = adjacency;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (adjacency == null) {
+        adjacency = new Adjacency();
+      }
+      return adjacency;
+    }
   }
 
   @Nullable
   protected final AlternatingList<Node, E, Object> findMinimumPath(Node origin, Node destination) {
+    if (origin.equals(destination)) {
+      return AlternatingList.<Node, E, Object>builder(destination).build();
+    }
+
+    Adjacency graph = adjacency();
+    if (!graph.contains(origin) || !graph.contains(destination)) {
+      return null;
+    }
+    int[] path = search(graph, origin.index, destination, newEstimates(graph), null, null);
+    return path == null ? null : toList(graph, path, destination);
+  }
+
+  /**
+   * Find the shortest paths from one node to another, from shortest to longest,
+   * with Yen's algorithm. No two of the paths go along the same edges,
+   * and no path visits a node twice.
+   *
+   * @param origin      the origin node
+   * @param destination the destination node
+   * @param count       the most paths to find
+   * @return the paths, which is empty if there is none at all
+   */
+  @NotNull
+  protected final List<AlternatingList<Node, E, Object>> findMinimumPaths(Node origin, Node destination,
+                                                                          int count) {
+    List<AlternatingList<Node, E, Object>> paths = new ArrayList<>();
+    if (count <= 0) {
+      return paths;
+    }
+    if (origin.equals(destination)) {
+      paths.add(AlternatingList.<Node, E, Object>builder(destination).build());
+      return paths;
+    }
+
+    Adjacency graph = adjacency();
+    if (!graph.contains(origin) || !graph.contains(destination)) {
+      return paths;
+    }
+    double[] estimates = newEstimates(graph);  // shared by every search, since they all have one destination
+    int[] shortest = search(graph, origin.index, destination, estimates, null, null);
+    if (shortest == null) {
+      return paths;
+    }
 
-    PriorityQueue<Node> toVisit = new PriorityQueue<>(Comparator.comparingDouble(n -> n.distance));
-    Set<Node> visited = new HashSet<>();
+    List<int[]> found = new ArrayList<>();
+    found.add(shortest);
+    Set<List<Integer>> known = new HashSet<>();
+    known.add(edgeList(shortest, shortest.length));
+    PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(c -> c.length));
+    boolean[] blockedNodes = new boolean[graph.nodes.length];
+    Set<Integer> blockedEdges = new HashSet<>();  // only a few, while there may be very many shared edges
 
-    origin.setDistance(0);
-    origin.setPrevious(null);
-    toVisit.add(origin);
+    while (found.size() < count) {
+      int[] previous = found.get(found.size() - 1);
+      // Branch off of the last path at every one of its nodes, keeping the part before the node
+      for (int spur = 0; spur < previous.length; spur++) {
+        Arrays.fill(blockedNodes, false);
+        blockedEdges.clear();
+        List<Integer> root = edgeList(previous, spur);
+        // The branch must leave the node differently from every path found so far with the same root
+        for (int[] path : found) {
+          if (path.length > spur && edgeList(path, spur).equals(root)) {
+            blockedEdges.add(path[spur]);
+          }
+        }
+        // The branch may not come back to the root
+        for (int i = 0; i < spur; i++) {
+          blockedNodes[graph.origin(previous[i])] = true;
+        }
+
+        int[] branch = search(graph, graph.origin(previous[spur]), destination, estimates,
+            blockedNodes, blockedEdges);
+        if (branch == null) {
+          continue;
+        }
+        int[] candidate = Arrays.copyOf(previous, spur + branch.length);
+        System.arraycopy(branch, 0, candidate, spur, branch.length);
+        if (known.add(edgeList(candidate, candidate.length))) {
+          candidates.add(new Candidate(candidate, length(graph, candidate)));
+        }
+      }
+
+      if (candidates.isEmpty()) {
+        break;  // There are no other ways
+      }
+      found.add(candidates.poll().edges);
+    }
+
+    for (int[] path : found) {
+      paths.add(toList(graph, path, destination));
+    }
+    return paths;
+  }
+
+  private double[] newEstimates(Adjacency graph) {
+    double[] estimates = new double[graph.nodes.length];  // only asked for once per node
+    Arrays.fill(estimates, Double.NaN);
+    return estimates;
+  }
+
+  /*
+   * Find the shortest path from a node to the destination, without the blocked nodes and edges,
+   * as the positions of its edges in order.
+   */
+  @Nullable
+  private int[] search(Adjacency graph, int originIndex, Node destination, double[] estimates,
+                       @Nullable boolean[] blockedNodes, @Nullable Set<Integer> blockedEdges) {
+    final int destinationIndex = destination.index;
+
+    double[] distances = new double[graph.nodes.length];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int[] previousEdges = new int[graph.nodes.length];  // the position of the edge used to get to each node
+    boolean[] visited = new boolean[graph.nodes.length];
+    IndexedHeap toVisit = new IndexedHeap(graph.nodes.length);
+
+    distances[originIndex] = 0;
+    previousEdges[originIndex] = -1;
+    toVisit.insertOrDecrease(originIndex, 0);
 
-    Node current;
     while (!toVisit.isEmpty()) {
-      current = toVisit.poll();
-      visited.add(current);
+      int current = toVisit.poll();
+      visited[current] = true;
 
-      if (current.equals(destination)) {
+      if (current == destinationIndex) {
         // We've reached destination. Package solution.
-        AlternatingList.Builder<Node, E, Object> pathBuilder = AlternatingList.builder(destination);
-        while (!current.equals(origin)) {
-          pathBuilder.addFirst(current.getPrevious(), this.edges.get(current.getPrevious(), current));
-          current = current.getPrevious();
+        int size = 0;
+        for (int node = current; node != originIndex; node = graph.origin(previousEdges[node])) {
+          size++;
         }
+        int[] path = new int[size];
+        while (current != originIndex) {
+          path[--size] = previousEdges[current];
+          current = graph.origin(previousEdges[current]);
+        }
+        return path;
+      }
 
-        resetNodes();
-        return pathBuilder.build();
-      } else {
-        // Not yet done
-        for (Map.Entry<Node, E> outlet : edges.row(current).entrySet()) {
-          // outlet.getKey() is destination
-          // outlet.getValue() is edge from 'current' to destination
-          if (visited.contains(outlet.getKey())) {
+      // The shared edges leaving the node come first, then the ones of this graph
+      for (int part = 0; part < 2; part++) {
+        int first = part == 0 ? graph.firstSharedEdge(current) : graph.offsets[current];
+        int last = part == 0 ? graph.firstSharedEdge(current + 1) : graph.offsets[current + 1];
+        List<E> sharedEdges = part == 0 && first < last ? graph.sharedEdges(current) : null;
+        for (int edge = first; edge < last; edge++) {
+          int next = graph.destination(edge);
+          if (visited[next]
+              || (blockedEdges != null && blockedEdges.contains(edge))
+              || (blockedNodes != null && blockedNodes[next])) {
             continue;
           }
-          if (outlet.getKey().getDistance() > current.getDistance() + edgeLength(outlet.getValue())) {
-            // A better path for this node would be to come from current.
-            // We can assume that is already queued. Remove from waiting queue to update.
-            toVisit.remove(outlet.getKey());
-            outlet.getKey().setDistance(current.getDistance()
-                + edgeLength(outlet.getValue())
-                + nodeWeight(outlet.getKey().getData()));
-            outlet.getKey().setPrevious(current);
-            toVisit.add(outlet.getKey());
+          double distance = distances[current]
+              + edgeLength(sharedEdges == null ? graph.edge(edge) : sharedEdges.get(edge - first))
+              + nodeWeight(graph.node(next).getData());
+          if (distance < distances[next]) {
+            // A better path for this node would be to come from current
+            distances[next] = distance;
+            previousEdges[next] = edge;
+            if (Double.isNaN(estimates[next])) {
+              estimates[next] = estimate(graph.node(next), destination);
+            }
+            toVisit.insertOrDecrease(next, distance + estimates[next]);
           }
         }
       }
     }
 
-    resetNodes();
     return null;  // Could not find it
 
   }
 
-  private void resetNodes() {
-    this.nodes.forEach(node -> {
-      node.setDistance(Double.MAX_VALUE);
-      node.setPrevious(null);
-    });
+  private AlternatingList<Node, E, Object> toList(Adjacency graph, int[] path, Node destination) {
+    AlternatingList.Builder<Node, E, Object> pathBuilder = AlternatingList.builder(destination);
+    for (int i = path.length - 1; i >= 0; i--) {
+      pathBuilder.addFirst(graph.node(graph.origin(path[i])), graph.edge(path[i]));
+    }
+    return pathBuilder.build();
+  }
+
+  private double length(Adjacency graph, int[] path) {
+    double length = 0;
+    for (int edge : path) {
+      length += edgeLength(graph.edge(edge)) + nodeWeight(graph.node(graph.destination(edge)).getData());
+    }
+    return length;
+  }
+
+  private static List<Integer> edgeList(int[] path, int size) {
+    List<Integer> edges = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      edges.add(path[i]);
+    }
+    return edges;
   }
 
   protected abstract double nodeWeight(N nodeData);
 
+  /**
+   * Estimate the length of the shortest path from a node to the destination of a search,
+   * so the search can go towards the destination first.
+   * The estimate must never be more than the real length, and may never drop by more than the length
+   * of an edge (and the weight of the node it leads to) when following that edge,
+   * or else the path found may not be the shortest one.
+   * By default, there is no estimate, so the search spreads out evenly.
+   *
+   * @param node        the node
+   * @param destination the destination of the search
+   * @return the estimate
+   */
+  protected double estimate(Node node, Node destination) {
+    return 0;
+  }
+
   protected abstract double edgeLength(E edge);
 
   /**
-   * A node of this {@link WeightedGraph}.
-   * This node acts as a wrapper around some important data which this
-   * graph is wrapping to organize a path from the internal data piece,
-   * intermittently using edges to get there.
+   * A path that may be one of the next shortest paths.
    */
-  public class Node {
+  private static final class Candidate {
+    private final int[] edges;
+    private final double length;
 
-    private final N data;
-    private double distance = Double.MAX_VALUE;
-    private Node previous = null;
+    private Candidate(int[] edges, double length) {
+      this.edges = edges;
+      this.length = length;
+    }
+  }
+
+  /*
+   * Get the edge objects of the shared edges leaving a node, making them the first time.
+   */
+  private synchronized List<E> sharedEdgeObjects(SharedEdges sharedEdges, Object[] graphNodes, int origin) {
+    List<E> objects = sharedEdgeObjects.get(origin);
+    if (objects == null) {
+      objects = new ArrayList<>(sharedEdges.offsets[origin + 1] - sharedEdges.offsets[origin]);
+      int last = sharedEdges.offsets[origin + 1];
+      for (int position = sharedEdges.offsets[origin]; position < last; position++) {
+        @SuppressWarnings("unchecked")
+        Node originNode = (Node) graphNodes[origin];
+        @SuppressWarnings("unchecked")
+        Node destinationNode = (Node) graphNodes[sharedEdges.destinations[position]];
+        objects.add(sharedEdge(originNode, destinationNode, position));
+      }
+      sharedEdgeObjects.put(origin, objects);
+    }
+    return objects;
+  }
+
+  /**
+   * The nodes and edges of the graph at some moment, in arrays.
+   * The shared edges come first, in their own arrays, and the edges of this graph come after them.
+   * The edges of this graph are sorted by their origin, so the ones leaving node {@code i}
+   * are the ones from {@code offsets[i]} up to (but not including) {@code offsets[i + 1]}.
+   */
+  private final class Adjacency {
+
+    private final Object[] nodes;
+    private final SharedEdges shared;
+    private final int[] offsets;
+    private final int[] origins;
+    private final int[] destinations;
+    private final Object[] edges;
+
+    private Adjacency() {
+      this.nodes = WeightedGraph.this.nodes.toArray();
+      this.shared = WeightedGraph.this.shared;
+      this.offsets = new int[nodes.length + 1];
+      this.origins = new int[edgeEnds.size()];
+      this.destinations = new int[edgeEnds.size()];
+      this.edges = new Object[edgeEnds.size()];
+
+      // Count the edges leaving every node, then place every edge after the ones of the nodes before it
+      for (int[] ends : edgeEnds) {
+        offsets[ends[0] + 1]++;
+      }
+      offsets[0] = shared.edgeCount();
+      for (int i = 0; i < nodes.length; i++) {
+        offsets[i + 1] += offsets[i];
+      }
+      int[] next = Arrays.copyOf(offsets, nodes.length);
+      for (int edgeId = 0; edgeId < edgeEnds.size(); edgeId++) {
+        int[] ends = edgeEnds.get(edgeId);
+        int position = next[ends[0]]++ - shared.edgeCount();
+        origins[position] = ends[0];
+        destinations[position] = ends[1];
+        edges[position] = WeightedGraph.this.edges.get(edgeId);
+      }
+    }
+
+    private boolean contains(Node node) {
+      return node.index >= 0 && node.index < nodes.length && nodes[node.index] == node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node node(int index) {
+      return (Node) nodes[index];
+    }
+
+    private int firstSharedEdge(int node) {
+      return shared.offsets[Math.min(node, shared.nodeCount())];
+    }
+
+    private int origin(int position) {
+      return position < shared.edgeCount()
+          ? shared.origins[position]
+          : origins[position - shared.edgeCount()];
+    }
+
+    private int destination(int position) {
+      return position < shared.edgeCount()
+          ? shared.destinations[position]
+          : destinations[position - shared.edgeCount()];
+    }
+
+    private List<E> sharedEdges(int origin) {
+      return sharedEdgeObjects(shared, nodes, origin);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E edge(int position) {
+      if (position < shared.edgeCount()) {
+        int origin = shared.origins[position];
+        return sharedEdges(origin).get(position - shared.offsets[origin]);
+      }
+      return (E) edges[position - shared.edgeCount()];
+    }
+  }
+
+  /**
+   * Edges that any number of graphs can start from, kept in arrays that never change.
+   * The edges go between nodes numbered from zero, and are sorted by their origin,
+   * so the ones leaving node {@code i} are the ones from {@code offsets[i]}
+   * up to (but not including) {@code offsets[i + 1]}.
+   */
+  public static final class SharedEdges {
+
+    private static final SharedEdges NONE = new SharedEdges(new int[]{0}, new int[0]);
+
+    private final int[] offsets;
+    private final int[] origins;
+    private final int[] destinations;
 
     /**
      * General constructor.
      *
-     * @param data the content of the node
+     * @param offsets      for every node, the position of the first edge leaving it,
+     *                     followed by the number of edges
+     * @param destinations the destination node of every edge, sorted by the origins of the edges
      */
-    public Node(N data) {
-      this.data = data;
+    public SharedEdges(int @NotNull [] offsets, int @NotNull [] destinations) {
+      if (offsets.length == 0 || offsets[offsets.length - 1] != destinations.length) {
+        throw new IllegalArgumentException("The offsets must end with the number of edges");
+      }
+      this.offsets = offsets;
+      this.destinations = destinations;
+      this.origins = new int[destinations.length];
+      for (int node = 0; node < offsets.length - 1; node++) {
+        Arrays.fill(origins, offsets[node], offsets[node + 1], node);
+      }
     }
 
     /**
-     * Get the data wrapped into this node.
+     * Get the number of nodes that the edges go between.
      *
-     * @return the data
+     * @return the number of nodes
      */
-    public N getData() {
-      return data;
+    public int nodeCount() {
+      return offsets.length - 1;
+    }
+
+    /**
+     * Get the number of edges.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+      return destinations.length;
+    }
+
+    /**
+     * Get the position of the first edge leaving a node.
+     * The edges leaving the node go up to the first edge of the next node.
+     *
+     * @param node the node, or the number of nodes to get the number of edges
+     * @return the position
+     */
+    public int firstEdge(int node) {
+      return offsets[node];
     }
 
     /**
-     * Get the current total distance of this node from the origin.
+     * Get the origin node of an edge.
      *
-     * @return the distance
+     * @param position the position of the edge
+     * @return the origin node
      */
-    public double getDistance() {
-      return distance;
+    public int origin(int position) {
+      return origins[position];
     }
 
     /**
-     * Set the current total distance of this node from the origin.
+     * Get the destination node of an edge.
      *
-     * @param distance the distance
+     * @param position the position of the edge
+     * @return the destination node
      */
-    public void setDistance(double distance) {
-      this.distance = distance;
+    public int destination(int position) {
+      return destinations[position];
     }
+  }
+
+  /**
+   * A node of this {@link WeightedGraph}.
+   * This node acts as a wrapper around some important data which this
+   * graph is wrapping to organize a path from the internal data piece,
+   * intermittently using edges to get there.
+   */
+  public class Node {
+
+    private final N data;
+    private int index = -1;  // the number of this node in its graph, once it has an edge
 
     /**
-     * Get the node previous to this one in the current operation
-     * trying to solve the graph.
+     * General constructor.
      *
-     * @return the previous node
+     * @param data the content of the node
      */
-    public Node getPrevious() {
-      return previous;
+    public Node(N data) {
+      this.data = data;
     }
 
     /**
-     * Set the node previous to this one in the current operation
-     * trying to solve the graph.
+     * Get the data wrapped into this node.
      *
-     * @param previous set the previous node
+     * @return the data
      */
-    public void setPrevious(Node previous) {
-      this.previous = previous;
+    public N getData() {
+      return data;
     }
 
     @Override
     public String toString() {
-      return String.format("Node: {data: %s, distance: %s, weight: %f}",
+      return String.format("Node: {data: %s, weight: %f}",
           data.hashCode(),
-          distance > Double.MAX_VALUE * .9
-              ? "inf"
-              : distance, nodeWeight(data));
+          nodeWeight(data));
     }
   }
 
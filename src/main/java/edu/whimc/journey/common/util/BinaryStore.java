@@ -0,0 +1,452 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.JourneyCommon;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A persistent key-value store backed by an append-only binary log.
+ * Every change is appended to the file as its own checksummed record, so saving never
+ * rewrites the whole data set. The log is replayed into memory when the store is opened,
+ * and rewritten (compacted) only once most of it is made of outdated records.
+ *
+ * <p>The file starts with a header holding a magic number, the version of the file format,
+ * and a schema version chosen by the owner of the store. If the schema version doesn't match,
+ * the stored data is discarded, because the codecs can no longer read it.
+ * If a record is incomplete or its checksum doesn't match, like after a crash mid-write,
+ * the log is truncated right before that record.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class BinaryStore<K, V> implements Closeable {
+
+  private static final int MAGIC = 0x4A524E59;  // "JRNY"
+  private static final short FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+  private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+  private static final byte OPERATION_PUT = 1;
+  private static final byte OPERATION_REMOVE = 2;
+  private static final int MIN_COMPACTION_RECORDS = 64;
+
+  private final File file;
+  private final int schemaVersion;
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+  private final Map<K, V> entries = new HashMap<>();
+  private FileChannel channel;
+  private int recordCount = 0;
+
+  private BinaryStore(@Nullable File file, int schemaVersion, Codec<K> keyCodec, Codec<V> valueCodec) {
+    this.file = file;
+    this.schemaVersion = schemaVersion;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+  }
+
+  /**
+   * Open a store backed by a file, loading everything that was previously stored in it.
+   * The file is created if it doesn't exist.
+   *
+   * @param file          the file
+   * @param schemaVersion the version of the data written by the codecs.
+   *                      Change this whenever the codecs change how they write data.
+   * @param keyCodec      the codec for keys
+   * @param valueCodec    the codec for values
+   * @param <K>           the key type
+   * @param <V>           the value type
+   * @return the store
+   * @throws IOException if the file could not be read or written
+   */
+  public static <K, V> BinaryStore<K, V> open(@NotNull File file,
+                                              int schemaVersion,
+                                              @NotNull Codec<K> keyCodec,
+                                              @NotNull Codec<V> valueCodec) throws IOException {
+    BinaryStore<K, V> store = new BinaryStore<>(file, schemaVersion, keyCodec, valueCodec);
+    store.load();
+    return store;
+  }
+
+  /**
+   * Create a store that is only held in memory.
+   * This is useful as a fallback when the file of a store cannot be opened.
+   *
+   * @param <K> the key type
+   * @param <V> the value type
+   * @return the store
+   */
+  public static <K, V> BinaryStore<K, V> inMemory() {
+    return new BinaryStore<>(null, 0, null, null);
+  }
+
+  private void load() throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      //noinspection ResultOfMethodCallIgnored
+      parent.mkdirs();
+    }
+    channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+
+    long size = channel.size();
+    if (size < HEADER_SIZE) {
+      // New (or useless) file
+      reset();
+      return;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+      // keep reading until the whole file is in the buffer
+    }
+    buffer.flip();
+
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("File " + file.getName() + " is not a Journey binary store");
+    }
+    short formatVersion = buffer.getShort();
+    int storedSchemaVersion = buffer.getInt();
+    if (formatVersion != FORMAT_VERSION || storedSchemaVersion != schemaVersion) {
+      JourneyCommon.getLogger().warn("Discarding data in " + file.getName()
+          + " because it was stored with an incompatible version");
+      reset();
+      return;
+    }
+
+    CRC32 crc = new CRC32();
+    long validEnd = buffer.position();
+    while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        break;  // Incomplete record
+      }
+      byte[] payload = new byte[length];
+      buffer.get(payload);
+      crc.reset();
+      crc.update(payload, 0, length);
+      if ((int) crc.getValue() != checksum) {
+        break;  // Corrupt record
+      }
+      try {
+        apply(payload);
+      } catch (IOException e) {
+        break;  // The record couldn't be decoded
+      }
+      recordCount++;
+      validEnd = buffer.position();
+    }
+
+    if (validEnd < size) {
+      JourneyCommon.getLogger().warn("Truncating corrupted data at the end of " + file.getName());
+      channel.truncate(validEnd);
+    }
+    channel.position(validEnd);
+
+    if (shouldCompact()) {
+      compact();
+    }
+  }
+
+  private void apply(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    byte operation = in.readByte();
+    K key = keyCodec.read(in);
+    switch (operation) {
+      case OPERATION_PUT:
+        entries.put(key, valueCodec.read(in));
+        break;
+      case OPERATION_REMOVE:
+        entries.remove(key);
+        break;
+      default:
+        throw new IOException("Unknown operation " + operation);
+    }
+  }
+
+  private void reset() throws IOException {
+    channel.truncate(0);
+    channel.position(0);
+    writeHeader(channel);
+    recordCount = 0;
+  }
+
+  private void writeHeader(FileChannel target) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putShort(FORMAT_VERSION);
+    header.putInt(schemaVersion);
+    header.flip();
+    writeFully(target, header);
+  }
+
+  /**
+   * Get the value stored at a key.
+   *
+   * @param key the key
+   * @return the value, or null if none is stored
+   */
+  @Nullable
+  public synchronized V get(@NotNull K key) {
+    return entries.get(key);
+  }
+
+  /**
+   * Whether a value is stored at a key.
+   *
+   * @param key the key
+   * @return true if there is a value
+   */
+  public synchronized boolean containsKey(@NotNull K key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Store a value at a key, replacing the previous one.
+   *
+   * @param key   the key
+   * @param value the value
+   * @return the previous value, or null if there was none
+   */
+  @Nullable
+  public synchronized V put(@NotNull K key, @NotNull V value) {
+    V previous = entries.put(key, value);
+    if (!value.equals(previous)) {
+      append(OPERATION_PUT, key, value);
+    }
+    return previous;
+  }
+
+  /**
+   * Remove the value stored at a key.
+   *
+   * @param key the key
+   * @return the removed value, or null if there was none
+   */
+  @Nullable
+  public synchronized V remove(@NotNull K key) {
+    V previous = entries.remove(key);
+    if (previous != null) {
+      append(OPERATION_REMOVE, key, null);
+    }
+    return previous;
+  }
+
+  /**
+   * Get a copy of all the stored entries.
+   *
+   * @return the entries
+   */
+  @NotNull
+  public synchronized Map<K, V> entries() {
+    return new HashMap<>(entries);
+  }
+
+  /**
+   * Get the number of stored entries.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private void append(byte operation, K key, @Nullable V value) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      writeRecord(channel, operation, key, value);
+      recordCount++;
+      if (shouldCompact()) {
+        compact();
+      }
+    } catch (IOException e) {
+      JourneyCommon.getLogger().error("Could not write to " + file.getName());
+      e.printStackTrace();
+    }
+  }
+
+  private void writeRecord(FileChannel target, byte operation, K key, @Nullable V value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(operation);
+    keyCodec.write(out, key);
+    if (value != null) {
+      valueCodec.write(out, value);
+    }
+    out.flush();
+    byte[] payload = bytes.toByteArray();
+
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+    record.putInt(payload.length);
+    record.putInt((int) crc.getValue());
+    record.put(payload);
+    record.flip();
+    writeFully(target, record);
+  }
+
+  private boolean shouldCompact() {
+    return recordCount > MIN_COMPACTION_RECORDS && recordCount > 2 * entries.size();
+  }
+
+  /**
+   * Rewrite the backing file so that it only holds the current entries.
+   * This happens automatically once most of the file is made of outdated records.
+   *
+   * @throws IOException if the file could not be written
+   */
+  public synchronized void compact() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+    try (FileChannel tempChannel = FileChannel.open(temp.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)) {
+      writeHeader(tempChannel);
+      for (Map.Entry<K, V> entry : entries.entrySet()) {
+        writeRecord(tempChannel, OPERATION_PUT, entry.getKey(), entry.getValue());
+      }
+      tempChannel.force(true);
+    }
+
+    channel.close();
+    boolean moved = false;
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      moved = true;
+    } finally {
+      // Keep appending to whichever file is in place now, which is still the old one if the move failed
+      if (!moved) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+      reopen();
+    }
+    recordCount = entries.size();
+  }
+
+  private void reopen() throws IOException {
+    try {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      channel.position(channel.size());
+    } catch (IOException e) {
+      // There is nothing left to write to, so only keep the entries in memory from now on
+      channel = null;
+      JourneyCommon.getLogger().error("Could not reopen " + file.getName()
+          + ". Changes will no longer be saved.");
+      throw e;
+    }
+  }
+
+  /**
+   * Make sure everything written so far is stored on the disk.
+   */
+  public synchronized void flush() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.force(false);
+    } catch (IOException e) {
+      JourneyCommon.getLogger().error("Could not flush " + file.getName());
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (channel == null) {
+      return;
+    }
+    flush();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    channel = null;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * A converter between objects and their binary form within a {@link BinaryStore}.
+   *
+   * @param <X> the type of object
+   */
+  public interface Codec<X> {
+
+    /**
+     * Write an object.
+     *
+     * @param out   the output
+     * @param value the object
+     * @throws IOException if the object could not be written
+     */
+    void write(DataOutput out, X value) throws IOException;
+
+    /**
+     * Read an object that was written with {@link #write(DataOutput, Object)}.
+     *
+     * @param in the input
+     * @return the object
+     * @throws IOException if the object could not be read, including {@link EOFException}s
+     */
+    X read(DataInput in) throws IOException;
+
+  }
+
+}
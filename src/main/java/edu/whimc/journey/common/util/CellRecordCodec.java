@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.data.PathRecordManager.PathTrialCellRecord;
+import edu.whimc.journey.common.data.PathRecordManager.PathTrialRecord;
+import edu.whimc.journey.common.navigation.ModeType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A utility class to encode the cell records of a path record into a single compressed blob and back.
+ *
+ * <p>Like {@link PathCodec}, every cell is written as the difference from the cell before it,
+ * which is usually a single block away. Deviations and distances are only kept as floats,
+ * which is plenty for analysis. The whole encoding is then deflated.
+ */
+public final class CellRecordCodec {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private static final int CRITICAL_FLAG = 1;
+  private static final int INDEX_FLAG = 1 << 1;
+
+  private CellRecordCodec() {
+  }
+
+  /**
+   * Encode cell records. The path records that they belong to are ignored.
+   *
+   * @param cells the cells
+   * @return the compressed encoding
+   */
+  public static byte[] encode(@NotNull Collection<PathTrialCellRecord> cells) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      bytes.write(FORMAT_VERSION);
+      try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+        PathCodec.writeVarInt(out, cells.size());
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        for (PathTrialCellRecord cell : cells) {
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.x() - x));
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.y() - y));
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.z() - z));
+          x = cell.x();
+          y = cell.y();
+          z = cell.z();
+          out.writeByte((cell.critical() ? CRITICAL_FLAG : 0) | (cell.index() != null ? INDEX_FLAG : 0));
+          if (cell.index() != null) {
+            PathCodec.writeVarInt(out, cell.index());
+          }
+          out.writeByte(cell.modeType().ordinal());
+          out.writeFloat((float) cell.deviation());
+          out.writeFloat((float) cell.distance());
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.distanceY()));
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.biome()));
+          PathCodec.writeVarInt(out, PathCodec.zigzag(cell.dimension()));
+        }
+      }
+    } catch (IOException e) {
+      // Writing to memory can't fail
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode cell records that were encoded with {@link #encode}.
+   *
+   * @param data   the encoded cells
+   * @param record the path record that the cells belong to
+   * @return the cells
+   * @throws IllegalArgumentException if the data is malformed
+   */
+  public static List<PathTrialCellRecord> decode(@NotNull byte[] data, PathTrialRecord record) {
+    if (data.length == 0 || data[0] != FORMAT_VERSION) {
+      throw new IllegalArgumentException("Unsupported cell data format");
+    }
+    ModeType[] modeTypes = ModeType.values();
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+        new ByteArrayInputStream(data, 1, data.length - 1)))) {
+      int count = PathCodec.readVarInt(in);
+      List<PathTrialCellRecord> cells = new ArrayList<>(count);
+      int x = 0;
+      int y = 0;
+      int z = 0;
+      for (int i = 0; i < count; i++) {
+        x += PathCodec.unzigzag(PathCodec.readVarInt(in));
+        y += PathCodec.unzigzag(PathCodec.readVarInt(in));
+        z += PathCodec.unzigzag(PathCodec.readVarInt(in));
+        int flags = in.readUnsignedByte();
+        Integer index = (flags & INDEX_FLAG) != 0 ? PathCodec.readVarInt(in) : null;
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= modeTypes.length) {
+          throw new IllegalArgumentException("Malformed cell data: unknown mode type " + ordinal);
+        }
+        cells.add(new PathTrialCellRecord(record, x, y, z,
+            (flags & CRITICAL_FLAG) != 0,
+            index,
+            modeTypes[ordinal],
+            in.readFloat(),
+            in.readFloat(),
+            PathCodec.unzigzag(PathCodec.readVarInt(in)),
+            PathCodec.unzigzag(PathCodec.readVarInt(in)),
+            PathCodec.unzigzag(PathCodec.readVarInt(in))));
+      }
+      return cells;
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Malformed cell data", e);
+    }
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.ModeType;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Step;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A utility class to encode {@link Path}s into a compact binary format and back.
+ *
+ * <p>All cells of a path share a single domain, so the domain is only written once.
+ * The origin is written in full, and every step after it is written as the difference
+ * from the location before it. Most steps only move one block in each direction,
+ * so their difference and a flag for whether the mode type changed fit in a single byte.
+ * The mode type is only written when it differs from the mode type of the previous step.
+ * Step lengths are not stored; they are recalculated as the distance between
+ * consecutive locations, just like paths rebuilt from cell records.
+ */
+public final class PathCodec {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  /**
+   * The number of codes for a step that moves at most one block along every axis.
+   * The code right after those signals a step with a larger difference.
+   */
+  private static final int SMALL_STEP_CODES = 27;
+  private static final int LARGE_STEP_CODE = SMALL_STEP_CODES;
+
+  private PathCodec() {
+  }
+
+  /**
+   * Encode a path.
+   *
+   * @param path the path
+   * @param <T>  the cell type
+   * @param <D>  the domain type
+   * @return the encoded bytes
+   */
+  @NotNull
+  public static <T extends Cell<T, D>, D> byte[] encode(@NotNull Path<T, D> path) {
+    T origin = path.getOrigin();
+    if (origin == null) {
+      throw new IllegalArgumentException("An invalid path cannot be encoded");
+    }
+    List<Step<T, D>> steps = path.getSteps();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + steps.size());
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeUTF(origin.getDomainId());
+      out.writeDouble(path.getLength());
+      writeVarInt(out, steps.size());
+      writeVarInt(out, zigzag(origin.getX()));
+      writeVarInt(out, zigzag(origin.getY()));
+      writeVarInt(out, zigzag(origin.getZ()));
+
+      T previous = origin;
+      ModeType previousModeType = ModeType.NONE;
+      for (Step<T, D> step : steps) {
+        T location = step.location();
+        if (!location.getDomainId().equals(origin.getDomainId())) {
+          throw new IllegalArgumentException("All steps of a path must be in the same domain");
+        }
+        int dx = location.getX() - previous.getX();
+        int dy = location.getY() - previous.getY();
+        int dz = location.getZ() - previous.getZ();
+        boolean small = Math.abs(dx) <= 1 && Math.abs(dy) <= 1 && Math.abs(dz) <= 1;
+        int code = small ? (dx + 1) * 9 + (dy + 1) * 3 + (dz + 1) : LARGE_STEP_CODE;
+        boolean modeChanged = step.modeType() != previousModeType;
+
+        writeVarInt(out, (code << 1) | (modeChanged ? 1 : 0));
+        if (!small) {
+          writeVarInt(out, zigzag(dx));
+          writeVarInt(out, zigzag(dy));
+          writeVarInt(out, zigzag(dz));
+        }
+        if (modeChanged) {
+          out.writeByte(step.modeType().ordinal());
+        }
+        previous = location;
+        previousModeType = step.modeType();
+      }
+    } catch (IOException e) {
+      // Writing to memory doesn't fail
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a path that was encoded with {@link #encode(Path)}.
+   *
+   * @param data        the encoded bytes
+   * @param constructor the constructor to create new cells
+   * @param <T>         the cell type
+   * @param <D>         the domain type
+   * @return the path
+   */
+  @NotNull
+  public static <T extends Cell<T, D>, D> Path<T, D> decode(@NotNull byte[] data,
+                                                           @NotNull Cell.CellConstructor<T, D> constructor) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      byte version = in.readByte();
+      if (version != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unknown path format version: " + version);
+      }
+      String domainId = in.readUTF();
+      double length = in.readDouble();
+      int stepCount = readVarInt(in);
+      int x = unzigzag(readVarInt(in));
+      int y = unzigzag(readVarInt(in));
+      int z = unzigzag(readVarInt(in));
+      T origin = constructor.construct(x, y, z, domainId);
+
+      List<Step<T, D>> steps = new ArrayList<>(stepCount);
+      ModeType[] modeTypes = ModeType.values();
+      T previous = origin;
+      ModeType modeType = ModeType.NONE;
+      for (int i = 0; i < stepCount; i++) {
+        int token = readVarInt(in);
+        int code = token >>> 1;
+        if (code < SMALL_STEP_CODES) {
+          x += code / 9 - 1;
+          y += (code / 3) % 3 - 1;
+          z += code % 3 - 1;
+        } else if (code == LARGE_STEP_CODE) {
+          x += unzigzag(readVarInt(in));
+          y += unzigzag(readVarInt(in));
+          z += unzigzag(readVarInt(in));
+        } else {
+          throw new IllegalArgumentException("Malformed path data: unknown step code " + code);
+        }
+        if ((token & 1) == 1) {
+          int ordinal = in.readUnsignedByte();
+          if (ordinal >= modeTypes.length) {
+            throw new IllegalArgumentException("Malformed path data: unknown mode type " + ordinal);
+          }
+          modeType = modeTypes[ordinal];
+        }
+        T location = constructor.construct(x, y, z, domainId);
+        steps.add(new Step<>(location, location.distanceTo(previous), modeType));
+        previous = location;
+      }
+      return new Path<>(origin, steps, length);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Malformed path data", e);
+    }
+  }
+
+  static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed data: variable-length integer is too long");
+  }
+
+}
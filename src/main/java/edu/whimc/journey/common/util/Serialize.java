@@ -29,16 +29,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
  * A utility class to handle methods involving serialization.
+ *
+ * @deprecated Java serialization rewrites the whole object every time and breaks whenever
+ *     the serialized classes change. Use a {@link BinaryStore} instead.
  */
+@Deprecated
 public final class Serialize {
 
   private Serialize() {
@@ -98,9 +106,30 @@ public final class Serialize {
    * @param constructor a constructor for the object, in case deserialization fails
    * @param <T>         the type of serializable object
    */
+  public static <T extends Serializable> void deserializeCache(File dataFolder,
+                                                               String fileName,
+                                                               Consumer<T> setter,
+                                                               Supplier<T> constructor) {
+    deserializeCache(dataFolder, fileName, Collections.emptyMap(), setter, constructor);
+  }
+
+  /**
+   * Deserialize a cacheable object that was serialized with classes that have since changed.
+   * Every class that was serialized under one of the given names is read as the class it maps to instead,
+   * which must have the same serialized fields as the class had back then.
+   * If deserialization fails, use the constructor.
+   *
+   * @param dataFolder     the folder in which to store the data
+   * @param fileName       the name of the file in which the serialized data is stored
+   * @param renamedClasses the names of the classes that were serialized, mapped to the classes to read
+   * @param setter         the setter of the object in memory
+   * @param constructor    a constructor for the object, in case deserialization fails
+   * @param <T>            the type of serializable object
+   */
   @SuppressWarnings("unchecked")
   public static <T extends Serializable> void deserializeCache(File dataFolder,
                                                                String fileName,
+                                                               Map<String, Class<?>> renamedClasses,
                                                                Consumer<T> setter,
                                                                Supplier<T> constructor) {
     File file = Paths.get(dataFolder.toPath().toString(), fileName).toFile();
@@ -109,7 +138,7 @@ public final class Serialize {
       return;
     }
     try (FileInputStream fileStream = new FileInputStream(file);
-         ObjectInputStream in = new ObjectInputStream(fileStream)) {
+         ObjectInputStream in = new RenamingObjectInputStream(fileStream, renamedClasses)) {
 
       Object read = in.readObject();
       if (read == null) {
@@ -124,4 +153,33 @@ public final class Serialize {
     }
   }
 
+  /**
+   * An object input stream that reads classes serialized under old names as other classes.
+   */
+  private static final class RenamingObjectInputStream extends ObjectInputStream {
+
+    private final Map<String, Class<?>> renamedClasses;
+
+    private RenamingObjectInputStream(InputStream in, Map<String, Class<?>> renamedClasses)
+        throws IOException {
+      super(in);
+      this.renamedClasses = renamedClasses;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+      ObjectStreamClass descriptor = super.readClassDescriptor();
+      Class<?> renamed = renamedClasses.get(descriptor.getName());
+      if (renamed == null) {
+        return descriptor;
+      }
+      // The fields are read as the renamed class has them, which is why they must be the same
+      ObjectStreamClass renamedDescriptor = ObjectStreamClass.lookup(renamed);
+      if (renamedDescriptor == null) {
+        throw new ClassNotFoundException(renamed.getName() + " is not serializable");
+      }
+      return renamedDescriptor;
+    }
+  }
+
 }
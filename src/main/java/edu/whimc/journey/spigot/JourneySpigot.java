@@ -25,12 +25,15 @@
 package edu.whimc.journey.spigot;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.data.PathRecordMaintenance;
 import edu.whimc.journey.common.search.event.SearchDispatcher;
 import edu.whimc.journey.common.search.event.SearchEvent;
-import edu.whimc.journey.common.util.Serialize;
+import edu.whimc.journey.common.util.BinaryStore;
 import edu.whimc.journey.spigot.command.JourneyCommand;
 import edu.whimc.journey.spigot.command.common.CommandNode;
 import edu.whimc.journey.spigot.config.SpigotConfigManager;
+import edu.whimc.journey.spigot.data.LocationCellCodec;
 import edu.whimc.journey.spigot.data.SpigotDataManager;
 import edu.whimc.journey.spigot.manager.DebugManager;
 import edu.whimc.journey.spigot.manager.NetherManager;
@@ -49,10 +52,13 @@ import edu.whimc.journey.spigot.search.event.SpigotStopPathSearchEvent;
 import edu.whimc.journey.spigot.search.event.SpigotStopSearchEvent;
 import edu.whimc.journey.spigot.search.event.SpigotVisitationSearchEvent;
 import edu.whimc.journey.spigot.search.listener.AnimationListener;
+import edu.whimc.journey.spigot.search.listener.ChunkVersionListener;
 import edu.whimc.journey.spigot.search.listener.DataStorageListener;
 import edu.whimc.journey.spigot.search.listener.PlayerSearchListener;
 import edu.whimc.journey.spigot.util.LoggerSpigot;
 import edu.whimc.journey.spigot.util.SpigotMinecraftConversions;
+import java.io.File;
+import java.io.IOException;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
@@ -80,6 +86,7 @@ public final class JourneySpigot extends JavaPlugin {
   private PlayerSearchManager searchManager;
   @Getter
   private boolean valid = false;
+  private PathRecordMaintenance<LocationCell, World> maintenance;
 
   /**
    * Get the instance that is currently run on the Spigot server.
@@ -109,7 +116,6 @@ public final class JourneySpigot extends JavaPlugin {
     JourneyCommon.setConversions(new SpigotMinecraftConversions());
 
     // Set up caches for Spigot Journey
-    this.netherManager = new NetherManager();
     this.debugManager = new DebugManager();
     this.searchManager = new PlayerSearchManager();
 
@@ -135,6 +141,19 @@ public final class JourneySpigot extends JavaPlugin {
     // Set up data manager
     JourneyCommon.setDataManager(new SpigotDataManager());
 
+    // Keep the stored path records from growing forever
+    // The interval is in minutes, and there are 20 ticks per second
+    maintenance = new PathRecordMaintenance<>(
+        JourneyCommon.<LocationCell, World>getDataManager().getPathRecordManager());
+    // Records in an older layout are moved in the background instead of holding up startup
+    Bukkit.getScheduler().runTaskAsynchronously(this, maintenance::migrate);
+    long maintenanceInterval = Settings.STORAGE_MAINTENANCE_INTERVAL.getValue() * 60L * 20L;
+    if (maintenanceInterval > 0) {
+      Bukkit.getScheduler().runTaskTimerAsynchronously(this, maintenance,
+          maintenanceInterval,
+          maintenanceInterval);
+    }
+
     // Register command
     CommandNode root = new JourneyCommand();
     PluginCommand command = getCommand(root.getPrimaryAlias());
@@ -150,6 +169,7 @@ public final class JourneySpigot extends JavaPlugin {
     // Register listeners
     Bukkit.getPluginManager().registerEvents(netherManager, this);
     Bukkit.getPluginManager().registerEvents(new AnimationListener(), this);
+    Bukkit.getPluginManager().registerEvents(new ChunkVersionListener(), this);
     Bukkit.getPluginManager().registerEvents(new DataStorageListener(), this);
     Bukkit.getPluginManager().registerEvents(new PlayerSearchListener(), this);
 
@@ -169,27 +189,45 @@ public final class JourneySpigot extends JavaPlugin {
     getSearchManager().cancelAllSearches();
     getSearchManager().stopAllJourneys();
     serializeCaches();
+    Bukkit.getScheduler().cancelTasks(this);
+    // Cancelling doesn't stop maintenance that is already running on its own thread
+    if (maintenance != null) {
+      maintenance.close(Settings.STORAGE_MAINTENANCE_CLOSE_TIMEOUT.getValue());
+    }
+    JourneyCommon.getPortGraphManager().close();
+    JourneyCommon.getLandmarkManager().close();
+    JourneyCommon.getDataManager().close();
   }
 
   private void deserializeCaches() {
 
     // Nether Ports cache
-    Serialize.deserializeCache(this.getDataFolder(),
-        NetherManager.NETHER_MANAGER_CACHE_FILE_NAME,
-        manager -> this.netherManager = manager,
-        NetherManager::new);
+    BinaryStore<LocationCell, LocationCell> portalConnections;
+    try {
+      portalConnections = BinaryStore.open(new File(this.getDataFolder(),
+              NetherManager.NETHER_MANAGER_CACHE_FILE_NAME),
+          NetherManager.NETHER_MANAGER_SCHEMA_VERSION,
+          new LocationCellCodec(),
+          new LocationCellCodec());
+    } catch (IOException e) {
+      getLogger().severe("Could not open the nether port storage, nether ports will not be saved");
+      e.printStackTrace();
+      portalConnections = BinaryStore.inMemory();
+    }
+    this.netherManager = new NetherManager(portalConnections);
+    int imported = this.netherManager.importLegacyCache(this.getDataFolder());
+    if (imported > 0) {
+      getLogger().info(imported + " nether ports imported from "
+          + NetherManager.NETHER_MANAGER_LEGACY_CACHE_FILE_NAME);
+    }
     JourneySpigot.getInstance().getLogger().info(this.netherManager.size() + " nether ports deserialized");
 
   }
 
   private void serializeCaches() {
 
-    // nether Ports cache
-    Serialize.serializeCache(this.getDataFolder(),
-        NetherManager.NETHER_MANAGER_CACHE_FILE_NAME,
-        () -> this.netherManager,
-        manager -> this.netherManager = manager,
-        NetherManager::new);
+    // Nether Ports cache (changes are stored as they happen, so we only need to close it)
+    this.netherManager.close();
     JourneySpigot.getInstance().getLogger().info(this.netherManager.size() + " nether ports serialized");
 
   }
@@ -25,6 +25,7 @@
 package edu.whimc.journey.spigot.command;
 
 import edu.whimc.journey.spigot.command.admin.JourneyAdminDebugCommand;
+import edu.whimc.journey.spigot.command.admin.JourneyAdminExportCommand;
 import edu.whimc.journey.spigot.command.admin.JourneyAdminInvalidateCommand;
 import edu.whimc.journey.spigot.command.admin.JourneyAdminReloadCommand;
 import edu.whimc.journey.spigot.command.common.CommandNode;
@@ -47,6 +48,7 @@ public class JourneyAdminCommand extends FunctionlessCommandNode {
         "All administrative commands",
         "admin");
     addChildren(new JourneyAdminDebugCommand(this));
+    addChildren(new JourneyAdminExportCommand(this));
     addChildren(new JourneyAdminInvalidateCommand(this));
     addChildren(new JourneyAdminReloadCommand(this));
   }
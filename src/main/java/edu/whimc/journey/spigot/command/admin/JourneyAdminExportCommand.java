@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.spigot.command.admin;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.data.CellCsvExporter;
+import edu.whimc.journey.common.data.DataAccessException;
+import edu.whimc.journey.spigot.JourneySpigot;
+import edu.whimc.journey.spigot.command.common.CommandNode;
+import edu.whimc.journey.spigot.command.common.Parameter;
+import edu.whimc.journey.spigot.util.Format;
+import edu.whimc.journey.spigot.util.Permissions;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A command to export all cells of stored paths to a CSV file, for analysis outside the server.
+ */
+public class JourneyAdminExportCommand extends CommandNode {
+
+  private static final String EXPORT_FOLDER_NAME = "exports";
+  private static final Pattern FILE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_\\-]+");
+  private static final long PROGRESS_INTERVAL = 100000;
+
+  private final AtomicBoolean exporting = new AtomicBoolean(false);
+
+  /**
+   * General constructor.
+   *
+   * @param parent the parent command
+   */
+  public JourneyAdminExportCommand(@Nullable CommandNode parent) {
+    super(parent, Permissions.ADMIN,
+        "Export the cells of all stored paths to a CSV file",
+        "export");
+    addSubcommand(Parameter.basic("<file>"), "Export to a file with a specific name");
+  }
+
+  @Override
+  public boolean onWrappedCommand(@NotNull CommandSender sender,
+                                  @NotNull Command command,
+                                  @NotNull String label,
+                                  @NotNull String[] args,
+                                  @NotNull Map<String, String> flags) {
+    String name = args.length == 0 ? "cells-" + System.currentTimeMillis() / 1000 : args[0];
+    if (!FILE_NAME_PATTERN.matcher(name).matches()) {
+      sender.spigot().sendMessage(Format.error("The file name may only have letters, numbers, - and _"));
+      return false;
+    }
+    File folder = new File(JourneySpigot.getInstance().getDataFolder(), EXPORT_FOLDER_NAME);
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      sender.spigot().sendMessage(Format.error("The export folder could not be created"));
+      return false;
+    }
+    File file = new File(folder, name + ".csv");
+
+    if (!exporting.compareAndSet(false, true)) {
+      sender.spigot().sendMessage(Format.error("An export is already running"));
+      return false;
+    }
+    sender.spigot().sendMessage(Format.info("Exporting cells to "
+        + Format.ACCENT + EXPORT_FOLDER_NAME + "/" + file.getName()
+        + Format.INFO + "..."));
+    Bukkit.getScheduler().runTaskAsynchronously(JourneySpigot.getInstance(), () -> {
+      try {
+        long count = CellCsvExporter.export(JourneyCommon.getDataManager().getPathRecordManager(),
+            file,
+            exported -> sender.spigot().sendMessage(Format.info("Exported "
+                + Format.ACCENT + exported
+                + Format.INFO + " cells so far...")),
+            PROGRESS_INTERVAL);
+        sender.spigot().sendMessage(Format.success("Exported "
+            + Format.ACCENT + count
+            + Format.SUCCESS + " cells."));
+      } catch (IOException | DataAccessException e) {
+        e.printStackTrace();
+        sender.spigot().sendMessage(Format.error("The cells could not be exported"));
+      } finally {
+        exporting.set(false);
+      }
+    });
+    return true;
+  }
+
+}
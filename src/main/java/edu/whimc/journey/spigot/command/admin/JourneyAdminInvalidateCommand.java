@@ -24,20 +24,33 @@
 
 package edu.whimc.journey.spigot.command.admin;
 
+import com.google.common.collect.Lists;
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.data.DataAccessException;
+import edu.whimc.journey.common.data.PathRecordManager;
+import edu.whimc.journey.spigot.JourneySpigot;
+import edu.whimc.journey.spigot.command.common.CommandError;
 import edu.whimc.journey.spigot.command.common.CommandNode;
+import edu.whimc.journey.spigot.command.common.Parameter;
+import edu.whimc.journey.spigot.command.common.ParameterSuppliers;
+import edu.whimc.journey.spigot.navigation.LocationCell;
 import edu.whimc.journey.spigot.util.Format;
 import edu.whimc.journey.spigot.util.Permissions;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * A command to invalidate the internal path cache.
+ * A command to invalidate stored paths, either all of them or only some of them.
  *
  * @see edu.whimc.journey.common.cache.PathCache
+ * @see PathRecordManager
  */
 public class JourneyAdminInvalidateCommand extends CommandNode {
 
@@ -50,6 +63,25 @@ public class JourneyAdminInvalidateCommand extends CommandNode {
     super(parent, Permissions.ADMIN,
         "Clear the internal Journey cache",
         "invalidate");
+    addSubcommand(Parameter.chain(keyword("world"),
+            Parameter.builder().supplier(ParameterSuppliers.WORLD).build()),
+        "Clear all paths in a world");
+    addSubcommand(Parameter.chain(keyword("region"),
+            Parameter.builder().supplier(ParameterSuppliers.WORLD).build(),
+            Parameter.basic("<x1>"), Parameter.basic("<y1>"), Parameter.basic("<z1>"),
+            Parameter.basic("<x2>"), Parameter.basic("<y2>"), Parameter.basic("<z2>")),
+        "Clear all paths passing through a region");
+    addSubcommand(Parameter.chain(keyword("older"), Parameter.basic("<days>")),
+        "Clear all paths older than some number of days");
+  }
+
+  private static Parameter keyword(String keyword) {
+    return Parameter.builder()
+        .supplier(Parameter.ParameterSupplier.builder()
+            .allowedEntries((src, prev) -> Lists.newArrayList(keyword))
+            .usage(keyword)
+            .build())
+        .build();
   }
 
   @Override
@@ -58,8 +90,86 @@ public class JourneyAdminInvalidateCommand extends CommandNode {
                                   @NotNull String label,
                                   @NotNull String[] args,
                                   @NotNull Map<String, String> flags) {
-    JourneyCommon.getDataManager().getPathRecordManager().clear();
-    sender.spigot().sendMessage(Format.success("Cleared cache."));
-    return true;
+    PathRecordManager<LocationCell, World> pathRecordManager =
+        JourneyCommon.<LocationCell, World>getDataManager().getPathRecordManager();
+    if (args.length == 0) {
+      clearAsync(sender, pathRecordManager::clear);
+      return true;
+    }
+
+    switch (args[0].toLowerCase()) {
+      case "world": {
+        if (args.length < 2) {
+          sendCommandUsageError(sender, CommandError.FEW_ARGUMENTS);
+          return false;
+        }
+        World world = Bukkit.getWorld(args[1]);
+        if (world == null) {
+          sender.spigot().sendMessage(Format.error("Could not find that world"));
+          return false;
+        }
+        clearAsync(sender, () -> pathRecordManager.clear(world));
+        return true;
+      }
+      case "region": {
+        if (args.length < 8) {
+          sendCommandUsageError(sender, CommandError.FEW_ARGUMENTS);
+          return false;
+        }
+        World world = Bukkit.getWorld(args[1]);
+        if (world == null) {
+          sender.spigot().sendMessage(Format.error("Could not find that world"));
+          return false;
+        }
+        int[] coordinates = new int[6];
+        try {
+          for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = Integer.parseInt(args[i + 2]);
+          }
+        } catch (NumberFormatException e) {
+          sender.spigot().sendMessage(Format.error("The coordinates must be integers"));
+          return false;
+        }
+        LocationCell corner1 = new LocationCell(coordinates[0], coordinates[1], coordinates[2], world);
+        LocationCell corner2 = new LocationCell(coordinates[3], coordinates[4], coordinates[5], world);
+        clearAsync(sender, () -> pathRecordManager.clear(corner1, corner2));
+        return true;
+      }
+      case "older": {
+        if (args.length < 2) {
+          sendCommandUsageError(sender, CommandError.FEW_ARGUMENTS);
+          return false;
+        }
+        int days;
+        try {
+          days = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+          sender.spigot().sendMessage(Format.error("The number of days must be an integer"));
+          return false;
+        }
+        long timestamp = System.currentTimeMillis() / 1000 - TimeUnit.DAYS.toSeconds(days);
+        clearAsync(sender, () -> pathRecordManager.clearOlderThan(timestamp));
+        return true;
+      }
+      default:
+        sendCommandUsageError(sender, CommandError.UNKNOWN_ARGS);
+        return false;
+    }
   }
+
+  private void clearAsync(CommandSender sender, Supplier<Integer> clearer) {
+    Bukkit.getScheduler().runTaskAsynchronously(JourneySpigot.getInstance(), () -> {
+      try {
+        int removed = clearer.get();
+        // Connections between ports may have used the removed paths
+        JourneyCommon.getPortGraphManager().invalidate();
+        sender.spigot().sendMessage(Format.success("Cleared cache. Removed "
+            + Format.ACCENT + removed
+            + Format.SUCCESS + " path records."));
+      } catch (DataAccessException e) {
+        sender.spigot().sendMessage(Format.error("The paths could not be cleared"));
+      }
+    });
+  }
+
 }
@@ -83,10 +83,11 @@ public class JourneyDeletePublicCommand extends PlayerCommandNode {
     PublicEndpointManager<LocationCell, World> endpointManager =
         JourneyCommon.<LocationCell, World>getDataManager()
         .getPublicEndpointManager();
-    if (endpointManager.hasPublicEndpoint(args[0])) {
-      JourneyCommon.<LocationCell, World>getDataManager()
-          .getPublicEndpointManager()
-          .removePublicEndpoint(args[0]);
+    LocationCell endpoint = endpointManager.getPublicEndpoint(args[0]);
+    if (endpoint != null) {
+      endpointManager.removePublicEndpoint(args[0]);
+      // Its paths are no longer worth keeping around
+      JourneyCommon.<LocationCell, World>getLandmarkManager().remove(endpoint);
       player.spigot().sendMessage(Format.success("The server location ",
           Format.toPlain(Format.note(args[0])),
           " has been removed."));
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.spigot.data;
+
+import edu.whimc.journey.common.util.BinaryStore;
+import edu.whimc.journey.spigot.navigation.LocationCell;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A codec to store {@link LocationCell}s in a {@link BinaryStore}.
+ */
+public final class LocationCellCodec implements BinaryStore.Codec<LocationCell> {
+
+  @Override
+  public void write(DataOutput out, LocationCell cell) throws IOException {
+    UUID worldUuid = UUID.fromString(cell.getDomainId());
+    out.writeLong(worldUuid.getMostSignificantBits());
+    out.writeLong(worldUuid.getLeastSignificantBits());
+    out.writeInt(cell.getX());
+    out.writeDouble(cell.getY() + cell.getHeightOffset());
+    out.writeInt(cell.getZ());
+  }
+
+  @Override
+  public LocationCell read(DataInput in) throws IOException {
+    UUID worldUuid = new UUID(in.readLong(), in.readLong());
+    int x = in.readInt();
+    double y = in.readDouble();
+    int z = in.readInt();
+    return new LocationCell(x, y, z, worldUuid);
+  }
+
+}
@@ -25,17 +25,23 @@
 package edu.whimc.journey.spigot.data;
 
 import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.data.CachedPersonalEndpointManager;
+import edu.whimc.journey.common.data.CachedPublicEndpointManager;
 import edu.whimc.journey.common.data.DataManager;
 import edu.whimc.journey.common.data.PathRecordManager;
 import edu.whimc.journey.common.data.PersonalEndpointManager;
 import edu.whimc.journey.common.data.PublicEndpointManager;
+import edu.whimc.journey.common.data.QueuedPathRecordManager;
+import edu.whimc.journey.common.data.sql.SqlManager;
 import edu.whimc.journey.spigot.JourneySpigot;
+import edu.whimc.journey.spigot.data.sql.mysql.SpigotMySqlPathRecordManager;
 import edu.whimc.journey.spigot.data.sql.mysql.SpigotMySqlPersonalEndpointManager;
 import edu.whimc.journey.spigot.data.sql.mysql.SpigotMySqlPublicEndpointManager;
 import edu.whimc.journey.spigot.data.sql.sqlite.SpigotSqlitePathRecordManager;
 import edu.whimc.journey.spigot.data.sql.sqlite.SpigotSqlitePersonalEndpointManager;
 import edu.whimc.journey.spigot.data.sql.sqlite.SpigotSqlitePublicEndpointManager;
 import edu.whimc.journey.spigot.navigation.LocationCell;
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 
 /**
@@ -43,9 +49,9 @@ import org.bukkit.World;
  */
 public class SpigotDataManager implements DataManager<LocationCell, World> {
 
-  private final PersonalEndpointManager<LocationCell, World> personalEndpointManager;
-  private final PublicEndpointManager<LocationCell, World> publicEndpointManager;
-  private final PathRecordManager<LocationCell, World> pathRecordManager;
+  private final CachedPersonalEndpointManager<LocationCell, World> personalEndpointManager;
+  private final CachedPublicEndpointManager<LocationCell, World> publicEndpointManager;
+  private final QueuedPathRecordManager<LocationCell, World> pathRecordManager;
 
   /**
    * General constructor.
@@ -54,12 +60,13 @@ public class SpigotDataManager implements DataManager<LocationCell, World> {
     String sqliteAddress = "jdbc:sqlite:" + JourneySpigot.getInstance()
         .getDataFolder()
         .getPath() + "/journey.db";
+    PersonalEndpointManager<LocationCell, World> storedPersonalEndpointManager;
     switch (Settings.CUSTOM_ENDPOINT_STORAGE_TYPE.getValue()) {
       case SQLITE:
-        personalEndpointManager = new SpigotSqlitePersonalEndpointManager(sqliteAddress);
+        storedPersonalEndpointManager = new SpigotSqlitePersonalEndpointManager(sqliteAddress);
         break;
       case MYSQL:
-        personalEndpointManager = new SpigotMySqlPersonalEndpointManager();
+        storedPersonalEndpointManager = new SpigotMySqlPersonalEndpointManager();
         break;
       default:
         JourneySpigot.getInstance()
@@ -67,15 +74,16 @@ public class SpigotDataManager implements DataManager<LocationCell, World> {
             .severe("This type of custom endpoint storage type is not supported: "
                 + Settings.CUSTOM_ENDPOINT_STORAGE_TYPE.getValue()
                 + ". Defaulting to SQLite storage.");
-        personalEndpointManager = new SpigotSqlitePersonalEndpointManager(sqliteAddress);
+        storedPersonalEndpointManager = new SpigotSqlitePersonalEndpointManager(sqliteAddress);
     }
 
+    PublicEndpointManager<LocationCell, World> storedPublicEndpointManager;
     switch (Settings.SERVER_ENDPOINT_STORAGE_TYPE.getValue()) {
       case SQLITE:
-        publicEndpointManager = new SpigotSqlitePublicEndpointManager(sqliteAddress);
+        storedPublicEndpointManager = new SpigotSqlitePublicEndpointManager(sqliteAddress);
         break;
       case MYSQL:
-        publicEndpointManager = new SpigotMySqlPublicEndpointManager();
+        storedPublicEndpointManager = new SpigotMySqlPublicEndpointManager();
         break;
       default:
         JourneySpigot.getInstance()
@@ -83,19 +91,46 @@ public class SpigotDataManager implements DataManager<LocationCell, World> {
             .severe("This type of server endpoint storage type is not supported: "
                 + Settings.CUSTOM_ENDPOINT_STORAGE_TYPE.getValue()
                 + ". Defaulting to SQLite storage.");
-        publicEndpointManager = new SpigotSqlitePublicEndpointManager(sqliteAddress);
+        storedPublicEndpointManager = new SpigotSqlitePublicEndpointManager(sqliteAddress);
     }
 
-    pathRecordManager = new SpigotSqlitePathRecordManager(sqliteAddress);
+    // Endpoints are read on every command and tab completion, so keep them in memory
+    personalEndpointManager = new CachedPersonalEndpointManager<>(storedPersonalEndpointManager);
+    // Players who are already online, like after a reload, don't join again
+    Bukkit.getOnlinePlayers().forEach(player -> personalEndpointManager.track(player.getUniqueId()));
+    publicEndpointManager = new CachedPublicEndpointManager<>(storedPublicEndpointManager);
+
+    PathRecordManager<LocationCell, World> storedPathRecordManager;
+    switch (Settings.PATH_RECORD_STORAGE_TYPE.getValue()) {
+      case SQLITE:
+        storedPathRecordManager = new SpigotSqlitePathRecordManager(sqliteAddress);
+        break;
+      case MYSQL:
+        storedPathRecordManager = new SpigotMySqlPathRecordManager();
+        break;
+      default:
+        JourneySpigot.getInstance()
+            .getLogger()
+            .severe("This type of path record storage type is not supported: "
+                + Settings.PATH_RECORD_STORAGE_TYPE.getValue()
+                + ". Defaulting to SQLite storage.");
+        storedPathRecordManager = new SpigotSqlitePathRecordManager(sqliteAddress);
+    }
+
+    // Reports are written on their own thread so searches never wait on storage
+    pathRecordManager = new QueuedPathRecordManager<>(storedPathRecordManager,
+        Settings.STORAGE_REPORT_QUEUE_CAPACITY.getValue(),
+        Settings.STORAGE_REPORT_QUEUE_POLICY.getValue(),
+        Math.max(1, Settings.STORAGE_REPORT_BULK_SIZE.getValue()));
   }
 
   @Override
-  public PersonalEndpointManager<LocationCell, World> getPersonalEndpointManager() {
+  public CachedPersonalEndpointManager<LocationCell, World> getPersonalEndpointManager() {
     return personalEndpointManager;
   }
 
   @Override
-  public PublicEndpointManager<LocationCell, World> getPublicEndpointManager() {
+  public CachedPublicEndpointManager<LocationCell, World> getPublicEndpointManager() {
     return publicEndpointManager;
   }
 
@@ -103,4 +138,19 @@ public class SpigotDataManager implements DataManager<LocationCell, World> {
   public PathRecordManager<LocationCell, World> getPathRecordManager() {
     return pathRecordManager;
   }
+
+  @Override
+  public void close() {
+    close(personalEndpointManager.getDelegate());
+    close(publicEndpointManager.getDelegate());
+    // Write every waiting report before the storage underneath is closed
+    pathRecordManager.close(Settings.STORAGE_REPORT_QUEUE_CLOSE_TIMEOUT.getValue());
+    close(pathRecordManager.getDelegate());
+  }
+
+  private void close(Object manager) {
+    if (manager instanceof SqlManager) {
+      ((SqlManager<?, ?>) manager).close();
+    }
+  }
 }
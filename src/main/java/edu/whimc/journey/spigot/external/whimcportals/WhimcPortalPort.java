@@ -24,6 +24,8 @@
 
 package edu.whimc.journey.spigot.external.whimcportals;
 
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
 import edu.whimc.journey.common.navigation.ModeType;
 import edu.whimc.journey.common.navigation.Port;
 import edu.whimc.journey.common.search.SearchSession;
@@ -32,10 +34,14 @@ import edu.whimc.journey.spigot.navigation.LocationCell;
 import edu.whimc.journey.spigot.util.SpigotUtil;
 import edu.whimc.portals.Main;
 import edu.whimc.portals.Portal;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.Nullable;
@@ -46,6 +52,8 @@ import org.jetbrains.annotations.Nullable;
  */
 public class WhimcPortalPort extends Port<LocationCell, World> implements Verifiable {
 
+  // The port found for each portal when it was last scanned, so that the world isn't read for every search
+  private static final Map<String, ScannedPortal> SCANNED_PORTALS = new ConcurrentHashMap<>();
   private final String portalName;
 
   private WhimcPortalPort(String name, LocationCell origin, LocationCell destination) {
@@ -119,6 +127,30 @@ public class WhimcPortalPort extends Port<LocationCell, World> implements Verifi
     return new LocationCell(portal.getDestination().getLocation());
   }
 
+  /**
+   * Get the port of a portal, only scanning the portal again if it was edited
+   * or if any chunk it covers changed since it was last scanned.
+   *
+   * @param portal the portal
+   * @return the port, or null if the portal has no usable port
+   */
+  @Nullable
+  private static WhimcPortalPort scan(Portal portal) {
+    ScannedPortal scanned = SCANNED_PORTALS.get(portal.getName());
+    if (scanned != null && scanned.isCurrent(portal)) {
+      return scanned.port;
+    }
+    long version = JourneyCommon.getChunkVersionManager().currentVersion();
+    WhimcPortalPort port;
+    try {
+      port = WhimcPortalPort.from(portal);
+    } catch (Exception e) {
+      port = null;
+    }
+    SCANNED_PORTALS.put(portal.getName(), new ScannedPortal(portal, port, version));
+    return port;
+  }
+
   /**
    * Add all possible {@link WhimcPortalPort}s to a session.
    *
@@ -131,19 +163,17 @@ public class WhimcPortalPort extends Port<LocationCell, World> implements Verifi
                                 Predicate<String> permissionAccess) {
     Plugin plugin = Bukkit.getPluginManager().getPlugin("WHIMC-Portals");
     if (plugin instanceof Main) {
+      // Forget deleted portals
+      SCANNED_PORTALS.keySet().retainAll(Portal.getPortals().stream()
+          .map(Portal::getName)
+          .collect(Collectors.toSet()));
       Portal.getPortals().stream()
           .filter(portal -> portal.getDestination() != null)
           .filter(portal -> portal.getWorld() != null)
           .filter(portal -> portal.getDestination().getLocation().getWorld() != null)
           .filter(portal -> Optional.ofNullable(portal.getPermission()).map(perm ->
               permissionAccess.test(perm.getName())).orElse(true))
-          .map(portal -> {
-            try {
-              return WhimcPortalPort.from(portal);
-            } catch (Exception e) {
-              return null;
-            }
-          })
+          .map(WhimcPortalPort::scan)
           .filter(Objects::nonNull)
           .forEach(session::registerPort);
     }
@@ -163,6 +193,53 @@ public class WhimcPortalPort extends Port<LocationCell, World> implements Verifi
     return "PortalLink{portalName='" + portalName + "'}";
   }
 
+  /**
+   * The result of scanning a portal, along with what the portal looked like at the time.
+   */
+  private static final class ScannedPortal {
+    private final World world;
+    private final Location pos1;
+    private final Location pos2;
+    private final Location destination;
+    @Nullable
+    private final WhimcPortalPort port;
+    private final long version;
+
+    private ScannedPortal(Portal portal, @Nullable WhimcPortalPort port, long version) {
+      this.world = portal.getWorld();
+      this.pos1 = portal.getPos1().clone();
+      this.pos2 = portal.getPos2().clone();
+      this.destination = portal.getDestination().getLocation().clone();
+      this.port = port;
+      this.version = version;
+    }
+
+    private boolean isCurrent(Portal portal) {
+      // The portal may have been edited
+      if (!Objects.equals(world, portal.getWorld())
+          || !pos1.equals(portal.getPos1())
+          || !pos2.equals(portal.getPos2())
+          || !destination.equals(portal.getDestination().getLocation())) {
+        return false;
+      }
+      // The blocks in the portal may have changed
+      ChunkVersionManager chunkVersionManager = JourneyCommon.getChunkVersionManager();
+      int minX = Math.min(pos1.getBlockX(), pos2.getBlockX());
+      int maxX = Math.max(pos1.getBlockX(), pos2.getBlockX());
+      int minZ = Math.min(pos1.getBlockZ(), pos2.getBlockZ());
+      int maxZ = Math.max(pos1.getBlockZ(), pos2.getBlockZ());
+      for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+        for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+          LocationCell chunkCorner = new LocationCell(chunkX << 4, pos1.getBlockY(), chunkZ << 4, world);
+          if (chunkVersionManager.changedSince(chunkCorner, version)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  }
+
   @Override
   public boolean completeWith(LocationCell location) {
     Portal portal = Portal.getPortal(this.portalName);
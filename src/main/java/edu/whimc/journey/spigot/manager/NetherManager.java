@@ -24,22 +24,31 @@
 
 package edu.whimc.journey.spigot.manager;
 
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
+import edu.whimc.journey.common.util.BinaryStore;
+import edu.whimc.journey.common.util.Serialize;
 import edu.whimc.journey.spigot.JourneySpigot;
 import edu.whimc.journey.spigot.navigation.LocationCell;
 import edu.whimc.journey.spigot.navigation.NetherPort;
 import edu.whimc.journey.spigot.util.Format;
 import edu.whimc.journey.spigot.util.NetherUtil;
+import java.io.File;
 import java.io.Serializable;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -50,30 +59,102 @@ import org.bukkit.event.world.PortalCreateEvent;
 
 /**
  * A manager for all nether portals.
+ * Portal connections are persisted in a {@link BinaryStore}, so every change
+ * is saved as it happens.
  */
-public class NetherManager implements Listener, Serializable {
+public class NetherManager implements Listener {
 
-  public static final String NETHER_MANAGER_CACHE_FILE_NAME = "netherports.ser";
-  private final Map<LocationCell, LocationCell> portalConnections = new ConcurrentHashMap<>();
+  public static final String NETHER_MANAGER_CACHE_FILE_NAME = "netherports.bin";
+  /**
+   * The file in which portal connections were serialized before they were kept in a {@link BinaryStore}.
+   */
+  public static final String NETHER_MANAGER_LEGACY_CACHE_FILE_NAME = "netherports.ser";
+  /**
+   * The version of the data format of the stored portal connections.
+   */
+  public static final int NETHER_MANAGER_SCHEMA_VERSION = 1;
+  /**
+   * How far the blocks of a portal, including its frame, may be from any block inside the portal.
+   * Changes this far away from a verified portal link make us verify it again.
+   */
+  public static final int PORTAL_REACH = 23;
+  private final BinaryStore<LocationCell, LocationCell> portalConnections;
+  // The chunk version at which each portal link was last verified
+  private final Map<NetherPort, Long> verifiedVersions = new HashMap<>();
+  private List<NetherPort> verifiedPorts = null;
+  private long verifiedPortsVersion = -1;
+
+  /**
+   * General constructor.
+   *
+   * @param portalConnections the store of portal connections
+   */
+  public NetherManager(BinaryStore<LocationCell, LocationCell> portalConnections) {
+    this.portalConnections = portalConnections;
+  }
 
   /**
    * Create ports specifically representing all nether portals in the world.
+   * A portal link is only verified against the world again if the chunks around either of its portals
+   * changed since it was last verified, so this usually doesn't read the world at all.
    *
-   * @return all nether ports
+   * @return all nether ports, as a list that can't be changed
    */
-  public Collection<NetherPort> makePorts() {
-    List<NetherPort> linksUnverified = portalConnections.entrySet().stream()
+  public synchronized List<NetherPort> makePorts() {
+    ChunkVersionManager chunkVersionManager = JourneyCommon.getChunkVersionManager();
+    long version = chunkVersionManager.currentVersion();
+    if (verifiedPorts != null && verifiedPortsVersion == version) {
+      return verifiedPorts;  // Nothing changed anywhere since last time
+    }
+
+    List<NetherPort> linksUnverified = portalConnections.entries().entrySet().stream()
         .map(entry -> new NetherPort(entry.getKey(), entry.getValue()))
         .collect(Collectors.toList());
-    List<NetherPort> linksVerified = new LinkedList<>();
+    List<NetherPort> linksVerified = new ArrayList<>(linksUnverified.size());
     for (NetherPort port : linksUnverified) {
-      if (port.verify()) {
+      Long verifiedVersion = verifiedVersions.get(port);
+      if (verifiedVersion != null
+          && !changedAround(chunkVersionManager, port.getOrigin(), verifiedVersion)
+          && !changedAround(chunkVersionManager, port.getDestination(), verifiedVersion)) {
+        linksVerified.add(port);
+      } else if (port.verify()) {
+        verifiedVersions.put(port, version);
         linksVerified.add(port);
       } else {
-        portalConnections.remove(port.getOrigin(), port.getDestination());
+        verifiedVersions.remove(port);
+        if (port.getDestination().equals(portalConnections.get(port.getOrigin()))) {
+          portalConnections.remove(port.getOrigin());
+        }
+        JourneyCommon.<LocationCell, World>getPortGraphManager()
+            .removePort(port.getOrigin(), port.getDestination());
+      }
+    }
+    // Forget about links that were replaced in the meantime
+    verifiedVersions.keySet().retainAll(new HashSet<>(linksVerified));
+    verifiedPorts = Collections.unmodifiableList(linksVerified);
+    verifiedPortsVersion = version;
+    return verifiedPorts;
+  }
+
+  private static boolean changedAround(ChunkVersionManager chunkVersionManager,
+                                       LocationCell cell,
+                                       long version) {
+    for (int x = cell.getX() - PORTAL_REACH; x <= cell.getX() + PORTAL_REACH + 15; x += 16) {
+      for (int z = cell.getZ() - PORTAL_REACH; z <= cell.getZ() + PORTAL_REACH + 15; z += 16) {
+        // Stepping by whole chunks from the low corner, we touch every chunk up to the high corner
+        if (chunkVersionManager.changedSince(new LocationCell(Math.min(x, cell.getX() + PORTAL_REACH),
+            cell.getY(),
+            Math.min(z, cell.getZ() + PORTAL_REACH),
+            cell.getDomain()), version)) {
+          return true;
+        }
       }
     }
-    return linksVerified;
+    return false;
+  }
+
+  private synchronized void forgetPorts() {
+    verifiedPorts = null;
   }
 
   /**
@@ -170,11 +251,15 @@ public class NetherManager implements Listener, Serializable {
         JourneySpigot.getInstance().getDebugManager()
             .broadcast(Format.debug(portalConnections.get(old).toString()));
 
+        JourneyCommon.<LocationCell, World>getPortGraphManager().removePort(old, portalConnections.get(old));
         portalConnections.remove(old);
       });
 
       // Add the portal
       LocationCell previous = portalConnections.put(originGroup.get().port(), destinationGroup.get().port());
+      JourneyCommon.<LocationCell, World>getPortGraphManager()
+          .addPort(new NetherPort(originGroup.get().port(), destinationGroup.get().port()));
+      forgetPorts();
       if (previous == null) {
         JourneySpigot.getInstance().getDebugManager()
             .broadcast(Format.debug("Added nether port:"));
@@ -186,6 +271,43 @@ public class NetherManager implements Listener, Serializable {
     }, 20);
   }
 
+  /**
+   * Import the portal connections of the old serialized cache, if there is one and nothing is stored yet.
+   * The old file is deleted once its connections are stored, or renamed if it can't be read,
+   * so this only ever happens once.
+   *
+   * @param dataFolder the folder of the old cache
+   * @return the number of imported portal connections
+   */
+  @SuppressWarnings("deprecation")
+  public int importLegacyCache(File dataFolder) {
+    File legacyFile = new File(dataFolder, NETHER_MANAGER_LEGACY_CACHE_FILE_NAME);
+    if (!legacyFile.exists() || portalConnections.size() > 0) {
+      return 0;
+    }
+    // The whole manager used to be serialized, back when it only had its connections
+    AtomicReference<LegacyNetherManager> legacy = new AtomicReference<>();
+    Serialize.deserializeCache(dataFolder, NETHER_MANAGER_LEGACY_CACHE_FILE_NAME,
+        Collections.singletonMap(NetherManager.class.getName(), LegacyNetherManager.class),
+        legacy::set,
+        () -> null);
+    if (legacy.get() == null || legacy.get().portalConnections == null) {
+      File unreadable = new File(dataFolder, NETHER_MANAGER_LEGACY_CACHE_FILE_NAME + ".unreadable");
+      if (!legacyFile.renameTo(unreadable)) {
+        JourneySpigot.getInstance().getLogger().warning("Could not rename " + legacyFile);
+      }
+      return 0;
+    }
+
+    legacy.get().portalConnections.forEach(portalConnections::put);
+    portalConnections.flush();
+    forgetPorts();
+    if (!legacyFile.delete()) {
+      JourneySpigot.getInstance().getLogger().warning("Could not delete " + legacyFile);
+    }
+    return legacy.get().portalConnections.size();
+  }
+
   /**
    * Get the number of portal connections that are registered.
    *
@@ -194,4 +316,18 @@ public class NetherManager implements Listener, Serializable {
   public int size() {
     return portalConnections.size();
   }
+
+  /**
+   * Make sure all portal connections are stored and release the underlying file.
+   */
+  public void close() {
+    portalConnections.close();
+  }
+
+  /**
+   * The fields of a {@link NetherManager} as it used to be serialized.
+   */
+  private static final class LegacyNetherManager implements Serializable {
+    private Map<LocationCell, LocationCell> portalConnections;
+  }
 }
\ No newline at end of file
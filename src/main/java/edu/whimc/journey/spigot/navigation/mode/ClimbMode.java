@@ -70,17 +70,38 @@ public final class ClimbMode extends SpigotMode {
           && isVerticallyPassable(origin.getBlockAtOffset(0, 2, 0))) {
         accept(origin.createCellAtOffset(0, 1, 0), 1.0d, options);
       } else {
-        reject(origin.createCellAtOffset(0, 1, 0));
+        reject(origin.createCellAtOffset(0, 1, 0), options);
       }
     }
 
   }
 
+  @Override
+  public boolean canReach(@NotNull LocationCell origin, @NotNull LocationCell destination) {
+    if (!origin.getDomainId().equals(destination.getDomainId())) {
+      return false;
+    }
+    int offX = destination.getX() - origin.getX();
+    int offY = destination.getY() - origin.getY();
+    int offZ = destination.getZ() - origin.getZ();
+    if (offX == 0 && offY == 1 && offZ == 0) {
+      // Going up
+      return climbable.contains(origin.getBlock().getType())
+          && isVerticallyPassable(origin.getBlockAtOffset(0, 1, 0))
+          && isVerticallyPassable(origin.getBlockAtOffset(0, 2, 0));
+    }
+    // Otherwise, it must be a neighbor on the sides or below
+    if (Math.abs(offX) + Math.abs(offY) + Math.abs(offZ) != 1 || offY == 1) {
+      return false;
+    }
+    return climbable.contains(destination.getBlock().getType());
+  }
+
   private void tryToClimbAdjacent(Block block, List<Option> options) {
     if (climbable.contains(block.getType())) {
       accept(new LocationCell(block.getLocation()), 1.0d, options);
     } else {
-      reject(new LocationCell(block.getLocation()));
+      reject(new LocationCell(block.getLocation()), options);
     }
   }
 
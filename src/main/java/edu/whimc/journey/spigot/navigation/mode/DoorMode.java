@@ -36,6 +36,7 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.type.Door;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * The movement mode to handle if players can move through doors.
@@ -56,153 +57,80 @@ public final class DoorMode extends SpigotMode {
   @Override
   public void collectDestinations(@NotNull LocationCell origin, @NotNull List<Option> options) {
     // TODO check if there are buttons or levers nearby that may open the door
+    tryToPassDoor(origin, 1, 0, options);  // Pos X - East
+    tryToPassDoor(origin, 0, 1, options);  // Pos Z - North
+    tryToPassDoor(origin, -1, 0, options);  // Neg X - West
+    tryToPassDoor(origin, 0, -1, options);  // Neg Z - South
+  }
 
-    LocationCell cell;
-    Block block;
-    // Pos X - East
-    cell = origin.createCellAtOffset(1, 0, 0);
-    block = cell.getBlock();
-    // Check if we found a door
-    if (block.getBlockData() instanceof Door) {
-      // Check it's a solid floor
-      if (!isVerticallyPassable(origin.getBlockAtOffset(1, -1, 0))) {
-        Door doorBlock = (Door) block.getBlockData();
-        if (block.getType().equals(Material.IRON_DOOR)) {
-          // Need to check if the door is blocking
-          if (doorBlock.getFacing().equals(BlockFace.NORTH)
-              || doorBlock.getFacing().equals(BlockFace.SOUTH)
-              || doorBlock.isOpen()) {
-            // Nothing blocking
-            accept(origin.createCellAtOffset(1, 0, 0), 1.0d, options);
-          } else {
-            // We need to be able to open the door
-            if (MaterialGroups.PRESSURE_PLATES.contains(origin.getBlock().getType())) {
-              // We can step on a pressure plate to open it
-              accept(origin.createCellAtOffset(1, 0, 0), 1.0d, options);
-            } else {
-              reject(origin.createCellAtOffset(1, 0, 0));
-            }
-          }
-          //  If it is blocking, then see if you can open with a switch or something
-        } else {
-          // It's not iron, so its passable
-          accept(origin.createCellAtOffset(1, 0, 0), 1.0d, options);
-        }
-      } else {
-        reject(origin.createCellAtOffset(1, -1, 0));
-      }
-    } else {
-      reject(new LocationCell(block.getLocation()));
+  @Override
+  public boolean canReach(@NotNull LocationCell origin, @NotNull LocationCell destination) {
+    if (!origin.getDomainId().equals(destination.getDomainId())
+        || destination.getY() != origin.getY()) {
+      return false;
     }
-
-    // Pos Z - North
-    cell = origin.createCellAtOffset(0, 0, 1);
-    block = cell.getBlock();
-    // Check if we found a door
-    if (block.getBlockData() instanceof Door) {
-      // Check it's a solid floor
-      if (!isVerticallyPassable(origin.getBlockAtOffset(0, -1, 1))) {
-        Door doorBlock = (Door) block.getBlockData();
-        if (block.getType().equals(Material.IRON_DOOR)) {
-          // Need to check if the door is blocking
-          if (doorBlock.getFacing().equals(BlockFace.EAST)
-              || doorBlock.getFacing().equals(BlockFace.WEST)
-              || doorBlock.isOpen()) {
-            // Nothing blocking
-            accept(origin.createCellAtOffset(0, 0, 1), 1.0d, options);
-          } else {
-            // We need to be able to open the door
-            if (MaterialGroups.PRESSURE_PLATES.contains(origin.getBlock().getType())) {
-              // We can step on a pressure plate to open it
-              accept(origin.createCellAtOffset(0, 0, 1), 1.0d, options);
-            } else {
-              reject(origin.createCellAtOffset(0, 0, 1));
-            }
-          }
-          //  If it is blocking, then see if you can open with a switch or something
-        } else {
-          // It's not iron, so its passable
-          accept(origin.createCellAtOffset(0, 0, 1), 1.0d, options);
-        }
-      } else {
-        reject(origin.createCellAtOffset(0, -1, 1));
-      }
-    } else {
-      reject(new LocationCell(block.getLocation()));
+    int offX = destination.getX() - origin.getX();
+    int offZ = destination.getZ() - origin.getZ();
+    if (Math.abs(offX) + Math.abs(offZ) != 1) {
+      return false;
     }
+    return findDoorBarrier(origin, offX, offZ) == null;
+  }
 
-    // Neg X - West
-    cell = origin.createCellAtOffset(-1, 0, 0);
-    block = cell.getBlock();
-    // Check if we found a door
-    if (block.getBlockData() instanceof Door) {
-      // Check it's a solid floor
-      if (!isVerticallyPassable(origin.getBlockAtOffset(-1, -1, 0))) {
-        Door doorBlock = (Door) block.getBlockData();
-        if (block.getType().equals(Material.IRON_DOOR)) {
-          // Need to check if the door is blocking
-          if (doorBlock.getFacing().equals(BlockFace.NORTH)
-              || doorBlock.getFacing().equals(BlockFace.SOUTH)
-              || doorBlock.isOpen()) {
-            // Nothing blocking
-            accept(origin.createCellAtOffset(-1, 0, 0), 1.0d, options);
-          } else {
-            // We need to be able to open the door
-            if (MaterialGroups.PRESSURE_PLATES.contains(origin.getBlock().getType())) {
-              // We can step on a pressure plate to open it
-              accept(origin.createCellAtOffset(-1, 0, 0), 1.0d, options);
-            } else {
-              reject(origin.createCellAtOffset(-1, 0, 0));
-            }
-          }
-          //  If it is blocking, then see if you can open with a switch or something
-        } else {
-          // It's not iron, so its passable
-          accept(origin.createCellAtOffset(-1, 0, 0), 1.0d, options);
-        }
-      } else {
-        reject(origin.createCellAtOffset(-1, -1, 0));
-      }
+  private void tryToPassDoor(LocationCell origin, int offX, int offZ, List<Option> options) {
+    LocationCell barrier = findDoorBarrier(origin, offX, offZ);
+    if (barrier == null) {
+      accept(origin.createCellAtOffset(offX, 0, offZ), 1.0d, options);
     } else {
-      reject(new LocationCell(block.getLocation()));
+      reject(barrier, options);
     }
+  }
 
-    // Neg Z - South
-    cell = origin.createCellAtOffset(0, 0, -1);
-    block = cell.getBlock();
+  /**
+   * Find what prevents a move through a door to an adjacent cell.
+   *
+   * @param origin the origin
+   * @param offX   the x offset, in the set {-1, 0, 1}
+   * @param offZ   the z offset, in the set {-1, 0, 1}, with one of the offsets being 0
+   * @return the cell that prevents the move, or null if the door can be passed
+   */
+  @Nullable
+  private LocationCell findDoorBarrier(LocationCell origin, int offX, int offZ) {
+    LocationCell cell = origin.createCellAtOffset(offX, 0, offZ);
+    Block block = cell.getBlock();
     // Check if we found a door
-    if (block.getBlockData() instanceof Door) {
-      // Check it's a solid floor
-      if (!isVerticallyPassable(origin.getBlockAtOffset(0, -1, -1))) {
-        Door doorBlock = (Door) block.getBlockData();
-        if (block.getType().equals(Material.IRON_DOOR)) {
-          // Need to check if the door is blocking
-          if (doorBlock.getFacing().equals(BlockFace.EAST)
-              || doorBlock.getFacing().equals(BlockFace.WEST)
-              || doorBlock.isOpen()) {
-            // Nothing blocking
-            accept(origin.createCellAtOffset(0, 0, -1), 1.0d, options);
-          } else {
-            // We need to be able to open the door
-            if (MaterialGroups.PRESSURE_PLATES.contains(origin.getBlock().getType())) {
-              // We can step on a pressure plate to open it
-              accept(origin.createCellAtOffset(0, 0, -1), 1.0d, options);
-            } else {
-              reject(origin.createCellAtOffset(0, 0, -1));
-            }
-          }
-          //  If it is blocking, then see if you can open with a switch or something
-        } else {
-          // It's not iron, so its passable
-          accept(origin.createCellAtOffset(0, 0, -1), 1.0d, options);
-        }
-      } else {
-        reject(origin.createCellAtOffset(0, -1, -1));
-      }
+    if (!(block.getBlockData() instanceof Door)) {
+      return new LocationCell(block.getLocation());
+    }
+    // Check it's a solid floor
+    if (isVerticallyPassable(origin.getBlockAtOffset(offX, -1, offZ))) {
+      return origin.createCellAtOffset(offX, -1, offZ);
+    }
+    if (!block.getType().equals(Material.IRON_DOOR)) {
+      // It's not iron, so its passable
+      return null;
+    }
+    // Need to check if the door is blocking
+    Door doorBlock = (Door) block.getBlockData();
+    boolean parallel;
+    if (offX == 0) {
+      parallel = doorBlock.getFacing().equals(BlockFace.EAST)
+          || doorBlock.getFacing().equals(BlockFace.WEST);
     } else {
-      reject(new LocationCell(block.getLocation()));
+      parallel = doorBlock.getFacing().equals(BlockFace.NORTH)
+          || doorBlock.getFacing().equals(BlockFace.SOUTH);
     }
-
+    if (parallel || doorBlock.isOpen()) {
+      // Nothing blocking
+      return null;
+    }
+    // We need to be able to open the door
+    if (MaterialGroups.PRESSURE_PLATES.contains(origin.getBlock().getType())) {
+      // We can step on a pressure plate to open it
+      return null;
+    }
+    //  If it is blocking, then see if you can open with a switch or something
+    return cell;
   }
 
   @Override
@@ -32,6 +32,7 @@ import java.util.Set;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A mode to determine which nearby locations are reachable
@@ -55,43 +56,11 @@ public class FlyMode extends SpigotMode {
     // Check every block in a 3x3 grid centered around the current location
     for (int offX = -1; offX <= 1; offX++) {
       for (int offY = -1; offY <= 1; offY++) {
-        outerZ:
-        // Label so we can continue from these main loops when all checks fail
         for (int offZ = -1; offZ <= 1; offZ++) {
-          // Checks for the block -- checks between the offset block and the original block,
-          //  which would be 1 for just 1 offset variable, 4 for 2 offset variables,
-          //  and 8 for 3 offset variables.
-          for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
-            for (int insideOffY = offY * offY /* normalize sign */; insideOffY >= 0; insideOffY--) {
-              for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
-                // This is the origin, we don't want to move here
-                if (insideOffX == 0 && insideOffY == 0 && insideOffZ == 0) {
-                  continue;
-                }
-                // Make sure we get the pillar of y values for the player's body
-                cell = origin.createCellAtOffset(// Floor
-                    insideOffX * offX /* get sign back */,
-                    insideOffY * offY /* get sign back */,
-                    insideOffZ * offZ /* get sign back */);
-                if (!isLaterallyPassable(cell.getBlock())) {
-                  reject(cell);
-                  continue outerZ;
-                }
-                for (int h = 0; h <= insideOffY; h++) {
-                  // The rest of the pillar above the floor
-                  cell = origin.createCellAtOffset(
-                      insideOffX * offX /* get sign back */,
-                      ((insideOffY * offY + insideOffY) >> 1) /* 1 for positive, 0 for negative */
-                          + h
-                          + (1 - insideOffY) /* for if offYIn is 0 */,
-                      insideOffZ * offZ /* get sign back */);
-                  if (!isPassable(cell.getBlock())) {
-                    reject(cell);
-                    continue outerZ;
-                  }
-                }
-              }
-            }
+          cell = findFlightBarrier(origin, offX, offY, offZ);
+          if (cell != null) {
+            reject(cell, options);
+            continue;
           }
           LocationCell other = origin.createCellAtOffset(offX, offY, offZ);
           accept(other, origin.distanceTo(other), options);
@@ -101,6 +70,68 @@ public class FlyMode extends SpigotMode {
 
   }
 
+  @Override
+  public boolean canReach(@NotNull LocationCell origin, @NotNull LocationCell destination) {
+    if (!origin.getDomainId().equals(destination.getDomainId())) {
+      return false;
+    }
+    int offX = destination.getX() - origin.getX();
+    int offY = destination.getY() - origin.getY();
+    int offZ = destination.getZ() - origin.getZ();
+    if (Math.abs(offX) > 1 || Math.abs(offY) > 1 || Math.abs(offZ) > 1) {
+      return false;
+    }
+    return findFlightBarrier(origin, offX, offY, offZ) == null;
+  }
+
+  /**
+   * Find a block that prevents flying from the origin to the given offset.
+   *
+   * @param origin the origin
+   * @param offX   the x offset
+   * @param offY   the y offset
+   * @param offZ   the z offset
+   * @return the blocking cell, or null if there is nothing blocking
+   */
+  @Nullable
+  private LocationCell findFlightBarrier(LocationCell origin, int offX, int offY, int offZ) {
+    LocationCell cell;
+    // Checks for the block -- checks between the offset block and the original block,
+    //  which would be 1 for just 1 offset variable, 4 for 2 offset variables,
+    //  and 8 for 3 offset variables.
+    for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
+      for (int insideOffY = offY * offY /* normalize sign */; insideOffY >= 0; insideOffY--) {
+        for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
+          // This is the origin, we don't want to move here
+          if (insideOffX == 0 && insideOffY == 0 && insideOffZ == 0) {
+            continue;
+          }
+          // Make sure we get the pillar of y values for the player's body
+          cell = origin.createCellAtOffset(// Floor
+              insideOffX * offX /* get sign back */,
+              insideOffY * offY /* get sign back */,
+              insideOffZ * offZ /* get sign back */);
+          if (!isLaterallyPassable(cell.getBlock())) {
+            return cell;
+          }
+          for (int h = 0; h <= insideOffY; h++) {
+            // The rest of the pillar above the floor
+            cell = origin.createCellAtOffset(
+                insideOffX * offX /* get sign back */,
+                ((insideOffY * offY + insideOffY) >> 1) /* 1 for positive, 0 for negative */
+                    + h
+                    + (1 - insideOffY) /* for if offYIn is 0 */,
+                insideOffZ * offZ /* get sign back */);
+            if (!isPassable(cell.getBlock())) {
+              return cell;
+            }
+          }
+        }
+      }
+    }
+    return null;
+  }
+
   @Override
   public @NotNull ModeType getType() {
     return ModeType.FLY;
@@ -32,6 +32,7 @@ import java.util.Set;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Implementation of {@link edu.whimc.journey.common.navigation.Mode}
@@ -56,14 +57,14 @@ public class JumpMode extends SpigotMode {
     cell = origin.createCellAtOffset(0, -1, 0);
     if (isVerticallyPassable(cell.getBlock())) {
       // Nothing to jump off of
-      reject(cell);
+      reject(cell, options);
       return;
     }
 
     cell = origin.createCellAtOffset(0, 2, 0);
     if (!isVerticallyPassable(cell.getBlock())) {
       // No room to jump
-      reject(cell);
+      reject(cell, options);
       return;
     }
     // 1 block up
@@ -71,49 +72,91 @@ public class JumpMode extends SpigotMode {
 
     // 1 block away and up
     for (int offX = -1; offX <= 1; offX++) {
-      outerZ:
       for (int offZ = -1; offZ <= 1; offZ++) {
-        for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
-          for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
-            if (insideOffX == 0 && insideOffZ == 0) {
-              continue;
-            }
-            // Check two blocks tall
-            cell = origin.createCellAtOffset(
-                insideOffX * offX /* get sign back */,
-                1,
-                insideOffZ * offZ /* get sign back */);
-            if (!isLaterallyPassable(cell.getBlock())) {
-              reject(cell);
-              continue outerZ;
-            }
-            cell = origin.createCellAtOffset(
-                insideOffX * offX /* get sign back */,
-                2,
-                insideOffZ * offZ /* get sign back */);
-            if (!isPassable(cell.getBlock())) {
-              reject(cell);
-              continue outerZ;
-            }
-          }
+        cell = findJumpBarrier(origin, offX, offZ);
+        if (cell != null) {
+          reject(cell, options);
+          continue;
         }
-        double jumpDistance = (origin.getBlockAtOffset(offX, 1, offZ).getBoundingBox().getMaxY()
-            + 1.0
-            - (origin.getBlockAtOffset(0, 0, 0).isPassable()
-            ? origin.getBlockAtOffset(0, -1, 0).getBoundingBox().getMaxY() - 1
-            : origin.getBlockAtOffset(0, 0, 0).getBoundingBox().getMaxY()));
         LocationCell other = origin.createCellAtOffset(offX, 1, offZ);
-        if (!isVerticallyPassable(origin.getBlockAtOffset(offX, 0, offZ))
-            && jumpDistance <= 1.2) {
+        if (canLandAt(origin, offX, offZ)) {
           // Can stand here
           accept(other, origin.distanceTo(other), options);
         } else {
-          reject(other);
+          reject(other, options);
         }
       }
     }
   }
 
+  @Override
+  public boolean canReach(@NotNull LocationCell origin, @NotNull LocationCell destination) {
+    if (!origin.getDomainId().equals(destination.getDomainId())
+        || destination.getY() - origin.getY() != 1) {
+      return false;
+    }
+    int offX = destination.getX() - origin.getX();
+    int offZ = destination.getZ() - origin.getZ();
+    if (Math.abs(offX) > 1 || Math.abs(offZ) > 1) {
+      return false;
+    }
+    if (isVerticallyPassable(origin.getBlockAtOffset(0, -1, 0))
+        || !isVerticallyPassable(origin.getBlockAtOffset(0, 2, 0))) {
+      // Nothing to jump off of, or no room to jump
+      return false;
+    }
+    if (offX == 0 && offZ == 0) {
+      return true;
+    }
+    return findJumpBarrier(origin, offX, offZ) == null && canLandAt(origin, offX, offZ);
+  }
+
+  /**
+   * Find a block that prevents jumping from the origin to the given offset.
+   * The path must be clear two blocks tall, one block above the origin.
+   *
+   * @param origin the origin
+   * @param offX   the x offset
+   * @param offZ   the z offset
+   * @return the blocking cell, or null if there is nothing blocking
+   */
+  @Nullable
+  private LocationCell findJumpBarrier(LocationCell origin, int offX, int offZ) {
+    LocationCell cell;
+    for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
+      for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
+        if (insideOffX == 0 && insideOffZ == 0) {
+          continue;
+        }
+        // Check two blocks tall
+        cell = origin.createCellAtOffset(
+            insideOffX * offX /* get sign back */,
+            1,
+            insideOffZ * offZ /* get sign back */);
+        if (!isLaterallyPassable(cell.getBlock())) {
+          return cell;
+        }
+        cell = origin.createCellAtOffset(
+            insideOffX * offX /* get sign back */,
+            2,
+            insideOffZ * offZ /* get sign back */);
+        if (!isPassable(cell.getBlock())) {
+          return cell;
+        }
+      }
+    }
+    return null;
+  }
+
+  private boolean canLandAt(LocationCell origin, int offX, int offZ) {
+    double jumpDistance = (origin.getBlockAtOffset(offX, 1, offZ).getBoundingBox().getMaxY()
+        + 1.0
+        - (origin.getBlockAtOffset(0, 0, 0).isPassable()
+        ? origin.getBlockAtOffset(0, -1, 0).getBoundingBox().getMaxY() - 1
+        : origin.getBlockAtOffset(0, 0, 0).getBoundingBox().getMaxY()));
+    return !isVerticallyPassable(origin.getBlockAtOffset(offX, 0, offZ)) && jumpDistance <= 1.2;
+  }
+
   @Override
   public @NotNull ModeType getType() {
     return ModeType.JUMP;
@@ -32,6 +32,7 @@ import java.util.Set;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Implementation of {@link edu.whimc.journey.common.navigation.Mode}
@@ -59,7 +60,7 @@ public class WalkMode extends SpigotMode {
     if (canStandOn(origin.getBlockAtOffset(0, -2, 0)) && isVerticallyPassable(cell.getBlock())) {
       accept(cell, 1.0d, options);
     } else {
-      reject(cell);
+      reject(cell, options);
     }
 
     // Can we even stand here?
@@ -70,25 +71,13 @@ public class WalkMode extends SpigotMode {
 
     // 1 block away
     for (int offX = -1; offX <= 1; offX++) {
-      outerZ:
       for (int offZ = -1; offZ <= 1; offZ++) {
         // For the diagonal points, check that the path is clear in both
         //  lateral directions and diagonally
-        for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
-          for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
-            if (insideOffX == 0 && insideOffZ == 0) {
-              continue;
-            }
-            for (int offY = 0; offY <= 1; offY++) { // Check two blocks tall
-              cell = origin.createCellAtOffset(insideOffX * offX /* get sign back */,
-                  offY,
-                  insideOffZ * offZ /*get sign back */);
-              if (!isLaterallyPassable(cell.getBlock())) {
-                reject(cell);
-                continue outerZ;  // Barrier - invalid move
-              }
-            }
-          }
+        cell = findLateralBarrier(origin, offX, offZ);
+        if (cell != null) {
+          reject(cell, options);
+          continue;  // Barrier - invalid move
         }
 
         // We can move to offX and offY laterally
@@ -97,7 +86,7 @@ public class WalkMode extends SpigotMode {
           // We can just stand right here (carpets, slabs, etc.)
           accept(cell, origin.distanceTo(cell), options);
         } else {
-          reject(cell);
+          reject(cell, options);
         }
 
         for (int offY = -1; offY >= -4; offY--) {  // Check for floor anywhere up to a 3 block fall
@@ -106,17 +95,87 @@ public class WalkMode extends SpigotMode {
           if (canStandOn(cell.getBlock())) {
             cell2 = cell.createCellAtOffset(0, 2, 0);
             if (cell2.getBlock().getType().equals(Material.WATER)) {
-              reject(cell1); // Water (drowning) - invalid destination
+              reject(cell1, options); // Water (drowning) - invalid destination
             } else {
               accept(cell1, origin.distanceTo(cell1), options);
             }
             break;
           } else {
-            reject(cell1);
+            reject(cell1, options);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean canReach(@NotNull LocationCell origin, @NotNull LocationCell destination) {
+    if (!origin.getDomainId().equals(destination.getDomainId())) {
+      return false;
+    }
+    int offX = destination.getX() - origin.getX();
+    int offY = destination.getY() - origin.getY();
+    int offZ = destination.getZ() - origin.getZ();
+    if (Math.abs(offX) > 1 || Math.abs(offZ) > 1 || offY > 0 || offY < -3) {
+      return false;
+    }
+
+    // Can you drop into an inhabitable block?
+    if (offX == 0 && offY == -1 && offZ == 0
+        && canStandOn(origin.getBlockAtOffset(0, -2, 0))
+        && isVerticallyPassable(origin.getBlockAtOffset(0, -1, 0))) {
+      return true;
+    }
+
+    if (!canStandOn(origin.getBlockAtOffset(0, -1, 0))
+        && !canStandIn(origin.getBlockAtOffset(0, 0, 0))) {
+      return false;
+    }
+    if (findLateralBarrier(origin, offX, offZ) != null) {
+      return false;
+    }
+    if (offY == 0 && !isVerticallyPassable(origin.getBlockAtOffset(offX, 0, offZ))) {
+      return true;
+    }
+    // Find the floor just like when collecting destinations, then see if it's the right one
+    for (int floorY = -1; floorY >= -4; floorY--) {
+      if (canStandOn(origin.getBlockAtOffset(offX, floorY, offZ))) {
+        return floorY + 1 == offY
+            && !origin.getBlockAtOffset(offX, floorY + 2, offZ).getType().equals(Material.WATER);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find a block that prevents walking laterally from the origin to the given offset.
+   * Diagonal movement requires both lateral directions and the diagonal to be clear,
+   * each two blocks tall.
+   *
+   * @param origin the origin
+   * @param offX   the x offset
+   * @param offZ   the z offset
+   * @return the blocking cell, or null if there is nothing blocking
+   */
+  @Nullable
+  private LocationCell findLateralBarrier(LocationCell origin, int offX, int offZ) {
+    LocationCell cell;
+    for (int insideOffX = offX * offX /* normalize sign */; insideOffX >= 0; insideOffX--) {
+      for (int insideOffZ = offZ * offZ /* normalize sign */; insideOffZ >= 0; insideOffZ--) {
+        if (insideOffX == 0 && insideOffZ == 0) {
+          continue;
+        }
+        for (int offY = 0; offY <= 1; offY++) { // Check two blocks tall
+          cell = origin.createCellAtOffset(insideOffX * offX /* get sign back */,
+              offY,
+              insideOffZ * offZ /*get sign back */);
+          if (!isLaterallyPassable(cell.getBlock())) {
+            return cell;
           }
         }
       }
     }
+    return null;
   }
 
   @Override
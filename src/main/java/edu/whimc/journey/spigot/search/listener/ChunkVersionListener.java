@@ -0,0 +1,270 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.spigot.search.listener;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.manager.ChunkVersionManager;
+import java.util.List;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Openable;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.PortalCreateEvent;
+
+/**
+ * A listener to mark chunks as changed in the {@link ChunkVersionManager}
+ * whenever the blocks within them may have changed.
+ * Cached paths whose steps lie only in unchanged chunks don't have to be validated again.
+ */
+public class ChunkVersionListener implements Listener {
+
+  private static void bump(Block block) {
+    JourneyCommon.getChunkVersionManager().bump(block.getWorld().getUID().toString(),
+        block.getX(),
+        block.getZ());
+  }
+
+  private static void bumpAll(List<Block> blocks) {
+    blocks.forEach(ChunkVersionListener::bump);
+  }
+
+  private static void bumpPiston(Block piston, List<Block> blocks, BlockFace direction) {
+    bump(piston);
+    for (Block block : blocks) {
+      bump(block);
+      bump(block.getRelative(direction));
+    }
+  }
+
+  /**
+   * Mark the chunk of a broken block as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockBreak(BlockBreakEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a placed block as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockPlace(BlockPlaceEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a burned block as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockBurn(BlockBurnEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of an exploding block and every block it destroys as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockExplode(BlockExplodeEvent event) {
+    bump(event.getBlock());
+    bumpAll(event.blockList());
+  }
+
+  /**
+   * Mark the chunk of every block destroyed by an exploding entity as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onEntityExplode(EntityExplodeEvent event) {
+    bumpAll(event.blockList());
+  }
+
+  /**
+   * Mark the chunk of a block changed by an entity, like falling sand or endermen as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a block that a fluid flows into as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onFluidFlow(BlockFromToEvent event) {
+    bump(event.getToBlock());
+  }
+
+  /**
+   * Mark the chunk of a piston and every block it pushes as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onPistonExtend(BlockPistonExtendEvent event) {
+    bumpPiston(event.getBlock(), event.getBlocks(), event.getDirection());
+  }
+
+  /**
+   * Mark the chunk of a piston and every block it pulls as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onPistonRetract(BlockPistonRetractEvent event) {
+    bumpPiston(event.getBlock(), event.getBlocks(), event.getDirection());
+  }
+
+  /**
+   * Mark the chunk of a block formed by the world, like snow or ice as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockForm(BlockFormEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a block spread to, like fire or grass as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockSpread(BlockSpreadEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a growing block as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockGrow(BlockGrowEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of a fading block, like melting ice as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockFade(BlockFadeEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Mark the chunk of decaying leaves as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onLeavesDecay(LeavesDecayEvent event) {
+    bump(event.getBlock());
+  }
+
+  /**
+   * Redstone may open and close doors, which affects door passability.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onRedstone(BlockRedstoneEvent event) {
+    if (event.getOldCurrent() != event.getNewCurrent()) {
+      bump(event.getBlock());
+    }
+  }
+
+  /**
+   * Players may open and close doors, trapdoors, and gates by hand.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onInteract(PlayerInteractEvent event) {
+    if (event.getAction() == Action.RIGHT_CLICK_BLOCK
+        && event.getClickedBlock() != null
+        && event.getClickedBlock().getBlockData() instanceof Openable) {
+      bump(event.getClickedBlock());
+    }
+  }
+
+  /**
+   * Mark the chunks of every block of a new portal as changed.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onPortalCreate(PortalCreateEvent event) {
+    event.getBlocks().forEach(state -> bump(state.getBlock()));
+  }
+
+  /**
+   * We don't see changes to unloaded chunks, so assume they all changed when they come back.
+   *
+   * @param event the event
+   */
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onChunkLoad(ChunkLoadEvent event) {
+    JourneyCommon.getChunkVersionManager().bumpChunk(event.getWorld().getUID().toString(),
+        event.getChunk().getX(),
+        event.getChunk().getZ());
+  }
+
+}
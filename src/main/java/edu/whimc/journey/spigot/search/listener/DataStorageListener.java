@@ -25,15 +25,22 @@
 package edu.whimc.journey.spigot.search.listener;
 
 import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.data.CachedPersonalEndpointManager;
 import edu.whimc.journey.common.data.DataAccessException;
+import edu.whimc.journey.common.data.PersonalEndpointManager;
 import edu.whimc.journey.common.navigation.ModeTypeGroup;
 import edu.whimc.journey.common.search.FlexiblePathTrial;
 import edu.whimc.journey.common.search.PathTrial;
+import edu.whimc.journey.spigot.JourneySpigot;
 import edu.whimc.journey.spigot.navigation.LocationCell;
 import edu.whimc.journey.spigot.search.event.SpigotStopPathSearchEvent;
+import java.util.UUID;
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  * A listener for managing data storage as operations throughout
@@ -54,11 +61,19 @@ public class DataStorageListener implements Listener {
       PathTrial<LocationCell, World> pathTrial = (PathTrial<LocationCell, World>) flexiblePathTrial;
       if (pathTrial.getState().isSuccessful()) {
         try {
+          ModeTypeGroup modeTypes = ModeTypeGroup.from(event.getSearchEvent().getPathTrial().getModes());
           JourneyCommon.<LocationCell, World>getDataManager().getPathRecordManager().report(
               pathTrial,
               event.getSearchEvent().getCalculationNodes(),
-              ModeTypeGroup.from(event.getSearchEvent().getPathTrial().getModes()),
+              modeTypes,
               event.getSearchEvent().getExecutionTime());
+          // The new path may connect two ports better than any path before it
+          if (pathTrial.getPath() != null) {
+            JourneyCommon.<LocationCell, World>getPortGraphManager().pathReported(pathTrial.getOrigin(),
+                pathTrial.getDestination(),
+                modeTypes,
+                pathTrial.getPath());
+          }
         } catch (DataAccessException e) {
           e.printStackTrace();
         }
@@ -66,4 +81,45 @@ public class DataStorageListener implements Listener {
     }
   }
 
+  /**
+   * Load the personal endpoints of a player who joins, off the main thread,
+   * so that their commands don't have to wait on storage.
+   * The player is tracked right away, so if they leave before the endpoints are read,
+   * the endpoints are not kept.
+   *
+   * @param event the event
+   */
+  @EventHandler
+  public void loadPersonalEndpoints(PlayerJoinEvent event) {
+    PersonalEndpointManager<LocationCell, World> manager = JourneyCommon.<LocationCell, World>getDataManager()
+        .getPersonalEndpointManager();
+    if (manager instanceof CachedPersonalEndpointManager) {
+      CachedPersonalEndpointManager<LocationCell, World> cachedManager
+          = (CachedPersonalEndpointManager<LocationCell, World>) manager;
+      UUID playerUuid = event.getPlayer().getUniqueId();
+      cachedManager.track(playerUuid);
+      Bukkit.getScheduler().runTaskAsynchronously(JourneySpigot.getInstance(), () -> {
+        try {
+          cachedManager.load(playerUuid);
+        } catch (DataAccessException e) {
+          e.printStackTrace();
+        }
+      });
+    }
+  }
+
+  /**
+   * Forget the personal endpoints of a player who leaves.
+   *
+   * @param event the event
+   */
+  @EventHandler
+  public void unloadPersonalEndpoints(PlayerQuitEvent event) {
+    PersonalEndpointManager<LocationCell, World> manager = JourneyCommon.<LocationCell, World>getDataManager()
+        .getPersonalEndpointManager();
+    if (manager instanceof CachedPersonalEndpointManager) {
+      ((CachedPersonalEndpointManager<LocationCell, World>) manager).unload(event.getPlayer().getUniqueId());
+    }
+  }
+
 }
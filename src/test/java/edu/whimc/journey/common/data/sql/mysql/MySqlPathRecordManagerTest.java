@@ -0,0 +1,337 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.data.sql.mysql;
+
+import edu.whimc.journey.common.JourneyCommon;
+import edu.whimc.journey.common.config.Settings;
+import edu.whimc.journey.common.data.PathCellLayout;
+import edu.whimc.journey.common.data.PathRecordManager;
+import edu.whimc.journey.common.data.StoredPath;
+import edu.whimc.journey.common.data.sql.DataAdapter;
+import edu.whimc.journey.common.data.sql.PooledConnectionController;
+import edu.whimc.journey.common.data.sql.SqlConnectionController;
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.ModeType;
+import edu.whimc.journey.common.navigation.ModeTypeGroup;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Step;
+import edu.whimc.journey.common.search.FlexiblePathTrial;
+import edu.whimc.journey.common.search.PathTrial;
+import edu.whimc.journey.common.util.LoggerCommon;
+import edu.whimc.journey.common.util.MinecraftConversions;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the MySQL path record manager against an in-memory H2 database in MySQL mode,
+ * which stands in for a real MySQL server.
+ */
+class MySqlPathRecordManagerTest {
+
+  private static final String WORLD = "world";
+  // H2 doesn't understand the deprecated precision of MySQL doubles, so the stand-in drops it
+  private static final Pattern DOUBLE_PRECISION = Pattern.compile("double\\(\\d+, *\\d+\\)",
+      Pattern.CASE_INSENSITIVE);
+  // H2 also has no bitwise operators, only functions
+  private static final Pattern BITWISE_AND = Pattern.compile("(\\w+) & (\\?|\\w+)");
+
+  private SqlConnectionController connectionController;
+
+  private static class TestCell extends Cell<TestCell, String> {
+
+    TestCell(int x, int y, int z, String domainId) {
+      super(x, y, z, domainId, id -> id);
+    }
+
+    @Override
+    public double distanceToSquared(TestCell other) {
+      double dx = coordinateX - other.coordinateX;
+      double dy = coordinateY - other.coordinateY;
+      double dz = coordinateZ - other.coordinateZ;
+      return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      TestCell that = (TestCell) o;
+      return this.coordinateX == that.coordinateX
+          && this.coordinateY == that.coordinateY
+          && this.coordinateZ == that.coordinateZ
+          && this.domainId.equals(that.domainId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(coordinateX, coordinateY, coordinateZ, domainId);
+    }
+  }
+
+  private static class TestDataAdapter implements DataAdapter<TestCell, String> {
+
+    @Override
+    public @NotNull String getDomainIdentifier(@NotNull String domain) {
+      return domain;
+    }
+
+    @Override
+    public @NotNull TestCell makeCell(int x, int y, int z, @NotNull String domainId) {
+      return new TestCell(x, y, z, domainId);
+    }
+  }
+
+  @BeforeAll
+  @SuppressWarnings("deprecation")
+  static void setUpCommon() {
+    JourneyCommon.setLogger(new LoggerCommon() {
+      @Override
+      public void info(String message) {
+      }
+
+      @Override
+      public void warn(String message) {
+      }
+
+      @Override
+      public void error(String message) {
+      }
+    });
+    JourneyCommon.<TestCell, String>setConversions(new MinecraftConversions<TestCell, String>() {
+      @Override
+      public int getBiome(TestCell cell) {
+        return 0;
+      }
+
+      @Override
+      public int getDimension(String domain) {
+        return 0;
+      }
+    });
+  }
+
+  @BeforeEach
+  void setUpDatabase() {
+    // A fresh database for every test, kept until the pool lets go of it
+    String url = "jdbc:h2:mem:" + UUID.randomUUID()
+        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    connectionController = new PooledConnectionController(() -> standIn(DriverManager.getConnection(url)));
+    Settings.STORAGE_CELL_LAYOUT.setValue(PathCellLayout.ROWS);
+  }
+
+  @AfterEach
+  void tearDownDatabase() {
+    connectionController.close();
+    Settings.STORAGE_CELL_LAYOUT.setValue(Settings.STORAGE_CELL_LAYOUT.getDefaultValue());
+    Settings.STORAGE_EXPORT_FETCH_SIZE.setValue(Settings.STORAGE_EXPORT_FETCH_SIZE.getDefaultValue());
+  }
+
+  private static Connection standIn(Connection connection) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("prepareStatement")) {
+            String sql = DOUBLE_PRECISION.matcher((String) args[0]).replaceAll("double");
+            args[0] = BITWISE_AND.matcher(sql).replaceAll("BITAND($1, CAST($2 AS BIGINT))");
+          }
+          try {
+            return method.invoke(connection, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  private MySqlPathRecordManager<TestCell, String> manager() {
+    return new MySqlPathRecordManager<>(connectionController, new TestDataAdapter());
+  }
+
+  private static ModeTypeGroup walking() {
+    return new ModeTypeGroup(Collections.singletonList(ModeType.WALK));
+  }
+
+  /*
+   * A straight path along x with some length, and the nodes visited to find it,
+   * with one dead end beside every step.
+   */
+  private static PathRecordManager.PathReport<TestCell, String> report(int destinationX, double length) {
+    TestCell origin = new TestCell(0, 64, 0, WORLD);
+    List<Step<TestCell, String>> steps = new ArrayList<>();
+    List<FlexiblePathTrial.Node<TestCell, String>> nodes = new ArrayList<>();
+    steps.add(new Step<>(origin, 0, ModeType.WALK));
+    FlexiblePathTrial.Node<TestCell, String> previous = new FlexiblePathTrial.Node<>(steps.get(0), null, 0);
+    nodes.add(previous);
+    for (int x = 1; x <= destinationX; x++) {
+      Step<TestCell, String> step = new Step<>(new TestCell(x, 64, 0, WORLD), 1, ModeType.WALK);
+      steps.add(step);
+      nodes.add(new FlexiblePathTrial.Node<>(new Step<>(new TestCell(x, 64, 1, WORLD), 1, ModeType.WALK),
+          previous, x));
+      previous = new FlexiblePathTrial.Node<>(step, previous, x);
+      nodes.add(previous);
+    }
+    Path<TestCell, String> path = new Path<>(origin, steps, length);
+    TestCell destination = steps.get(steps.size() - 1).location();
+    return new PathRecordManager.PathReport<>(
+        PathTrial.successful(null, origin, destination, Collections.emptyList(), path),
+        nodes, walking(), 10);
+  }
+
+  @Test
+  public void findsShortestPath() {
+    MySqlPathRecordManager<TestCell, String> writer = manager();
+    PathRecordManager.PathReport<TestCell, String> longer = report(5, 20);
+    PathRecordManager.PathReport<TestCell, String> shorter = report(5, 5);
+    TestCell origin = shorter.trial().getOrigin();
+    TestCell destination = shorter.trial().getDestination();
+    // Same ends, but the first path is longer
+    writer.reportAll(Collections.singletonList(longer));
+    writer.reportAll(Collections.singletonList(shorter));
+
+    // Another manager doesn't have the paths cached, so it has to read them
+    MySqlPathRecordManager<TestCell, String> manager = manager();
+
+    Assertions.assertTrue(manager.containsRecord(origin, destination, walking()));
+    Path<TestCell, String> path = manager.getPath(origin, destination, walking(), TestCell::new);
+    Assertions.assertNotNull(path);
+    Assertions.assertEquals(5, path.getLength(), 0);
+    Assertions.assertEquals(6, path.getSteps().size());
+
+    PathRecordManager.PathLookup<TestCell, String> lookup
+        = new PathRecordManager.PathLookup<>(origin, destination, walking());
+    Map<PathRecordManager.PathLookup<TestCell, String>, StoredPath<TestCell, String>> paths
+        = manager.findPaths(Collections.singletonList(lookup), TestCell::new);
+    Assertions.assertEquals(5, paths.get(lookup).getLength(), 0);
+    Assertions.assertNotNull(paths.get(lookup).load());
+
+    // Walking isn't allowed, so nothing fits
+    ModeTypeGroup flying = new ModeTypeGroup(Collections.singletonList(ModeType.FLY));
+    Assertions.assertFalse(manager.containsRecord(origin, destination, flying));
+
+    Assertions.assertEquals(1, manager.clearSuboptimal());
+    Assertions.assertEquals(1, manager.getRecords(origin, destination).size());
+  }
+
+  @Test
+  public void streamsEveryCell() {
+    MySqlPathRecordManager<TestCell, String> manager = manager();
+    PathRecordManager.PathReport<TestCell, String> report = report(30, 30);
+    manager.reportAll(Collections.singletonList(report));
+
+    // Read with a fetch size much smaller than the result
+    Settings.STORAGE_EXPORT_FETCH_SIZE.setValue(7);
+    AtomicLong critical = new AtomicLong();
+    long count = manager.forEachCell(cell -> {
+      if (cell.critical()) {
+        critical.incrementAndGet();
+      }
+    });
+    Assertions.assertEquals(report.calculationNodes().size(), count);
+    Assertions.assertEquals(31, critical.get());
+  }
+
+  @Test
+  public void migratesRowsToBlobs() {
+    MySqlPathRecordManager<TestCell, String> manager = manager();
+    PathRecordManager.PathReport<TestCell, String> report = report(10, 10);
+    TestCell origin = report.trial().getOrigin();
+    TestCell destination = report.trial().getDestination();
+    manager.reportAll(Collections.singletonList(report));
+
+    Settings.STORAGE_CELL_LAYOUT.setValue(PathCellLayout.BLOB);
+    MySqlPathRecordManager<TestCell, String> blobManager = manager();
+    // The rows are still read until they are moved
+    Assertions.assertEquals(report.calculationNodes().size(),
+        blobManager.getRecords(origin, destination).get(0).cells().size());
+
+    Assertions.assertEquals(1, blobManager.migrate());
+    Assertions.assertEquals(0, blobManager.migrate());
+    Assertions.assertEquals(report.calculationNodes().size(),
+        blobManager.getRecords(origin, destination).get(0).cells().size());
+    Assertions.assertEquals(report.calculationNodes().size(), blobManager.forEachCell(cell -> {
+    }));
+  }
+
+  @Test
+  public void trimsEncodedCellsOnce() {
+    Settings.STORAGE_CELL_LAYOUT.setValue(PathCellLayout.BLOB);
+    MySqlPathRecordManager<TestCell, String> manager = manager();
+    PathRecordManager.PathReport<TestCell, String> report = report(10, 10);
+    manager.reportAll(Collections.singletonList(report));
+
+    // Every dead end beside the path goes, and trimmed records aren't read again
+    Assertions.assertEquals(10, manager.clearCellsOlderThan(Long.MAX_VALUE));
+    Assertions.assertEquals(0, manager.clearCellsOlderThan(Long.MAX_VALUE));
+    TestCell origin = report.trial().getOrigin();
+    TestCell destination = report.trial().getDestination();
+    Assertions.assertEquals(11, manager.getRecords(origin, destination).get(0).cells().size());
+  }
+
+  @Test
+  public void encodesOldPaths() throws SQLException {
+    manager().reportAll(Collections.singletonList(report(10, 10)));
+    // Records saved before paths were encoded only have their cells
+    try (Connection connection = connectionController.establishConnection();
+         PreparedStatement statement = connection.prepareStatement(
+             "UPDATE path_record SET path_data = NULL;")) {
+      Assertions.assertEquals(1, statement.executeUpdate());
+    }
+
+    MySqlPathRecordManager<TestCell, String> manager = manager();
+    TestCell origin = new TestCell(0, 64, 0, WORLD);
+    TestCell destination = new TestCell(10, 64, 0, WORLD);
+    Path<TestCell, String> path = manager.getPath(origin, destination, walking(), TestCell::new);
+    Assertions.assertNotNull(path);
+    Assertions.assertEquals(11, path.getSteps().size());
+
+    Assertions.assertEquals(1, manager.migrate());
+    Assertions.assertEquals(0, manager.migrate());
+    Path<TestCell, String> encoded = manager().getPath(origin, destination, walking(), TestCell::new);
+    Assertions.assertNotNull(encoded);
+    Assertions.assertEquals(11, encoded.getSteps().size());
+  }
+
+}
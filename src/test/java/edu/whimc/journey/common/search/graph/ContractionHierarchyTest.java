@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ContractionHierarchyTest {
+
+  /*
+   * The shortest distances from every node to a target with Dijkstra's algorithm on the plain graph.
+   */
+  private static double[] distancesTo(double[][] lengths, int[] targets, double[] offsets) {
+    int size = lengths.length;
+    double[] distances = new double[size];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < targets.length; i++) {
+      distances[targets[i]] = Math.min(distances[targets[i]], offsets[i]);
+    }
+    boolean[] done = new boolean[size];
+    for (int round = 0; round < size; round++) {
+      int current = -1;
+      for (int node = 0; node < size; node++) {
+        if (!done[node] && (current < 0 || distances[node] < distances[current])) {
+          current = node;
+        }
+      }
+      done[current] = true;
+      for (int previous = 0; previous < size; previous++) {
+        distances[previous] = Math.min(distances[previous], lengths[previous][current] + distances[current]);
+      }
+    }
+    return distances;
+  }
+
+  @Test
+  void matchesPlainSearch() {
+    Random random = new Random(50);
+    for (int trial = 0; trial < 20; trial++) {
+      int size = 5 + random.nextInt(60);
+      double[][] lengths = new double[size][size];
+      ContractionHierarchy.Builder builder = ContractionHierarchy.builder(size);
+      for (int origin = 0; origin < size; origin++) {
+        Arrays.fill(lengths[origin], Double.POSITIVE_INFINITY);
+        for (int destination = 0; destination < size; destination++) {
+          if (origin != destination && random.nextDouble() < 0.15) {
+            lengths[origin][destination] = random.nextInt(20);
+            builder.edge(origin, destination, lengths[origin][destination]);
+          }
+        }
+      }
+      ContractionHierarchy hierarchy = builder.build();
+
+      int[] targets = {random.nextInt(size), random.nextInt(size)};
+      double[] offsets = {random.nextInt(10), random.nextInt(10)};
+      double[] expected = distancesTo(lengths, targets, offsets);
+      ContractionHierarchy.Target target = hierarchy.target(targets, offsets);
+      for (int node = 0; node < size; node++) {
+        Assertions.assertEquals(expected[node], target.distanceFrom(node), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  void unreachable() {
+    ContractionHierarchy hierarchy = ContractionHierarchy.builder(3)
+        .edge(0, 1, 2)
+        .build();
+    ContractionHierarchy.Target target = hierarchy.target(new int[]{1}, new double[]{1});
+    Assertions.assertEquals(3d, target.distanceFrom(0));
+    Assertions.assertEquals(1d, target.distanceFrom(1));
+    Assertions.assertEquals(Double.POSITIVE_INFINITY, target.distanceFrom(2));
+  }
+
+}
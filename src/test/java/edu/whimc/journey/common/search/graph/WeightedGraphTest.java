@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.search.graph;
+
+import edu.whimc.journey.common.tools.AlternatingList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class WeightedGraphTest {
+
+  private static class TestGraph extends WeightedGraph<Integer, Double> {
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<Double> followedEdges = new ArrayList<>();
+    private double[] estimates = null;
+    private double[] sharedLengths = null;
+
+    TestGraph(int size) {
+      for (int i = 0; i < size; i++) {
+        nodes.add(new Node(i));
+      }
+    }
+
+    TestGraph(int size, SharedEdges sharedEdges, double[] sharedLengths) {
+      this(size);
+      this.sharedLengths = sharedLengths;
+      share(sharedEdges, nodes.subList(0, sharedEdges.nodeCount()));
+    }
+
+    void connect(int origin, int destination, double length) {
+      addEdge(nodes.get(origin), nodes.get(destination), length);
+    }
+
+    List<Object> solve(int origin, int destination) {
+      AlternatingList<Node, Double, Object> path = findMinimumPath(nodes.get(origin), nodes.get(destination));
+      if (path == null) {
+        return null;
+      }
+      return path.flatten(Node::getData, edge -> edge);
+    }
+
+    List<List<Object>> solveAll(int origin, int destination, int count) {
+      List<List<Object>> paths = new ArrayList<>();
+      for (AlternatingList<Node, Double, Object> path
+          : findMinimumPaths(nodes.get(origin), nodes.get(destination), count)) {
+        paths.add(path.flatten(Node::getData, edge -> edge));
+      }
+      return paths;
+    }
+
+    @Override
+    protected Double sharedEdge(Node origin, Node destination, int position) {
+      return sharedLengths[position];
+    }
+
+    @Override
+    protected double nodeWeight(Integer nodeData) {
+      // Only node 3 costs anything to pass through
+      return nodeData == 3 ? 10 : 0;
+    }
+
+    @Override
+    protected double edgeLength(Double edge) {
+      followedEdges.add(edge);
+      return edge;
+    }
+
+    @Override
+    protected double estimate(Node node, Node destination) {
+      return estimates == null ? 0 : estimates[node.getData()];
+    }
+  }
+
+  @Test
+  public void shortestPath() {
+    TestGraph graph = new TestGraph(5);
+    graph.connect(0, 1, 4);
+    graph.connect(0, 2, 1);
+    graph.connect(2, 1, 2);
+    graph.connect(1, 4, 5);
+    graph.connect(2, 4, 9);
+
+    List<Object> path = graph.solve(0, 4);
+    Assertions.assertNotNull(path);
+    Assertions.assertEquals(Arrays.asList(0, 1.0, 2, 2.0, 1, 5.0, 4), path);
+
+    // Solving again gives the same answer, since nothing is left over from the last search
+    Assertions.assertEquals(path, graph.solve(0, 4));
+  }
+
+  @Test
+  public void nodeWeights() {
+    TestGraph graph = new TestGraph(5);
+    graph.connect(0, 3, 1);
+    graph.connect(3, 4, 1);
+    graph.connect(0, 1, 5);
+    graph.connect(1, 4, 5);
+
+    // Going through node 3 is shorter by edges, but node 3 itself is too heavy
+    Assertions.assertEquals(Arrays.asList(0, 5.0, 1, 5.0, 4), graph.solve(0, 4));
+  }
+
+  @Test
+  public void unreachable() {
+    TestGraph graph = new TestGraph(4);
+    graph.connect(0, 1, 1);
+    graph.connect(2, 1, 1);
+
+    Assertions.assertNull(graph.solve(0, 2));
+    Assertions.assertNull(graph.solve(1, 0));
+    Assertions.assertEquals(Arrays.asList(0), graph.solve(0, 0));
+  }
+
+  @Test
+  public void estimates() {
+    TestGraph graph = new TestGraph(5);
+    graph.connect(0, 1, 2);
+    graph.connect(1, 2, 2);
+    graph.connect(0, 4, 1);
+    graph.connect(4, 2, 100);
+    graph.connect(2, 3, 0.5);  // never needed, since we stop at 2
+
+    List<Object> path = graph.solve(0, 2);
+    Assertions.assertEquals(Arrays.asList(0, 2.0, 1, 2.0, 2), path);
+
+    // Exact estimates lead straight to the destination, without following the long way
+    graph.estimates = new double[]{4, 2, 0, 0, 100};
+    graph.followedEdges.clear();
+    Assertions.assertEquals(path, graph.solve(0, 2));
+    Assertions.assertFalse(graph.followedEdges.contains(100.0));
+  }
+
+  @Test
+  public void alternatives() {
+    TestGraph graph = new TestGraph(6);
+    graph.connect(0, 1, 1);
+    graph.connect(1, 5, 1);
+    graph.connect(0, 2, 2);
+    graph.connect(2, 5, 2);
+    graph.connect(1, 2, 1.5);
+    graph.connect(0, 4, 3);
+    graph.connect(4, 5, 3);
+
+    List<List<Object>> paths = graph.solveAll(0, 5, 10);
+    Assertions.assertEquals(Arrays.asList(
+        Arrays.asList(0, 1.0, 1, 1.0, 5),
+        Arrays.asList(0, 2.0, 2, 2.0, 5),
+        Arrays.asList(0, 1.0, 1, 1.5, 2, 2.0, 5),
+        Arrays.asList(0, 3.0, 4, 3.0, 5)), paths);
+
+    // The first path is the same one we'd find alone
+    Assertions.assertEquals(paths.get(0), graph.solve(0, 5));
+    Assertions.assertEquals(paths.subList(0, 2), graph.solveAll(0, 5, 2));
+    Assertions.assertTrue(graph.solveAll(5, 0, 3).isEmpty());
+  }
+
+  @Test
+  public void changingGraph() {
+    TestGraph graph = new TestGraph(3);
+    graph.connect(0, 1, 1);
+    Assertions.assertNull(graph.solve(0, 2));
+
+    graph.connect(1, 2, 1);
+    graph.connect(0, 2, 5);
+    Assertions.assertEquals(Arrays.asList(0, 1.0, 1, 1.0, 2), graph.solve(0, 2));
+
+    // A new edge between the same nodes replaces the old one
+    graph.connect(0, 2, 1);
+    Assertions.assertEquals(Arrays.asList(0, 1.0, 2), graph.solve(0, 2));
+  }
+
+  @Test
+  public void sharedEdges() {
+    // 0 -> 1, 0 -> 2, and 1 -> 2 between the first three nodes
+    WeightedGraph.SharedEdges shared = new WeightedGraph.SharedEdges(new int[]{0, 2, 3, 3},
+        new int[]{1, 2, 2});
+    double[] lengths = new double[]{1, 5, 1};
+
+    TestGraph graph = new TestGraph(5, shared, lengths);
+    graph.connect(2, 4, 1);
+    graph.connect(0, 4, 10);
+    Assertions.assertEquals(Arrays.asList(
+        Arrays.asList(0, 1.0, 1, 1.0, 2, 1.0, 4),
+        Arrays.asList(0, 5.0, 2, 1.0, 4),
+        Arrays.asList(0, 10.0, 4)), graph.solveAll(0, 4, 5));
+
+    // Another graph on the same shared edges has its own edges, even alongside the shared ones
+    TestGraph other = new TestGraph(4, shared, lengths);
+    other.connect(0, 2, 0.5);
+    other.connect(2, 3, 1);
+    Assertions.assertEquals(Arrays.asList(0, 0.5, 2, 1.0, 3), other.solve(0, 3));
+    Assertions.assertNull(graph.solve(0, 3));
+    Assertions.assertEquals(Arrays.asList(0, 1.0, 1, 1.0, 2), graph.solve(0, 2));
+  }
+
+}
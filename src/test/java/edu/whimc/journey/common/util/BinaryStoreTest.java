@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.JourneyCommon;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class BinaryStoreTest {
+
+  private static final BinaryStore.Codec<String> STRINGS = new BinaryStore.Codec<String>() {
+    @Override
+    public void write(DataOutput out, String value) throws IOException {
+      out.writeUTF(value);
+    }
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      return in.readUTF();
+    }
+  };
+
+  private static final BinaryStore.Codec<Integer> INTEGERS = new BinaryStore.Codec<Integer>() {
+    @Override
+    public void write(DataOutput out, Integer value) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override
+    public Integer read(DataInput in) throws IOException {
+      return in.readInt();
+    }
+  };
+
+  @BeforeAll
+  static void setUpLogger() {
+    // The store warns about what it discards
+    JourneyCommon.setLogger(new LoggerCommon() {
+      @Override
+      public void info(String message) {
+      }
+
+      @Override
+      public void warn(String message) {
+      }
+
+      @Override
+      public void error(String message) {
+      }
+    });
+  }
+
+  private static File tempFile() throws IOException {
+    File file = Files.createTempFile("journey-store", ".dat").toFile();
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static BinaryStore<String, Integer> open(File file, int schemaVersion) throws IOException {
+    return BinaryStore.open(file, schemaVersion, STRINGS, INTEGERS);
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    File file = tempFile();
+    BinaryStore<String, Integer> store = open(file, 1);
+    store.put("a", 1);
+    store.put("b", 2);
+    store.put("a", 3);
+    store.remove("b");
+    store.put("c", 4);
+    store.close();
+
+    BinaryStore<String, Integer> reopened = open(file, 1);
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("a", 3);
+    expected.put("c", 4);
+    Assertions.assertEquals(expected, reopened.entries());
+    reopened.close();
+  }
+
+  @Test
+  public void truncatesCorruptTail() throws IOException {
+    File file = tempFile();
+    BinaryStore<String, Integer> store = open(file, 1);
+    store.put("a", 1);
+    store.put("b", 2);
+    store.close();
+    long validLength = file.length();
+
+    BinaryStore<String, Integer> damaged = open(file, 1);
+    damaged.put("c", 3);
+    damaged.close();
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      // Flip the last byte of the last record, so its checksum no longer matches
+      raw.seek(raw.length() - 1);
+      int last = raw.read();
+      raw.seek(raw.length() - 1);
+      raw.write(last ^ 0xFF);
+    }
+
+    BinaryStore<String, Integer> recovered = open(file, 1);
+    Assertions.assertEquals(1, recovered.get("a"));
+    Assertions.assertEquals(2, recovered.get("b"));
+    Assertions.assertNull(recovered.get("c"));
+    Assertions.assertEquals(validLength, file.length());
+
+    // Writing goes on right after the last good record
+    recovered.put("d", 4);
+    recovered.close();
+    Assertions.assertEquals(4, open(file, 1).get("d"));
+  }
+
+  @Test
+  public void truncatesIncompleteRecord() throws IOException {
+    File file = tempFile();
+    BinaryStore<String, Integer> store = open(file, 1);
+    store.put("a", 1);
+    store.put("b", 2);
+    store.close();
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      // Like a crash in the middle of writing the last record
+      raw.setLength(raw.length() - 3);
+    }
+
+    BinaryStore<String, Integer> recovered = open(file, 1);
+    Assertions.assertEquals(1, recovered.size());
+    Assertions.assertEquals(1, recovered.get("a"));
+    recovered.close();
+  }
+
+  @Test
+  public void discardsOtherSchema() throws IOException {
+    File file = tempFile();
+    BinaryStore<String, Integer> store = open(file, 1);
+    store.put("a", 1);
+    store.close();
+
+    BinaryStore<String, Integer> newer = open(file, 2);
+    Assertions.assertEquals(0, newer.size());
+    newer.put("b", 2);
+    newer.close();
+    Assertions.assertEquals(1, open(file, 2).size());
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    File file = tempFile();
+    Files.write(file.toPath(), "not a store at all".getBytes());
+    Assertions.assertThrows(IOException.class, () -> open(file, 1));
+  }
+
+  @Test
+  public void compacts() throws IOException {
+    File file = tempFile();
+    BinaryStore<String, Integer> store = open(file, 1);
+    for (int i = 0; i < 1000; i++) {
+      store.put("a", i);
+    }
+    store.close();
+
+    // Only the latest value is left, instead of a record for every change
+    Assertions.assertTrue(file.length() < 100 * 16);
+    BinaryStore<String, Integer> reopened = open(file, 1);
+    Assertions.assertEquals(999, reopened.get("a"));
+    reopened.close();
+  }
+
+}
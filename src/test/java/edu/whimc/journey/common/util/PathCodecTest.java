@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.navigation.Cell;
+import edu.whimc.journey.common.navigation.ModeType;
+import edu.whimc.journey.common.navigation.Path;
+import edu.whimc.journey.common.navigation.Step;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PathCodecTest {
+
+  private static class TestCell extends Cell<TestCell, String> {
+
+    TestCell(int x, int y, int z, String domainId) {
+      super(x, y, z, domainId, id -> id);
+    }
+
+    @Override
+    public double distanceToSquared(TestCell other) {
+      double dx = coordinateX - other.coordinateX;
+      double dy = coordinateY - other.coordinateY;
+      double dz = coordinateZ - other.coordinateZ;
+      return dx * dx + dy * dy + dz * dz;
+    }
+
+    List<Object> coordinates() {
+      return Arrays.asList(coordinateX, coordinateY, coordinateZ, domainId);
+    }
+  }
+
+  private static Path<TestCell, String> path(int[][] locations, ModeType[] modeTypes) {
+    TestCell origin = new TestCell(locations[0][0], locations[0][1], locations[0][2], "world");
+    List<Step<TestCell, String>> steps = new ArrayList<>();
+    TestCell previous = origin;
+    for (int i = 1; i < locations.length; i++) {
+      TestCell cell = new TestCell(locations[i][0], locations[i][1], locations[i][2], "world");
+      steps.add(new Step<>(cell, cell.distanceTo(previous), modeTypes[i - 1]));
+      previous = cell;
+    }
+    return new Path<>(origin, steps, 123.5);
+  }
+
+  @Test
+  public void roundTrip() {
+    Path<TestCell, String> path = path(new int[][]{
+        {-100, 64, 2000},
+        {-99, 64, 2000},
+        {-99, 65, 2001},
+        {-99, 65, 2001},          // no move at all
+        {5000, -64, -300000},     // a large step needs the escape code
+        {4999, -63, -299999}
+    }, new ModeType[]{ModeType.WALK, ModeType.JUMP, ModeType.JUMP, ModeType.PORT, ModeType.WALK});
+
+    Path<TestCell, String> decoded = PathCodec.decode(PathCodec.encode(path), TestCell::new);
+
+    Assertions.assertEquals(path.getLength(), decoded.getLength(), 0);
+    Assertions.assertEquals(path.getOrigin().coordinates(), decoded.getOrigin().coordinates());
+    Assertions.assertEquals(path.getSteps().size(), decoded.getSteps().size());
+    for (int i = 0; i < path.getSteps().size(); i++) {
+      Step<TestCell, String> expected = path.getSteps().get(i);
+      Step<TestCell, String> actual = decoded.getSteps().get(i);
+      Assertions.assertEquals(expected.location().coordinates(), actual.location().coordinates());
+      Assertions.assertEquals(expected.modeType(), actual.modeType());
+      Assertions.assertEquals(expected.length(), actual.length(), 1e-9);
+    }
+  }
+
+  @Test
+  public void smallStepsTakeOneByte() {
+    int[][] locations = new int[101][];
+    ModeType[] modeTypes = new ModeType[100];
+    for (int i = 0; i <= 100; i++) {
+      locations[i] = new int[]{i, 64, -i};
+    }
+    Arrays.fill(modeTypes, ModeType.WALK);
+    byte[] encoded = PathCodec.encode(path(locations, modeTypes));
+    byte[] shorter = PathCodec.encode(path(Arrays.copyOf(locations, 51), Arrays.copyOf(modeTypes, 50)));
+
+    Assertions.assertEquals(50, encoded.length - shorter.length);
+  }
+
+  @Test
+  public void varInts() throws IOException {
+    int[] values = {0, 1, -1, 63, -64, 64, 300, -300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (int value : values) {
+      PathCodec.writeVarInt(out, PathCodec.zigzag(value));
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int value : values) {
+      Assertions.assertEquals(value, PathCodec.unzigzag(PathCodec.readVarInt(in)));
+    }
+
+    // Small magnitudes of either sign fit in one byte
+    ByteArrayOutputStream small = new ByteArrayOutputStream();
+    PathCodec.writeVarInt(new DataOutputStream(small), PathCodec.zigzag(-64));
+    Assertions.assertEquals(1, small.size());
+    PathCodec.writeVarInt(new DataOutputStream(small), PathCodec.zigzag(64));
+    Assertions.assertEquals(3, small.size());
+  }
+
+  @Test
+  public void malformed() {
+    byte[] encoded = PathCodec.encode(path(new int[][]{{0, 0, 0}, {1, 1, 1}, {50, 0, 0}},
+        new ModeType[]{ModeType.WALK, ModeType.FLY}));
+
+    byte[] truncated = Arrays.copyOf(encoded, encoded.length - 2);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> PathCodec.decode(truncated, TestCell::new));
+
+    byte[] unknownVersion = encoded.clone();
+    unknownVersion[0] = 99;
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> PathCodec.decode(unknownVersion, TestCell::new));
+
+    byte[] tooLong = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0};
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> PathCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(tooLong))));
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright 2021 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package edu.whimc.journey.common.util;
+
+import edu.whimc.journey.common.JourneyCommon;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("deprecation")
+class SerializeTest {
+
+  @BeforeAll
+  static void setUpLogger() {
+    JourneyCommon.setLogger(new LoggerCommon() {
+      @Override
+      public void info(String message) {
+      }
+
+      @Override
+      public void warn(String message) {
+      }
+
+      @Override
+      public void error(String message) {
+      }
+    });
+  }
+
+  @Test
+  public void readsRenamedClass() throws IOException {
+    File folder = Files.createTempDirectory("journey-serialize").toFile();
+    folder.deleteOnExit();
+    OldCache old = new OldCache();
+    old.entries.put("a", 1);
+    old.entries.put("b", 2);
+    Serialize.serializeCache(folder, "cache.ser", () -> old, cache -> {
+    }, OldCache::new);
+    new File(folder, "cache.ser").deleteOnExit();
+
+    // Without the new name, the old class is read as it is
+    AtomicReference<OldCache> same = new AtomicReference<>();
+    Serialize.deserializeCache(folder, "cache.ser", same::set, () -> null);
+    Assertions.assertEquals(old.entries, same.get().entries);
+
+    AtomicReference<NewCache> renamed = new AtomicReference<>();
+    Serialize.deserializeCache(folder, "cache.ser",
+        Collections.singletonMap(OldCache.class.getName(), NewCache.class),
+        renamed::set,
+        () -> null);
+    Assertions.assertNotNull(renamed.get());
+    Assertions.assertEquals(old.entries, renamed.get().entries);
+  }
+
+  private static final class OldCache implements Serializable {
+    private final Map<String, Integer> entries = new ConcurrentHashMap<>();
+  }
+
+  private static final class NewCache implements Serializable {
+    private Map<String, Integer> entries;
+  }
+
+}